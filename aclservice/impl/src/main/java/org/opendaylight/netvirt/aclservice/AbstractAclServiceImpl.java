@@ -7,21 +7,17 @@
  */
 package org.opendaylight.netvirt.aclservice;
 
-import static org.opendaylight.mdsal.binding.util.Datastore.CONFIGURATION;
-
 import com.google.common.collect.Lists;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedSet;
-import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 import org.eclipse.jdt.annotation.Nullable;
 import org.opendaylight.genius.mdsalutil.ActionInfo;
@@ -82,6 +78,7 @@ public abstract class AbstractAclServiceImpl implements AclServiceListener {
     protected final AclServiceUtils aclServiceUtils;
     protected final JobCoordinator jobCoordinator;
     protected final AclInterfaceCache aclInterfaceCache;
+    protected final AclFlowWriter aclFlowWriter;
 
     protected final Class<? extends DirectionBase> direction;
     protected final String directionString;
@@ -96,10 +93,11 @@ public abstract class AbstractAclServiceImpl implements AclServiceListener {
      * @param aclServiceUtils the acl service util.
      * @param jobCoordinator the job coordinator
      * @param aclInterfaceCache the acl interface cache
+     * @param aclFlowWriter the acl flow writer
      */
     public AbstractAclServiceImpl(Class<? extends ServiceModeBase> serviceMode, DataBroker dataBroker,
             IMdsalApiManager mdsalManager, AclDataUtil aclDataUtil, AclServiceUtils aclServiceUtils,
-            JobCoordinator jobCoordinator, AclInterfaceCache aclInterfaceCache) {
+            JobCoordinator jobCoordinator, AclInterfaceCache aclInterfaceCache, AclFlowWriter aclFlowWriter) {
         this.txRunner = new ManagedNewTransactionRunnerImpl(dataBroker);
         this.mdsalManager = mdsalManager;
         this.serviceMode = serviceMode;
@@ -107,6 +105,7 @@ public abstract class AbstractAclServiceImpl implements AclServiceListener {
         this.aclServiceUtils = aclServiceUtils;
         this.jobCoordinator = jobCoordinator;
         this.aclInterfaceCache = aclInterfaceCache;
+        this.aclFlowWriter = aclFlowWriter;
 
         this.direction =
                 this.serviceMode.equals(ServiceModeEgress.class) ? DirectionIngress.class : DirectionEgress.class;
@@ -210,9 +209,7 @@ public abstract class AbstractAclServiceImpl implements AclServiceListener {
             processDhcpServiceUpdate(addFlowEntries, portAfter, addedAaps, NwConstants.ADD_FLOW);
         }
         programFlows(AclConstants.ACL_JOB_KEY_PREFIX + portAfter.getInterfaceId(), deleteFlowEntries,
-                NwConstants.DEL_FLOW);
-        programFlows(AclConstants.ACL_JOB_KEY_PREFIX + portAfter.getInterfaceId(), addFlowEntries,
-                NwConstants.ADD_FLOW);
+                addFlowEntries);
     }
 
     private void processInterfaceUpdate(AclInterface portBefore, AclInterface portAfter) {
@@ -246,9 +243,7 @@ public abstract class AbstractAclServiceImpl implements AclServiceListener {
         }
 
         programFlows(AclConstants.ACL_JOB_KEY_PREFIX + portAfter.getInterfaceId(), deleteFlowEntries,
-                NwConstants.DEL_FLOW);
-        programFlows(AclConstants.ACL_JOB_KEY_PREFIX + portAfter.getInterfaceId(), addFlowEntries,
-                NwConstants.ADD_FLOW);
+                addFlowEntries);
     }
 
     private void handleSubnetChange(AclInterface portBefore, AclInterface portAfter,
@@ -639,6 +634,9 @@ public abstract class AbstractAclServiceImpl implements AclServiceListener {
     /**
      * Add Flow to list.
      *
+     * <p>The instructions are kept for the flows to remove as well, so that an update can tell the flows which
+     * changed from the ones it would remove and add back as they were, see {@link AclFlowDelta}.
+     *
      * @param dpId
      *            the dpId
      * @param tableId
@@ -663,33 +661,41 @@ public abstract class AbstractAclServiceImpl implements AclServiceListener {
     protected void addFlowEntryToList(List<FlowEntity> flowEntries, Uint64 dpId, short tableId, String flowId,
             int priority, int idleTimeOut, int hardTimeOut, Uint64 cookie, List<? extends MatchInfoBase> matches,
             List<InstructionInfo> instructions, int addOrRemove) {
-        List<InstructionInfo> instructionInfos = null;
-        if (addOrRemove == NwConstants.ADD_FLOW) {
-            instructionInfos = instructions;
-        }
         FlowEntity flowEntity = MDSALUtil.buildFlowEntity(dpId, tableId, flowId, priority,
-                flowId, idleTimeOut, hardTimeOut, cookie, matches, instructionInfos);
+                flowId, idleTimeOut, hardTimeOut, cookie, matches, instructions);
         LOG.trace("Adding flow to list: DpnId {}, flowId {}", dpId, flowId);
         flowEntries.add(flowEntity);
     }
 
+    /**
+     * Programs flows through the {@link AclFlowWriter}, which combines them with the flows of the other ports of
+     * the same DPN into shared transactions, in order with the other flows programmed under the same job name.
+     *
+     * @param jobName the job name of the port or ACL the flows are programmed for
+     * @param flowEntries the flows
+     * @param addOrRemove add or remove the flows
+     */
     protected void programFlows(String jobName, List<FlowEntity> flowEntries, int addOrRemove) {
-        List<List<FlowEntity>> flowEntityParts = Lists.partition(flowEntries, AclConstants.FLOWS_PER_TRANSACTION);
-        for (List<FlowEntity> part : flowEntityParts) {
-            jobCoordinator.enqueueJob(jobName,
-                () -> Collections.singletonList(txRunner.callWithNewReadWriteTransactionAndSubmit(CONFIGURATION,
-                    tx -> {
-                        if (addOrRemove == NwConstants.ADD_FLOW) {
-                            for (FlowEntity flowEntity: part) {
-                                mdsalManager.addFlow(tx, flowEntity);
-                            }
-                        } else {
-                            for (FlowEntity flowEntity: part) {
-                                mdsalManager.removeFlow(tx, flowEntity);
-                            }
-                        }
-                    })), AclConstants.JOB_MAX_RETRIES);
-        }
+        LOG.trace("programFlows: job {} queueing {} flows, addOrRemove {}", jobName, flowEntries.size(),
+                addOrRemove);
+        aclFlowWriter.writeFlows(jobName, flowEntries, addOrRemove);
+    }
+
+    /**
+     * Programs the change from the old to the new desired flows of an update, removing the flows which are no
+     * longer needed and writing the flows which are new or changed. The flows in both states and unchanged are not
+     * touched.
+     *
+     * @param jobName the job name
+     * @param oldFlowEntries the flows built for removal
+     * @param newFlowEntries the flows built for addition
+     */
+    protected void programFlows(String jobName, List<FlowEntity> oldFlowEntries, List<FlowEntity> newFlowEntries) {
+        AclFlowDelta delta = AclFlowDelta.of(oldFlowEntries, newFlowEntries);
+        LOG.debug("programFlows: job {} removing {} flows, writing {} flows, {} flows unchanged", jobName,
+                delta.getRemovedFlows().size(), delta.getWrittenFlows().size(), delta.getUnchangedFlowCount());
+        programFlows(jobName, delta.getRemovedFlows(), NwConstants.DEL_FLOW);
+        programFlows(jobName, delta.getWrittenFlows(), NwConstants.ADD_FLOW);
     }
 
     protected List<InstructionInfo> getDispatcherTableResubmitInstructions() {
@@ -759,8 +765,7 @@ public abstract class AbstractAclServiceImpl implements AclServiceListener {
         programRemoteAclTable(deleteFlowEntries, aclName, remoteAclsDeleted, dpns, NwConstants.DEL_FLOW);
         programRemoteAclTable(addFlowEntries, aclName, remoteAclsAdded, dpns, NwConstants.ADD_FLOW);
 
-        programFlows(AclConstants.ACL_JOB_KEY_PREFIX + aclName, deleteFlowEntries, NwConstants.DEL_FLOW);
-        programFlows(AclConstants.ACL_JOB_KEY_PREFIX + aclName, addFlowEntries, NwConstants.ADD_FLOW);
+        programFlows(AclConstants.ACL_JOB_KEY_PREFIX + aclName, deleteFlowEntries, addFlowEntries);
     }
 
     private void programRemoteAclTable(List<FlowEntity> flowEntries, String aclName, Set<Uuid> remoteAclIds,
@@ -786,14 +791,7 @@ public abstract class AbstractAclServiceImpl implements AclServiceListener {
                     }
                 }
             } else if (addOrRemove == NwConstants.DEL_FLOW) {
-                Set<BigInteger> remoteAclDpns = new HashSet<>();
-                Map<String, Set<AclInterface>> mapAclWithPortSet =
-                        aclDataUtil.getRemoteAclInterfaces(remoteAclId, this.direction);
-                if (mapAclWithPortSet != null) {
-                    Map<String, Set<AclInterface>> copyOfMapAclWithPortSet = new HashMap<>(mapAclWithPortSet);
-                    copyOfMapAclWithPortSet.remove(aclName);
-                    remoteAclDpns = collectDpns(copyOfMapAclWithPortSet);
-                }
+                Set<BigInteger> remoteAclDpns = aclDataUtil.getRemoteAclDpns(remoteAclId, this.direction, aclName);
                 Set<BigInteger> dpnsToOperate = new HashSet<>(dpns);
                 dpnsToOperate.removeAll(remoteAclDpns);
                 LOG.debug(
@@ -824,11 +822,9 @@ public abstract class AbstractAclServiceImpl implements AclServiceListener {
         LOG.trace("updateRemoteAclFilterTable for portId={}, aclList={}, aaps={}, addOrRemove={}", portId, aclList,
                 aaps, addOrRemove);
 
-        ConcurrentMap<Uuid, Map<String, Set<AclInterface>>> mapOfAclWithInterfacesList =
-                aclDataUtil.getRemoteAclInterfaces(aclList, this.direction);
         for (Uuid aclId : aclList) {
-            Map<String, Set<AclInterface>> mapAclWithPortSet = mapOfAclWithInterfacesList.get(aclId);
             if (aclDataUtil.getRemoteAcl(aclId, this.direction) != null) {
+                Set<BigInteger> dpns = aclDataUtil.getRemoteAclDpns(aclId, this.direction, null);
                 Integer aclTag = aclServiceUtils.getAclTag(aclId);
                 if (aclTag == null || aclTag == AclConstants.INVALID_ACL_TAG) {
                     LOG.error("aclTag={} is null or invalid for aclId={}", aclTag, aclId);
@@ -836,7 +832,7 @@ public abstract class AbstractAclServiceImpl implements AclServiceListener {
                 }
                 jobCoordinator.enqueueJob(aclId.getValue().intern(), () -> {
                     List<FlowEntity> flowEntries = new ArrayList<>();
-                    syncRemoteAclTable(flowEntries, portId, aclId, aclTag, aaps, mapAclWithPortSet, addOrRemove);
+                    syncRemoteAclTable(flowEntries, portId, aclId, aclTag, aaps, dpns, addOrRemove);
                     programFlows(AclConstants.ACL_JOB_KEY_PREFIX + aclId.getValue(), flowEntries, addOrRemove);
                     return Collections.emptyList();
                 });
@@ -859,8 +855,7 @@ public abstract class AbstractAclServiceImpl implements AclServiceListener {
     }
 
     private void syncRemoteAclTable(List<FlowEntity> flowEntries, String portId, Uuid acl, Integer aclTag,
-            List<AllowedAddressPairs> aaps, Map<String, Set<AclInterface>> mapAclWithPortSet, int addOrRemove) {
-        Set<BigInteger> dpns = collectDpns(mapAclWithPortSet);
+            List<AllowedAddressPairs> aaps, Set<BigInteger> dpns, int addOrRemove) {
         for (AllowedAddressPairs aap : aaps) {
             if (!AclServiceUtils.isNotIpAllNetwork(aap)) {
                 continue;
@@ -902,44 +897,13 @@ public abstract class AbstractAclServiceImpl implements AclServiceListener {
     }
 
     private boolean isFirstPortInDpnWithRemoteAclId(AclInterface port, Uuid remoteAclId) {
-        String portId = port.getInterfaceId();
-        BigInteger dpId = port.getDpId();
-        Map<String, Set<AclInterface>> remoteAclInterfacesMap =
-                aclDataUtil.getRemoteAclInterfaces(remoteAclId, direction);
-        if (remoteAclInterfacesMap != null) {
-            for (Set<AclInterface> interfaceSet : remoteAclInterfacesMap.values()) {
-                for (AclInterface aclInterface : interfaceSet) {
-                    if (portId.equals(aclInterface.getInterfaceId())) {
-                        continue;
-                    }
-                    if (dpId.equals(aclInterface.getDpId())) {
-                        return false;
-                    }
-                }
-            }
-        }
-        return true;
+        return !aclDataUtil.doesDpnHaveOtherRemoteAclInterface(remoteAclId, direction, port.getDpId(),
+                port.getInterfaceId());
     }
 
     protected abstract void programRemoteAclTableFlow(List<FlowEntity> flowEntries, Uint64 dpId, Integer aclTag,
             AllowedAddressPairs aap, int addOrRemove);
 
-    protected Set<BigInteger> collectDpns(@Nullable Map<String, Set<AclInterface>> mapAclWithPortSet) {
-        Set<BigInteger> dpns = new HashSet<>();
-        if (mapAclWithPortSet == null) {
-            return dpns;
-        }
-        for (Set<AclInterface> innerSet : mapAclWithPortSet.values()) {
-            if (innerSet == null) {
-                continue;
-            }
-            for (AclInterface inter : innerSet) {
-                dpns.add(inter.getDpId());
-            }
-        }
-        return dpns;
-    }
-
     /**
      * Programs the port specific fixed rules.
      *
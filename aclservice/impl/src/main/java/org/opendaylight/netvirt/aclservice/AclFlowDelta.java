@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.aclservice;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.opendaylight.genius.mdsalutil.FlowEntity;
+import org.opendaylight.yangtools.yang.common.Uint64;
+
+/**
+ * Minimal set of flow changes turning an old desired flow state into a new one.
+ *
+ * <p>Flows are keyed by (dpId, tableId, flowId). A flow only in the old state is removed, a flow only in the new
+ * state is added, and a flow in both states is written again only if it changed, the write replacing the installed
+ * flow. A flow in both states and unchanged is left alone.
+ */
+final class AclFlowDelta {
+    private final List<FlowEntity> removedFlows;
+    private final List<FlowEntity> writtenFlows;
+    private final int unchangedFlowCount;
+
+    private AclFlowDelta(List<FlowEntity> removedFlows, List<FlowEntity> writtenFlows, int unchangedFlowCount) {
+        this.removedFlows = removedFlows;
+        this.writtenFlows = writtenFlows;
+        this.unchangedFlowCount = unchangedFlowCount;
+    }
+
+    static AclFlowDelta of(Collection<FlowEntity> oldFlows, Collection<FlowEntity> newFlows) {
+        Map<FlowKey, FlowEntity> oldFlowsByKey = index(oldFlows);
+        List<FlowEntity> writtenFlows = new ArrayList<>();
+        int unchangedFlowCount = 0;
+        for (Map.Entry<FlowKey, FlowEntity> entry : index(newFlows).entrySet()) {
+            FlowEntity oldFlow = oldFlowsByKey.remove(entry.getKey());
+            if (oldFlow != null && oldFlow.equals(entry.getValue())) {
+                unchangedFlowCount++;
+            } else {
+                writtenFlows.add(entry.getValue());
+            }
+        }
+        return new AclFlowDelta(new ArrayList<>(oldFlowsByKey.values()), writtenFlows, unchangedFlowCount);
+    }
+
+    List<FlowEntity> getRemovedFlows() {
+        return removedFlows;
+    }
+
+    /**
+     * Returns the flows to add or modify.
+     */
+    List<FlowEntity> getWrittenFlows() {
+        return writtenFlows;
+    }
+
+    int getUnchangedFlowCount() {
+        return unchangedFlowCount;
+    }
+
+    boolean isEmpty() {
+        return removedFlows.isEmpty() && writtenFlows.isEmpty();
+    }
+
+    private static Map<FlowKey, FlowEntity> index(Collection<FlowEntity> flows) {
+        // the last flow built for a key wins, as it did when the flows were written in order
+        Map<FlowKey, FlowEntity> flowsByKey = new LinkedHashMap<>();
+        for (FlowEntity flow : flows) {
+            flowsByKey.put(new FlowKey(flow.getDpnId(), flow.getTableId(), flow.getFlowId()), flow);
+        }
+        return flowsByKey;
+    }
+
+    private static final class FlowKey {
+        private final Uint64 dpId;
+        private final short tableId;
+        private final String flowId;
+
+        FlowKey(Uint64 dpId, short tableId, String flowId) {
+            this.dpId = dpId;
+            this.tableId = tableId;
+            this.flowId = flowId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(dpId, tableId, flowId);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof FlowKey)) {
+                return false;
+            }
+            FlowKey other = (FlowKey) obj;
+            return tableId == other.tableId && Objects.equals(dpId, other.dpId)
+                && Objects.equals(flowId, other.flowId);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.aclservice;
+
+import static org.opendaylight.mdsal.binding.util.Datastore.CONFIGURATION;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.opendaylight.genius.mdsalutil.FlowEntity;
+import org.opendaylight.genius.mdsalutil.NwConstants;
+import org.opendaylight.genius.mdsalutil.interfaces.IMdsalApiManager;
+import org.opendaylight.infrautils.jobcoordinator.JobCoordinator;
+import org.opendaylight.infrautils.metrics.Counter;
+import org.opendaylight.infrautils.metrics.Labeled;
+import org.opendaylight.infrautils.metrics.MetricDescriptor;
+import org.opendaylight.infrautils.metrics.MetricProvider;
+import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.mdsal.binding.util.ManagedNewTransactionRunner;
+import org.opendaylight.mdsal.binding.util.ManagedNewTransactionRunnerImpl;
+import org.opendaylight.netvirt.aclservice.utils.AclConstants;
+import org.opendaylight.yangtools.yang.common.Uint64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Combines the ACL flow writes of all the ports of a DPN into shared transactions.
+ *
+ * <p>Flows are programmed by a job under the job key of the port or ACL they belong to, which queues them per DPN
+ * and completes once they are committed. So the flows programmed for a port are still applied in order, one
+ * programming after the other, as when each one was a job of its own, while the programmings of different ports
+ * share transactions.
+ *
+ * <p>The first write queued on an idle DPN enqueues a flush job under the DPN job key. When the job runs, it takes
+ * up to {@link AclConstants#FLOW_WRITER_FLOWS_PER_TRANSACTION} of the writes queued by then, from any port, and
+ * submits them in one transaction. If more writes are left, it enqueues the next flush job. A transaction is
+ * therefore bounded in size, and a write waits no longer than the flush jobs queued ahead of it. There is no idle
+ * timer. A flush is not retried itself: a failed transaction fails the programming jobs of the writes it carried,
+ * and these are retried under their own job keys.
+ *
+ * <p>The transaction size and the write latency histograms are kept as bucketed counters. The latency runs from
+ * the oldest write of a transaction being queued to the transaction being committed.
+ */
+@Singleton
+public class AclFlowWriter {
+    private static final Logger LOG = LoggerFactory.getLogger(AclFlowWriter.class);
+
+    private static final String JOB_KEY_PREFIX = "ACL-FLOW-WRITER-";
+    private static final long[] SIZE_BUCKETS = {1, 8, 32, 128, 512};
+    private static final long[] LATENCY_BUCKETS_MILLIS = {10, 50, 100, 500, 1000, 5000};
+
+    private final IMdsalApiManager mdsalManager;
+    private final ManagedNewTransactionRunner txRunner;
+    private final JobCoordinator jobCoordinator;
+    private final ConcurrentMap<Uint64, DpnQueue> queues = new ConcurrentHashMap<>();
+    private final Labeled<Counter> transactionSizes;
+    private final Labeled<Counter> transactionLatencies;
+
+    @Inject
+    public AclFlowWriter(DataBroker dataBroker, IMdsalApiManager mdsalManager, JobCoordinator jobCoordinator,
+            MetricProvider metricProvider) {
+        this.mdsalManager = mdsalManager;
+        this.txRunner = new ManagedNewTransactionRunnerImpl(dataBroker);
+        this.jobCoordinator = jobCoordinator;
+        this.transactionSizes = metricProvider.newCounter(MetricDescriptor.builder().anchor(this)
+            .project("netvirt").module("aclservice").id("flow_writer_transaction_size").build(), "flows");
+        this.transactionLatencies = metricProvider.newCounter(MetricDescriptor.builder().anchor(this)
+            .project("netvirt").module("aclservice").id("flow_writer_transaction_latency").build(), "millis");
+    }
+
+    /**
+     * Programs flows, in order with the other flows programmed under the same job key.
+     *
+     * @param jobKey the job key of the port or ACL the flows are programmed for
+     * @param flowEntries the flows
+     * @param addOrRemove {@link NwConstants#ADD_FLOW} to add the flows, anything else to remove them
+     */
+    public void writeFlows(String jobKey, List<FlowEntity> flowEntries, int addOrRemove) {
+        if (flowEntries.isEmpty()) {
+            return;
+        }
+        boolean add = addOrRemove == NwConstants.ADD_FLOW;
+        jobCoordinator.enqueueJob(jobKey, () -> queueFlows(flowEntries, add), AclConstants.JOB_MAX_RETRIES);
+    }
+
+    private List<ListenableFuture<Void>> queueFlows(List<FlowEntity> flowEntries, boolean add) {
+        long now = System.nanoTime();
+        Map<Uint64, List<FlowWrite>> writesByDpn = new LinkedHashMap<>();
+        for (FlowEntity flowEntity : flowEntries) {
+            writesByDpn.computeIfAbsent(flowEntity.getDpnId(), dpId -> new ArrayList<>())
+                .add(new FlowWrite(flowEntity, add, now));
+        }
+        List<ListenableFuture<Void>> futures = new ArrayList<>(writesByDpn.size());
+        writesByDpn.forEach((dpId, writes) -> {
+            WriteGroup group = new WriteGroup(writes.size());
+            writes.forEach(write -> write.group = group);
+            DpnQueue queue = queues.computeIfAbsent(dpId, DpnQueue::new);
+            if (queue.addAll(writes)) {
+                enqueueFlush(queue);
+            }
+            futures.add(group.committed);
+        });
+        return futures;
+    }
+
+    private void enqueueFlush(DpnQueue queue) {
+        jobCoordinator.enqueueJob(queue.jobKey, new FlushJob(queue), 0);
+    }
+
+    private static String bucket(long value, long[] bounds) {
+        for (long bound : bounds) {
+            if (value <= bound) {
+                return "le_" + bound;
+            }
+        }
+        return "gt_" + bounds[bounds.length - 1];
+    }
+
+    private static final class FlowWrite {
+        final FlowEntity flowEntity;
+        final boolean add;
+        final long queuedNanos;
+        WriteGroup group;
+
+        FlowWrite(FlowEntity flowEntity, boolean add, long queuedNanos) {
+            this.flowEntity = flowEntity;
+            this.add = add;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+
+    /*
+     * The writes of one programming on one DPN, committed once all of them are.
+     */
+    private static final class WriteGroup {
+        final SettableFuture<Void> committed = SettableFuture.create();
+        final AtomicInteger remaining;
+
+        WriteGroup(int size) {
+            this.remaining = new AtomicInteger(size);
+        }
+
+        void written() {
+            if (remaining.decrementAndGet() == 0) {
+                committed.set(null);
+            }
+        }
+    }
+
+    private static final class DpnQueue {
+        private final String jobKey;
+        private final Queue<FlowWrite> writes = new ArrayDeque<>();
+        private boolean flushQueued;
+
+        DpnQueue(Uint64 dpId) {
+            this.jobKey = JOB_KEY_PREFIX + dpId;
+        }
+
+        /**
+         * Queues writes.
+         *
+         * @return true if the caller has to enqueue a flush job
+         */
+        synchronized boolean addAll(List<FlowWrite> newWrites) {
+            writes.addAll(newWrites);
+            if (flushQueued) {
+                return false;
+            }
+            flushQueued = true;
+            return true;
+        }
+
+        /**
+         * Takes the next batch of writes.
+         *
+         * @return true if writes are left, the next batch then has to be flushed by a job enqueued by the caller
+         */
+        synchronized boolean takeBatch(List<FlowWrite> batch) {
+            while (batch.size() < AclConstants.FLOW_WRITER_FLOWS_PER_TRANSACTION && !writes.isEmpty()) {
+                batch.add(writes.poll());
+            }
+            if (writes.isEmpty()) {
+                flushQueued = false;
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private final class FlushJob implements Callable<List<? extends ListenableFuture<?>>> {
+        private final DpnQueue queue;
+
+        FlushJob(DpnQueue queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public List<? extends ListenableFuture<?>> call() {
+            List<FlowWrite> writes = new ArrayList<>();
+            if (queue.takeBatch(writes)) {
+                // queued behind this one
+                enqueueFlush(queue);
+            }
+            if (writes.isEmpty()) {
+                return Collections.emptyList();
+            }
+            ListenableFuture<?> future = txRunner.callWithNewReadWriteTransactionAndSubmit(CONFIGURATION, tx -> {
+                for (FlowWrite write : writes) {
+                    if (write.add) {
+                        mdsalManager.addFlow(tx, write.flowEntity);
+                    } else {
+                        mdsalManager.removeFlow(tx, write.flowEntity);
+                    }
+                }
+            });
+            Futures.addCallback(future, new FutureCallback<Object>() {
+                @Override
+                public void onSuccess(Object result) {
+                    long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - writes.get(0).queuedNanos);
+                    transactionSizes.label(bucket(writes.size(), SIZE_BUCKETS)).increment();
+                    transactionLatencies.label(bucket(latencyMillis, LATENCY_BUCKETS_MILLIS)).increment();
+                    LOG.trace("call: Wrote {} flows on {} in {} ms", writes.size(), queue.jobKey, latencyMillis);
+                    writes.forEach(write -> write.group.written());
+                }
+
+                @Override
+                public void onFailure(Throwable throwable) {
+                    LOG.warn("call: Failed to write {} flows on {}", writes.size(), queue.jobKey, throwable);
+                    writes.forEach(write -> write.group.committed.setException(throwable));
+                }
+            }, MoreExecutors.directExecutor());
+            return Collections.singletonList(future);
+        }
+    }
+}
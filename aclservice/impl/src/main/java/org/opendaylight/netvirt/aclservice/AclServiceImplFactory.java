@@ -32,17 +32,19 @@ public class AclServiceImplFactory extends AbstractLifecycle {
     private final AclServiceUtils aclServiceUtils;
     private final JobCoordinator jobCoordinator;
     private final AclInterfaceCache aclInterfaceCache;
+    private final AclFlowWriter aclFlowWriter;
 
     @Inject
     public AclServiceImplFactory(DataBroker dataBroker, IMdsalApiManager mdsalManager, AclserviceConfig config,
             AclDataUtil aclDataUtil, AclServiceUtils aclServiceUtils, JobCoordinator jobCoordinator,
-            AclInterfaceCache aclInterfaceCache) {
+            AclInterfaceCache aclInterfaceCache, AclFlowWriter aclFlowWriter) {
         this.dataBroker = dataBroker;
         this.mdsalManager = mdsalManager;
         this.aclDataUtil = aclDataUtil;
         this.aclServiceUtils = aclServiceUtils;
         this.jobCoordinator = jobCoordinator;
         this.aclInterfaceCache = aclInterfaceCache;
+        this.aclFlowWriter = aclFlowWriter;
 
         LOG.info("AclserviceConfig: {}", config);
     }
@@ -60,13 +62,13 @@ public class AclServiceImplFactory extends AbstractLifecycle {
     public IngressAclServiceImpl createIngressAclServiceImpl() {
         LOG.info("creating ingress acl service");
         return new IngressAclServiceImpl(dataBroker, mdsalManager, aclDataUtil, aclServiceUtils, jobCoordinator,
-                aclInterfaceCache);
+                aclInterfaceCache, aclFlowWriter);
     }
 
     public EgressAclServiceImpl createEgressAclServiceImpl() {
         LOG.info("creating egress acl service");
         return new EgressAclServiceImpl(dataBroker, mdsalManager, aclDataUtil, aclServiceUtils, jobCoordinator,
-                aclInterfaceCache);
+                aclInterfaceCache, aclFlowWriter);
     }
 
 }
@@ -67,10 +67,11 @@ public class EgressAclServiceImpl extends AbstractAclServiceImpl {
      * Initialize the member variables.
      */
     public EgressAclServiceImpl(DataBroker dataBroker, IMdsalApiManager mdsalManager, AclDataUtil aclDataUtil,
-            AclServiceUtils aclServiceUtils, JobCoordinator jobCoordinator, AclInterfaceCache aclInterfaceCache) {
+            AclServiceUtils aclServiceUtils, JobCoordinator jobCoordinator, AclInterfaceCache aclInterfaceCache,
+            AclFlowWriter aclFlowWriter) {
         // Service mode is w.rt. switch
         super(ServiceModeIngress.class, dataBroker, mdsalManager, aclDataUtil, aclServiceUtils,
-                jobCoordinator, aclInterfaceCache);
+                jobCoordinator, aclInterfaceCache, aclFlowWriter);
     }
 
     /**
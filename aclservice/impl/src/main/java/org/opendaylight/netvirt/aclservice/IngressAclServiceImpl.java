@@ -78,12 +78,14 @@ public class IngressAclServiceImpl extends AbstractAclServiceImpl {
      * @param aclServiceUtils the acl service util.
      * @param jobCoordinator the job coordinator
      * @param aclInterfaceCache the acl interface cache
+     * @param aclFlowWriter the acl flow writer
      */
     public IngressAclServiceImpl(DataBroker dataBroker, IMdsalApiManager mdsalManager, AclDataUtil aclDataUtil,
-            AclServiceUtils aclServiceUtils, JobCoordinator jobCoordinator, AclInterfaceCache aclInterfaceCache) {
+            AclServiceUtils aclServiceUtils, JobCoordinator jobCoordinator, AclInterfaceCache aclInterfaceCache,
+            AclFlowWriter aclFlowWriter) {
         // Service mode is w.rt. switch
         super(ServiceModeEgress.class, dataBroker, mdsalManager, aclDataUtil, aclServiceUtils, jobCoordinator,
-                aclInterfaceCache);
+                aclInterfaceCache, aclFlowWriter);
     }
 
     /**
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.aclservice.stats;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jdt.annotation.Nullable;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.statistics.rev130819.flow.and.statistics.map.list.FlowAndStatisticsMapList;
+
+/**
+ * Short-lived cache of the ACL drop flow statistics of the DPNs, by lport tag.
+ *
+ * <p>Repeated polls of the statistics of the ports of a DPN within the time to live are served from the cache,
+ * without querying the DPN again.
+ */
+final class AclDropFlowStatsCache {
+
+    private final long ttlNanos;
+    private final ConcurrentMap<BigInteger, DpnDropFlowStats> entries = new ConcurrentHashMap<>();
+
+    AclDropFlowStatsCache(long ttlMillis) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * Gets the drop flow statistics of a DPN, unless they are older than the time to live.
+     *
+     * @param dpId the dp id
+     * @return the drop flow statistics by lport tag, or null
+     */
+    @Nullable
+    Map<Integer, List<FlowAndStatisticsMapList>> get(BigInteger dpId) {
+        DpnDropFlowStats stats = entries.get(dpId);
+        if (stats == null) {
+            return null;
+        }
+        if (System.nanoTime() - stats.fetchedNanos > ttlNanos) {
+            entries.remove(dpId, stats);
+            return null;
+        }
+        return stats.flowStatsByLportTag;
+    }
+
+    void put(BigInteger dpId, Map<Integer, List<FlowAndStatisticsMapList>> flowStatsByLportTag) {
+        if (ttlNanos > 0) {
+            entries.put(dpId, new DpnDropFlowStats(flowStatsByLportTag, System.nanoTime()));
+        }
+    }
+
+    private static final class DpnDropFlowStats {
+        final Map<Integer, List<FlowAndStatisticsMapList>> flowStatsByLportTag;
+        final long fetchedNanos;
+
+        DpnDropFlowStats(Map<Integer, List<FlowAndStatisticsMapList>> flowStatsByLportTag, long fetchedNanos) {
+            this.flowStatsByLportTag = flowStatsByLportTag;
+            this.fetchedNanos = fetchedNanos;
+        }
+    }
+}
@@ -10,7 +10,10 @@ package org.opendaylight.netvirt.aclservice.stats;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import org.eclipse.jdt.annotation.NonNull;
@@ -58,6 +61,10 @@ public final class AclLiveStatisticsHelper {
     /** The Constant COOKIE_ACL_DROP_FLOW_MASK. */
     static final BigInteger COOKIE_ACL_DROP_FLOW_MASK = new BigInteger("FFFFFFFFFFFFFFFF", 16);
 
+    /** The cookie mask matching the ACL drop flows of all the ports of a DPN. */
+    static final BigInteger COOKIE_ACL_DROP_FLOWS_OF_DPN_MASK =
+            COOKIE_ACL_DROP_FLOW_MASK.andNot(MetaDataUtil.METADATA_MASK_LPORT_TAG.toJava());
+
     private AclLiveStatisticsHelper() {
         throw new IllegalStateException("Utility class");
     }
@@ -73,66 +80,135 @@ public final class AclLiveStatisticsHelper {
      */
     public static List<AclPortStats> getAclPortStats(Direction direction, @NonNull List<String> interfaceNames,
             OpendaylightDirectStatisticsService odlDirectStatsService, DataBroker dataBroker) {
+        return getAclPortStats(direction, interfaceNames, odlDirectStatsService, dataBroker,
+                new AclDropFlowStatsCache(0));
+    }
+
+    /**
+     * Gets the acl port stats, querying the drop flow statistics once per DPN.
+     *
+     * <p>The ports are grouped by DPN and the drop flows of each DPN are requested in parallel, with a cookie mask
+     * matching the drop flows of all the ports. The statistics are demultiplexed by the lport tag carried in the
+     * cookie. The statistics of a DPN found in the cache are used as they are.
+     *
+     * @param direction the direction
+     * @param interfaceNames the interface names
+     * @param odlDirectStatsService the odl direct stats service
+     * @param dataBroker the data broker
+     * @param cache the drop flow statistics cache
+     * @return the acl port stats
+     */
+    static List<AclPortStats> getAclPortStats(Direction direction, @NonNull List<String> interfaceNames,
+            OpendaylightDirectStatisticsService odlDirectStatsService, DataBroker dataBroker,
+            AclDropFlowStatsCache cache) {
         LOG.trace("Get ACL port stats for direction {} and interfaces {}", direction, interfaceNames);
         List<AclPortStats> lstAclPortStats = new ArrayList<>();
 
-        FlowCookie aclDropFlowCookieMask = new FlowCookie(COOKIE_ACL_DROP_FLOW_MASK);
-
+        Map<String, Interface> interfaceStates = new HashMap<>();
+        Map<String, String> portErrors = new HashMap<>();
+        Map<BigInteger, Map<Integer, List<FlowAndStatisticsMapList>>> dpnFlowStats = new HashMap<>();
+        Map<BigInteger, Future<RpcResult<GetFlowStatisticsOutput>>> dpnRpcFutures = new HashMap<>();
         for (String interfaceName : interfaceNames) {
-            AclPortStatsBuilder aclStatsBuilder = new AclPortStatsBuilder().setInterfaceName(interfaceName);
-
             Interface interfaceState = AclServiceUtils.getInterfaceStateFromOperDS(dataBroker, interfaceName);
             if (interfaceState == null) {
-                String errMsg = "Interface not found in datastore.";
-                addError(lstAclPortStats, aclStatsBuilder, errMsg);
+                portErrors.put(interfaceName, "Interface not found in datastore.");
                 continue;
             }
             BigInteger dpId = AclServiceUtils.getDpIdFromIterfaceState(interfaceState);
             if (dpId == null) {
-                String errMsg = "Failed to find device for the interface.";
-                addError(lstAclPortStats, aclStatsBuilder, errMsg);
+                portErrors.put(interfaceName, "Failed to find device for the interface.");
                 continue;
             }
+            interfaceStates.put(interfaceName, interfaceState);
+            if (dpnFlowStats.containsKey(dpId) || dpnRpcFutures.containsKey(dpId)) {
+                continue;
+            }
+            Map<Integer, List<FlowAndStatisticsMapList>> cachedFlowStats = cache.get(dpId);
+            if (cachedFlowStats != null) {
+                dpnFlowStats.put(dpId, cachedFlowStats);
+            } else {
+                GetFlowStatisticsInputBuilder input = new GetFlowStatisticsInputBuilder().setNode(buildNodeRef(dpId))
+                        .setCookie(new FlowCookie(AclConstants.COOKIE_ACL_DROP_FLOW))
+                        .setCookieMask(new FlowCookie(COOKIE_ACL_DROP_FLOWS_OF_DPN_MASK)).setStoreStats(false);
+                dpnRpcFutures.put(dpId, odlDirectStatsService.getFlowStatistics(input.build()));
+            }
+        }
 
-            NodeRef nodeRef = buildNodeRef(dpId);
-            Integer lportTag = interfaceState.getIfIndex();
-            FlowCookie aclDropFlowCookie = new FlowCookie(AclServiceUtils.getDropFlowCookie(lportTag));
-
-            GetFlowStatisticsInputBuilder input =
-                    new GetFlowStatisticsInputBuilder().setNode(nodeRef).setCookie(aclDropFlowCookie)
-                            .setCookieMask(aclDropFlowCookieMask).setStoreStats(false);
-
-            Future<RpcResult<GetFlowStatisticsOutput>> rpcResultFuture =
-                    odlDirectStatsService.getFlowStatistics(input.build());
+        Map<BigInteger, String> dpnErrors = new HashMap<>();
+        for (Entry<BigInteger, Future<RpcResult<GetFlowStatisticsOutput>>> entry : dpnRpcFutures.entrySet()) {
+            BigInteger dpId = entry.getKey();
             RpcResult<GetFlowStatisticsOutput> rpcResult = null;
             try {
-                rpcResult = rpcResultFuture.get();
+                rpcResult = entry.getValue().get();
             } catch (InterruptedException | ExecutionException e) {
-                String errMsg = "Unable to retrieve drop counts due to error: " + e.getMessage();
-                addError(lstAclPortStats, aclStatsBuilder, errMsg);
-                LOG.error("Exception occurred during get flow statistics for interface {}", interfaceName, e);
+                LOG.error("Exception occurred during get flow statistics for DPN {}", dpId, e);
+                dpnErrors.put(dpId, "Unable to retrieve drop counts due to error: " + e.getMessage());
+                continue;
             }
-
             if (rpcResult != null && rpcResult.isSuccessful() && rpcResult.getResult() != null) {
-                GetFlowStatisticsOutput flowStatsOutput = rpcResult.getResult();
-                getAclDropStats(direction, aclStatsBuilder, flowStatsOutput);
-                lstAclPortStats.add(aclStatsBuilder.build());
+                Map<Integer, List<FlowAndStatisticsMapList>> flowStatsByLportTag =
+                        groupByLportTag(rpcResult.getResult().getFlowAndStatisticsMapList());
+                cache.put(dpId, flowStatsByLportTag);
+                dpnFlowStats.put(dpId, flowStatsByLportTag);
             } else {
-                handleRpcErrors(lstAclPortStats, aclStatsBuilder, rpcResult);
+                dpnErrors.put(dpId, getRpcErrorMessage(rpcResult));
+            }
+        }
+
+        for (String interfaceName : interfaceNames) {
+            AclPortStatsBuilder aclStatsBuilder = new AclPortStatsBuilder().setInterfaceName(interfaceName);
+
+            Interface interfaceState = interfaceStates.get(interfaceName);
+            if (interfaceState == null) {
+                addError(lstAclPortStats, aclStatsBuilder, portErrors.get(interfaceName));
+                continue;
+            }
+            BigInteger dpId = AclServiceUtils.getDpIdFromIterfaceState(interfaceState);
+            String errMsg = dpnErrors.get(dpId);
+            if (errMsg != null) {
+                addError(lstAclPortStats, aclStatsBuilder, errMsg);
+                continue;
             }
+            Map<Integer, List<FlowAndStatisticsMapList>> flowStatsByLportTag = dpnFlowStats.get(dpId);
+            List<FlowAndStatisticsMapList> portFlowStats = flowStatsByLportTag == null ? null
+                    : flowStatsByLportTag.get(interfaceState.getIfIndex());
+            getAclDropStats(direction, aclStatsBuilder, portFlowStats);
+            lstAclPortStats.add(aclStatsBuilder.build());
         }
         return lstAclPortStats;
     }
 
     /**
-     * Handle rpc errors.
+     * Groups the drop flow statistics of a DPN by the lport tag of their cookie.
+     *
+     * @param flowAndStatisticsMapList the flow statistics
+     * @return the flow statistics by lport tag
+     */
+    static Map<Integer, List<FlowAndStatisticsMapList>> groupByLportTag(
+            @Nullable List<FlowAndStatisticsMapList> flowAndStatisticsMapList) {
+        Map<Integer, List<FlowAndStatisticsMapList>> flowStatsByLportTag = new HashMap<>();
+        if (flowAndStatisticsMapList == null) {
+            return flowStatsByLportTag;
+        }
+        long lportTagMask = MetaDataUtil.METADATA_MASK_LPORT_TAG.longValue();
+        int lportTagShift = Long.numberOfTrailingZeros(lportTagMask);
+        for (FlowAndStatisticsMapList flowStats : flowAndStatisticsMapList) {
+            if (flowStats.getCookie() == null) {
+                continue;
+            }
+            int lportTag = (int) ((flowStats.getCookie().getValue().longValue() & lportTagMask) >>> lportTagShift);
+            flowStatsByLportTag.computeIfAbsent(lportTag, tag -> new ArrayList<>()).add(flowStats);
+        }
+        return flowStatsByLportTag;
+    }
+
+    /**
+     * Gets the error message of a failed rpc.
      *
-     * @param lstAclPortStats the lst acl port stats
-     * @param aclStatsBuilder the acl stats builder
      * @param rpcResult the rpc result
+     * @return the error message
      */
-    private static void handleRpcErrors(List<AclPortStats> lstAclPortStats, AclPortStatsBuilder aclStatsBuilder,
-            @Nullable RpcResult<GetFlowStatisticsOutput> rpcResult) {
+    private static String getRpcErrorMessage(@Nullable RpcResult<GetFlowStatisticsOutput> rpcResult) {
         LOG.error("Unable to retrieve drop counts due to error: {}", rpcResult);
         String errMsg = "Unable to retrieve drop counts due to error: ";
         if (rpcResult != null && rpcResult.getErrors() != null && !rpcResult.getErrors().isEmpty()) {
@@ -140,7 +216,7 @@ public final class AclLiveStatisticsHelper {
         } else {
             errMsg += "Internal RPC call failed.";
         }
-        addError(lstAclPortStats, aclStatsBuilder, errMsg);
+        return errMsg;
     }
 
     /**
@@ -148,11 +224,10 @@ public final class AclLiveStatisticsHelper {
      *
      * @param direction the direction
      * @param aclStatsBuilder the acl stats builder
-     * @param flowStatsOutput the flow stats output
+     * @param flowAndStatisticsMapList the flow statistics of the port
      */
     private static void getAclDropStats(Direction direction, AclPortStatsBuilder aclStatsBuilder,
-            GetFlowStatisticsOutput flowStatsOutput) {
-        List<FlowAndStatisticsMapList> flowAndStatisticsMapList = flowStatsOutput.getFlowAndStatisticsMapList();
+            @Nullable List<FlowAndStatisticsMapList> flowAndStatisticsMapList) {
         if (flowAndStatisticsMapList == null || flowAndStatisticsMapList.isEmpty()) {
             String errMsg = "Unable to retrieve drop counts as interface is not configured for statistics collection.";
             aclStatsBuilder.setError(new ErrorBuilder().setErrorMessage(errMsg).build());
@@ -16,6 +16,7 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.eclipse.jdt.annotation.Nullable;
 import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.netvirt.aclservice.utils.AclConstants;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.direct.statistics.rev160511.OpendaylightDirectStatisticsService;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.acl.live.statistics.rev161129.AclLiveStatisticsService;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.acl.live.statistics.rev161129.Direction;
@@ -43,6 +44,8 @@ public class AclLiveStatisticsRpcServiceImpl implements AclLiveStatisticsService
     private final DataBroker dataBroker;
     private final OpendaylightDirectStatisticsService odlDirectStatsService;
     private final SecurityGroupMode securityGroupMode;
+    private final AclDropFlowStatsCache dropFlowStatsCache =
+            new AclDropFlowStatsCache(AclConstants.ACL_STATS_CACHE_TTL_MILLIS);
 
     /**
      * Instantiates a new acl live statistics rpc service impl.
@@ -79,7 +82,7 @@ public class AclLiveStatisticsRpcServiceImpl implements AclLiveStatisticsService
         @Nullable List<String> interfaceNames = input.getInterfaceNames();
         List<AclPortStats> lstAclInterfaceStats =
             interfaceNames != null ? AclLiveStatisticsHelper.getAclPortStats(direction, interfaceNames,
-                this.odlDirectStatsService, this.dataBroker) : new ArrayList<>();
+                this.odlDirectStatsService, this.dataBroker, this.dropFlowStatsCache) : new ArrayList<>();
 
         GetAclPortStatisticsOutputBuilder output =
                 new GetAclPortStatisticsOutputBuilder().setAclPortStats(lstAclInterfaceStats);
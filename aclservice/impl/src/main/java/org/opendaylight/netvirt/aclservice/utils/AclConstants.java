@@ -126,7 +126,9 @@ public interface AclConstants {
     int JOB_MAX_RETRIES = 3;
     int ACEDELETE_MAX_RETRIES = 3;
     int FLOWS_PER_TRANSACTION = 30;
+    int FLOW_WRITER_FLOWS_PER_TRANSACTION = 500;
     int ACES_PER_TRANSACTION = 30;
+    long ACL_STATS_CACHE_TTL_MILLIS = 2000;
 
     String ACL_JOB_KEY_PREFIX = "ACL-";
 
@@ -10,6 +10,7 @@ package org.opendaylight.netvirt.aclservice.utils;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMap.Builder;
+import com.google.common.collect.ImmutableSet;
 import java.math.BigInteger;
 import java.util.Collection;
 import java.util.Collections;
@@ -18,6 +19,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -36,6 +38,9 @@ public class AclDataUtil implements AclDataCache {
 
     private final ConcurrentMap<String, Acl> aclMap = new ConcurrentHashMap<>();
     private final ConcurrentMap<Uuid, ConcurrentMap<String, AclInterface>> aclInterfaceMap = new ConcurrentHashMap<>();
+    // ACL -> DPN -> the member ports of the ACL on the DPN, a DPN is kept while it has member ports
+    private final ConcurrentMap<Uuid, ConcurrentMap<BigInteger, Set<String>>> aclDpnInterfaceMap =
+            new ConcurrentHashMap<>();
     private final ConcurrentMap<Uuid, Set<Uuid>> ingressRemoteAclIdMap = new ConcurrentHashMap<>();
     private final ConcurrentMap<Uuid, Set<Uuid>> egressRemoteAclIdMap = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, Integer> aclTagMap = new ConcurrentHashMap<>();
@@ -72,7 +77,12 @@ public class AclDataUtil implements AclDataCache {
 
     public void addOrUpdateAclInterfaceMap(List<Uuid> aclList, AclInterface port) {
         for (Uuid acl : aclList) {
-            aclInterfaceMap.computeIfAbsent(acl, key -> new ConcurrentHashMap<>()).put(port.getInterfaceId(), port);
+            AclInterface oldPort = aclInterfaceMap.computeIfAbsent(acl, key -> new ConcurrentHashMap<>())
+                    .put(port.getInterfaceId(), port);
+            if (oldPort != null && !Objects.equals(oldPort.getDpId(), port.getDpId())) {
+                removeAclDpnInterface(acl, oldPort);
+            }
+            addAclDpnInterface(acl, port);
         }
     }
 
@@ -85,7 +95,31 @@ public class AclDataUtil implements AclDataCache {
     public void removeAclInterfaceMap(Uuid acl, AclInterface port) {
         ConcurrentMap<String, AclInterface> interfaceMap = aclInterfaceMap.get(acl);
         if (interfaceMap != null) {
-            interfaceMap.remove(port.getInterfaceId());
+            AclInterface oldPort = interfaceMap.remove(port.getInterfaceId());
+            if (oldPort != null) {
+                removeAclDpnInterface(acl, oldPort);
+            }
+        }
+    }
+
+    private void addAclDpnInterface(Uuid acl, AclInterface port) {
+        if (port.getDpId() != null) {
+            aclDpnInterfaceMap.computeIfAbsent(acl, key -> new ConcurrentHashMap<>()).compute(port.getDpId(),
+                (dpId, interfaces) -> {
+                    Set<String> dpnInterfaces = interfaces != null ? interfaces : ConcurrentHashMap.newKeySet();
+                    dpnInterfaces.add(port.getInterfaceId());
+                    return dpnInterfaces;
+                });
+        }
+    }
+
+    private void removeAclDpnInterface(Uuid acl, AclInterface port) {
+        ConcurrentMap<BigInteger, Set<String>> dpnMap = aclDpnInterfaceMap.get(acl);
+        if (dpnMap != null && port.getDpId() != null) {
+            dpnMap.computeIfPresent(port.getDpId(), (dpId, interfaces) -> {
+                interfaces.remove(port.getInterfaceId());
+                return interfaces.isEmpty() ? null : interfaces;
+            });
         }
     }
 
@@ -145,6 +179,56 @@ public class AclDataUtil implements AclDataCache {
         return mapOfAclWithInterfaces;
     }
 
+    /**
+     * Gets the DPNs having member ports of the ACLs which have the specified remote ACL ID.
+     *
+     * @param remoteAclId the remote acl id
+     * @param direction the direction
+     * @param excludedAclName the name of an ACL whose member ports are not counted, or null
+     * @return a snapshot of the DPNs
+     */
+    public Set<BigInteger> getRemoteAclDpns(Uuid remoteAclId, Class<? extends DirectionBase> direction,
+            @Nullable String excludedAclName) {
+        Collection<Uuid> remoteAclList = getRemoteAcl(remoteAclId, direction);
+        if (remoteAclList == null) {
+            return Collections.emptySet();
+        }
+        ImmutableSet.Builder<BigInteger> dpns = ImmutableSet.builder();
+        for (Uuid acl : remoteAclList) {
+            ConcurrentMap<BigInteger, Set<String>> dpnMap = aclDpnInterfaceMap.get(acl);
+            if (dpnMap != null && !acl.getValue().equals(excludedAclName)) {
+                dpns.addAll(dpnMap.keySet());
+            }
+        }
+        return dpns.build();
+    }
+
+    /**
+     * Checks if a DPN has member ports, other than the specified port, of the ACLs which have the specified remote
+     * ACL ID.
+     *
+     * @param remoteAclId the remote acl id
+     * @param direction the direction
+     * @param dpId the datapath ID of DPN
+     * @param interfaceId the port not to count
+     * @return true if the DPN has other member ports, else false
+     */
+    public boolean doesDpnHaveOtherRemoteAclInterface(Uuid remoteAclId, Class<? extends DirectionBase> direction,
+            BigInteger dpId, String interfaceId) {
+        Collection<Uuid> remoteAclList = getRemoteAcl(remoteAclId, direction);
+        if (remoteAclList == null) {
+            return false;
+        }
+        for (Uuid acl : remoteAclList) {
+            ConcurrentMap<BigInteger, Set<String>> dpnMap = aclDpnInterfaceMap.get(acl);
+            Set<String> dpnInterfaces = dpnMap != null ? dpnMap.get(dpId) : null;
+            if (dpnInterfaces != null && dpnInterfaces.stream().anyMatch(id -> !id.equals(interfaceId))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void addRemoteAclId(Uuid remoteAclId, Uuid aclId, Class<? extends DirectionBase> direction) {
         getRemoteAclIdMap(direction).computeIfAbsent(remoteAclId, key -> ConcurrentHashMap.newKeySet()).add(aclId);
     }
@@ -218,8 +302,7 @@ public class AclDataUtil implements AclDataCache {
      * @return true if DPN is associated with Acl interface, else false
      */
     public boolean doesDpnHaveAclInterface(BigInteger dpnId) {
-        return aclInterfaceMap.values().stream().anyMatch(map -> map.values().stream()
-                .anyMatch(aclInterface -> aclInterface.getDpId().equals(dpnId)));
+        return aclDpnInterfaceMap.values().stream().anyMatch(dpnMap -> dpnMap.containsKey(dpnId));
     }
 
     @Override
@@ -9,10 +9,14 @@
 package org.opendaylight.netvirt.aclservice.utils;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.BiFunction;
 import org.eclipse.jdt.annotation.Nullable;
 import org.opendaylight.genius.mdsalutil.ActionInfo;
@@ -52,6 +56,11 @@ import org.slf4j.LoggerFactory;
 public final class AclServiceOFFlowBuilder {
     private static final Logger LOG = LoggerFactory.getLogger(AclServiceOFFlowBuilder.class);
 
+    private static final int MAX_LAYER4_PORT = 0xFFFF;
+    static final int MAX_LAYER4_MASK_COVER = 30;
+    private static final int MAX_LAYER4_MASK_CACHE_SIZE = 4096;
+    private static final ConcurrentMap<Integer, Map<Integer, Integer>> LAYER4_MASK_CACHE = new ConcurrentHashMap<>();
+
     private AclServiceOFFlowBuilder() {
     }
 
@@ -350,65 +359,70 @@ public final class AclServiceOFFlowBuilder {
     /**
      * Converts port range into a set of masked port ranges.
      *
+     * <p>The masked port ranges are the minimal set of aligned power of two blocks covering exactly the range.
+     * The result of a range is computed once and shared by all the callers asking for the same range.
+     *
      * @param portMin the starting port of the range.
      * @param portMax the ending port of the range.
      * @return the map containing the port no and their mask.
      *
      */
     public static Map<Integer,Integer>  getLayer4MaskForRange(int portMin, int portMax) {
-        final int[] offset = { 32768, 16384, 8192, 4096, 2048, 1024, 512, 256, 128, 64, 32, 16, 8, 4, 2, 1 };
-        final int[] mask = { 0x8000, 0xC000, 0xE000, 0xF000, 0xF800, 0xFC00, 0xFE00, 0xFF00, 0xFF80, 0xFFC0, 0xFFE0,
-            0xFFF0, 0xFFF8, 0xFFFC, 0xFFFE, 0xFFFF };
-        int noOfPorts = portMax - portMin + 1;
-        Map<Integer,Integer> portMap = new HashMap<>();
-        if (noOfPorts == 1) {
-            portMap.put(portMin, mask[15]);
-            return portMap;
-        } else if (noOfPorts == AclConstants.ALL_LAYER4_PORT) {
-            portMap.put(portMin, AclConstants.ALL_LAYER4_PORT_MASK);
-            return portMap;
-        }
-        if (noOfPorts < 0) { // TODO: replace with infrautils.counter in case of high repetitive usage
+        if (portMin < 0 || portMax > MAX_LAYER4_PORT || portMin > portMax) {
+            // TODO: replace with infrautils.counter in case of high repetitive usage
             LOG.warn("Cannot convert port range into a set of masked port ranges - Illegal port range {}-{}", portMin,
                     portMax);
-            return portMap;
+            return Collections.emptyMap();
         }
-        String binaryNoOfPorts = Integer.toBinaryString(noOfPorts);
-        if (binaryNoOfPorts.length() > 16) { // TODO: replace with infrautils.counter in case of high repetitive usage
-            LOG.warn("Cannot convert port range into a set of masked port ranges - Illegal port range {}-{}", portMin,
-                    portMax);
+        int rangeKey = portMin << 16 | portMax;
+        Map<Integer, Integer> portMap = LAYER4_MASK_CACHE.get(rangeKey);
+        if (portMap != null) {
             return portMap;
         }
-        int medianOffset = 16 - binaryNoOfPorts.length();
-        int medianLength = offset[medianOffset];
-        int median = 0;
-        for (int tempMedian = 0;tempMedian < portMax;) {
-            tempMedian = medianLength + tempMedian;
-            if (portMin < tempMedian) {
-                median = tempMedian;
-                break;
+        portMap = new LinkedHashMap<>();
+        if (portMax - portMin + 1 == AclConstants.ALL_LAYER4_PORT) {
+            portMap.put(portMin, AclConstants.ALL_LAYER4_PORT_MASK);
+        } else {
+            int[] ports = new int[MAX_LAYER4_MASK_COVER];
+            int[] masks = new int[MAX_LAYER4_MASK_COVER];
+            int count = getLayer4MaskCover(portMin, portMax, ports, masks);
+            for (int i = 0; i < count; i++) {
+                portMap.put(ports[i], masks[i]);
             }
         }
-        int tempMedian = 0;
-        int currentMedain = median;
-        for (int tempMedianOffset = medianOffset;16 > tempMedianOffset;tempMedianOffset++) {
-            tempMedian = currentMedain - offset[tempMedianOffset];
-            for (;portMin <= tempMedian;) {
-                portMap.put(tempMedian, mask[tempMedianOffset]);
-                currentMedain = tempMedian;
-                tempMedian = tempMedian - offset[tempMedianOffset];
-            }
+        portMap = Collections.unmodifiableMap(portMap);
+        if (LAYER4_MASK_CACHE.size() < MAX_LAYER4_MASK_CACHE_SIZE) {
+            LAYER4_MASK_CACHE.putIfAbsent(rangeKey, portMap);
         }
-        currentMedain = median;
-        for (int tempMedianOffset = medianOffset;16 > tempMedianOffset;tempMedianOffset++) {
-            tempMedian = currentMedain + offset[tempMedianOffset];
-            for (;portMax >= tempMedian - 1;) {
-                portMap.put(currentMedain, mask[tempMedianOffset]);
-                currentMedain = tempMedian;
-                tempMedian = tempMedian  + offset[tempMedianOffset];
+        return portMap;
+    }
+
+    /**
+     * Covers a port range with the largest aligned blocks which fit, from its lower end.
+     *
+     * <p>Each block is the largest power of two both aligned on its first port and ending within the range, which
+     * gives the minimal number of masked port ranges.
+     *
+     * @param portMin the starting port of the range, from 0
+     * @param portMax the ending port of the range, up to 65535
+     * @param ports the first port of each block, at least {@value #MAX_LAYER4_MASK_COVER} long
+     * @param masks the mask of each block, at least {@value #MAX_LAYER4_MASK_COVER} long
+     * @return the number of blocks
+     */
+    static int getLayer4MaskCover(int portMin, int portMax, int[] ports, int[] masks) {
+        int count = 0;
+        int port = portMin;
+        while (port <= portMax) {
+            int blockSize = port == 0 ? MAX_LAYER4_PORT + 1 : Integer.lowestOneBit(port);
+            while (port + blockSize - 1 > portMax) {
+                blockSize >>>= 1;
             }
+            ports[count] = port;
+            masks[count] = -blockSize & MAX_LAYER4_PORT;
+            count++;
+            port += blockSize;
         }
-        return portMap;
+        return count;
     }
 
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.aclservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import org.opendaylight.genius.mdsalutil.FlowEntity;
+import org.opendaylight.genius.mdsalutil.MDSALUtil;
+import org.opendaylight.genius.mdsalutil.instructions.InstructionGotoTable;
+import org.opendaylight.genius.mdsalutil.matches.MatchEthernetType;
+import org.opendaylight.netvirt.aclservice.utils.AclConstants;
+import org.opendaylight.yangtools.yang.common.Uint64;
+
+public class AclFlowDeltaTest {
+
+    @Test
+    public void testDelta() {
+        FlowEntity unchanged = flow(1, "unchanged", 2);
+        FlowEntity removed = flow(1, "removed", 2);
+        FlowEntity changedBefore = flow(1, "changed", 2);
+        FlowEntity changedAfter = flow(1, "changed", 3);
+        FlowEntity added = flow(1, "added", 2);
+        // same flow id on another switch
+        FlowEntity otherDpn = flow(2, "unchanged", 2);
+
+        AclFlowDelta delta = AclFlowDelta.of(Arrays.asList(unchanged, removed, changedBefore),
+            Arrays.asList(unchanged, changedAfter, added, otherDpn));
+
+        assertEquals(Collections.singletonList(removed), delta.getRemovedFlows());
+        assertEquals(Arrays.asList(changedAfter, added, otherDpn), delta.getWrittenFlows());
+        assertEquals(1, delta.getUnchangedFlowCount());
+    }
+
+    @Test
+    public void testSameStateIsEmpty() {
+        AclFlowDelta delta = AclFlowDelta.of(Arrays.asList(flow(1, "a", 2), flow(1, "b", 2)),
+            Arrays.asList(flow(1, "b", 2), flow(1, "a", 2)));
+
+        assertTrue(delta.isEmpty());
+        assertEquals(2, delta.getUnchangedFlowCount());
+    }
+
+    private static FlowEntity flow(long dpId, String flowId, int gotoTable) {
+        return MDSALUtil.buildFlowEntity(Uint64.valueOf(dpId), (short) 1, flowId, AclConstants.ACL_DEFAULT_PRIORITY,
+            flowId, 0, 0, AclConstants.COOKIE_ACL_BASE,
+            Collections.singletonList(MatchEthernetType.IPV4),
+            Collections.singletonList(new InstructionGotoTable((short) gotoTable)));
+    }
+}
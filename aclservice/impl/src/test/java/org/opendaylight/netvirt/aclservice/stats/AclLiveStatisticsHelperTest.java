@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.aclservice.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.opendaylight.genius.mdsalutil.NwConstants;
+import org.opendaylight.netvirt.aclservice.utils.AclConstants;
+import org.opendaylight.netvirt.aclservice.utils.AclServiceUtils;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.statistics.rev130819.flow.and.statistics.map.list.FlowAndStatisticsMapList;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.statistics.rev130819.flow.and.statistics.map.list.FlowAndStatisticsMapListBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.FlowCookie;
+
+public class AclLiveStatisticsHelperTest {
+
+    @Test
+    public void testGroupByLportTag() {
+        FlowAndStatisticsMapList port1Drop = dropFlowStats(1, AclConstants.ACL_PORT_SPECIFIC_DROP_PRIORITY);
+        FlowAndStatisticsMapList port1Invalid = dropFlowStats(1, AclConstants.CT_STATE_TRACKED_INVALID_PRIORITY);
+        FlowAndStatisticsMapList port2Drop = dropFlowStats(2, AclConstants.ACL_PORT_SPECIFIC_DROP_PRIORITY);
+
+        Map<Integer, List<FlowAndStatisticsMapList>> flowStatsByLportTag =
+                AclLiveStatisticsHelper.groupByLportTag(Arrays.asList(port1Drop, port2Drop, port1Invalid));
+
+        assertEquals(2, flowStatsByLportTag.size());
+        assertEquals(Arrays.asList(port1Drop, port1Invalid), flowStatsByLportTag.get(1));
+        assertEquals(Collections.singletonList(port2Drop), flowStatsByLportTag.get(2));
+    }
+
+    @Test
+    public void testCacheTimeToLive() throws InterruptedException {
+        Map<Integer, List<FlowAndStatisticsMapList>> flowStats = Collections.emptyMap();
+        AclDropFlowStatsCache cache = new AclDropFlowStatsCache(50);
+        cache.put(BigInteger.ONE, flowStats);
+        assertSame(flowStats, cache.get(BigInteger.ONE));
+        assertNull(cache.get(BigInteger.valueOf(2)));
+
+        Thread.sleep(100);
+        assertNull(cache.get(BigInteger.ONE));
+
+        AclDropFlowStatsCache noCache = new AclDropFlowStatsCache(0);
+        noCache.put(BigInteger.ONE, flowStats);
+        assertNull(noCache.get(BigInteger.ONE));
+    }
+
+    private static FlowAndStatisticsMapList dropFlowStats(int lportTag, int priority) {
+        return new FlowAndStatisticsMapListBuilder().setTableId(NwConstants.EGRESS_ACL_FILTER_CUM_DISPATCHER_TABLE)
+                .setCookie(new FlowCookie(AclServiceUtils.getDropFlowCookie(lportTag))).setPriority(priority).build();
+    }
+}
@@ -18,6 +18,8 @@ import org.opendaylight.genius.datastoreutils.testutils.JobCoordinatorEventsWait
 import org.opendaylight.genius.datastoreutils.testutils.TestableJobCoordinatorEventsWaiter;
 import org.opendaylight.genius.mdsalutil.interfaces.IMdsalApiManager;
 import org.opendaylight.genius.mdsalutil.interfaces.testutils.TestIMdsalApiManager;
+import org.opendaylight.infrautils.metrics.MetricProvider;
+import org.opendaylight.infrautils.metrics.testimpl.TestMetricProviderImpl;
 import org.opendaylight.mdsal.binding.api.DataBroker;
 import org.opendaylight.mdsal.binding.testutils.DataBrokerTestModule;
 import org.opendaylight.netvirt.aclservice.AclInterfaceCacheImpl;
@@ -78,6 +80,7 @@ public class AclServiceTestModule extends AbstractModule {
                 .toInstance(Mockito.mock(TestOdlDirectStatisticsService.class, realOrException()));
 
         bind(JobCoordinatorEventsWaiter.class).to(TestableJobCoordinatorEventsWaiter.class);
+        bind(MetricProvider.class).toInstance(new TestMetricProviderImpl());
 
         bind(AclInterfaceCache.class).toInstance(new AclInterfaceCacheImpl());
         bind(ServiceRecoveryRegistry.class).toInstance(mock(ServiceRecoveryRegistry.class));
@@ -18,6 +18,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -134,6 +135,42 @@ public class AclDataUtilTest {
         assertRemoteAcls(ACL1, ACL3);
     }
 
+    @Test
+    public void testRemoteAclDpns() {
+        Class<? extends DirectionBase> direction = DirectionIngress.class;
+        assertEquals(Collections.emptySet(), aclDataUtil.getRemoteAclDpns(ACL1, direction, null));
+
+        aclDataUtil.addRemoteAclId(ACL1, ACL2, direction);
+        aclDataUtil.addRemoteAclId(ACL1, ACL3, direction);
+        aclDataUtil.addOrUpdateAclInterfaceMap(Arrays.asList(ACL2), PORT1);
+        aclDataUtil.addOrUpdateAclInterfaceMap(Arrays.asList(ACL2, ACL3), PORT2);
+        AclInterface port3OnDpn1 = AclInterface.builder().interfaceId(PORT3.getInterfaceId())
+            .dpId(PORT1.getDpId()).build();
+        aclDataUtil.addOrUpdateAclInterfaceMap(Arrays.asList(ACL3), port3OnDpn1);
+
+        Set<BigInteger> dpns = aclDataUtil.getRemoteAclDpns(ACL1, direction, null);
+        assertEquals(new HashSet<>(Arrays.asList(PORT1.getDpId(), PORT2.getDpId())), dpns);
+        assertEquals(new HashSet<>(Arrays.asList(PORT1.getDpId(), PORT2.getDpId())),
+            aclDataUtil.getRemoteAclDpns(ACL1, direction, ACL2.getValue()));
+        assertTrue(aclDataUtil.doesDpnHaveOtherRemoteAclInterface(ACL1, direction, PORT1.getDpId(), "1"));
+        assertFalse(aclDataUtil.doesDpnHaveOtherRemoteAclInterface(ACL1, direction, PORT2.getDpId(), "2"));
+
+        // moving port3 to another DPN leaves port1 alone on DPN 1
+        aclDataUtil.addOrUpdateAclInterfaceMap(Arrays.asList(ACL3), PORT3);
+        assertFalse(aclDataUtil.doesDpnHaveOtherRemoteAclInterface(ACL1, direction, PORT1.getDpId(), "1"));
+        assertEquals(new HashSet<>(Arrays.asList(PORT2.getDpId(), PORT3.getDpId())),
+            aclDataUtil.getRemoteAclDpns(ACL1, direction, ACL2.getValue()));
+
+        aclDataUtil.removeAclInterfaceMap(Arrays.asList(ACL2, ACL3), PORT2);
+        aclDataUtil.removeAclInterfaceMap(ACL3, PORT3);
+        assertEquals(Collections.singleton(PORT1.getDpId()), aclDataUtil.getRemoteAclDpns(ACL1, direction, null));
+        assertTrue(aclDataUtil.doesDpnHaveAclInterface(PORT1.getDpId()));
+        assertFalse(aclDataUtil.doesDpnHaveAclInterface(PORT2.getDpId()));
+
+        // the snapshot taken earlier is not affected
+        assertEquals(2, dpns.size());
+    }
+
     private static AclInterface newPort(String interfaceId) {
         return AclInterface.builder().interfaceId(interfaceId).dpId(new BigInteger(interfaceId)).build();
     }
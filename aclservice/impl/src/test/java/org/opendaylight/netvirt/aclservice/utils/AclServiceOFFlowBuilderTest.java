@@ -10,11 +10,14 @@ package org.opendaylight.netvirt.aclservice.utils;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.stream.Collectors;
 import org.junit.Test;
 import org.opendaylight.genius.mdsalutil.MatchInfoBase;
@@ -243,4 +246,58 @@ public class AclServiceOFFlowBuilderTest {
         Map<Integer, Integer> layer4MaskForRange = AclServiceOFFlowBuilder.getLayer4MaskForRange(8192, 4096);
         assertEquals("Illegal ports range", 0, layer4MaskForRange.size());
     }
+
+    @Test
+    public void testgetLayer4MaskForRange_AllPorts() {
+        Map<Integer, Integer> layer4MaskForRange = AclServiceOFFlowBuilder.getLayer4MaskForRange(0, 65535);
+        assertEquals(Collections.singletonMap(0, 0x0000), layer4MaskForRange);
+    }
+
+    @Test
+    public void testgetLayer4MaskForRange_Memoized() {
+        assertSame(AclServiceOFFlowBuilder.getLayer4MaskForRange(80, 65535),
+            AclServiceOFFlowBuilder.getLayer4MaskForRange(80, 65535));
+    }
+
+    @Test
+    public void testgetLayer4MaskCover_MinimalExactCover() {
+        int[] ports = new int[AclServiceOFFlowBuilder.MAX_LAYER4_MASK_COVER];
+        int[] masks = new int[AclServiceOFFlowBuilder.MAX_LAYER4_MASK_COVER];
+        Random random = new Random(65536);
+        for (int i = 0; i < 200000; i++) {
+            int portMin = random.nextInt(65536);
+            // a quarter of short ranges, the rest spread up to the last port
+            int rangeSize = i % 4 == 0 ? random.nextInt(64) : random.nextInt(65536 - portMin);
+            int portMax = Math.min(65535, portMin + rangeSize);
+            int count = AclServiceOFFlowBuilder.getLayer4MaskCover(portMin, portMax, ports, masks);
+
+            int nextPort = portMin;
+            for (int j = 0; j < count; j++) {
+                int blockSize = (~masks[j] & 0xFFFF) + 1;
+                assertEquals("blocks must be contiguous", nextPort, ports[j]);
+                assertEquals("blocks must be aligned", 0, ports[j] & (blockSize - 1));
+                nextPort += blockSize;
+            }
+            assertEquals("blocks must end with the range", portMax + 1, nextPort);
+            assertEquals("cover must be minimal for " + portMin + "-" + portMax,
+                minimalCoverSize(portMin, portMax, 0, 65536), count);
+        }
+    }
+
+    /**
+     * The smallest number of aligned blocks covering a range, by splitting the aligned blocks which the range only
+     * partly covers.
+     */
+    private static int minimalCoverSize(int portMin, int portMax, int blockStart, int blockSize) {
+        int blockEnd = blockStart + blockSize - 1;
+        if (portMax < blockStart || portMin > blockEnd) {
+            return 0;
+        }
+        if (portMin <= blockStart && blockEnd <= portMax) {
+            return 1;
+        }
+        int half = blockSize / 2;
+        return minimalCoverSize(portMin, portMax, blockStart, half)
+            + minimalCoverSize(portMin, portMax, blockStart + half, half);
+    }
 }
@@ -14,6 +14,8 @@ import com.google.common.base.Preconditions;
 import com.google.common.net.InetAddresses;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.util.concurrent.GlobalEventExecutor;
@@ -28,7 +30,6 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -57,6 +58,9 @@ import org.eclipse.jdt.annotation.Nullable;
 import org.opendaylight.genius.datastoreutils.SingleTransactionDataBroker;
 import org.opendaylight.genius.mdsalutil.NwConstants;
 import org.opendaylight.genius.utils.clustering.EntityOwnershipUtils;
+import org.opendaylight.infrautils.metrics.Counter;
+import org.opendaylight.infrautils.metrics.Meter;
+import org.opendaylight.infrautils.metrics.MetricDescriptor;
 import org.opendaylight.infrautils.metrics.MetricProvider;
 import org.opendaylight.mdsal.binding.api.ClusteredDataTreeChangeListener;
 import org.opendaylight.mdsal.binding.api.DataBroker;
@@ -195,6 +199,9 @@ public class BgpConfigurationManager implements EbgpService {
     private static final String BGP_ENTITY_TYPE_FOR_OWNERSHIP = "bgp";
     private static final String BGP_EOR_DELAY = "vpnservice.bgp.eordelay";
     private static final String DEF_BGP_EOR_DELAY = "1800";
+    private static final String BGP_ROUTE_SYNC_WORKERS = "vpnservice.bgp.route.sync.workers";
+    private static final String DEF_BGP_ROUTE_SYNC_WORKERS = "4";
+    private static final String BGP_STALE_FIB_OFF_HEAP = "vpnservice.bgp.stale.fib.offheap";
     private static final String BGP_ENTITY_NAME = "bgp";
     private static final String ADD_WARN = "Config store updated; undo with Delete if needed.";
     private static final String DEL_WARN = "Config store updated; undo with Add if needed.";
@@ -260,8 +267,8 @@ public class BgpConfigurationManager implements EbgpService {
      * */
     private final ConcurrentHashMap<String, List<AddressFamiliesVrf>> mapNewAdFamily = new ConcurrentHashMap<>();
 
-    // map<rd, map<prefix/len:nexthop, label>>
-    private final Map<String, Map<String, Uint32>> staledFibEntriesMap = new ConcurrentHashMap<>();
+    // routes learnt from BGP before a restart, which are not yet re-learnt
+    private final StaleFibIndex staleFibIndex;
 
     // map<rd, map<tep-ip, map<mac, l2vni>>>
     private final Map<String, Map<String, Map<String, Uint32>>> rt2TepMap = new ConcurrentHashMap<>();
@@ -276,6 +283,11 @@ public class BgpConfigurationManager implements EbgpService {
     private final EntityOwnershipListenerRegistration entityListenerRegistration;
     private final MetricProvider metricProvider;
     private final TransactionHistory bgpUpdatesHistory;
+    // route resync workers, the routes of an RD are always handled by the same worker
+    private final ListeningExecutorService[] routeSyncWorkers;
+    private final Meter routeSyncRoutesMeter;
+    private final Counter routeSyncWindowsCounter;
+    private final Counter routeSyncRoutesWrittenCounter;
 
     private volatile AtomicBoolean eorSupressedDuetoUpgradeFlag = new AtomicBoolean(false);
 
@@ -310,6 +322,17 @@ public class BgpConfigurationManager implements EbgpService {
         bgpUpdatesHistory = new TransactionHistory(HISTORY_LIMIT, HISTORY_THRESHOLD);
         bgpRouter = BgpRouter.newInstance(this::getConfig, this::isBGPEntityOwner, bgpUpdatesHistory);
         delayEorSeconds = Integer.parseInt(getProperty(BGP_EOR_DELAY, DEF_BGP_EOR_DELAY));
+        staleFibIndex = new StaleFibIndex(Boolean.parseBoolean(getProperty(BGP_STALE_FIB_OFF_HEAP, "false")));
+        routeSyncWorkers = new ListeningExecutorService[
+                Math.max(1, Integer.parseInt(getProperty(BGP_ROUTE_SYNC_WORKERS, DEF_BGP_ROUTE_SYNC_WORKERS)))];
+        for (int i = 0; i < routeSyncWorkers.length; i++) {
+            routeSyncWorkers[i] = org.opendaylight.infrautils.utils.concurrent.Executors
+                    .newListeningSingleThreadExecutor("BgpRouteSync-" + i, LOG);
+        }
+        routeSyncRoutesMeter = metricProvider.newMeter(routeSyncMetricDescriptor("route_sync_routes"));
+        routeSyncWindowsCounter = metricProvider.newCounter(routeSyncMetricDescriptor("route_sync_windows"));
+        routeSyncRoutesWrittenCounter =
+                metricProvider.newCounter(routeSyncMetricDescriptor("route_sync_routes_written"));
 
         entityOwnershipUtils = new EntityOwnershipUtils(entityOwnershipService);
 
@@ -427,6 +450,9 @@ public class BgpConfigurationManager implements EbgpService {
     @PreDestroy
     public void close() {
         executor.shutdown();
+        for (ListeningExecutorService routeSyncWorker : routeSyncWorkers) {
+            routeSyncWorker.shutdown();
+        }
 
         if (bgpThriftService != null) {
             bgpThriftService.stop();
@@ -455,6 +481,10 @@ public class BgpConfigurationManager implements EbgpService {
         LOG.info("{} close", getClass().getSimpleName());
     }
 
+    private MetricDescriptor routeSyncMetricDescriptor(String id) {
+        return MetricDescriptor.builder().anchor(this).project("netvirt").module("bgpmanager").id(id).build();
+    }
+
     private String getProperty(String var, String def) {
         String property = bundleContext.getProperty(var);
         return property == null ? def : property;
@@ -1807,7 +1837,7 @@ public class BgpConfigurationManager implements EbgpService {
                     routeCleanupFuture = executor.schedule(new RouteCleanup(), routeSyncTime, TimeUnit.SECONDS);
                 } else {
                     LOG.error("skipping stale cleanup, may be due to exception while replay");
-                    staledFibEntriesMap.clear();
+                    staleFibIndex.clear();
                 }
             } catch (InterruptedException | TimeoutException | ExecutionException eCancel) {
                 LOG.error("Stale Cleanup Task Cancelled", eCancel);
@@ -1827,12 +1857,12 @@ public class BgpConfigurationManager implements EbgpService {
             if (lastReplayJobFt != null) {
                 lastReplayJobFt.cancel(true);
                 lastReplayJobFt = null;
-                staledFibEntriesMap.clear();
+                staleFibIndex.clear();
             }
             if (routeCleanupFuture != null) {
                 routeCleanupFuture.cancel(true);
                 routeCleanupFuture = null;
-                staledFibEntriesMap.clear();
+                staleFibIndex.clear();
             }
             Thread.sleep(2000);
         } catch (InterruptedException e) {
@@ -1840,7 +1870,16 @@ public class BgpConfigurationManager implements EbgpService {
         }
     }
 
+    /*
+     * Resyncs the routes from BGP as a pipeline: the next window of routes is fetched from BGP while the previous
+     * one is being applied. A window is split by RD over the route sync workers, which compare the routes with the
+     * stale FIB entries in parallel, and the resulting FIB entries of the whole window are queued to the FIB writer
+     * at once.
+     */
     private void doRouteSync() {
+        ListenableFuture<?> pendingWindow = Futures.immediateFuture(null);
+        long routeSyncStart = System.nanoTime();
+        int totalUpdates = 0;
         for (af_afi afi : af_afi.values()) {
             try {
                 bgpRouter.initRibSync(bgpSyncHandle);
@@ -1849,48 +1888,31 @@ public class BgpConfigurationManager implements EbgpService {
                 return;
             }
             LOG.error("Starting BGP route sync for afi {}", afi.getValue());
+            int noUpdates = 0;
             while (bgpSyncHandle.getState() != BgpSyncHandle.DONE) {
                 Routes routes = null;
-                int noUpdates = 0;
                 try {
                     routes = bgpRouter.doRibSync(bgpSyncHandle, afi);
                 } catch (TException | BgpRouterException e) {
                     LOG.error("Route sync aborted, exception when syncing", e);
                     return;
                 }
-                Iterator<Update> updates = routes.getUpdatesIterator();
-                while (updates.hasNext()) {
-                    noUpdates++;
-                    Update update = updates.next();
-                    String rd = update.getRd();
-                    String nexthop = update.getNexthop();
-
-                    // TODO: decide correct label here
-                    int label = update.getL3label();
-                    int l2label = update.getL2label();
-
-                    String prefix = update.getPrefix();
-                    int plen = update.getPrefixlen();
-
-
-                    // TODO: protocol type will not be available in "update"
-                    // use "rd" to query vrf table and obtain the protocol_type.
-                    // Currently using PROTOCOL_EVPN as default.
-                    onUpdatePushRoute(
-                           protocol_type.PROTOCOL_L3VPN,
-                           rd,
-                           prefix,
-                           plen,
-                           nexthop,
-                           update.getMacaddress(),
-                           Uint32.valueOf(label),
-                           Uint32.valueOf(l2label),
-                           update.getRoutermac(),
-                           afi);
+                List<Update> updates = routes.getUpdates() != null ? routes.getUpdates() : Collections.emptyList();
+                noUpdates += updates.size();
+                // only one window is applied at a time, the window fetched meanwhile waits for it
+                if (!waitForRouteSyncWindow(pendingWindow)) {
+                    return;
                 }
-                LOG.error("No of updates for afi {} is {}", afi.getValue(), noUpdates);
+                pendingWindow = applyRouteSyncWindow(updates, afi);
             }
+            LOG.error("No of updates for afi {} is {}", afi.getValue(), noUpdates);
+            totalUpdates += noUpdates;
+        }
+        if (!waitForRouteSyncWindow(pendingWindow)) {
+            return;
         }
+        LOG.error("Synced {} routes in {} ms", totalUpdates,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - routeSyncStart));
         try {
             LOG.error("Ending BGP route-sync");
             bgpRouter.endRibSync(bgpSyncHandle);
@@ -1899,6 +1921,93 @@ public class BgpConfigurationManager implements EbgpService {
         }
     }
 
+    private static boolean waitForRouteSyncWindow(ListenableFuture<?> window) {
+        try {
+            window.get();
+            return true;
+        } catch (InterruptedException | ExecutionException e) {
+            LOG.error("Route sync aborted, exception when applying routes", e);
+            return false;
+        }
+    }
+
+    private ListenableFuture<?> applyRouteSyncWindow(List<Update> updates, af_afi afi) {
+        routeSyncWindowsCounter.increment();
+        routeSyncRoutesMeter.mark(updates.size());
+        Map<Integer, List<Update>> updatesByWorker = new HashMap<>();
+        for (Update update : updates) {
+            updatesByWorker.computeIfAbsent(Math.floorMod(Objects.hashCode(update.getRd()), routeSyncWorkers.length),
+                worker -> new ArrayList<>()).add(update);
+        }
+        List<ListenableFuture<Map<String, List<VrfEntry>>>> staleChecks = new ArrayList<>();
+        updatesByWorker.forEach((worker, workerUpdates) -> staleChecks.add(
+                routeSyncWorkers[worker].submit(() -> getRouteSyncFibEntries(workerUpdates, afi))));
+        return Futures.transformAsync(Futures.allAsList(staleChecks), this::writeRouteSyncFibEntries,
+                MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<Integer> writeRouteSyncFibEntries(List<Map<String, List<VrfEntry>>> fibEntriesPerWorker) {
+        // workers own disjoint sets of RDs
+        Map<String, List<VrfEntry>> vrfEntriesByRd = new HashMap<>();
+        int noRoutes = 0;
+        for (Map<String, List<VrfEntry>> fibEntries : fibEntriesPerWorker) {
+            vrfEntriesByRd.putAll(fibEntries);
+            for (List<VrfEntry> vrfEntries : fibEntries.values()) {
+                noRoutes += vrfEntries.size();
+            }
+        }
+        if (noRoutes == 0) {
+            return Futures.immediateFuture(0);
+        }
+        int writtenRoutes = noRoutes;
+        return Futures.transform(fibDSWriter.addFibEntriesToDS(vrfEntriesByRd), handedOff -> {
+            routeSyncRoutesWrittenCounter.increment(writtenRoutes);
+            return writtenRoutes;
+        }, MoreExecutors.directExecutor());
+    }
+
+    /*
+     * Same handling as onUpdatePushRoute, for the L3VPN routes of a route sync window, except the FIB entries to
+     * add are returned instead of being written one by one.
+     */
+    private Map<String, List<VrfEntry>> getRouteSyncFibEntries(List<Update> updates, af_afi afi) {
+        Map<String, List<VrfEntry>> vrfEntriesByRd = new HashMap<>();
+        Map<String, Optional<String>> vpnNameByRd = new HashMap<>();
+        for (Update update : updates) {
+            String rd = update.getRd();
+            String nexthop = update.getNexthop();
+            // TODO: decide correct label here
+            Uint32 label = Uint32.valueOf(update.getL3label());
+            String prefix = update.getPrefix();
+            int plen = update.getPrefixlen();
+            // TODO: protocol type will not be available in "update"
+            // use "rd" to query vrf table and obtain the protocol_type.
+            bgpUpdatesHistory.addToHistory(TransactionType.ADD, new PrefixUpdateEvent(protocol_type.PROTOCOL_L3VPN,
+                    rd, prefix, plen, nexthop, update.getMacaddress(), label, Uint32.valueOf(update.getL2label()),
+                    update.getRoutermac(), afi));
+            if (rd == null || rd.isEmpty() || nexthop == null || nexthop.isEmpty()) {
+                LOG.error("Route sync: skipping prefix {}/{} with rd {} nexthop {}", prefix, plen, rd, nexthop);
+                continue;
+            }
+            if (!isRouteAddRequired(rd, prefix, plen, nexthop, label)) {
+                continue;
+            }
+            LOG.debug("Route sync: adding Fib entry rd {} prefix {} nexthop {} label {} afi {}",
+                    rd, prefix, nexthop, label, afi);
+            List<String> nextHopList = Collections.singletonList(nexthop);
+            vrfEntriesByRd.computeIfAbsent(rd, key -> new ArrayList<>()).add(
+                    FibDSWriter.buildVrfEntry(prefix + "/" + plen, nextHopList, VrfEntry.EncapType.Mplsgre, label,
+                            Uint32.ZERO, update.getRoutermac(), RouteOrigin.BGP));
+            Optional<String> vpnName = vpnNameByRd.computeIfAbsent(rd,
+                key -> Optional.ofNullable(bgpUtil.getVpnNameFromRd(key)));
+            if (vpnName.isPresent()) {
+                vpnLinkService.leakRouteIfNeeded(vpnName.get(), prefix, nextHopList, label, RouteOrigin.BGP,
+                                                 NwConstants.ADD_FLOW);
+            }
+        }
+        return vrfEntriesByRd;
+    }
+
     public void addTepToElanDS(String rd, String tepIp, String mac, Uint32 l2vni) {
         boolean needUpdate = addToRt2TepMap(rd, tepIp, mac, l2vni);
         if (needUpdate) {
@@ -1934,7 +2043,6 @@ public class BgpConfigurationManager implements EbgpService {
         PrefixUpdateEvent prefixUpdateEvent = new PrefixUpdateEvent(protocolType,rd,prefix,plen,nextHop,
                 macaddress,label,l2label,routermac,afi);
         bgpUpdatesHistory.addToHistory(TransactionType.ADD, prefixUpdateEvent);
-        boolean addroute = false;
         boolean macupdate = false;
         Uint32 l3vni = Uint32.ZERO;
         VrfEntry.EncapType encapType = VrfEntry.EncapType.Mplsgre;
@@ -1956,31 +2064,7 @@ public class BgpConfigurationManager implements EbgpService {
             }
         }
 
-        if (!staledFibEntriesMap.isEmpty()) {
-            // restart Scenario, as MAP is not empty.
-            Map<String, Uint32> map = staledFibEntriesMap.get(rd);
-            if (map != null) {
-                String prefixNextHop = appendNextHopToPrefix(prefix + "/" + plen, nextHop);
-                Uint32 labelInStaleMap = map.get(prefixNextHop);
-                if (null == labelInStaleMap) {
-                    // New Entry, which happened to be added during restart.
-                    addroute = true;
-                } else {
-                    map.remove(prefixNextHop);
-                    if (isRouteModified(label, labelInStaleMap)) {
-                        LOG.debug("Route add ** {} ** {}/{} ** {} ** {} ", rd, prefix, plen, nextHop, label);
-                        // Existing entry, where in Label got modified during restart
-                        addroute = true;
-                    }
-                }
-            } else {
-                LOG.debug("rd {} map is null while processing prefix {} ", rd, prefix);
-                addroute = true;
-            }
-        } else {
-            LOG.debug("Route add ** {} ** {}/{} ** {} ** {} ", rd, prefix, plen, nextHop, label);
-            addroute = true;
-        }
+        boolean addroute = isRouteAddRequired(rd, prefix, plen, nextHop, label);
         if (macupdate) {
             LOG.info("ADD: Adding Mac Fib entry rd {} mac{} nexthop {} l2vni {}", rd, macaddress, nextHop, l2label);
             fibDSWriter.addMacEntryToDS(rd, macaddress, prefix, Collections.singletonList(nextHop),
@@ -2002,6 +2086,25 @@ public class BgpConfigurationManager implements EbgpService {
         }
     }
 
+    private boolean isRouteAddRequired(String rd, String prefix, int plen, String nextHop, Uint32 label) {
+        if (staleFibIndex.isEmpty()) {
+            LOG.debug("Route add ** {} ** {}/{} ** {} ** {} ", rd, prefix, plen, nextHop, label);
+            return true;
+        }
+        // restart Scenario, as the stale index is not empty.
+        long labelInStaleIndex = staleFibIndex.markFresh(rd, prefix + "/" + plen, nextHop);
+        if (labelInStaleIndex == StaleFibIndex.NO_LABEL) {
+            // New Entry, which happened to be added during restart.
+            return true;
+        }
+        if (isRouteModified(label, labelInStaleIndex)) {
+            LOG.debug("Route add ** {} ** {}/{} ** {} ** {} ", rd, prefix, plen, nextHop, label);
+            // Existing entry, where in Label got modified during restart
+            return true;
+        }
+        return false;
+    }
+
     public void onUpdateWithdrawRoute(protocol_type protocolType, String rd, String prefix, int plen, String nextHop,
             String macaddress) {
         PrefixWithdrawEvent prefixWithdrawEvent = new PrefixWithdrawEvent(protocolType,rd,prefix,plen,
@@ -2072,8 +2175,8 @@ public class BgpConfigurationManager implements EbgpService {
         });
     }
 
-    private static boolean isRouteModified(Uint32 label, Uint32 labelInStaleMap) {
-        return labelInStaleMap != null && !labelInStaleMap.equals(label);
+    private static boolean isRouteModified(Uint32 label, long labelInStaleIndex) {
+        return label == null || label.toJava() != labelInStaleIndex;
     }
 
     static class ReplayNbr {
@@ -2917,31 +3020,25 @@ public class BgpConfigurationManager implements EbgpService {
         public Integer call() {
             totalCleared = 0;
             try {
-                if (staledFibEntriesMap.isEmpty()) {
+                if (staleFibIndex.isEmpty()) {
                     LOG.info("BGP: RouteCleanup timertask tirggered but STALED FIB MAP is EMPTY");
                 } else {
-                    for (String rd : staledFibEntriesMap.keySet()) {
+                    boolean completed = staleFibIndex.forEachStale((rd, prefix, nextHop) -> {
                         if (Thread.interrupted()) {
-                            return 0;
-                        }
-                        Map<String, Uint32> map = staledFibEntriesMap.get(rd);
-                        if (map != null) {
-                            for (String key : map.keySet()) {
-                                if (Thread.interrupted()) {
-                                    return 0;
-                                }
-                                String prefix = extractPrefix(key);
-                                String nextHop = extractNextHop(key);
-                                totalCleared++;
-                                LOG.debug("BGP: RouteCleanup deletePrefix called for : rd:{}, prefix{}, nextHop:{}",
-                                        rd, prefix, nextHop);
-                                fibDSWriter.removeOrUpdateFibEntryFromDS(rd, prefix, nextHop);
-                            }
+                            return false;
                         }
+                        totalCleared++;
+                        LOG.debug("BGP: RouteCleanup deletePrefix called for : rd:{}, prefix{}, nextHop:{}",
+                                rd, prefix, nextHop);
+                        fibDSWriter.removeOrUpdateFibEntryFromDS(rd, prefix, nextHop);
+                        return true;
+                    });
+                    if (!completed) {
+                        return 0;
                     }
                 }
             } finally {
-                staledFibEntriesMap.clear();
+                staleFibIndex.clear();
             }
             LOG.error("cleared {} stale routes after bgp restart", totalCleared);
             return 0;
@@ -2955,7 +3052,7 @@ public class BgpConfigurationManager implements EbgpService {
     public void createStaleFibMap() {
         totalStaledCount = 0;
         try {
-            staledFibEntriesMap.clear();
+            staleFibIndex.clear();
             fibDSWriter.clearFibMap();
             InstanceIdentifier<FibEntries> id = InstanceIdentifier.create(FibEntries.class);
 
@@ -2964,7 +3061,6 @@ public class BgpConfigurationManager implements EbgpService {
             if (fibEntries.isPresent()) {
                 Map<VrfTablesKey, VrfTables> staleVrfTablesMap = fibEntries.get().nonnullVrfTables();
                 for (VrfTables vrfTable : staleVrfTablesMap.values()) {
-                    Map<String, Uint32> staleFibEntMap = new HashMap<>();
                     for (VrfEntry vrfEntry : vrfTable.getVrfEntry().values()) {
                         if (RouteOrigin.value(vrfEntry.getOrigin()) != RouteOrigin.BGP) {
                             //Stale marking and cleanup is only meant for the routes learned through BGP.
@@ -2974,20 +3070,19 @@ public class BgpConfigurationManager implements EbgpService {
                             break;
                         }
                         totalStaledCount++;
-                        //Create MAP from staleVrfTablesMap.
+                        //Index the routes from staleVrfTablesMap.
                         vrfEntry.getRoutePaths().values()
                                 .forEach(
                                     routePath -> {
-                                        staleFibEntMap.put(
-                                                appendNextHopToPrefix(vrfEntry.getDestPrefix(),
-                                                        routePath.getNexthopAddress()), routePath.getLabel());
+                                        staleFibIndex.add(vrfTable.getRouteDistinguisher(),
+                                                vrfEntry.getDestPrefix(), routePath.getNexthopAddress(),
+                                                routePath.getLabel());
                                         fibDSWriter.addEntryToFibMap(
                                                 vrfTable.getRouteDistinguisher(),  vrfEntry.getDestPrefix(),
                                                 routePath.getNexthopAddress());
 
                                     });
                     }
-                    staledFibEntriesMap.put(vrfTable.getRouteDistinguisher(), staleFibEntMap);
                 }
             } else {
                 LOG.error("createStaleFibMap:: FIBentries.class is not present");
@@ -3189,22 +3284,6 @@ public class BgpConfigurationManager implements EbgpService {
         bgpRouter.getPeerStatus(nbrIp, nbrAsNum);
     }
 
-    private static String appendNextHopToPrefix(String prefix, String nextHop) {
-        return prefix + ":" + nextHop;
-    }
-
-    @SuppressFBWarnings(value = "UPM_UNCALLED_PRIVATE_METHOD",
-            justification = "https://github.com/spotbugs/spotbugs/issues/811")
-    private static String extractPrefix(String prefixNextHop) {
-        return prefixNextHop.split(":")[0];
-    }
-
-    @SuppressFBWarnings(value = "UPM_UNCALLED_PRIVATE_METHOD",
-            justification = "https://github.com/spotbugs/spotbugs/issues/811")
-    private static String extractNextHop(String prefixNextHop) {
-        return prefixNextHop.split(":")[1];
-    }
-
     private static String extractMd5Secret(final Neighbors val) {
         String md5Secret = null;
         TcpSecurityOption tcpSecOpt = val.getTcpSecurityOption();
@@ -9,14 +9,29 @@ package org.opendaylight.netvirt.bgpmanager;
 
 import static java.util.Objects.requireNonNull;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jdt.annotation.Nullable;
 import org.opendaylight.genius.datastoreutils.SingleTransactionDataBroker;
 import org.opendaylight.mdsal.binding.api.DataBroker;
 import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
@@ -35,84 +50,154 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.fibmanager.rev15033
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.fibmanager.rev150330.vrfentries.VrfEntryBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.fibmanager.rev150330.vrfentries.VrfEntryKey;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.fibmanager.rev150330.vrfentrybase.RoutePaths;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.fibmanager.rev150330.vrfentrybase.RoutePathsKey;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier.InstanceIdentifierBuilder;
 import org.opendaylight.yangtools.yang.common.Uint32;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Writes the BGP learnt routes to the FIB.
+ *
+ * <p>The writer is partitioned by RD: the datastore updates of an RD are queued to one of a fixed number of shards,
+ * each drained in order by its own thread into the BGP resource batching queue, so the Thrift threads pushing
+ * routes never wait on each other. Consecutive adds of the same prefix found in a shard queue are coalesced into
+ * a single update. The next hops known per prefix are kept in per-RD concurrent maps, and updated in place under
+ * the prefix's map entry, which also orders the datastore updates of a prefix.
+ */
 @Singleton
 public class FibDSWriter {
     private static final Logger LOG = LoggerFactory.getLogger(FibDSWriter.class);
+    private static final int SHARD_COUNT = Math.max(1, Integer.getInteger("bgp.fib.writer.shards", 4));
+    private static final int MAX_DRAIN_SIZE = 1000;
     private final SingleTransactionDataBroker singleTxDB;
     private final BgpUtil bgpUtil;
-    private final Map<String, ArrayList<String>> fibMap = new HashMap<>();
+    // map<rd, map<prefix, nexthops>>
+    private final ConcurrentMap<String, ConcurrentMap<String, Set<String>>> fibMap = new ConcurrentHashMap<>();
+    private final Shard[] shards = new Shard[SHARD_COUNT];
 
     @Inject
     public FibDSWriter(final DataBroker dataBroker, final BgpUtil bgpUtil) {
         this.bgpUtil = bgpUtil;
         this.singleTxDB = new SingleTransactionDataBroker(dataBroker);
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            shards[i] = new Shard(i);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Shard shard : shards) {
+            shard.executor.shutdown();
+        }
     }
 
-    public synchronized void clearFibMap() {
+    public void clearFibMap() {
         fibMap.clear();
     }
 
-    public synchronized void addEntryToFibMap(String rd, String prefix, String nextHop) {
-        ArrayList<String> temp = new ArrayList<>();
-        if (fibMap.get(appendrdtoprefix(rd, prefix)) != null) {
-            temp.addAll(fibMap.get(appendrdtoprefix(rd, prefix)));
-        }
-        temp.add(nextHop);
-        fibMap.put(appendrdtoprefix(rd, prefix),temp);
+    public void addEntryToFibMap(String rd, String prefix, String nextHop) {
+        getPrefixMap(rd).compute(prefix, (key, nextHops) -> {
+            Set<String> updated = nextHops != null ? nextHops : new HashSet<>();
+            updated.add(nextHop);
+            return updated;
+        });
         LOG.debug("addEntryToFibMap rd {} prefix {} nexthop {}",
                 rd, prefix, nextHop);
 
     }
 
-    public synchronized void addFibEntryToDS(String rd, String prefix, List<String> nextHopList,
-                                             VrfEntry.EncapType encapType, Uint32 label, Uint32 l3vni,
-                                             String gatewayMacAddress, RouteOrigin origin) {
-        if (rd == null || rd.isEmpty()) {
-            LOG.error("Prefix {} not associated with vpn", prefix);
+    public void addFibEntryToDS(String rd, String prefix, List<String> nextHopList,
+                                VrfEntry.EncapType encapType, Uint32 label, Uint32 l3vni,
+                                String gatewayMacAddress, RouteOrigin origin) {
+        if (!isValidFibEntry(rd, prefix, nextHopList)) {
             return;
         }
-
-        requireNonNull(nextHopList, "NextHopList can't be null");
         for (String nextHop : nextHopList) {
-            if (nextHop == null || nextHop.isEmpty()) {
-                LOG.error("nextHop list contains null element");
-                return;
-            }
             LOG.debug("Created vrfEntry for {} nexthop {} label {}", prefix, nextHop, label);
         }
 
         LOG.debug("addFibEntryToDS rd {} prefix {} NH {}",
                 rd, prefix, nextHopList.get(0));
 
-        ArrayList<String> temp = new ArrayList<>();
-        if (fibMap.get(appendrdtoprefix(rd, prefix)) != null) {
-            temp.addAll(fibMap.get(appendrdtoprefix(rd, prefix)));
+        enqueueFibEntry(rd, buildVrfEntry(prefix, nextHopList, encapType, label, l3vni, gatewayMacAddress, origin),
+            nextHopList);
+    }
+
+    /**
+     * Adds a batch of routes, used by the route resync after a BGP restart where whole windows of routes are
+     * applied at once. The routes are validated and queued to the shards of their RDs like the ones added by
+     * {@link #addFibEntryToDS}.
+     *
+     * @param vrfEntriesByRd the entries to add, per RD, built with {@link #buildVrfEntry}
+     * @return a future completed once all the routes have been handed to the BGP resource batching queue
+     */
+    public ListenableFuture<?> addFibEntriesToDS(Map<String, List<VrfEntry>> vrfEntriesByRd) {
+        Set<Shard> usedShards = new HashSet<>();
+        vrfEntriesByRd.forEach((rd, vrfEntries) -> {
+            for (VrfEntry vrfEntry : vrfEntries) {
+                List<String> nextHopList = vrfEntry.nonnullRoutePaths().values().stream()
+                    .map(RoutePaths::getNexthopAddress).collect(Collectors.toList());
+                if (isValidFibEntry(rd, vrfEntry.getDestPrefix(), nextHopList)) {
+                    enqueueFibEntry(rd, vrfEntry, nextHopList);
+                    usedShards.add(getShard(rd));
+                }
+            }
+        });
+        return Futures.allAsList(usedShards.stream().map(Shard::addMarker).collect(Collectors.toList()));
+    }
+
+    private static boolean isValidFibEntry(String rd, String prefix, List<String> nextHopList) {
+        if (rd == null || rd.isEmpty()) {
+            LOG.error("Prefix {} not associated with vpn", prefix);
+            return false;
+        }
+
+        requireNonNull(nextHopList, "NextHopList can't be null");
+        if (nextHopList.isEmpty()) {
+            LOG.error("nextHop list is empty for prefix {}", prefix);
+            return false;
         }
-        if (!temp.contains(nextHopList.get(0))) {
-            temp.addAll(nextHopList);
-            fibMap.put(appendrdtoprefix(rd, prefix), temp);
+        for (String nextHop : nextHopList) {
+            if (nextHop == null || nextHop.isEmpty()) {
+                LOG.error("nextHop list contains null element");
+                return false;
+            }
         }
+        return true;
+    }
 
-        // Looking for existing prefix in MDSAL database
-        InstanceIdentifier<VrfEntry> vrfEntryId =
-                InstanceIdentifier.builder(FibEntries.class)
-                        .child(VrfTables.class, new VrfTablesKey(rd))
-                        .child(VrfEntry.class, new VrfEntryKey(prefix)).build();
+    private void enqueueFibEntry(String rd, VrfEntry vrfEntry, List<String> nextHopList) {
+        InstanceIdentifier<VrfEntry> vrfEntryId = getVrfEntryId(rd, vrfEntry.getDestPrefix());
+        getPrefixMap(rd).compute(vrfEntry.getDestPrefix(), (key, nextHops) -> {
+            Set<String> updated = nextHops != null ? nextHops : new HashSet<>();
+            updated.addAll(nextHopList);
+            getShard(rd).add(new FibUpdate(vrfEntryId, vrfEntry, null));
+            return updated;
+        });
+    }
 
+    public static VrfEntry buildVrfEntry(String prefix, List<String> nextHopList, VrfEntry.EncapType encapType,
+                                         Uint32 label, Uint32 l3vni, String gatewayMacAddress, RouteOrigin origin) {
         VrfEntryBuilder vrfEntryBuilder = new VrfEntryBuilder().setDestPrefix(prefix).setOrigin(origin.getValue());
         buildVpnEncapSpecificInfo(vrfEntryBuilder, encapType, label, l3vni,
                 gatewayMacAddress, nextHopList);
-        bgpUtil.update(vrfEntryId, vrfEntryBuilder.build());
+        return vrfEntryBuilder.build();
+    }
+
+    private static InstanceIdentifier<VrfEntry> getVrfEntryId(String rd, String prefix) {
+        return InstanceIdentifier.builder(FibEntries.class)
+                .child(VrfTables.class, new VrfTablesKey(rd))
+                .child(VrfEntry.class, new VrfEntryKey(prefix)).build();
     }
 
-    private String appendrdtoprefix(String rd, String prefix) {
-        return rd + "/" + prefix;
+    private ConcurrentMap<String, Set<String>> getPrefixMap(String rd) {
+        return fibMap.computeIfAbsent(rd, key -> new ConcurrentHashMap<>());
+    }
+
+    private Shard getShard(String rd) {
+        return shards[Math.floorMod(rd.hashCode(), shards.length)];
     }
 
     public void addMacEntryToDS(String rd, String macAddress, String prefix,
@@ -140,7 +225,8 @@ public class FibDSWriter {
                 InstanceIdentifier.builder(FibEntries.class)
                         .child(VrfTables.class, new VrfTablesKey(rd))
                         .child(MacVrfEntry.class, new MacVrfEntryKey(macAddress)).build();
-        bgpUtil.update(macEntryId, macEntryBuilder.build());
+        MacVrfEntry macVrfEntry = macEntryBuilder.build();
+        getShard(rd).add(new FibUpdate(pendingAdds -> bgpUtil.update(macEntryId, macVrfEntry)));
     }
 
     private static void buildVpnEncapSpecificInfo(VrfEntryBuilder builder,
@@ -170,7 +256,7 @@ public class FibDSWriter {
         builder.setRoutePaths(routePaths);
     }
 
-    public synchronized void removeFibEntryFromDS(String rd, String prefix) {
+    public void removeFibEntryFromDS(String rd, String prefix) {
 
         if (rd == null || rd.isEmpty()) {
             LOG.error("Prefix {} not associated with vpn", prefix);
@@ -178,12 +264,11 @@ public class FibDSWriter {
         }
         LOG.debug("Removing fib entry with destination prefix {} from vrf table for rd {}", prefix, rd);
 
-        InstanceIdentifierBuilder<VrfEntry> idBuilder =
-                InstanceIdentifier.builder(FibEntries.class).child(VrfTables.class, new VrfTablesKey(rd)).child(
-                        VrfEntry.class, new VrfEntryKey(prefix));
-        InstanceIdentifier<VrfEntry> vrfEntryId = idBuilder.build();
-        bgpUtil.delete(vrfEntryId);
-
+        InstanceIdentifier<VrfEntry> vrfEntryId = getVrfEntryId(rd, prefix);
+        getPrefixMap(rd).compute(prefix, (key, nextHops) -> {
+            getShard(rd).add(new FibUpdate(vrfEntryId, null, vrfEntryId));
+            return nextHops;
+        });
     }
 
     public void removeMacEntryFromDS(String rd, String macAddress) {
@@ -198,11 +283,11 @@ public class FibDSWriter {
                 InstanceIdentifier.builder(FibEntries.class).child(VrfTables.class, new VrfTablesKey(rd)).child(
                         MacVrfEntry.class, new MacVrfEntryKey(macAddress));
         InstanceIdentifier<MacVrfEntry> macEntryId = idBuilder.build();
-        bgpUtil.delete(macEntryId);
+        getShard(rd).add(new FibUpdate(pendingAdds -> bgpUtil.delete(macEntryId)));
 
     }
 
-    public synchronized void removeOrUpdateFibEntryFromDS(String rd, String prefix, String nextHop) {
+    public void removeOrUpdateFibEntryFromDS(String rd, String prefix, String nextHop) {
 
         if (rd == null || rd.isEmpty()) {
             LOG.error("Prefix {} not associated with vpn", prefix);
@@ -211,35 +296,31 @@ public class FibDSWriter {
         LOG.debug("Removing fib entry with destination prefix {} from vrf table for rd {} and nextHop {}",
                 prefix, rd, nextHop);
 
-
-        InstanceIdentifier<VrfEntry> vrfEntryId =
-                InstanceIdentifier.builder(FibEntries.class)
-                        .child(VrfTables.class, new VrfTablesKey(rd))
-                        .child(VrfEntry.class, new VrfEntryKey(prefix)).build();
+        InstanceIdentifier<VrfEntry> vrfEntryId = getVrfEntryId(rd, prefix);
 
         LOG.debug("removeOrUpdateFibEntryFromDS rd {} prefix {} NH {}",
                 rd, prefix, nextHop);
 
-        if (fibMap.get(appendrdtoprefix(rd,prefix)) != null) { //Key is there
-            // If nexthop is there, delete it from List
-            List<String> list = fibMap.get(appendrdtoprefix(rd,prefix));
-            list.remove(nextHop);
-            if (list.isEmpty()) {
-                fibMap.remove(appendrdtoprefix(rd, prefix));
-                bgpUtil.delete(vrfEntryId);
-            } else {
-                InstanceIdentifier<RoutePaths> routePathId =
-                        FibHelper.buildRoutePathId(rd, prefix, nextHop);
-                bgpUtil.delete(routePathId);
+        AtomicBoolean found = new AtomicBoolean();
+        getPrefixMap(rd).computeIfPresent(prefix, (key, nextHops) -> {
+            found.set(true);
+            // If nexthop is there, delete it from the set
+            nextHops.remove(nextHop);
+            if (nextHops.isEmpty()) {
+                getShard(rd).add(new FibUpdate(vrfEntryId, null, vrfEntryId));
+                return null;
             }
-        } else {
+            getShard(rd).add(new FibUpdate(vrfEntryId, null, FibHelper.buildRoutePathId(rd, prefix, nextHop)));
+            return nextHops;
+        });
+        if (!found.get()) {
             LOG.error("Invalid Delete from Quagga, RD {} Prefix {} Nexthop {}  ",
                     rd,prefix,nextHop);
         }
     }
 
 
-    public synchronized void removeVrfSubFamilyFromDS(String rd, AddressFamily addressFamily) {
+    public void removeVrfSubFamilyFromDS(String rd, AddressFamily addressFamily) {
 
         if (rd == null) {
             return;
@@ -247,6 +328,17 @@ public class FibDSWriter {
         LOG.debug("removeVrfSubFamilyFromDS : addressFamily {} from vrf rd {}",
                   addressFamily, rd);
 
+        getShard(rd).add(new FibUpdate(pendingAdds -> removeVrfSubFamily(rd, addressFamily, pendingAdds)));
+    }
+
+    /*
+     * Runs on the shard of the RD, so the entries of the family still pending in the shard are dropped and the
+     * ones already written are deleted in order with the other updates of the RD.
+     */
+    private void removeVrfSubFamily(String rd, AddressFamily addressFamily,
+                                    Map<InstanceIdentifier<VrfEntry>, VrfEntry> pendingAdds) {
+        pendingAdds.entrySet().removeIf(pendingAdd -> isInAddressFamily(pendingAdd.getValue(), addressFamily)
+            && rd.equals(pendingAdd.getKey().firstKeyOf(VrfTables.class).getRouteDistinguisher()));
         InstanceIdentifier<VrfTables> id = InstanceIdentifier.create(FibEntries.class)
             .child(VrfTables.class, new VrfTablesKey(rd));
         try {
@@ -258,41 +350,159 @@ public class FibDSWriter {
                     return;
                 }
                 for (VrfEntry vrfEntry : keyVrfEntryMap.values()) {
-                    boolean found = false;
-                    if (vrfEntry.getEncapType() != null) {
-                        if (!vrfEntry.getEncapType().equals(EncapType.Mplsgre)
-                             && addressFamily == AddressFamily.L2VPN) {
-                            found = true;
-                        } else if (vrfEntry.getEncapType().equals(EncapType.Mplsgre)) {
-                            if (addressFamily == AddressFamily.IPV4
-                                && FibHelper.isIpv4Prefix(vrfEntry.getDestPrefix())) {
-                                found = true;
-                            } else if (addressFamily == AddressFamily.IPV6
-                                       && FibHelper.isIpv6Prefix(vrfEntry.getDestPrefix())) {
-                                found = true;
-                            }
-                        }
+                    if (isInAddressFamily(vrfEntry, addressFamily)) {
+                        bgpUtil.removeVrfEntry(rd, vrfEntry);
                     }
-                    if (found == false) {
-                        continue;
-                    }
-                    bgpUtil.removeVrfEntry(rd, vrfEntry);
                 }
             }
         } catch (ReadFailedException rfe) {
             LOG.error("removeVrfSubFamilyFromDS : Internal Error rd {}", rd, rfe);
         }
-        return;
     }
 
-    public synchronized void removeVrfFromDS(String rd) {
+    private static boolean isInAddressFamily(VrfEntry vrfEntry, AddressFamily addressFamily) {
+        if (vrfEntry.getEncapType() == null) {
+            return false;
+        }
+        if (!vrfEntry.getEncapType().equals(EncapType.Mplsgre)) {
+            return addressFamily == AddressFamily.L2VPN;
+        }
+        return addressFamily == AddressFamily.IPV4 && FibHelper.isIpv4Prefix(vrfEntry.getDestPrefix())
+            || addressFamily == AddressFamily.IPV6 && FibHelper.isIpv6Prefix(vrfEntry.getDestPrefix());
+    }
+
+    public void removeVrfFromDS(String rd) {
         LOG.debug("Removing vrf table for  rd {}", rd);
 
         InstanceIdentifierBuilder<VrfTables> idBuilder =
                 InstanceIdentifier.builder(FibEntries.class).child(VrfTables.class, new VrfTablesKey(rd));
         InstanceIdentifier<VrfTables> vrfTableId = idBuilder.build();
 
-        bgpUtil.delete(vrfTableId);
+        getShard(rd).add(new FibUpdate(null, null, vrfTableId));
+    }
+
+    /*
+     * Merges two adds of the same prefix: the route paths are combined, the other leaves are the ones of the
+     * latest add.
+     */
+    private static VrfEntry mergeVrfEntries(VrfEntry older, VrfEntry newer) {
+        Map<RoutePathsKey, RoutePaths> routePaths = new LinkedHashMap<>(older.nonnullRoutePaths());
+        routePaths.putAll(newer.nonnullRoutePaths());
+        return new VrfEntryBuilder(newer).setRoutePaths(new ArrayList<>(routePaths.values())).build();
+    }
+
+    private static final class FibUpdate {
+        // null when removing a whole vrf table
+        @Nullable
+        private final InstanceIdentifier<VrfEntry> vrfEntryId;
+        // the entry to merge, null for a delete
+        @Nullable
+        private final VrfEntry vrfEntry;
+        @Nullable
+        private final InstanceIdentifier<?> deleteId;
+
+        // completed once the updates queued before it have been handed to the batching queue
+        @Nullable
+        private final SettableFuture<Void> handedOff;
+        // any other update of the RD, run in order with the pending adds of the shard
+        @Nullable
+        private final Consumer<Map<InstanceIdentifier<VrfEntry>, VrfEntry>> action;
+
+        FibUpdate(@Nullable InstanceIdentifier<VrfEntry> vrfEntryId, @Nullable VrfEntry vrfEntry,
+                  @Nullable InstanceIdentifier<?> deleteId) {
+            this(vrfEntryId, vrfEntry, deleteId, null, null);
+        }
+
+        FibUpdate(Consumer<Map<InstanceIdentifier<VrfEntry>, VrfEntry>> action) {
+            this(null, null, null, null, action);
+        }
+
+        private FibUpdate(@Nullable InstanceIdentifier<VrfEntry> vrfEntryId, @Nullable VrfEntry vrfEntry,
+                          @Nullable InstanceIdentifier<?> deleteId, @Nullable SettableFuture<Void> handedOff,
+                          @Nullable Consumer<Map<InstanceIdentifier<VrfEntry>, VrfEntry>> action) {
+            this.vrfEntryId = vrfEntryId;
+            this.vrfEntry = vrfEntry;
+            this.deleteId = deleteId;
+            this.handedOff = handedOff;
+            this.action = action;
+        }
+
+        static FibUpdate marker() {
+            return new FibUpdate(null, null, null, SettableFuture.create(), null);
+        }
+    }
+
+    private final class Shard {
+        private final Queue<FibUpdate> updates = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final ExecutorService executor;
 
+        Shard(int index) {
+            this.executor = org.opendaylight.infrautils.utils.concurrent.Executors
+                    .newListeningSingleThreadExecutor("BgpFibWriter-" + index, LOG);
+        }
+
+        void add(FibUpdate update) {
+            updates.add(update);
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        ListenableFuture<Void> addMarker() {
+            FibUpdate marker = FibUpdate.marker();
+            add(marker);
+            return marker.handedOff;
+        }
+
+        private void drain() {
+            try {
+                Map<InstanceIdentifier<VrfEntry>, VrfEntry> pendingAdds = new LinkedHashMap<>();
+                for (int i = 0; i < MAX_DRAIN_SIZE; i++) {
+                    FibUpdate update = updates.poll();
+                    if (update == null) {
+                        break;
+                    }
+                    if (update.vrfEntry != null) {
+                        pendingAdds.merge(update.vrfEntryId, update.vrfEntry, FibDSWriter::mergeVrfEntries);
+                        continue;
+                    }
+                    if (update.action != null) {
+                        update.action.accept(pendingAdds);
+                        continue;
+                    }
+                    if (update.handedOff != null) {
+                        pendingAdds.forEach(bgpUtil::update);
+                        pendingAdds.clear();
+                        update.handedOff.set(null);
+                        continue;
+                    }
+                    // deletes must reach the batching queue after the adds they follow
+                    if (update.vrfEntryId == null) {
+                        String rd = update.deleteId.firstKeyOf(VrfTables.class).getRouteDistinguisher();
+                        Iterator<Map.Entry<InstanceIdentifier<VrfEntry>, VrfEntry>> iterator =
+                            pendingAdds.entrySet().iterator();
+                        while (iterator.hasNext()) {
+                            Map.Entry<InstanceIdentifier<VrfEntry>, VrfEntry> pendingAdd = iterator.next();
+                            if (rd.equals(pendingAdd.getKey().firstKeyOf(VrfTables.class).getRouteDistinguisher())) {
+                                iterator.remove();
+                            }
+                        }
+                    } else {
+                        VrfEntry pendingAdd = pendingAdds.remove(update.vrfEntryId);
+                        if (pendingAdd != null && !update.vrfEntryId.equals(update.deleteId)) {
+                            bgpUtil.update(update.vrfEntryId, pendingAdd);
+                        }
+                    }
+                    bgpUtil.delete(update.deleteId);
+                }
+                pendingAdds.forEach(bgpUtil::update);
+            } finally {
+                scheduled.set(false);
+                if (!updates.isEmpty() && scheduled.compareAndSet(false, true)) {
+                    executor.execute(this::drain);
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.bgpmanager;
+
+import com.google.common.net.InetAddresses;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.eclipse.jdt.annotation.Nullable;
+import org.opendaylight.yangtools.yang.common.Uint32;
+
+/**
+ * Compact index of the BGP learnt FIB routes, used to find the routes which went stale across a BGP restart.
+ *
+ * <p>Routes are kept per RD, the RDs being interned. A route is identified by its prefix and next hop, packed in
+ * binary form (address bytes and prefix length, the string itself only when an address does not round trip through
+ * its binary form) into a single growing buffer per RD, which can be allocated off-heap. Labels are kept in a
+ * primitive array, and the routes are found through an open addressing hash table of entry indexes.
+ *
+ * <p>All the routes are stale when added. Routes re-learnt from BGP are marked fresh in constant time, and the
+ * routes left stale are then streamed to the cleanup with {@link #forEachStale(StaleRouteVisitor)}.
+ */
+final class StaleFibIndex {
+    static final long NO_LABEL = -1;
+
+    private static final byte RAW_STRING = 0;
+    private static final byte NO_PREFIX_LENGTH = -1;
+    private static final int MAX_PREFIX_LENGTH = 128;
+    private static final int INITIAL_CAPACITY = 64;
+
+    @FunctionalInterface
+    interface StaleRouteVisitor {
+        /**
+         * Visits a stale route.
+         *
+         * @return false to stop the iteration
+         */
+        boolean visit(String rd, String prefix, String nextHop);
+    }
+
+    private final boolean offHeap;
+    private final ConcurrentMap<String, RdTable> tables = new ConcurrentHashMap<>();
+
+    StaleFibIndex(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    void add(String rd, String prefix, String nextHop, @Nullable Uint32 label) {
+        tables.computeIfAbsent(rd.intern(), key -> new RdTable()).add(encode(prefix, nextHop),
+            label != null ? label.toJava() : NO_LABEL);
+    }
+
+    /**
+     * Marks a route as fresh, so it is not cleaned up.
+     *
+     * @return the label of the route if it was stale, {@link #NO_LABEL} if it is not known, was already marked fresh,
+     *     or has no label (such a route is left stale)
+     */
+    long markFresh(String rd, String prefix, String nextHop) {
+        RdTable table = tables.get(rd);
+        return table != null ? table.markFresh(encode(prefix, nextHop)) : NO_LABEL;
+    }
+
+    boolean isEmpty() {
+        return tables.isEmpty();
+    }
+
+    /**
+     * Returns the number of routes still stale.
+     */
+    int size() {
+        int size = 0;
+        for (RdTable table : tables.values()) {
+            size += table.staleCount();
+        }
+        return size;
+    }
+
+    void clear() {
+        tables.clear();
+    }
+
+    /**
+     * Streams the routes still stale.
+     *
+     * @return false if the visitor stopped the iteration
+     */
+    boolean forEachStale(StaleRouteVisitor visitor) {
+        for (Map.Entry<String, RdTable> entry : tables.entrySet()) {
+            RdTable table = entry.getValue();
+            for (int index = table.nextStale(0); index >= 0; index = table.nextStale(index + 1)) {
+                String[] route = table.decode(index);
+                if (!visitor.visit(entry.getKey(), route[0], route[1])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    static byte[] encode(String prefix, String nextHop) {
+        ByteBuffer buffer = ByteBuffer.allocate(3 * (prefix.length() + nextHop.length()) + 48);
+        int slash = prefix.indexOf('/');
+        String length = slash >= 0 ? prefix.substring(slash + 1) : null;
+        if (slash >= 0 && isPrefixLength(length) && isPackable(prefix.substring(0, slash))) {
+            putAddress(buffer, prefix.substring(0, slash));
+            buffer.put((byte) Integer.parseInt(length));
+        } else {
+            putAddress(buffer, prefix);
+            buffer.put(NO_PREFIX_LENGTH);
+        }
+        putAddress(buffer, nextHop);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    static String[] decode(ByteBuffer buffer, int offset) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        String prefix = getAddress(view);
+        byte length = view.get();
+        if (length != NO_PREFIX_LENGTH) {
+            prefix = prefix + "/" + (length & 0xFF);
+        }
+        return new String[] {prefix, getAddress(view)};
+    }
+
+    private static boolean isPrefixLength(String length) {
+        try {
+            int value = Integer.parseInt(length);
+            return value >= 0 && value <= MAX_PREFIX_LENGTH && String.valueOf(value).equals(length);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean isPackable(String address) {
+        return InetAddresses.isInetAddress(address)
+            && InetAddresses.toAddrString(InetAddresses.forString(address)).equals(address);
+    }
+
+    private static void putAddress(ByteBuffer buffer, String address) {
+        if (isPackable(address)) {
+            byte[] bytes = InetAddresses.forString(address).getAddress();
+            buffer.put((byte) bytes.length).put(bytes);
+        } else {
+            byte[] bytes = address.getBytes(StandardCharsets.UTF_8);
+            buffer.put(RAW_STRING).putShort((short) bytes.length).put(bytes);
+        }
+    }
+
+    private static String getAddress(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        if (tag == RAW_STRING) {
+            byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[tag];
+        buffer.get(bytes);
+        try {
+            return InetAddresses.toAddrString(InetAddress.getByAddress(bytes));
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("Corrupted stale FIB index entry", e);
+        }
+    }
+
+    private final class RdTable {
+        // packed keys, entry i spanning keyOffsets[i] to keyOffsets[i + 1]
+        private ByteBuffer keys;
+        private int[] keyOffsets = new int[INITIAL_CAPACITY + 1];
+        private int[] labels = new int[INITIAL_CAPACITY];
+        private final BitSet labelled = new BitSet();
+        private final BitSet stale = new BitSet();
+        // open addressing table of entry index + 1, 0 being a free slot
+        private int[] slots = new int[2 * INITIAL_CAPACITY];
+        private int size;
+        private int staleCount;
+
+        RdTable() {
+            keys = allocate(INITIAL_CAPACITY * 16);
+        }
+
+        synchronized void add(byte[] key, long label) {
+            int index = find(key);
+            if (index < 0) {
+                index = append(key);
+            }
+            if (label != NO_LABEL) {
+                labels[index] = (int) label;
+                labelled.set(index);
+            } else {
+                labelled.clear(index);
+            }
+            if (!stale.get(index)) {
+                stale.set(index);
+                staleCount++;
+            }
+        }
+
+        synchronized long markFresh(byte[] key) {
+            int index = find(key);
+            if (index < 0 || !stale.get(index) || !labelled.get(index)) {
+                return NO_LABEL;
+            }
+            stale.clear(index);
+            staleCount--;
+            return Integer.toUnsignedLong(labels[index]);
+        }
+
+        synchronized int staleCount() {
+            return staleCount;
+        }
+
+        synchronized int nextStale(int from) {
+            return stale.nextSetBit(from);
+        }
+
+        synchronized String[] decode(int index) {
+            return StaleFibIndex.decode(keys, keyOffsets[index]);
+        }
+
+        private int find(byte[] key) {
+            int mask = slots.length - 1;
+            for (int slot = hash(key) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+                int index = slots[slot] - 1;
+                if (matches(index, key)) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+
+        private boolean matches(int index, byte[] key) {
+            int offset = keyOffsets[index];
+            if (keyOffsets[index + 1] - offset != key.length) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (keys.get(offset + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int append(byte[] key) {
+            if (size == labels.length) {
+                labels = Arrays.copyOf(labels, 2 * size);
+                keyOffsets = Arrays.copyOf(keyOffsets, 2 * size + 1);
+            }
+            int offset = keyOffsets[size];
+            if (keys.capacity() - offset < key.length) {
+                ByteBuffer grown = allocate(Math.max(2 * keys.capacity(), offset + key.length));
+                ByteBuffer used = keys.duplicate();
+                used.position(0).limit(offset);
+                grown.put(used);
+                keys = grown;
+            }
+            ByteBuffer target = keys.duplicate();
+            target.position(offset);
+            target.put(key);
+            int index = size++;
+            keyOffsets[size] = offset + key.length;
+            if (2 * size > slots.length) {
+                rehash();
+            } else {
+                insert(index, key);
+            }
+            return index;
+        }
+
+        private void rehash() {
+            slots = new int[2 * slots.length];
+            for (int index = 0; index < size; index++) {
+                int offset = keyOffsets[index];
+                byte[] key = new byte[keyOffsets[index + 1] - offset];
+                ByteBuffer source = keys.duplicate();
+                source.position(offset);
+                source.get(key);
+                insert(index, key);
+            }
+        }
+
+        private void insert(int index, byte[] key) {
+            int mask = slots.length - 1;
+            int slot = hash(key) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = index + 1;
+        }
+
+        private int hash(byte[] key) {
+            int hash = Arrays.hashCode(key);
+            return hash ^ hash >>> 16;
+        }
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
@@ -59,29 +59,17 @@ public class BgpAlarms implements Runnable, AutoCloseable {
     @Override
     public void run() {
         LOG.debug("Fetching neighbor status' from BGP");
-        BgpCounters.resetFile(BgpCounters.BGP_VPNV4_SUMMARY_FILE);
-        BgpCounters.resetFile(BgpCounters.BGP_VPNV6_SUMMARY_FILE);
-        BgpCounters.resetFile(BgpCounters.BGP_EVPN_SUMMARY_FILE);
         Map<String, String> neighborStatusMap = new HashMap<>();
 
-        if (bgpMgr.getBgpCounters() != null) {
-            bgpMgr.getBgpCounters().fetchCmdOutputs(BgpCounters.BGP_VPNV4_SUMMARY_FILE,
-                    "show ip bgp vpnv4 all summary");
+        final BgpCounters bgpCounters = bgpMgr.getBgpCounters();
+        if (bgpCounters != null) {
             if (bgpMgr.getConfig() != null) {
                 nbrList = new ArrayList<Neighbors>(bgpMgr.getConfig().getNeighborsContainer()
                         .nonnullNeighbors().values());
             }
-            BgpCounters.parseIpBgpVpnv4AllSummary(neighborStatusMap);
-
-            bgpMgr.getBgpCounters().fetchCmdOutputs(BgpCounters.BGP_VPNV6_SUMMARY_FILE,
-                    "show ip bgp vpnv6 all summary");
-
-            BgpCounters.parseIpBgpVpnv6AllSummary(neighborStatusMap);
-
-            bgpMgr.getBgpCounters().fetchCmdOutputs(BgpCounters.BGP_EVPN_SUMMARY_FILE,
-                    "show bgp l2vpn evpn all summary");
-
-            BgpCounters.parseBgpL2vpnEvpnAllSummary(neighborStatusMap);
+            bgpCounters.fetchIpBgpVpnv4AllSummary(neighborStatusMap);
+            bgpCounters.fetchIpBgpVpnv6AllSummary(neighborStatusMap);
+            bgpCounters.fetchBgpL2vpnEvpnAllSummary(neighborStatusMap);
 
             processNeighborStatusMap(neighborStatusMap, nbrList);
         }
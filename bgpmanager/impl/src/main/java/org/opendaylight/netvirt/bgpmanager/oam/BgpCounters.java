@@ -7,29 +7,16 @@
  */
 package org.opendaylight.netvirt.bgpmanager.oam;
 
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
-import java.net.UnknownHostException;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Scanner;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import javax.inject.Inject;
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import org.opendaylight.infrautils.metrics.Counter;
 import org.opendaylight.infrautils.metrics.Labeled;
 import org.opendaylight.infrautils.metrics.MetricDescriptor;
@@ -38,150 +25,68 @@ import org.opendaylight.netvirt.bgpmanager.thrift.gen.af_afi;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-@SuppressFBWarnings("DM_DEFAULT_ENCODING")
+/**
+ * Collects the BGP counters from the vty of the BGP daemon.
+ *
+ * <p>All the show commands run over one persistent {@link VtySession}, and their output is parsed line by line as
+ * it is read from the socket. The counters are kept in the {@link MetricProvider}, per neighbor and per RD, and are
+ * only moved by the difference with their last value.
+ */
 public class BgpCounters implements Runnable, AutoCloseable {
-    public static final String BGP_VPNV6_FILE = "cmd_ip_bgp_vpnv6_all.txt";
-    public static final String BGP_VPNV4_FILE = "cmd_ip_bgp_vpnv4_all.txt";
-    public static final String BGP_EVPN_FILE = "cmd_bgp_l2vpn_evpn_all.txt";
-    public static final String BGP_VPNV6_SUMMARY_FILE = "cmd_ip_bgp_vpnv6_all_summary.txt";
-    public static final String BGP_VPNV4_SUMMARY_FILE = "cmd_ip_bgp_vpnv4_all_summary.txt";
-    public static final String BGP_EVPN_SUMMARY_FILE = "cmd_bgp_evpn_all_summary.txt";
-    public static final String BFD_NBR_DETAIL_FILE = "cmd_bfd_neighbors_details.txt";
-
-
     // BFD related constants
-    public static final int LINE = 1; // line where the ip address of neigbor present after "NeighbroAddr"
     public static final int NBR_IP_WORD_INDEX = 1; // word where the ip address is present (count start from 0)
     public static final int RX_COUNT_WORD_INDEX = 1; // word where the Rx Count is present after split :
     public static final int TX_COUNT_WORD_INDEX = 1; // word where the Tx Count is present after split :
 
     private static final Logger LOG = LoggerFactory.getLogger(BgpCounters.class);
 
-    private final Map<String, String> totalPfxMap = new ConcurrentHashMap<>();
-    private final Map<String, String> ipv4PfxMap = new ConcurrentHashMap<>();
-    private final Map<String, String> ipv6PfxMap = new ConcurrentHashMap<>();
+    private static final String VPNV4_SUFFIX = "_VPNV4";
+    private static final String VPNV6_SUFFIX = "_VPNV6";
+    private static final String EVPN_SUFFIX = "_EVPN";
 
-    private final String bgpSdncMip;
+    private final VtySession vtySession;
     private final MetricProvider metricProvider;
 
+    // route count per RD of the last collection, so that the counters of the RDs which went away are cleared
+    private Map<String, Long> rdRouteCounts = new HashMap<>();
+
     @Inject
     public BgpCounters(String mipAddress, final MetricProvider metricProvider) {
+        this(new VtySession(mipAddress, VtySession.VTY_PORT, BgpConstants.QBGP_VTY_PASSWORD), metricProvider);
+    }
+
+    BgpCounters(VtySession vtySession, MetricProvider metricProvider) {
+        this.vtySession = vtySession;
         this.metricProvider = metricProvider;
-        this.bgpSdncMip = mipAddress;
     }
 
     @Override
     public void close() {
+        vtySession.close();
     }
 
     @Override
-    public void run() {
+    public synchronized void run() {
         LOG.debug("Fetching counters from BGP");
-        resetCounters();
-        fetchCmdOutputs("cmd_ip_bgp_summary.txt", "show ip bgp summary");
-        fetchCmdOutputs("cmd_bgp_ipv4_unicast_statistics.txt", "show bgp ipv4 unicast statistics");
-        fetchCmdOutputs(BGP_VPNV4_FILE, "show ip bgp vpnv4 all");
-        fetchCmdOutputs(BGP_VPNV6_FILE, "show ip bgp vpnv6 all");
-        fetchCmdOutputs(BGP_EVPN_FILE, "show bgp l2vpn evpn all");
-        fetchCmdOutputs(BFD_NBR_DETAIL_FILE, "show bgp bfd neighbors details");
-
-        parseIpBgpSummary();
-        parseIpBgpVpnv4All();
-        parseIpBgpVpnv6All();
-        parseBgpL2vpnEvpnAll();
-        parseBfdNbrsDetails();
+        Map<String, Long> routeCounts = new HashMap<>();
+        if (execute("show ip bgp summary", new NeighborPacketCountParser())
+                && execute("show ip bgp vpnv4 all", new RouteCountParser(VPNV4_SUFFIX, routeCounts))
+                && execute("show ip bgp vpnv6 all", new RouteCountParser(VPNV6_SUFFIX, routeCounts))
+                && execute("show bgp l2vpn evpn all", new RouteCountParser(EVPN_SUFFIX, routeCounts))) {
+            updateRouteCounters(routeCounts);
+            execute("show bgp bfd neighbors details", new BfdCountParser());
+        }
         LOG.debug("Finished updating the counters from BGP");
     }
 
-    void fetchCmdOutputs(String filename, String cmdName) {
-        try (Socket socket = new Socket(bgpSdncMip, 2605);
-             PrintWriter toRouter = new PrintWriter(socket.getOutputStream(), true);
-             BufferedReader fromRouter = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-             BufferedWriter toFile = new BufferedWriter(new FileWriter(filename, StandardCharsets.UTF_8, true))) {
-            socket.setSoTimeout(2 * 1000);
-
-            // Wait for the password prompt
-            StringBuilder sb = new StringBuilder();
-            int read;
-            char[] cbuf = new char[10];
-            while (!sb.toString().contains("Password:")) {
-                if ((read = fromRouter.read(cbuf)) == -1) {
-                    LOG.error("Connection closed by BGPd.");
-                    return;
-                }
-                sb.append(cbuf, 0, read);
-            }
-
-            // Send the password
-            toRouter.println(BgpConstants.QBGP_VTY_PASSWORD);
-
-            // Wait for the prompt (ending with '>' or '#')
-            sb = new StringBuilder();
-            String prompt = null;
-            while (prompt == null) {
-                switch (read = fromRouter.read()) {
-                    case -1:
-                        LOG.error("Connection closed by BGPd, read {}", sb.toString());
-                        return;
-                    case '>':
-                        // Fall through
-                    case '#':
-                        sb.append((char) read);
-                        prompt = sb.toString().trim();
-                        break;
-                    default:
-                        sb.append((char) read);
-                        break;
-                }
-
-            }
-
-            toRouter.flush();
-
-            // Wait for '#'
-            while ((read = fromRouter.read()) != '#') {
-                if (read == -1) {
-                    LOG.error("Connection closed by BGPd, read {}", sb.toString());
-                    return;
-                }
-            }
-
-
-            // Send the command
-            toRouter.println(cmdName);
-            toRouter.flush();
-
-
-            // Read all the router's output
-            sb = new StringBuilder();
-            cbuf = new char[1024];
-            while ((read = fromRouter.read(cbuf)) != -1) {
-                sb.append(cbuf, 0, read);
-                if (sb.toString().trim().endsWith(prompt)) {
-                    break;
-                }
-            }
-
-            // Only keep output up to the last prompt
-            int lastPromptIndex = sb.lastIndexOf(prompt);
-            if (lastPromptIndex >= 0) {
-                sb.delete(lastPromptIndex, sb.length());
-            }
-
-            // Store in the file
-            toFile.write(sb.toString().trim());
-            socket.close();
-            toFile.flush();
-            toFile.close();
-            toRouter.flush();
-            toRouter.close();
-            fromRouter.close();
-        } catch (UnknownHostException e) {
-            LOG.info("Unknown host exception occured while socket creation {} ", bgpSdncMip);
-        } catch (SocketTimeoutException e) {
-            LOG.info("Socket timeout Exception occured while socket creation");
+    private boolean execute(String command, Consumer<String> parser) {
+        try {
+            vtySession.execute(command, parser);
+            return true;
         } catch (IOException e) {
-            LOG.error("I/O error ip {} {}",bgpSdncMip, e.getMessage());
+            LOG.info("execute : Could not run \"{}\" on BGPd {}: {}", command, vtySession.getHost(),
+                e.getMessage());
+            return false;
         }
     }
 
@@ -205,7 +110,7 @@ public class BgpCounters implements Runnable, AutoCloseable {
     }
 
     /*
-     * The below function parses the output of "show ip bgp summary" saved in a file.
+     * The below parser handles the output of "show ip bgp summary".
      * Below is the snippet for the same :-
         <output>
         BGP router identifier 10.183.254.53, local AS number 101
@@ -216,45 +121,42 @@ public class BgpCounters implements Runnable, AutoCloseable {
         Total number of neighbors 1
         </output>
      */
-
-    private void parseIpBgpSummary() {
-        File file = new File("cmd_ip_bgp_summary.txt");
-
-        try (Scanner scanner = new Scanner(file)) {
-            boolean startEntries = false;
-            while (scanner.hasNextLine()) {
-                String str = scanner.nextLine();
-                if (str.contains("State/PfxRcd")) {
-                    startEntries = true;
-                } else if (startEntries) {
-                    String[] result = str.split("\\s+");
-                    if (result.length < 5) {
-                        return;
-                    }
-                    String strIp = result[0].trim();
-                    if (!validate(strIp, af_afi.AFI_IP)) {
-                        return;
-                    }
-                    final String as = result[2];
-                    final String rx = result[3];
-                    final String tx = result[4];
-
-                    Counter counter = getCounter(BgpConstants.BGP_COUNTER_NBR_PKTS_RX, as,
-                            rx, null, strIp, null, "bgp-peer");
-                    updateCounter(counter, Long.parseLong(rx));
-
-                    counter = getCounter(BgpConstants.BGP_COUNTER_NBR_PKTS_TX, as,
-                            null, tx, strIp, null, "bgp-peer");
-                    updateCounter(counter, Long.parseLong(tx));
-                }
+    private final class NeighborPacketCountParser implements Consumer<String> {
+        private boolean startEntries;
+        private boolean done;
+
+        @Override
+        public void accept(String str) {
+            if (done) {
+                return;
             }
-        } catch (IOException e) {
-            LOG.error("Could not process the file {}", file.getAbsolutePath());
+            if (!startEntries) {
+                startEntries = str.contains("State/PfxRcd");
+                return;
+            }
+            String[] result = str.split("\\s+");
+            if (result.length < 5 || !validate(result[0].trim(), af_afi.AFI_IP)) {
+                done = true;
+                return;
+            }
+            final String strIp = result[0].trim();
+            final String as = result[2];
+            final String rx = result[3];
+            final String tx = result[4];
+
+            Counter counter = getCounter(BgpConstants.BGP_COUNTER_NBR_PKTS_RX, as,
+                    rx, null, strIp, null, "bgp-peer");
+            updateCounter(counter, Long.parseLong(rx));
+
+            counter = getCounter(BgpConstants.BGP_COUNTER_NBR_PKTS_TX, as,
+                    null, tx, strIp, null, "bgp-peer");
+            updateCounter(counter, Long.parseLong(tx));
         }
     }
 
     /*
-     *  The below function parses the output of "show ip bgp vpnv4 all" saved in a file.
+     *  The below parser counts the routes per RD in the output of "show ip bgp vpnv4 all", "show ip bgp vpnv6 all"
+     *  and "show bgp l2vpn evpn all". The routes of an RD run up to the next RD or an empty line.
      *  Below is the sample output for the same :-
      *  show ip bgp vpnv4 all
         <output>
@@ -271,153 +173,101 @@ public class BgpCounters implements Runnable, AutoCloseable {
         *>i17.18.17.17/32   10.183.181.25            0    100      0 ?
         </output>
      */
-    private void parseIpBgpVpnv4All() {
-        File file = new File(BGP_VPNV4_FILE);
-        List<String> inputStrs = new ArrayList<>();
-
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                inputStrs.add(scanner.nextLine());
-            }
-        } catch (IOException e) {
-            LOG.error("Could not process the file {}", file.getAbsolutePath());
-            return;
+    private static final class RouteCountParser implements Consumer<String> {
+        private final String afiSuffix;
+        private final Map<String, Long> routeCounts;
+        @Nullable
+        private String rd;
+
+        RouteCountParser(String afiSuffix, Map<String, Long> routeCounts) {
+            this.afiSuffix = afiSuffix;
+            this.routeCounts = routeCounts;
         }
-        for (int i = 0; i < inputStrs.size(); i++) {
-            String instr = inputStrs.get(i);
-            if (instr.contains("Route Distinguisher")) {
-                String[] result = instr.split(":");
-                String rd = result[1].trim() + "_" + result[2].trim();
-                i = processRouteCount(rd + "_VPNV4", i + 1, inputStrs);
-            }
-        }
-        long bgpIpv4Pfxs = calculateBgpIpv4Prefixes();
-        LOG.trace("BGP IPV4 Prefixes:{}",bgpIpv4Pfxs);
-        Counter counter = getCounter(BgpConstants.BGP_COUNTER_IPV4_PFX, null, null, null,
-                null, null, "bgp-peer");
-        updateCounter(counter, bgpIpv4Pfxs);
-    }
-
-    /*
-     *  The below function parses the output of "show ip bgp vpnv6 all" saved in a file.
-     *  Below is the sample output for the same :-
-     *  show ip bgp vpnv6 all
-        <output>
-        BGP table version is 0, local router ID is 10.183.181.21
-        ......
-        Route Distinguisher: 100:1
-        *>i2001:db8:0:2::/128   10.183.181.25            0    100      0 ?
-        *>i2001:db8:0:2::/128   10.183.181.25            0    100      0 ?
-        *>i2001:db8:0:2::/128   10.183.181.25            0    100      0 ?
-        *>i2001:db8:0:2::/128   10.183.181.25            0    100      0 ?
-        Route Distinguisher: 100:2
-        *>i2001:db9:0:3::/128   10.183.181.25            0    100      0 ?
-        *>i2001:db9:0:3::/128   10.183.181.25            0    100      0 ?
-        *>i2001:db9:0:3::/128   10.183.181.25            0    100      0 ?
-        </output>
-     */
-    private void parseIpBgpVpnv6All() {
-        File file = new File(BGP_VPNV6_FILE);
-        List<String> inputStrs = new ArrayList<>();
 
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                inputStrs.add(scanner.nextLine());
-            }
-        } catch (IOException e) {
-            LOG.error("Could not process the file {}", file.getAbsolutePath());
-            return;
-        }
-        for (int i = 0; i < inputStrs.size(); i++) {
-            String instr = inputStrs.get(i);
-            if (instr.contains("Route Distinguisher")) {
-                String[] result = instr.split(":");
-                String rd = result[1].trim() + "_" + result[2].trim();
-                i = processRouteCount(rd + "_VPNV6", i + 1, inputStrs);
+        @Override
+        public void accept(String str) {
+            if (str.contains("Route Distinguisher")) {
+                String[] result = str.split(":");
+                rd = result.length > 2 ? result[1].trim() + "_" + result[2].trim() + afiSuffix : null;
+                if (rd != null) {
+                    routeCounts.putIfAbsent(rd, 0L);
+                }
+            } else if (str.trim().isEmpty()) {
+                rd = null;
+            } else if (rd != null) {
+                routeCounts.merge(rd, 1L, Long::sum);
             }
         }
-        long bgpIpv6Pfxs = calculateBgpIpv6Prefixes();
-        LOG.trace("BGP IPV6 Prefixes:{}",bgpIpv6Pfxs);
-        Counter counter = getCounter(BgpConstants.BGP_COUNTER_IPV6_PFX, null, null, null,
-                null, null, "bgp-peer");
-        updateCounter(counter, bgpIpv6Pfxs);
     }
 
-    private void parseBgpL2vpnEvpnAll() {
-        File file = new File(BGP_EVPN_FILE);
-        List<String> inputStrs = new ArrayList<>();
-
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                inputStrs.add(scanner.nextLine());
+    private void updateRouteCounters(Map<String, Long> routeCounts) {
+        long bgpIpv4Pfxs = 0;
+        long bgpIpv6Pfxs = 0;
+        long bgpTotalPfxs = 0;
+        for (Map.Entry<String, Long> entry : routeCounts.entrySet()) {
+            String rd = entry.getKey();
+            long routeCount = entry.getValue();
+            if (rd.endsWith(VPNV4_SUFFIX)) {
+                bgpIpv4Pfxs += routeCount;
+            } else if (rd.endsWith(VPNV6_SUFFIX)) {
+                bgpIpv6Pfxs += routeCount;
             }
-        } catch (IOException e) {
-            LOG.error("Could not process the file {}", file.getAbsolutePath());
-            return;
-        }
-        for (int i = 0; i < inputStrs.size(); i++) {
-            String instr = inputStrs.get(i);
-            if (instr.contains("Route Distinguisher")) {
-                String[] result = instr.split(":");
-                String rd = result[1].trim() + "_" + result[2].trim();
-                i = processRouteCount(rd + "_EVPN", i + 1, inputStrs);
-                LOG.trace("BGP Total Prefixes:{}", i);
+            bgpTotalPfxs += routeCount;
+            if (!Long.valueOf(routeCount).equals(rdRouteCounts.remove(rd))) {
+                updateCounter(getCounter(BgpConstants.BGP_COUNTER_RD_ROUTE_COUNT, null, null, null,
+                        null, rd, "bgp-peer"), routeCount);
             }
         }
-        /*populate the "BgpTotalPrefixes" counter by combining
-        the prefixes that are calculated per RD basis*/
-        long bgpTotalPfxs = calculateBgpTotalPrefixes();
-        LOG.trace("BGP Total Prefixes:{}",bgpTotalPfxs);
-        Counter counter = getCounter(BgpConstants.BGP_COUNTER_TOTAL_PFX, null, null, null,
-                null, null, "bgp-peer");
-        updateCounter(counter, bgpTotalPfxs);
+        for (String staleRd : rdRouteCounts.keySet()) {
+            updateCounter(getCounter(BgpConstants.BGP_COUNTER_RD_ROUTE_COUNT, null, null, null,
+                    null, staleRd, "bgp-peer"), 0);
+        }
+        rdRouteCounts = routeCounts;
+
+        LOG.trace("BGP IPV4 Prefixes:{} IPV6 Prefixes:{} Total Prefixes:{}", bgpIpv4Pfxs, bgpIpv6Pfxs,
+            bgpTotalPfxs);
+        updateCounter(getCounter(BgpConstants.BGP_COUNTER_IPV4_PFX, null, null, null,
+                null, null, "bgp-peer"), bgpIpv4Pfxs);
+        updateCounter(getCounter(BgpConstants.BGP_COUNTER_IPV6_PFX, null, null, null,
+                null, null, "bgp-peer"), bgpIpv6Pfxs);
+        updateCounter(getCounter(BgpConstants.BGP_COUNTER_TOTAL_PFX, null, null, null,
+                null, null, "bgp-peer"), bgpTotalPfxs);
     }
 
-    private void parseBfdNbrsDetails() {
-        File file = new File(BFD_NBR_DETAIL_FILE);
-        List<String> inputStrs = new ArrayList<>();
-
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                inputStrs.add(scanner.nextLine());
+    /*
+     * The below parser handles the output of "show bgp bfd neighbors details", the line following the
+     * "NeighAddr ... State" header holding the neighbor address, followed by its "Rx Count:" and "Tx Count:" lines.
+     */
+    private final class BfdCountParser implements Consumer<String> {
+        private boolean expectNeighbor;
+        private boolean done;
+        @Nullable
+        private String neighborIPstr;
+        @Nullable
+        private String previous;
+
+        @Override
+        public void accept(String instr) {
+            if (done) {
+                return;
             }
-        } catch (IOException e) {
-            LOG.error("Could not process the file {}", file.getAbsolutePath());
-            return;
-        }
-        String neighborIPstr = null;
-        for (int i = 0; i < inputStrs.size(); i++) {
-            String instr = inputStrs.get(i);
-            if (instr.contains("NeighAddr") && instr.contains("State")) {
-                neighborIPstr = inputStrs.get(i + LINE).split("\\s+")[NBR_IP_WORD_INDEX];
+            if (expectNeighbor) {
+                expectNeighbor = false;
+                String[] words = instr.split("\\s+");
+                neighborIPstr = words.length > NBR_IP_WORD_INDEX ? words[NBR_IP_WORD_INDEX] : "";
                 if (!validate(neighborIPstr, af_afi.AFI_IP)) {
                     LOG.error("Invalid neighbor IP {}", neighborIPstr);
+                    done = true;
                     return;
                 }
             }
-            if ((neighborIPstr != null) && inputStrs.get(i).contains("Rx Count:")
-                    && inputStrs.get(i + 1).contains("Tx Count:")) {
-                //Rx Count:
-                long rxCount = 0;
-                try {
-                    rxCount = Long.parseLong(inputStrs.get(i).split(":")[RX_COUNT_WORD_INDEX].trim());
-                }
-                catch (NumberFormatException e) {
-                    LOG.error("Rx count Number format exception: {}",
-                        inputStrs.get(i + 1).split(":")[RX_COUNT_WORD_INDEX].trim());
-                    rxCount = 0;
-                }
-
-                //Tx Count:
-                long txCount = 0;
-                try {
-                    txCount = Long.parseLong(inputStrs.get(i + 1).split(":")
-                                  [TX_COUNT_WORD_INDEX].trim());
-                } catch (NumberFormatException e) {
-                    LOG.error("Tx count Number format exception: {}",
-                        inputStrs.get(i + 1).split(":")[TX_COUNT_WORD_INDEX].trim());
-                    txCount = 0;
-                }
+            if (instr.contains("NeighAddr") && instr.contains("State")) {
+                expectNeighbor = true;
+            }
+            if (neighborIPstr != null && previous != null && previous.contains("Rx Count:")
+                    && instr.contains("Tx Count:")) {
+                long rxCount = parseCount(previous, RX_COUNT_WORD_INDEX);
+                long txCount = parseCount(instr, TX_COUNT_WORD_INDEX);
                 Counter counter = getCounter(BgpConstants.BFD_COUNTER_NBR_PKTS_RX, null,
                         Long.toString(rxCount), null, neighborIPstr, null, "bfd-peer");
                 updateCounter(counter, rxCount);
@@ -429,148 +279,91 @@ public class BgpCounters implements Runnable, AutoCloseable {
                 //Counter fetching is done, search for next BFD Neighbor IP
                 neighborIPstr = null;
             }
+            previous = instr;
         }
-    }
-
-    private int processRouteCount(String rd, int startIndex, List<String> inputStrs) {
-        int num = startIndex;
-        long routeCount = 0;
 
-        String bgpRdRouteCountKey = BgpConstants.BGP_COUNTER_RD_ROUTE_COUNT + rd;
-        Counter counter = getCounter(BgpConstants.BGP_COUNTER_RD_ROUTE_COUNT, null, null, null,
-                null, rd, "bgp-peer");
-        for (String str = inputStrs.get(num); str != null && !str.trim().equals("")
-                && num < inputStrs.size();
-                str = inputStrs.get(num)) {
-            if (str.contains("Route Distinguisher")) {
-                totalPfxMap.put(bgpRdRouteCountKey, Long.toString(routeCount));
-                updateCounter(counter, routeCount);
-                return num - 1;
-            }
-            else if (rd.contains("VPNV4")) {
-                ipv4PfxMap.put(bgpRdRouteCountKey, Long.toString(++routeCount));
-                updateCounter(counter, routeCount);
-            } else if (rd.contains("VPNV6")) {
-                ipv6PfxMap.put(bgpRdRouteCountKey, Long.toString(++routeCount));
-                updateCounter(counter, routeCount);
-            }
-            num++;
-            if (num == inputStrs.size()) {
-                break;
+        private long parseCount(String str, int wordIndex) {
+            String[] words = str.split(":");
+            try {
+                return Long.parseLong(words[wordIndex].trim());
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                LOG.error("Count number format exception: {}", str);
+                return 0;
             }
         }
-        if (routeCount == 0) {
-            // Erroneous condition, should never happen.
-            // Implies that the file contains marker for RD  without routes.
-            // will form an infinite loop if not broken
-            // by sending a big number back.
-            return Integer.MAX_VALUE;
-        }
-        updateCounter(counter, routeCount);
-        return num - 1;
-    }
-
-    private Long calculateBgpIpv4Prefixes() {
-        return ipv4PfxMap.entrySet().stream()
-                .map(Map.Entry::getValue).mapToLong(Long::parseLong).sum();
-    }
-
-    private Long calculateBgpIpv6Prefixes() {
-        return ipv6PfxMap.entrySet().stream()
-                .map(Map.Entry::getValue).mapToLong(Long::parseLong).sum();
-    }
-
-    private Long calculateBgpTotalPrefixes() {
-        return totalPfxMap.entrySet().stream()
-                .map(Map.Entry::getValue).mapToLong(Long::parseLong).sum();
     }
 
-    private void resetCounters() {
-        totalPfxMap.clear();
-        ipv6PfxMap.clear();
-        ipv4PfxMap.clear();
-        resetFile("cmd_ip_bgp_summary.txt");
-        resetFile("cmd_bgp_ipv4_unicast_statistics.txt");
-        resetFile(BGP_VPNV4_FILE);
-        resetFile(BGP_VPNV6_FILE);
-        resetFile(BGP_EVPN_FILE);
-        resetFile(BFD_NBR_DETAIL_FILE);
-    }
+    /*
+     * The below parser collects the received prefix count (the State/PfxRcd column) of each neighbor of a
+     * "show ip bgp vpnv4 all summary", "show ip bgp vpnv6 all summary" or "show bgp l2vpn evpn all summary".
+     */
+    private static final class PrefixCountSummaryParser implements Consumer<String> {
+        private final Map<String, String> countMap;
+        private final af_afi afi;
+        private boolean startEntries;
+        private boolean done;
+
+        PrefixCountSummaryParser(Map<String, String> countMap, af_afi afi) {
+            this.countMap = countMap;
+            this.afi = afi;
+        }
 
-    static void resetFile(String fileName) {
-        File file = new File(fileName);
-        if (!file.delete()) {
-            try (PrintWriter pw = new PrintWriter(file)) {
-                pw.print("");
-            } catch (FileNotFoundException e) {
-                // Ignored
+        @Override
+        public void accept(String str) {
+            LOG.trace("str is:: {}", str);
+            if (done) {
+                return;
             }
-        }
-    }
+            if (!startEntries) {
+                startEntries = str.contains("State/PfxRcd");
+                return;
+            }
+            String[] result = str.split("\\s+");
+            if (result.length > 9) {
+                String strIp = result[0].trim();
+                LOG.trace("strIp {} ", strIp);
 
-    static Map<String, String> parseIpBgpVpnAllSummary(Map<String, String> countMap,
-                                                       String cmdFile,
-                                                       af_afi afi) {
-        File file = new File(cmdFile);
-
-        try (Scanner scanner = new Scanner(file)) {
-            boolean startEntries = false;
-            while (scanner.hasNextLine()) {
-                String str = scanner.nextLine();
-                LOG.trace("str is:: {}", str);
-                if (str.contains("State/PfxRcd")) {
-                    startEntries = true;
-                } else if (startEntries) {
-                    String[] result = str.split("\\s+");
-                    if (result.length > 9) {
-                        String strIp = result[0].trim();
-                        LOG.trace("strIp {} ", strIp);
-
-                        if (!validate(strIp, afi)) {
-                            break;
-                        }
-                        String statePfxRcvd = result[9];
-                        countMap.put(strIp, statePfxRcvd);
-                    }
+                if (!validate(strIp, afi)) {
+                    done = true;
+                    return;
                 }
+                String statePfxRcvd = result[9];
+                countMap.put(strIp, statePfxRcvd);
             }
-        } catch (IOException e) {
-            LOG.trace("Could not process the file {}", file.getAbsolutePath());
-            return null;
         }
+    }
 
+    private Map<String, String> fetchIpBgpVpnAllSummary(Map<String, String> countMap, String cmdName, af_afi afi) {
+        execute(cmdName, new PrefixCountSummaryParser(countMap, afi));
         return countMap;
     }
 
-    static Map<String, String> parseIpBgpVpnv4AllSummary(Map<String, String> countMap) {
-        return BgpCounters.parseIpBgpVpnAllSummary(countMap,
-                                                   BGP_VPNV4_SUMMARY_FILE,
-                                                   af_afi.AFI_IP);
+    Map<String, String> fetchIpBgpVpnv4AllSummary(Map<String, String> countMap) {
+        return fetchIpBgpVpnAllSummary(countMap, "show ip bgp vpnv4 all summary", af_afi.AFI_IP);
     }
 
-    static Map<String, String> parseIpBgpVpnv6AllSummary(Map<String, String> countMap) {
-        return BgpCounters.parseIpBgpVpnAllSummary(countMap,
-                                                   BGP_VPNV6_SUMMARY_FILE,
-                                                   af_afi.AFI_IP);
+    Map<String, String> fetchIpBgpVpnv6AllSummary(Map<String, String> countMap) {
+        return fetchIpBgpVpnAllSummary(countMap, "show ip bgp vpnv6 all summary", af_afi.AFI_IP);
     }
 
-    static Map<String, String> parseBgpL2vpnEvpnAllSummary(Map<String, String> countMap) {
-        return BgpCounters.parseIpBgpVpnAllSummary(countMap,
-                                                   BGP_EVPN_SUMMARY_FILE,
-                                                   af_afi.AFI_IP);
+    Map<String, String> fetchBgpL2vpnEvpnAllSummary(Map<String, String> countMap) {
+        return fetchIpBgpVpnAllSummary(countMap, "show bgp l2vpn evpn all summary", af_afi.AFI_IP);
     }
 
     /**
      * This method updates Counter values.
+     * The counter is moved by the difference with its current value, so it is never seen reset to zero.
      * @param counter object of the Counter
      * @param counterValue value of Counter
      */
     private void updateCounter(Counter counter, long counterValue) {
         try {
-            /*Reset counter to zero*/
-            counter.decrement(counter.get());
-            /*Set counter to specified value*/
-            counter.increment(counterValue);
+            long delta = counterValue - counter.get();
+            if (delta > 0) {
+                counter.increment(delta);
+            } else if (delta < 0) {
+                counter.decrement(-delta);
+            }
         } catch (IllegalStateException e) {
             LOG.error("Exception occured during updating the Counter {}", counter, e);
         }
@@ -588,7 +381,7 @@ public class BgpCounters implements Runnable, AutoCloseable {
      * @param rdValue rd value.
      * @return counter object.
      */
-    private Counter getCounter(String counterName, String asValue,
+    Counter getCounter(String counterName, String asValue,
             String rxValue, String txValue, String neighborIp, String rdValue, String peerType) {
         String counterTypeEntityCounter = "entitycounter";
         String labelKeyEntityType = "entitytype";
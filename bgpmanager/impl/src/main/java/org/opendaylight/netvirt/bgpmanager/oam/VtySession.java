@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.bgpmanager.oam;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent session to the vty of the BGP daemon.
+ *
+ * <p>The session logs in once and is then reused for every command. The output of a command is streamed line by
+ * line to a consumer as it is read from the socket, up to the next prompt. The session is dropped on any I/O error
+ * and opened again by the next command.
+ */
+final class VtySession implements AutoCloseable {
+    static final int VTY_PORT = 2605;
+
+    private static final Logger LOG = LoggerFactory.getLogger(VtySession.class);
+    private static final int SO_TIMEOUT_MILLIS = 2 * 1000;
+    private static final int BUFFER_SIZE = 4096;
+
+    private final String host;
+    private final int port;
+    private final String password;
+
+    @Nullable
+    private Socket socket;
+    private Reader fromRouter;
+    private Writer toRouter;
+    private String prompt;
+
+    VtySession(String host, int port, String password) {
+        this.host = host;
+        this.port = port;
+        this.password = password;
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    /**
+     * Runs a command, handing each line of its output to the given consumer.
+     *
+     * @throws IOException if the command could not be run, the session is then closed
+     */
+    synchronized void execute(String command, Consumer<String> lineConsumer) throws IOException {
+        try {
+            if (socket == null) {
+                connect();
+            }
+            send(command);
+            readOutput(lineConsumer);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOG.debug("close : Error closing the vty session to {}", host, e);
+            }
+            socket = null;
+        }
+    }
+
+    private void connect() throws IOException {
+        Socket newSocket = new Socket(host, port);
+        socket = newSocket;
+        newSocket.setSoTimeout(SO_TIMEOUT_MILLIS);
+        fromRouter = new BufferedReader(new InputStreamReader(newSocket.getInputStream(), StandardCharsets.UTF_8));
+        toRouter = new OutputStreamWriter(newSocket.getOutputStream(), StandardCharsets.UTF_8);
+
+        // Wait for the password prompt
+        StringBuilder sb = new StringBuilder();
+        while (sb.indexOf("Password:") < 0) {
+            sb.append((char) readChar());
+        }
+        send(password);
+
+        // Wait for the prompt (ending with '>' or '#')
+        sb.setLength(0);
+        int read;
+        do {
+            read = readChar();
+            sb.append((char) read);
+        } while (read != '>' && read != '#');
+        prompt = sb.substring(sb.lastIndexOf("\n") + 1).trim();
+
+        // Without paging, the output of a command always ends with the prompt
+        send("terminal length 0");
+        readOutput(line -> { });
+        LOG.info("connect : Opened vty session to {}:{}", host, port);
+    }
+
+    private void send(String line) throws IOException {
+        toRouter.write(line);
+        toRouter.write('\n');
+        toRouter.flush();
+    }
+
+    private int readChar() throws IOException {
+        int read = fromRouter.read();
+        if (read == -1) {
+            throw new EOFException("Connection closed by BGPd");
+        }
+        return read;
+    }
+
+    private void readOutput(Consumer<String> lineConsumer) throws IOException {
+        StringBuilder line = new StringBuilder();
+        char[] cbuf = new char[BUFFER_SIZE];
+        while (true) {
+            int read = fromRouter.read(cbuf);
+            if (read == -1) {
+                throw new EOFException("Connection closed by BGPd");
+            }
+            for (int i = 0; i < read; i++) {
+                char ch = cbuf[i];
+                if (ch == '\n') {
+                    int length = line.length();
+                    if (length > 0 && line.charAt(length - 1) == '\r') {
+                        line.setLength(length - 1);
+                    }
+                    lineConsumer.accept(line.toString());
+                    line.setLength(0);
+                } else {
+                    line.append(ch);
+                }
+            }
+            // The prompt is the only output not terminated by a new line
+            if (line.length() >= prompt.length() && line.toString().trim().equals(prompt)) {
+                return;
+            }
+        }
+    }
+}
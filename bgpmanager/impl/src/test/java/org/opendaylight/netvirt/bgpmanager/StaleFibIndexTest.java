@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.bgpmanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+import org.opendaylight.yangtools.yang.common.Uint32;
+
+public class StaleFibIndexTest {
+
+    @Test
+    public void testMarkFresh() {
+        StaleFibIndex index = new StaleFibIndex(false);
+        index.add("100:1", "10.1.1.0/24", "192.168.56.101", Uint32.valueOf(1001));
+        index.add("100:1", "10.1.2.0/24", "192.168.56.101", Uint32.valueOf(1002));
+
+        assertEquals(1001, index.markFresh("100:1", "10.1.1.0/24", "192.168.56.101"));
+        // already fresh, unknown prefix, unknown next hop and unknown RD
+        assertEquals(StaleFibIndex.NO_LABEL, index.markFresh("100:1", "10.1.1.0/24", "192.168.56.101"));
+        assertEquals(StaleFibIndex.NO_LABEL, index.markFresh("100:1", "10.1.3.0/24", "192.168.56.101"));
+        assertEquals(StaleFibIndex.NO_LABEL, index.markFresh("100:1", "10.1.2.0/24", "192.168.56.102"));
+        assertEquals(StaleFibIndex.NO_LABEL, index.markFresh("100:2", "10.1.2.0/24", "192.168.56.101"));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testSweepReturnsStaleRoutesAsAdded() {
+        StaleFibIndex index = new StaleFibIndex(true);
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            String prefix = "10." + i / 256 + "." + i % 256 + ".0/24";
+            index.add("100:" + i % 3, prefix, "192.168.56.101", Uint32.valueOf(i));
+            expected.add("100:" + i % 3 + " " + prefix + " 192.168.56.101");
+        }
+        index.add("100:1", "2001:db8::/64", "2001:db8::1", Uint32.valueOf(7));
+        index.add("100:1", "2001:DB8:0::/64", "not-an-ip", Uint32.valueOf(8));
+        index.add("100:1", "1.2.3.4", "5.6.7.8", null);
+        expected.add("100:1 2001:db8::/64 2001:db8::1");
+        expected.add("100:1 2001:DB8:0::/64 not-an-ip");
+        expected.add("100:1 1.2.3.4 5.6.7.8");
+
+        assertEquals(8, index.markFresh("100:1", "2001:DB8:0::/64", "not-an-ip"));
+        expected.remove("100:1 2001:DB8:0::/64 not-an-ip");
+        // no label, left stale
+        assertEquals(StaleFibIndex.NO_LABEL, index.markFresh("100:1", "1.2.3.4", "5.6.7.8"));
+
+        Set<String> swept = new HashSet<>();
+        assertTrue(index.forEachStale((rd, prefix, nextHop) -> swept.add(rd + " " + prefix + " " + nextHop)));
+        assertEquals(expected, swept);
+    }
+
+    @Test
+    public void testSweepStops() {
+        StaleFibIndex index = new StaleFibIndex(false);
+        index.add("100:1", "10.1.1.0/24", "192.168.56.101", Uint32.ONE);
+        index.add("100:1", "10.1.2.0/24", "192.168.56.101", Uint32.ONE);
+        List<String> swept = new ArrayList<>();
+        assertFalse(index.forEachStale((rd, prefix, nextHop) -> swept.add(prefix) && false));
+        assertEquals(1, swept.size());
+    }
+}
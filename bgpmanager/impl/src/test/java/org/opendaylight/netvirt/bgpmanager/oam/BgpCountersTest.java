@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.bgpmanager.oam;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.infrautils.metrics.testimpl.TestMetricProviderImpl;
+
+public class BgpCountersTest {
+    private static final String PASSWORD = "secret";
+    private static final String PROMPT = "bgpd# ";
+    private static final String NEIGHBOR = "10.183.254.76";
+
+    private static final String BGP_SUMMARY = "BGP router identifier 10.183.254.53, local AS number 101\n"
+        + "RIB entries 3, using 336 bytes of memory\n"
+        + "\n"
+        + "Neighbor        V    AS MsgRcvd MsgSent   TblVer  InQ OutQ Up/Down  State/PfxRcd\n"
+        + "10.183.254.76   4   100       3       4        0    0    0 00:01:27        0\n"
+        + "\n"
+        + "Total number of neighbors 1\n";
+    private static final String VPNV4_HEADER = "BGP table version is 0, local router ID is 10.183.181.21\n"
+        + "Status codes: s suppressed, d damped, h history, * valid, > best, i - internal\n"
+        + "\n"
+        + "   Network          Next Hop            Metric LocPrf Weight Path\n";
+    private static final String VPNV4_RD_1 = "Route Distinguisher: 100:1\n"
+        + "*>i15.15.15.15/32   10.183.181.25            0    100      0 ?\n"
+        + "*>i17.18.17.17/32   10.183.181.25            0    100      0 ?\n";
+    private static final String VPNV4_RD_2 = "Route Distinguisher: 100:2\n"
+        + "*>i16.16.16.16/32   10.183.181.25            0    100      0 ?\n";
+    private static final String VPNV6 = "Route Distinguisher: 100:1\n"
+        + "*>i2001:db8:0:2::/128   10.183.181.25            0    100      0 ?\n"
+        + "\n"
+        + "Total number of prefixes 1\n";
+    private static final String EVPN = "Route Distinguisher: 100:3\n"
+        + "*> [2]:[0]:[48]:[fa:16:3e:1b:c2:7f]\n"
+        + "*> [2]:[0]:[48]:[fa:16:3e:1b:c2:80]\n";
+    private static final String BFD_NEIGHBORS = "BFD Peers:\n"
+        + "NeighAddr        LD/RD    Holdown(mult)    State    Int\n"
+        + " 10.183.254.76    1/2      1500(3)          Up       lo\n"
+        + "Rx Count: 25\n"
+        + "Tx Count: 30\n";
+    private static final String VPNV4_SUMMARY = "BGP router identifier 10.183.254.53, local AS number 101\n"
+        + "Neighbor        V         AS MsgRcvd MsgSent   TblVer  InQ OutQ Up/Down  State/PfxRcd\n"
+        + "10.183.254.76   4        100      13      14        0    0    0 00:10:27        5\n"
+        + "10.183.254.77   4        100       0       0        0    0    0 never     Active\n"
+        + "\n"
+        + "Total number of neighbors 2\n";
+
+    private final Map<String, String> outputs = new ConcurrentHashMap<>();
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final AtomicBoolean disconnect = new AtomicBoolean();
+    private ServerSocket serverSocket;
+    private Thread server;
+    private BgpCounters bgpCounters;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        server = new Thread(this::serve, "fake-vty");
+        server.setDaemon(true);
+        server.start();
+        bgpCounters = new BgpCounters(new VtySession(InetAddress.getLoopbackAddress().getHostAddress(),
+            serverSocket.getLocalPort(), PASSWORD), new TestMetricProviderImpl());
+
+        outputs.put("show ip bgp summary", BGP_SUMMARY);
+        outputs.put("show ip bgp vpnv4 all", VPNV4_HEADER + VPNV4_RD_1 + VPNV4_RD_2);
+        outputs.put("show ip bgp vpnv6 all", VPNV6);
+        outputs.put("show bgp l2vpn evpn all", EVPN);
+        outputs.put("show bgp bfd neighbors details", BFD_NEIGHBORS);
+        outputs.put("show ip bgp vpnv4 all summary", VPNV4_SUMMARY);
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        bgpCounters.close();
+        serverSocket.close();
+        server.join(10000);
+    }
+
+    @Test
+    public void testCountersOverOneSession() {
+        bgpCounters.run();
+
+        assertEquals(3, neighborCounter(BgpConstants.BGP_COUNTER_NBR_PKTS_RX));
+        assertEquals(4, neighborCounter(BgpConstants.BGP_COUNTER_NBR_PKTS_TX));
+        assertEquals(2, rdCounter("100_1_VPNV4"));
+        assertEquals(1, rdCounter("100_2_VPNV4"));
+        assertEquals(1, rdCounter("100_1_VPNV6"));
+        assertEquals(2, rdCounter("100_3_EVPN"));
+        assertEquals(3, aggregateCounter(BgpConstants.BGP_COUNTER_IPV4_PFX));
+        assertEquals(1, aggregateCounter(BgpConstants.BGP_COUNTER_IPV6_PFX));
+        assertEquals(6, aggregateCounter(BgpConstants.BGP_COUNTER_TOTAL_PFX));
+        assertEquals(25, bfdCounter(BgpConstants.BFD_COUNTER_NBR_PKTS_RX));
+        assertEquals(30, bfdCounter(BgpConstants.BFD_COUNTER_NBR_PKTS_TX));
+
+        outputs.put("show ip bgp vpnv4 all", VPNV4_HEADER + VPNV4_RD_1);
+        bgpCounters.run();
+
+        assertEquals(2, rdCounter("100_1_VPNV4"));
+        assertEquals(0, rdCounter("100_2_VPNV4"));
+        assertEquals(2, aggregateCounter(BgpConstants.BGP_COUNTER_IPV4_PFX));
+        assertEquals(5, aggregateCounter(BgpConstants.BGP_COUNTER_TOTAL_PFX));
+        assertEquals(1, sessions.get());
+    }
+
+    @Test
+    public void testReconnectsAfterSessionLoss() {
+        bgpCounters.run();
+        disconnect.set(true);
+        outputs.put("show bgp bfd neighbors details", BFD_NEIGHBORS.replace("Rx Count: 25", "Rx Count: 40"));
+
+        bgpCounters.run();
+        assertEquals(25, bfdCounter(BgpConstants.BFD_COUNTER_NBR_PKTS_RX));
+
+        bgpCounters.run();
+        assertEquals(40, bfdCounter(BgpConstants.BFD_COUNTER_NBR_PKTS_RX));
+        assertEquals(2, sessions.get());
+    }
+
+    @Test
+    public void testNeighborSummary() {
+        Map<String, String> expected = new HashMap<>();
+        expected.put("10.183.254.76", "5");
+        expected.put("10.183.254.77", "Active");
+        assertEquals(expected, bgpCounters.fetchIpBgpVpnv4AllSummary(new HashMap<>()));
+    }
+
+    private long neighborCounter(String name) {
+        return bgpCounters.getCounter(name, "100", "", "", NEIGHBOR, null, "bgp-peer").get();
+    }
+
+    private long bfdCounter(String name) {
+        return bgpCounters.getCounter(name, null, "", "", NEIGHBOR, null, "bfd-peer").get();
+    }
+
+    private long rdCounter(String rd) {
+        return bgpCounters.getCounter(BgpConstants.BGP_COUNTER_RD_ROUTE_COUNT, null, null, null, null, rd,
+            "bgp-peer").get();
+    }
+
+    private long aggregateCounter(String name) {
+        return bgpCounters.getCounter(name, null, null, null, null, null, "bgp-peer").get();
+    }
+
+    private void serve() {
+        while (!serverSocket.isClosed()) {
+            try (Socket socket = serverSocket.accept();
+                 BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                 Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+                sessions.incrementAndGet();
+                write(out, "\nHello, this is Quagga\n\nUser Access Verification\n\nPassword: ");
+                if (!PASSWORD.equals(in.readLine())) {
+                    continue;
+                }
+                write(out, "\n" + PROMPT);
+                for (String command = in.readLine(); command != null; command = in.readLine()) {
+                    if (disconnect.getAndSet(false)) {
+                        break;
+                    }
+                    write(out, command + "\n" + outputs.getOrDefault(command, "") + PROMPT);
+                }
+            } catch (IOException e) {
+                // server socket closed
+            }
+        }
+    }
+
+    private static void write(Writer out, String text) throws IOException {
+        out.write(text.replace("\n", "\r\n"));
+        out.flush();
+    }
+}
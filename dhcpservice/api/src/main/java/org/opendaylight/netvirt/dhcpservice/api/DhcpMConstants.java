@@ -39,4 +39,15 @@ public interface DhcpMConstants {
     Uint64 INVALID_DPID = Uint64.ZERO;
     String DHCP_JOB_KEY_PREFIX = "DHCP_";
     int RETRY_COUNT = 6;
+
+    // Workers, and bounded queue, of the DHCP responder stage handling the DHCP packet-ins
+    int DHCP_RESPONDER_WORKERS = Integer.getInteger("dhcp.responder.workers", 4);
+    int DHCP_RESPONDER_QUEUE_SIZE = Integer.getInteger("dhcp.responder.queue.size", 10000);
+
+    // IPs of a DHCP allocation pool each node reserves from IdManager at a time, and serves on its own
+    int DHCP_ALLOCATION_BLOCK_SIZE = Integer.getInteger("dhcp.allocation.block.size", 64);
+
+    // Number of the noisiest DHCP client MACs logged every report interval, none by default
+    int DHCP_NOISY_MAC_TOP_K = Integer.getInteger("dhcp.noisy.mac.top.k", 0);
+    int DHCP_NOISY_MAC_REPORT_SECONDS = Integer.getInteger("dhcp.noisy.mac.report.seconds", 60);
 }
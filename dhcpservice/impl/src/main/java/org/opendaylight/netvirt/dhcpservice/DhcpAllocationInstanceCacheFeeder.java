@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.dhcpservice;
+
+import javax.annotation.PreDestroy;
+import org.opendaylight.infrautils.utils.concurrent.Executors;
+import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
+import org.opendaylight.serviceutils.tools.listener.AbstractClusteredAsyncDataTreeChangeListener;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.DhcpAllocationPool;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.dhcp_allocation_pool.Network;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.dhcp_allocation_pool.network.Allocations;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.dhcp_allocation_pool.network.allocations.AllocationInstance;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Clustered listener whose only purpose is to keep the IP allocation caches of every node updated with the leases
+ * persisted by any node, so that a MAC address is answered the same IP whichever node its packets are punted to,
+ * and the IP of a released lease is freed by the node owning its block.
+ */
+public class DhcpAllocationInstanceCacheFeeder
+        extends AbstractClusteredAsyncDataTreeChangeListener<AllocationInstance> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DhcpAllocationInstanceCacheFeeder.class);
+
+    private final DhcpAllocationPoolManager dhcpAllocationPoolManager;
+
+    public DhcpAllocationInstanceCacheFeeder(final DhcpAllocationPoolManager dhcpAllocationPoolManager,
+            final DataBroker dataBroker) {
+        super(dataBroker, LogicalDatastoreType.CONFIGURATION, InstanceIdentifier.create(DhcpAllocationPool.class)
+                .child(Network.class).child(Allocations.class).child(AllocationInstance.class),
+                Executors.newListeningSingleThreadExecutor("DhcpAllocationInstanceCacheFeeder", LOG));
+        this.dhcpAllocationPoolManager = dhcpAllocationPoolManager;
+    }
+
+    @Override
+    @PreDestroy
+    public void close() {
+        super.close();
+        Executors.shutdownAndAwaitTermination(getExecutorService());
+    }
+
+    @Override
+    public void remove(InstanceIdentifier<AllocationInstance> identifier, AllocationInstance del) {
+        if (del.getAllocatedIp() != null) {
+            dhcpAllocationPoolManager.releaseCachedIpAllocation(identifier.firstKeyOf(Network.class).getNetworkId(),
+                    identifier.firstKeyOf(Allocations.class).getSubnet(), del.getMac().getValue(),
+                    DhcpServiceUtils.convertIpToLong(del.getAllocatedIp()));
+        }
+    }
+
+    @Override
+    public void update(InstanceIdentifier<AllocationInstance> identifier, AllocationInstance original,
+            AllocationInstance update) {
+        add(identifier, update);
+    }
+
+    @Override
+    public void add(InstanceIdentifier<AllocationInstance> identifier, AllocationInstance add) {
+        if (add.getAllocatedIp() != null) {
+            dhcpAllocationPoolManager.cacheIpAllocation(identifier.firstKeyOf(Network.class).getNetworkId(),
+                    identifier.firstKeyOf(Allocations.class).getSubnet(), add.getMac().getValue(),
+                    DhcpServiceUtils.convertIpToLong(add.getAllocatedIp()));
+        }
+    }
+}
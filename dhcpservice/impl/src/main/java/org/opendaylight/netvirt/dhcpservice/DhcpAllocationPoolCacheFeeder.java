@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.dhcpservice;
+
+import javax.annotation.PreDestroy;
+import org.opendaylight.infrautils.utils.concurrent.Executors;
+import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
+import org.opendaylight.serviceutils.tools.listener.AbstractClusteredAsyncDataTreeChangeListener;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.DhcpAllocationPool;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.dhcp_allocation_pool.Network;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.dhcp_allocation_pool.network.AllocationPool;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Clustered listener whose only purpose is to create and drop the IP allocation cache of each allocation pool on
+ * every node, as the DHCP packets are punted to any of them. The IdManager pools themselves are still created by
+ * the {@link DhcpAllocationPoolListener}.
+ */
+public class DhcpAllocationPoolCacheFeeder extends AbstractClusteredAsyncDataTreeChangeListener<AllocationPool> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DhcpAllocationPoolCacheFeeder.class);
+
+    private final DhcpAllocationPoolManager dhcpAllocationPoolManager;
+
+    public DhcpAllocationPoolCacheFeeder(final DhcpAllocationPoolManager dhcpAllocationPoolManager,
+            final DataBroker dataBroker) {
+        super(dataBroker, LogicalDatastoreType.CONFIGURATION, InstanceIdentifier.create(DhcpAllocationPool.class)
+                .child(Network.class).child(AllocationPool.class),
+                Executors.newListeningSingleThreadExecutor("DhcpAllocationPoolCacheFeeder", LOG));
+        this.dhcpAllocationPoolManager = dhcpAllocationPoolManager;
+    }
+
+    @Override
+    @PreDestroy
+    public void close() {
+        super.close();
+        Executors.shutdownAndAwaitTermination(getExecutorService());
+    }
+
+    @Override
+    public void remove(InstanceIdentifier<AllocationPool> identifier, AllocationPool del) {
+        dhcpAllocationPoolManager.removeIpAllocationCache(identifier.firstKeyOf(Network.class).getNetworkId(), del);
+    }
+
+    @Override
+    public void update(InstanceIdentifier<AllocationPool> identifier, AllocationPool original,
+            AllocationPool update) {
+        // the IdManager pool is not updated either
+    }
+
+    @Override
+    public void add(InstanceIdentifier<AllocationPool> identifier, AllocationPool add) {
+        dhcpAllocationPoolManager.createIpAllocationCache(identifier.firstKeyOf(Network.class).getNetworkId(), add);
+    }
+}
@@ -7,12 +7,19 @@
  */
 package org.opendaylight.netvirt.dhcpservice;
 
+import static org.opendaylight.mdsal.binding.util.Datastore.CONFIGURATION;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EventListener;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.stream.Collectors;
@@ -26,11 +33,16 @@ import org.opendaylight.genius.datastoreutils.SingleTransactionDataBroker;
 import org.opendaylight.infrautils.jobcoordinator.JobCoordinator;
 import org.opendaylight.infrautils.utils.concurrent.LoggingFutures;
 import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.mdsal.binding.util.ManagedNewTransactionRunner;
+import org.opendaylight.mdsal.binding.util.ManagedNewTransactionRunnerImpl;
 import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
+import org.opendaylight.netvirt.dhcpservice.api.DhcpMConstants;
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.IpAddress;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.AllocateIdInput;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.AllocateIdInputBuilder;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.AllocateIdOutput;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.IpPrefix;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.yang.types.rev130715.PhysAddress;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.AllocateIdRangeInput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.AllocateIdRangeInputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.AllocateIdRangeOutput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.CreateIdPoolInput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.CreateIdPoolInputBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.CreateIdPoolOutput;
@@ -38,12 +50,21 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.
 import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.DeleteIdPoolInputBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.DeleteIdPoolOutput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.IdManagerService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.IdPools;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.ReleaseIdInput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.ReleaseIdInputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.id.pools.IdPool;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.id.pools.IdPoolKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.id.pools.id.pool.IdEntries;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.DhcpAllocationPool;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.dhcp_allocation_pool.Network;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.dhcp_allocation_pool.NetworkKey;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.dhcp_allocation_pool.network.AllocationPool;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.dhcp_allocation_pool.network.Allocations;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.dhcp_allocation_pool.network.AllocationsKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.dhcp_allocation_pool.network.allocations.AllocationInstance;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.dhcp_allocation_pool.network.allocations.AllocationInstanceBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.dhcp_allocation_pool.network.allocations.AllocationInstanceKey;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.elan.rev150602.ElanDpnInterfaces;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.elan.rev150602.ElanInterfaces;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.elan.rev150602.elan.dpn.interfaces.ElanDpnInterfacesList;
@@ -54,6 +75,7 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.elan.rev150602.elan
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.dhcpservice.config.rev150710.DhcpserviceConfig;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
 import org.opendaylight.yangtools.yang.common.RpcResult;
+import org.opendaylight.yangtools.yang.common.Uint32;
 import org.opendaylight.yangtools.yang.common.Uint64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,27 +83,49 @@ import org.slf4j.LoggerFactory;
 @Singleton
 public class DhcpAllocationPoolManager implements AutoCloseable, EventListener {
     private static final Logger LOG = LoggerFactory.getLogger(DhcpAllocationPoolManager.class);
+    private static final String BLOCK_ID_KEY_PREFIX = "dhcpBlock.";
+    private static final String NODE_ID_PROPERTY = "dhcp.allocation.node.id";
 
     private DhcpAllocationPoolListener dhcpAllocationPoolListener;
+    private DhcpAllocationPoolCacheFeeder dhcpAllocationPoolCacheFeeder;
+    private DhcpIdEntriesCacheFeeder dhcpIdEntriesCacheFeeder;
+    private DhcpAllocationInstanceCacheFeeder dhcpAllocationInstanceCacheFeeder;
 
     private final DataBroker dataBroker;
+    private final ManagedNewTransactionRunner txRunner;
     private final IdManagerService idManager;
     private final DhcpserviceConfig config;
     private final JobCoordinator jobCoordinator;
+    private final String nodeId;
+    private final int blockSize;
+    private final ConcurrentMap<String, DhcpIpAllocationCache> ipAllocationCaches = new ConcurrentHashMap<>();
 
     @Inject
     public DhcpAllocationPoolManager(final DataBroker dataBroker, final IdManagerService idManager,
             final DhcpserviceConfig config, final JobCoordinator jobCoordinator) {
+        this(dataBroker, new ManagedNewTransactionRunnerImpl(dataBroker), idManager, config, jobCoordinator,
+                getLocalNodeId(), DhcpMConstants.DHCP_ALLOCATION_BLOCK_SIZE);
+    }
+
+    DhcpAllocationPoolManager(final DataBroker dataBroker, final ManagedNewTransactionRunner txRunner,
+            final IdManagerService idManager, final DhcpserviceConfig config, final JobCoordinator jobCoordinator,
+            final String nodeId, final int blockSize) {
         this.dataBroker = dataBroker;
+        this.txRunner = txRunner;
         this.idManager = idManager;
         this.config = config;
         this.jobCoordinator = jobCoordinator;
+        this.nodeId = nodeId;
+        this.blockSize = blockSize;
     }
 
     @PostConstruct
     public void init() {
         if (config.isDhcpDynamicAllocationPoolEnabled()) {
             dhcpAllocationPoolListener = new DhcpAllocationPoolListener(this, dataBroker, jobCoordinator);
+            dhcpAllocationPoolCacheFeeder = new DhcpAllocationPoolCacheFeeder(this, dataBroker);
+            dhcpIdEntriesCacheFeeder = new DhcpIdEntriesCacheFeeder(this, dataBroker);
+            dhcpAllocationInstanceCacheFeeder = new DhcpAllocationInstanceCacheFeeder(this, dataBroker);
             LOG.info("DHCP Allocation Pool Service initialized");
         }
     }
@@ -93,12 +137,36 @@ public class DhcpAllocationPoolManager implements AutoCloseable, EventListener {
         if (dhcpAllocationPoolListener != null) {
             dhcpAllocationPoolListener.close();
         }
+        if (dhcpAllocationPoolCacheFeeder != null) {
+            dhcpAllocationPoolCacheFeeder.close();
+        }
+        if (dhcpIdEntriesCacheFeeder != null) {
+            dhcpIdEntriesCacheFeeder.close();
+        }
+        if (dhcpAllocationInstanceCacheFeeder != null) {
+            dhcpAllocationInstanceCacheFeeder.close();
+        }
     }
 
     @Nullable
     public IpAddress getIpAllocation(String networkId, AllocationPool pool, String macAddress) {
         String poolIdKey = getPoolKeyIdByAllocationPool(networkId, pool);
-        long allocatedIpLong = createIdAllocation(poolIdKey, macAddress);
+        DhcpIpAllocationCache ipAllocationCache = ipAllocationCaches.get(poolIdKey);
+        if (ipAllocationCache == null) {
+            LOG.warn("No IP allocation cache for pool {} yet, not allocating an IP to mac {}", poolIdKey, macAddress);
+            return null;
+        }
+        long allocatedIpLong = ipAllocationCache.getAllocation(macAddress);
+        if (allocatedIpLong == 0) {
+            // served from the blocks of this node, IdManager is only called once they are exhausted
+            allocatedIpLong = ipAllocationCache.allocate(macAddress);
+            if (allocatedIpLong == 0 && reserveBlock(poolIdKey, ipAllocationCache)) {
+                allocatedIpLong = ipAllocationCache.allocate(macAddress);
+            }
+            if (allocatedIpLong != 0) {
+                persistLease(networkId, pool.getSubnet(), macAddress, allocatedIpLong);
+            }
+        }
         LOG.debug("allocated id {} for mac {}, from pool {}", allocatedIpLong, macAddress, poolIdKey);
         return allocatedIpLong != 0 ? DhcpServiceUtils.convertLongToIp(allocatedIpLong) : null;
     }
@@ -106,6 +174,12 @@ public class DhcpAllocationPoolManager implements AutoCloseable, EventListener {
     public void releaseIpAllocation(String networkId, AllocationPool pool, String macAddress) {
         String poolIdKey = getPoolKeyIdByAllocationPool(networkId, pool);
         LOG.debug("going to release id for mac {}, from pool {}", macAddress, poolIdKey);
+        releaseCachedIpAllocation(poolIdKey, macAddress);
+        // the removal of the lease frees its IP on the node owning its block
+        LoggingFutures.addErrorLogging(txRunner.callWithNewWriteOnlyTransactionAndSubmit(CONFIGURATION,
+            tx -> tx.delete(getLeaseIdentifier(networkId, pool.getSubnet(), macAddress))), LOG,
+            "Failed to remove the lease of mac {}", macAddress);
+        // the IPs leased before the blocks were allocated by IdManager one by one
         releaseIdAllocation(poolIdKey, macAddress);
     }
 
@@ -171,19 +245,79 @@ public class DhcpAllocationPoolManager implements AutoCloseable, EventListener {
     }
 
     private static String getPoolKeyIdByAllocationPool(String networkId, AllocationPool pool) {
-        return "dhcpAllocationPool." + networkId + "." + pool.getSubnet().stringValue();
+        return getPoolKeyId(networkId, pool.getSubnet());
+    }
+
+    private static String getPoolKeyId(String networkId, IpPrefix subnet) {
+        return "dhcpAllocationPool." + networkId + "." + subnet.stringValue();
+    }
+
+    static boolean isBlockIdKey(String idKey) {
+        return idKey.startsWith(BLOCK_ID_KEY_PREFIX);
+    }
+
+    private String getBlockIdKeyPrefix() {
+        return BLOCK_ID_KEY_PREFIX + nodeId + ".";
+    }
+
+    private String getBlockIdKey(int blockIndex) {
+        return getBlockIdKeyPrefix() + blockIndex;
+    }
+
+    private static InstanceIdentifier<AllocationInstance> getLeaseIdentifier(String networkId, IpPrefix subnet,
+            String macAddress) {
+        return InstanceIdentifier.builder(DhcpAllocationPool.class).child(Network.class, new NetworkKey(networkId))
+                .child(Allocations.class, new AllocationsKey(subnet))
+                .child(AllocationInstance.class, new AllocationInstanceKey(new PhysAddress(macAddress))).build();
     }
 
-    private long createIdAllocation(String groupIdKey, String idKey) {
-        AllocateIdInput getIdInput = new AllocateIdInputBuilder().setPoolName(groupIdKey).setIdKey(idKey).build();
+    private void persistLease(String networkId, IpPrefix subnet, String macAddress, long allocatedIp) {
+        AllocationInstance lease = new AllocationInstanceBuilder()
+                .withKey(new AllocationInstanceKey(new PhysAddress(macAddress)))
+                .setAllocatedIp(DhcpServiceUtils.convertLongToIp(allocatedIp)).build();
+        // the IP is from a block of this node, so the reply does not wait for the lease to be persisted
+        LoggingFutures.addErrorLogging(txRunner.callWithNewWriteOnlyTransactionAndSubmit(CONFIGURATION,
+            tx -> tx.mergeParentStructurePut(getLeaseIdentifier(networkId, subnet, macAddress), lease)), LOG,
+            "Failed to persist the lease of mac {}", macAddress);
+    }
+
+    private boolean reserveBlock(String poolName, DhcpIpAllocationCache ipAllocationCache) {
+        int blockIndex = ipAllocationCache.getNextBlockIndex();
+        String idKey = getBlockIdKey(blockIndex);
+        // the tail of the pool may be shorter than a block
+        for (long size = blockSize; size > 0; size /= 2) {
+            AllocateIdRangeInput input = new AllocateIdRangeInputBuilder().setPoolName(poolName).setIdKey(idKey)
+                    .setSize(Uint32.valueOf(size)).build();
+            try {
+                RpcResult<AllocateIdRangeOutput> rpcResult = idManager.allocateIdRange(input).get();
+                if (rpcResult.isSuccessful() && rpcResult.getResult() != null) {
+                    ipAllocationCache.addBlock(blockIndex, rpcResult.getResult().getIdValues().stream()
+                            .map(Uint32::toJava).collect(Collectors.toList()));
+                    LOG.info("DHCP Allocation Pool Service : Reserved block {} of {} IPs of pool {}", idKey, size,
+                            poolName);
+                    return true;
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                LOG.trace("Failed to reserve block {} of {} IPs of pool {}", idKey, size, poolName, e);
+            }
+        }
+        LOG.warn("DHCP Allocation Pool Service : No IP left to reserve from pool {}", poolName);
+        return false;
+    }
+
+    private static String getLocalNodeId() {
+        String nodeId = System.getProperty(NODE_ID_PROPERTY);
+        if (nodeId != null) {
+            return nodeId;
+        }
         try {
-            Future<RpcResult<AllocateIdOutput>> result = idManager.allocateId(getIdInput);
-            RpcResult<AllocateIdOutput> rpcResult = result.get();
-            return rpcResult.getResult().getIdValue().toJava();
-        } catch (NullPointerException | InterruptedException | ExecutionException e) {
-            LOG.trace("Failed to allocate id for DHCP Allocation Pool Service", e);
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            nodeId = UUID.randomUUID().toString();
+            LOG.warn("Unknown local host name, the IP blocks reserved as {} are not reclaimed after a restart, set {}",
+                    nodeId, NODE_ID_PROPERTY, e);
+            return nodeId;
         }
-        return 0;
     }
 
     private void releaseIdAllocation(String groupIdKey, String idKey) {
@@ -223,4 +357,97 @@ public class DhcpAllocationPoolManager implements AutoCloseable, EventListener {
             LOG.error("Failed to delete Pool for DHCP Allocation Pool Service", e);
         }
     }
+
+    protected void createIpAllocationCache(String networkId, AllocationPool pool) {
+        String poolName = getPoolKeyIdByAllocationPool(networkId, pool);
+        DhcpIpAllocationCache ipAllocationCache = new DhcpIpAllocationCache(
+                DhcpServiceUtils.convertIpToLong(pool.getAllocateFrom()),
+                DhcpServiceUtils.convertIpToLong(pool.getAllocateTo()));
+        ipAllocationCaches.put(poolName, ipAllocationCache);
+        // reconcile with the blocks of this node and the leases persisted before the cache was registered
+        InstanceIdentifier<IdPool> idPool = InstanceIdentifier.create(IdPools.class)
+                .child(IdPool.class, new IdPoolKey(poolName));
+        InstanceIdentifier<Allocations> allocations = InstanceIdentifier.builder(DhcpAllocationPool.class)
+                .child(Network.class, new NetworkKey(networkId))
+                .child(Allocations.class, new AllocationsKey(pool.getSubnet())).build();
+        try {
+            Optional<IdPool> optionalIdPool = SingleTransactionDataBroker.syncReadOptional(dataBroker,
+                    LogicalDatastoreType.CONFIGURATION, idPool);
+            if (optionalIdPool.isPresent()) {
+                for (IdEntries idEntry : optionalIdPool.get().nonnullIdEntries().values()) {
+                    reconcileIdEntry(ipAllocationCache, idEntry);
+                }
+            }
+            Optional<Allocations> optionalAllocations = SingleTransactionDataBroker.syncReadOptional(dataBroker,
+                    LogicalDatastoreType.CONFIGURATION, allocations);
+            if (optionalAllocations.isPresent()) {
+                for (AllocationInstance lease : optionalAllocations.get().nonnullAllocationInstance().values()) {
+                    if (lease.getAllocatedIp() != null) {
+                        ipAllocationCache.allocated(lease.getMac().getValue(),
+                                DhcpServiceUtils.convertIpToLong(lease.getAllocatedIp()));
+                    }
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            LOG.error("Failed to read IdPool {}, allocations of the pool will not be cached", poolName, e);
+            ipAllocationCaches.remove(poolName, ipAllocationCache);
+            return;
+        }
+        if (ipAllocationCache.getFreeCount() == 0) {
+            // reserved up front, off the DHCP packets path
+            reserveBlock(poolName, ipAllocationCache);
+        }
+    }
+
+    private void reconcileIdEntry(DhcpIpAllocationCache ipAllocationCache, IdEntries idEntry) {
+        String idKey = idEntry.getIdKey();
+        if (idEntry.getIdValue() == null || idEntry.getIdValue().isEmpty()) {
+            return;
+        }
+        if (!isBlockIdKey(idKey)) {
+            // an IP leased before the blocks, allocated by IdManager to the MAC address
+            ipAllocationCache.allocated(idKey, idEntry.getIdValue().get(0).toJava());
+            return;
+        }
+        // the blocks of the other nodes are theirs to serve
+        String blockIdKeyPrefix = getBlockIdKeyPrefix();
+        if (idKey.startsWith(blockIdKeyPrefix)) {
+            try {
+                int blockIndex = Integer.parseInt(idKey.substring(blockIdKeyPrefix.length()));
+                ipAllocationCache.addBlock(blockIndex, idEntry.getIdValue().stream().map(Uint32::toJava)
+                        .collect(Collectors.toList()));
+            } catch (NumberFormatException e) {
+                LOG.warn("Ignoring the IP block {} of an unexpected id key", idKey, e);
+            }
+        }
+    }
+
+    protected void removeIpAllocationCache(String networkId, AllocationPool pool) {
+        ipAllocationCaches.remove(getPoolKeyIdByAllocationPool(networkId, pool));
+    }
+
+    protected void cacheIpAllocation(String poolName, String macAddress, long allocatedIp) {
+        DhcpIpAllocationCache ipAllocationCache = ipAllocationCaches.get(poolName);
+        if (ipAllocationCache != null) {
+            ipAllocationCache.allocated(macAddress, allocatedIp);
+        }
+    }
+
+    protected void cacheIpAllocation(String networkId, IpPrefix subnet, String macAddress, long allocatedIp) {
+        cacheIpAllocation(getPoolKeyId(networkId, subnet), macAddress, allocatedIp);
+    }
+
+    protected void releaseCachedIpAllocation(String networkId, IpPrefix subnet, String macAddress, long allocatedIp) {
+        DhcpIpAllocationCache ipAllocationCache = ipAllocationCaches.get(getPoolKeyId(networkId, subnet));
+        if (ipAllocationCache != null) {
+            ipAllocationCache.release(macAddress, allocatedIp);
+        }
+    }
+
+    protected void releaseCachedIpAllocation(String poolName, String macAddress) {
+        DhcpIpAllocationCache ipAllocationCache = ipAllocationCaches.get(poolName);
+        if (ipAllocationCache != null) {
+            ipAllocationCache.release(macAddress);
+        }
+    }
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.dhcpservice;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.opendaylight.infrautils.utils.concurrent.Executors;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.packet.service.rev130709.PacketReceived;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client sharded responder of the DHCP packet-ins.
+ *
+ * <p>Packets are dispatched to one of a fixed number of single threaded workers chosen by the source MAC of the
+ * client, so the DISCOVER and REQUEST of a client are replied in order while the clients are spread across the
+ * workers. Each worker has a bounded queue, packets which do not fit are dropped and counted.
+ */
+final class DhcpClientShardedResponder implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(DhcpClientShardedResponder.class);
+
+    // Offset of the source MAC in the Ethernet frame, after the destination MAC
+    private static final int SOURCE_MAC_OFFSET = 6;
+    private static final int MAC_LENGTH = 6;
+
+    private final DhcpPacketCounters pktCounters;
+    private final ThreadPoolExecutor[] workers;
+
+    DhcpClientShardedResponder(DhcpPacketCounters pktCounters, int workerCount, int queueSize) {
+        this.pktCounters = pktCounters;
+        this.workers = new ThreadPoolExecutor[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueSize),
+                new ThreadFactoryBuilder().setNameFormat("dhcp-responder-" + i + "-%d").setDaemon(true).build());
+        }
+        LOG.info("DhcpClientShardedResponder : started with {} workers of queue size {}", workerCount, queueSize);
+    }
+
+    @Override
+    public void close() {
+        for (ThreadPoolExecutor worker : workers) {
+            Executors.shutdownAndAwaitTermination(worker);
+        }
+    }
+
+    /**
+     * Hands a DHCP packet-in over to the worker of its client.
+     *
+     * @param packet the packet-in
+     * @param task the handling of the packet-in
+     * @return whether the packet-in was queued, it is dropped and counted otherwise
+     */
+    boolean execute(PacketReceived packet, Runnable task) {
+        long clientMac = getSourceMac(packet.getPayload());
+        ThreadPoolExecutor worker = workers[Math.floorMod(Long.hashCode(clientMac), workers.length)];
+        try {
+            worker.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            pktCounters.packetDrop(DhcpPktHandler.getDpnLabel(packet),
+                DhcpPktHandler.PktDropReason.RESPONDER_QUEUE_FULL.name());
+            LOG.debug("Dropping dhcp packet in of client {} as its responder queue is full",
+                Long.toHexString(clientMac));
+            return false;
+        }
+    }
+
+    static long getSourceMac(byte[] frame) {
+        if (frame == null || frame.length < SOURCE_MAC_OFFSET + MAC_LENGTH) {
+            return 0;
+        }
+        long mac = 0;
+        for (int i = SOURCE_MAC_OFFSET; i < SOURCE_MAC_OFFSET + MAC_LENGTH; i++) {
+            mac = mac << Byte.SIZE | frame[i] & 0xff;
+        }
+        return mac;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.dhcpservice;
+
+import javax.annotation.PreDestroy;
+import org.opendaylight.infrautils.utils.concurrent.Executors;
+import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
+import org.opendaylight.serviceutils.tools.listener.AbstractClusteredAsyncDataTreeChangeListener;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.IdPools;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.id.pools.IdPool;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.id.pools.id.pool.IdEntries;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Clustered listener whose only purpose is to keep the IP allocation caches of every node updated with the IPs
+ * IdManager allocated to MAC addresses before the pools were served by blocks, whichever node released them. The IP
+ * blocks reserved by the nodes are ignored, as are the id entries of the pools which are not allocation pools.
+ */
+public class DhcpIdEntriesCacheFeeder extends AbstractClusteredAsyncDataTreeChangeListener<IdEntries> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DhcpIdEntriesCacheFeeder.class);
+
+    private final DhcpAllocationPoolManager dhcpAllocationPoolManager;
+
+    public DhcpIdEntriesCacheFeeder(final DhcpAllocationPoolManager dhcpAllocationPoolManager,
+            final DataBroker dataBroker) {
+        super(dataBroker, LogicalDatastoreType.CONFIGURATION, InstanceIdentifier.create(IdPools.class)
+                .child(IdPool.class).child(IdEntries.class),
+                Executors.newListeningSingleThreadExecutor("DhcpIdEntriesCacheFeeder", LOG));
+        this.dhcpAllocationPoolManager = dhcpAllocationPoolManager;
+    }
+
+    @Override
+    @PreDestroy
+    public void close() {
+        super.close();
+        Executors.shutdownAndAwaitTermination(getExecutorService());
+    }
+
+    @Override
+    public void remove(InstanceIdentifier<IdEntries> identifier, IdEntries del) {
+        if (DhcpAllocationPoolManager.isBlockIdKey(del.getIdKey())) {
+            return;
+        }
+        dhcpAllocationPoolManager.releaseCachedIpAllocation(identifier.firstKeyOf(IdPool.class).getPoolName(),
+                del.getIdKey());
+    }
+
+    @Override
+    public void update(InstanceIdentifier<IdEntries> identifier, IdEntries original, IdEntries update) {
+        add(identifier, update);
+    }
+
+    @Override
+    public void add(InstanceIdentifier<IdEntries> identifier, IdEntries add) {
+        if (add.getIdValue() != null && !add.getIdValue().isEmpty()
+                && !DhcpAllocationPoolManager.isBlockIdKey(add.getIdKey())) {
+            dhcpAllocationPoolManager.cacheIpAllocation(identifier.firstKeyOf(IdPool.class).getPoolName(),
+                    add.getIdKey(), add.getIdValue().get(0).toJava());
+        }
+    }
+}
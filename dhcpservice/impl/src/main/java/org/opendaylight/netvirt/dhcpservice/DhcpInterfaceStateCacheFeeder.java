@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.dhcpservice;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.opendaylight.infrautils.utils.concurrent.Executors;
+import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
+import org.opendaylight.serviceutils.tools.listener.AbstractClusteredAsyncDataTreeChangeListener;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.iana._if.type.rev170119.L2vlan;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.iana._if.type.rev170119.Tunnel;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.interfaces.rev140508.InterfacesState;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.interfaces.rev140508.interfaces.state.Interface;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Clustered listener whose only purpose is to keep the interfaces of the {@link DhcpResponderCache} of every node
+ * updated, as the DHCP packets are punted to any of them. The interface name of each lport tag is taken from the
+ * interface state, and the interface info and egress actions cached for an interface are dropped on any change of
+ * its state.
+ */
+@Singleton
+public class DhcpInterfaceStateCacheFeeder extends AbstractClusteredAsyncDataTreeChangeListener<Interface> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DhcpInterfaceStateCacheFeeder.class);
+
+    private final DhcpResponderCache dhcpResponderCache;
+
+    @Inject
+    public DhcpInterfaceStateCacheFeeder(final DataBroker dataBroker, final DhcpResponderCache dhcpResponderCache) {
+        super(dataBroker, LogicalDatastoreType.OPERATIONAL, InstanceIdentifier.create(InterfacesState.class)
+                .child(Interface.class),
+                Executors.newListeningSingleThreadExecutor("DhcpInterfaceStateCacheFeeder", LOG));
+        this.dhcpResponderCache = dhcpResponderCache;
+    }
+
+    @Override
+    @PreDestroy
+    public void close() {
+        super.close();
+        Executors.shutdownAndAwaitTermination(getExecutorService());
+    }
+
+    @Override
+    public void remove(InstanceIdentifier<Interface> identifier, Interface del) {
+        if (!isDhcpInterface(del)) {
+            return;
+        }
+        LOG.trace("Dropping the cached interface {}", del.getName());
+        dhcpResponderCache.removeInterface(del.getIfIndex(), del.getName());
+    }
+
+    @Override
+    public void update(InstanceIdentifier<Interface> identifier, Interface original, Interface update) {
+        add(identifier, update);
+    }
+
+    @Override
+    public void add(InstanceIdentifier<Interface> identifier, Interface add) {
+        if (!isDhcpInterface(add)) {
+            return;
+        }
+        LOG.trace("Refreshing the cached interface {}", add.getName());
+        dhcpResponderCache.invalidateInterface(add.getName());
+        if (add.getIfIndex() != null) {
+            dhcpResponderCache.putInterfaceName(add.getIfIndex(), add.getName());
+        }
+    }
+
+    private static boolean isDhcpInterface(Interface iface) {
+        return L2vlan.class.equals(iface.getType()) || Tunnel.class.equals(iface.getType());
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.dhcpservice;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * IP allocator of a DHCP allocation pool, along with the cache of its leases by MAC address.
+ *
+ * <p>Each node reserves blocks of IPs of the pool from IdManager, so that the nodes never hand out the same IP, and
+ * serves the new MAC addresses from a bitmap of the free IPs of its blocks without a call to IdManager. The leases
+ * of all the nodes are fed back from the datastore: a lease drops any other MAC address cached with its IP, and the
+ * release of a lease frees its IP if it belongs to a block of this node.
+ */
+final class DhcpIpAllocationCache {
+
+    private final long low;
+    private final long high;
+    private final BitSet owned = new BitSet();
+    private final BitSet free = new BitSet();
+    private final Map<String, Long> ipByMac = new HashMap<>();
+    private final Map<Long, String> macByIp = new HashMap<>();
+    private int nextBlockIndex;
+
+    DhcpIpAllocationCache(long low, long high) {
+        this.low = low;
+        this.high = high;
+    }
+
+    /**
+     * Gets the IP leased to a MAC address.
+     *
+     * @param macAddress the MAC address
+     * @return the IP, or 0 if none is cached
+     */
+    synchronized long getAllocation(String macAddress) {
+        Long ip = ipByMac.get(macAddress);
+        return ip != null ? ip : 0;
+    }
+
+    /**
+     * Leases a free IP of the blocks of this node to a MAC address, unless it already has one.
+     *
+     * @param macAddress the MAC address
+     * @return the IP, or 0 if the blocks of this node are exhausted
+     */
+    synchronized long allocate(String macAddress) {
+        Long current = ipByMac.get(macAddress);
+        if (current != null) {
+            return current;
+        }
+        int offset = free.nextSetBit(0);
+        if (offset < 0) {
+            return 0;
+        }
+        long ip = low + offset;
+        free.clear(offset);
+        ipByMac.put(macAddress, ip);
+        macByIp.put(ip, macAddress);
+        return ip;
+    }
+
+    /**
+     * Adds a block of IPs reserved by this node, the IPs already leased are not freed.
+     *
+     * @param blockIndex the index of the block among those of this node
+     * @param ips the IPs of the block
+     */
+    synchronized void addBlock(int blockIndex, Iterable<Long> ips) {
+        nextBlockIndex = Math.max(nextBlockIndex, blockIndex + 1);
+        for (long ip : ips) {
+            if (ip >= low && ip <= high) {
+                int offset = (int) (ip - low);
+                owned.set(offset);
+                if (!macByIp.containsKey(ip)) {
+                    free.set(offset);
+                }
+            }
+        }
+    }
+
+    /**
+     * Caches the IP leased to a MAC address, by any node.
+     *
+     * @param macAddress the MAC address
+     * @param ip the leased IP
+     */
+    synchronized void allocated(String macAddress, long ip) {
+        if (ip < low || ip > high) {
+            return;
+        }
+        Long current = ipByMac.put(macAddress, ip);
+        if (current != null && current != ip && macByIp.remove(current, macAddress)) {
+            freeIfOwned(current);
+        }
+        String previousMac = macByIp.put(ip, macAddress);
+        if (previousMac != null && !previousMac.equals(macAddress)) {
+            ipByMac.remove(previousMac, ip);
+        }
+        free.clear((int) (ip - low));
+    }
+
+    /**
+     * Drops the IP of a MAC address.
+     *
+     * @param macAddress the MAC address
+     */
+    synchronized void release(String macAddress) {
+        Long ip = ipByMac.remove(macAddress);
+        if (ip != null && macByIp.remove(ip, macAddress)) {
+            freeIfOwned(ip);
+        }
+    }
+
+    /**
+     * Drops the IP of a MAC address, unless the MAC address has been leased another IP since.
+     *
+     * @param macAddress the MAC address
+     * @param ip the released IP
+     */
+    synchronized void release(String macAddress, long ip) {
+        if (ipByMac.remove(macAddress, ip) && macByIp.remove(ip, macAddress)) {
+            freeIfOwned(ip);
+        }
+    }
+
+    /**
+     * Gets the number of free IPs of the blocks of this node.
+     *
+     * @return the number of free IPs
+     */
+    synchronized int getFreeCount() {
+        return free.cardinality();
+    }
+
+    /**
+     * Gets the index of the next block this node reserves.
+     *
+     * @return the block index
+     */
+    synchronized int getNextBlockIndex() {
+        return nextBlockIndex;
+    }
+
+    private void freeIfOwned(long ip) {
+        int offset = (int) (ip - low);
+        if (owned.get(offset)) {
+            free.set(offset);
+        }
+    }
+}
@@ -68,6 +68,7 @@ public class DhcpManager {
     private DhcpPortCache dhcpPortCache;
     private final ItmRpcService itmRpcService;
     private final DhcpServiceCounters dhcpServiceCounters;
+    private final DhcpReplyTemplateCache dhcpReplyTemplateCache;
 
     private volatile int dhcpOptLeaseTime = 0;
     private volatile String dhcpOptDefDomainName;
@@ -80,7 +81,7 @@ public class DhcpManager {
             final DhcpExternalTunnelManager dhcpExternalTunnelManager, final IInterfaceManager interfaceManager,
             @Named("elanService") IElanService ielanService, final DhcpPortCache dhcpPortCache,
             final JobCoordinator jobCoordinator, final ItmRpcService itmRpcService,
-            DhcpServiceCounters dhcpServiceCounters) {
+            DhcpServiceCounters dhcpServiceCounters, DhcpReplyTemplateCache dhcpReplyTemplateCache) {
         this.mdsalUtil = mdsalApiManager;
         this.config = config;
         this.broker = dataBroker;
@@ -91,6 +92,7 @@ public class DhcpManager {
         this.jobCoordinator = jobCoordinator;
         this.itmRpcService = itmRpcService;
         this.dhcpServiceCounters = dhcpServiceCounters;
+        this.dhcpReplyTemplateCache = dhcpReplyTemplateCache;
         configureLeaseDuration(DhcpMConstants.DEFAULT_LEASE_TIME);
     }
 
@@ -119,11 +121,13 @@ public class DhcpManager {
 
     public int setLeaseDuration(int leaseDuration) {
         configureLeaseDuration(leaseDuration);
+        dhcpReplyTemplateCache.invalidateAll();
         return getDhcpLeaseTime();
     }
 
     public String setDefaultDomain(String defaultDomain) {
         this.dhcpOptDefDomainName = defaultDomain;
+        dhcpReplyTemplateCache.invalidateAll();
         return getDhcpDefDomain();
     }
 
@@ -62,12 +62,13 @@ public class DhcpNeutronPortListener extends AbstractClusteredAsyncDataTreeChang
     private final JobCoordinator jobCoordinator;
     private final DhcpManager dhcpManager;
     private final ItmRpcService itmRpcService;
+    private final DhcpReplyTemplateCache dhcpReplyTemplateCache;
 
     @Inject
     public DhcpNeutronPortListener(DataBroker db, DhcpExternalTunnelManager dhcpExternalTunnelManager,
             @Named("elanService") IElanService ielanService, IInterfaceManager interfaceManager,
             DhcpserviceConfig config, final JobCoordinator jobCoordinator, DhcpManager dhcpManager,
-            ItmRpcService itmRpcService) {
+            ItmRpcService itmRpcService, DhcpReplyTemplateCache dhcpReplyTemplateCache) {
         super(db, LogicalDatastoreType.CONFIGURATION, InstanceIdentifier.create(Neutron.class).child(Ports.class)
                 .child(Port.class),
                 Executors.newListeningSingleThreadExecutor("DhcpNeutronPortListener", LOG));
@@ -80,6 +81,7 @@ public class DhcpNeutronPortListener extends AbstractClusteredAsyncDataTreeChang
         this.jobCoordinator = jobCoordinator;
         this.dhcpManager = dhcpManager;
         this.itmRpcService = itmRpcService;
+        this.dhcpReplyTemplateCache = dhcpReplyTemplateCache;
         init();
     }
 
@@ -99,6 +101,7 @@ public class DhcpNeutronPortListener extends AbstractClusteredAsyncDataTreeChang
 
     @Override
     public void remove(InstanceIdentifier<Port> identifier, Port del) {
+        dhcpReplyTemplateCache.invalidatePort(del.getUuid().getValue());
         if (!config.isControllerDhcpEnabled()) {
             return;
         }
@@ -131,6 +134,7 @@ public class DhcpNeutronPortListener extends AbstractClusteredAsyncDataTreeChang
 
     @Override
     public void update(InstanceIdentifier<Port> identifier, Port original, Port update) {
+        dhcpReplyTemplateCache.invalidatePort(update.getUuid().getValue());
         if (!config.isControllerDhcpEnabled()) {
             return;
         }
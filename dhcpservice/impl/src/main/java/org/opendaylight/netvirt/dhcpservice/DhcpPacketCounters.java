@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.dhcpservice;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jdt.annotation.Nullable;
+import org.opendaylight.infrautils.metrics.Counter;
+import org.opendaylight.infrautils.metrics.Labeled;
+import org.opendaylight.infrautils.metrics.MetricDescriptor;
+import org.opendaylight.infrautils.metrics.MetricProvider;
+import org.opendaylight.infrautils.utils.concurrent.Executors;
+import org.opendaylight.netvirt.dhcpservice.api.DHCPConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters of the DHCP packets handled by the {@link DhcpPktHandler}.
+ *
+ * <p>The labels are bounded whatever the number of ports: the packet-ins are counted by message type and DPN, the
+ * drops by DPN and reason, and the latency from packet-in to packet-out as bucketed counters per message type.
+ *
+ * <p>When enabled, the noisiest client MACs are sampled with the space-saving algorithm into a top-K, which is
+ * logged and reset every report interval, instead of being counted per MAC.
+ */
+class DhcpPacketCounters implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(DhcpPacketCounters.class);
+    private static final long[] LATENCY_BUCKETS_MILLIS = {1, 10, 100, 1000};
+
+    private final Labeled<Labeled<Counter>> packetIns;
+    private final Labeled<Labeled<Counter>> packetDrops;
+    private final Labeled<Labeled<Counter>> replyLatencies;
+    private final int noisyMacCount;
+    private final Map<String, Long> noisyMacs = new HashMap<>();
+    @Nullable
+    private final ScheduledExecutorService noisyMacReporter;
+
+    DhcpPacketCounters(MetricProvider metricProvider, int noisyMacCount, long reportIntervalSeconds) {
+        this.packetIns = metricProvider.newCounter(buildDhcpMetricDescriptor("packet_in"), "msgtype", "dpn");
+        this.packetDrops = metricProvider.newCounter(buildDhcpMetricDescriptor("packet_drop"), "dpn", "reason");
+        this.replyLatencies = metricProvider.newCounter(buildDhcpMetricDescriptor("reply_latency"),
+            "msgtype", "millis");
+        this.noisyMacCount = noisyMacCount;
+        if (noisyMacCount > 0 && reportIntervalSeconds > 0) {
+            this.noisyMacReporter = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setNameFormat("dhcp-noisy-macs").setDaemon(true).build());
+            noisyMacReporter.scheduleAtFixedRate(this::reportNoisyMacs, reportIntervalSeconds, reportIntervalSeconds,
+                TimeUnit.SECONDS);
+        } else {
+            this.noisyMacReporter = null;
+        }
+    }
+
+    private MetricDescriptor buildDhcpMetricDescriptor(String id) {
+        return MetricDescriptor.builder().anchor(this).project("netvirt").module("dhcpservice").id(id).build();
+    }
+
+    void packetIn(byte msgType, String dpn, String macAddress) {
+        packetIns.label(getMsgTypeLabel(msgType)).label(dpn).increment();
+        if (noisyMacReporter != null) {
+            sampleNoisyMac(macAddress);
+        }
+    }
+
+    void packetDrop(String dpn, String reason) {
+        packetDrops.label(dpn).label(reason).increment();
+    }
+
+    void replied(byte msgType, long receivedNanos) {
+        long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - receivedNanos);
+        replyLatencies.label(getMsgTypeLabel(msgType)).label(bucket(latencyMillis)).increment();
+    }
+
+    @Override
+    public void close() {
+        if (noisyMacReporter != null) {
+            Executors.shutdownAndAwaitTermination(noisyMacReporter);
+        }
+    }
+
+    private synchronized void sampleNoisyMac(String macAddress) {
+        Long count = noisyMacs.get(macAddress);
+        if (count != null || noisyMacs.size() < noisyMacCount) {
+            noisyMacs.put(macAddress, count != null ? count + 1 : 1);
+            return;
+        }
+        // Space-saving: the new MAC takes over the least counted one, along with its count
+        Entry<String, Long> min = null;
+        for (Entry<String, Long> entry : noisyMacs.entrySet()) {
+            if (min == null || entry.getValue() < min.getValue()) {
+                min = entry;
+            }
+        }
+        noisyMacs.remove(min.getKey());
+        noisyMacs.put(macAddress, min.getValue() + 1);
+    }
+
+    private void reportNoisyMacs() {
+        List<Entry<String, Long>> topMacs = drainNoisyMacs();
+        if (!topMacs.isEmpty()) {
+            LOG.info("Noisiest DHCP client MACs, with their approximate packet-in counts: {}", topMacs);
+        }
+    }
+
+    /**
+     * Gets the noisiest client MACs sampled since the last report, noisiest first, and resets the sample.
+     *
+     * @return the sampled MACs with their approximate packet-in counts
+     */
+    List<Entry<String, Long>> drainNoisyMacs() {
+        Map<String, Long> sampledMacs;
+        synchronized (this) {
+            sampledMacs = new HashMap<>(noisyMacs);
+            noisyMacs.clear();
+        }
+        List<Entry<String, Long>> topMacs = new ArrayList<>(sampledMacs.entrySet());
+        topMacs.sort(Entry.<String, Long>comparingByValue().reversed());
+        return topMacs;
+    }
+
+    private static String getMsgTypeLabel(byte msgType) {
+        switch (msgType) {
+            case DHCPConstants.MSG_DISCOVER:
+                return "discover";
+            case DHCPConstants.MSG_REQUEST:
+                return "request";
+            case DHCPConstants.MSG_DECLINE:
+                return "decline";
+            case DHCPConstants.MSG_RELEASE:
+                return "release";
+            case DHCPConstants.MSG_INFORM:
+                return "inform";
+            default:
+                return "other";
+        }
+    }
+
+    static String bucket(long millis) {
+        for (long bound : LATENCY_BUCKETS_MILLIS) {
+            if (millis <= bound) {
+                return "le_" + bound;
+            }
+        }
+        return "gt_" + LATENCY_BUCKETS_MILLIS[LATENCY_BUCKETS_MILLIS.length - 1];
+    }
+}
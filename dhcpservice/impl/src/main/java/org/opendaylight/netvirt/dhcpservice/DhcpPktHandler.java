@@ -18,6 +18,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.apache.commons.net.util.SubnetUtils;
@@ -34,12 +35,10 @@ import org.opendaylight.genius.mdsalutil.packet.IEEE8021Q;
 import org.opendaylight.genius.mdsalutil.packet.IPProtocols;
 import org.opendaylight.genius.mdsalutil.packet.IPv4;
 import org.opendaylight.genius.mdsalutil.packet.UDP;
-import org.opendaylight.infrautils.metrics.Counter;
-import org.opendaylight.infrautils.metrics.Labeled;
-import org.opendaylight.infrautils.metrics.MetricDescriptor;
 import org.opendaylight.infrautils.metrics.MetricProvider;
 import org.opendaylight.infrautils.utils.concurrent.LoggingFutures;
 import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.netvirt.dhcpservice.DhcpReplyTemplateCache.DhcpReplyTemplate;
 import org.opendaylight.netvirt.dhcpservice.api.DHCP;
 import org.opendaylight.netvirt.dhcpservice.api.DHCPConstants;
 import org.opendaylight.netvirt.dhcpservice.api.DHCPUtils;
@@ -58,6 +57,8 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.interfacemanager.rpc
 import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.itm.rpcs.rev160406.GetEgressActionsForTunnelInputBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.itm.rpcs.rev160406.GetEgressActionsForTunnelOutput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.itm.rpcs.rev160406.ItmRpcService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.node.NodeConnector;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.node.NodeConnectorKey;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.dhcp_allocation_pool.network.AllocationPool;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.neutron.ports.rev150712.port.attributes.FixedIps;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.neutron.ports.rev150712.ports.attributes.ports.Port;
@@ -83,13 +84,14 @@ public class DhcpPktHandler implements PacketProcessingListener {
 
     private static final String UNKNOWN_LABEL = "unknown";
 
-    private enum PktDropReason {
+    enum PktDropReason {
         INTERFACE_NAME_NOT_FOUND,
         INTERFACE_INFO_NOT_FOUND,
         SUBNET_NOT_FOUND,
         EGRESS_ACTIONS_NOT_FOUND,
         EXCEPTION,
-        PKT_DESERIALIZATION_ERROR
+        PKT_DESERIALIZATION_ERROR,
+        RESPONDER_QUEUE_FULL
     }
 
     private final DhcpManager dhcpMgr;
@@ -101,8 +103,11 @@ public class DhcpPktHandler implements PacketProcessingListener {
     private final DhcpAllocationPoolManager dhcpAllocationPoolMgr;
     private final DataBroker broker;
     private final ItmRpcService itmRpcService;
-    private final Labeled<Labeled<Labeled<Counter>>> pktDropCounter;
-    private final Labeled<Counter> pktInCounter;
+    private final DhcpPacketCounters pktCounters;
+    private final DhcpResponderCache dhcpResponderCache;
+    private final DhcpPortCache dhcpPortCache;
+    private final DhcpReplyTemplateCache dhcpReplyTemplateCache;
+    private final DhcpClientShardedResponder responder;
 
     @Inject
     public DhcpPktHandler(final DhcpManager dhcpManager,
@@ -114,7 +119,10 @@ public class DhcpPktHandler implements PacketProcessingListener {
                           final DhcpAllocationPoolManager dhcpAllocationPoolMgr,
                           final DataBroker dataBroker,
                           final ItmRpcService itmRpcService,
-                          final MetricProvider metricProvider) {
+                          final MetricProvider metricProvider,
+                          final DhcpResponderCache dhcpResponderCache,
+                          final DhcpPortCache dhcpPortCache,
+                          final DhcpReplyTemplateCache dhcpReplyTemplateCache) {
         this.interfaceManagerRpc = interfaceManagerRpc;
         this.pktService = pktService;
         this.dhcpExternalTunnelManager = dhcpExternalTunnelManager;
@@ -124,40 +132,52 @@ public class DhcpPktHandler implements PacketProcessingListener {
         this.dhcpAllocationPoolMgr = dhcpAllocationPoolMgr;
         this.broker = dataBroker;
         this.itmRpcService = itmRpcService;
-        this.pktDropCounter = metricProvider.newCounter(buildDhcpMetricDescriptor("packet_drop"),
-                "mac", "interface", "reason");
-        this.pktInCounter = metricProvider.newCounter(buildDhcpMetricDescriptor("packet_in"), "mac");
+        this.pktCounters = new DhcpPacketCounters(metricProvider, DhcpMConstants.DHCP_NOISY_MAC_TOP_K,
+                DhcpMConstants.DHCP_NOISY_MAC_REPORT_SECONDS);
+        this.dhcpResponderCache = dhcpResponderCache;
+        this.dhcpPortCache = dhcpPortCache;
+        this.dhcpReplyTemplateCache = dhcpReplyTemplateCache;
+        this.responder = new DhcpClientShardedResponder(pktCounters, DhcpMConstants.DHCP_RESPONDER_WORKERS,
+                DhcpMConstants.DHCP_RESPONDER_QUEUE_SIZE);
     }
 
-    private MetricDescriptor buildDhcpMetricDescriptor(String id) {
-        return MetricDescriptor.builder().anchor(this).project("netvirt").module("dhcpservice").id(id).build();
+    @PreDestroy
+    public void close() {
+        responder.close();
+        pktCounters.close();
     }
 
     @Override
-    @SuppressWarnings("checkstyle:IllegalCatch")
     public void onPacketReceived(PacketReceived packet) {
+        // Hand the DHCP packets over to the responder worker of their client, off the notification thread
+        short tableId = packet.getTableId().getValue().toJava();
+        if (!config.isControllerDhcpEnabled()
+                || (tableId != NwConstants.DHCP_TABLE && tableId != NwConstants.DHCP_TABLE_EXTERNAL_TUNNEL)
+                || !isPktInReasonSendtoCtrl(packet.getPacketInReason())) {
+            return;
+        }
+        long receivedNanos = System.nanoTime();
+        responder.execute(packet, () -> respond(packet, receivedNanos));
+    }
+
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    private void respond(PacketReceived packet, long receivedNanos) {
         try {
-            onPacketReceivedInternal(packet);
+            onPacketReceivedInternal(packet, receivedNanos);
         } catch (Exception e) {
-            pktDropCounter.label(getSourceMacAddress(packet)).label(UNKNOWN_LABEL)
-                    .label(PktDropReason.EXCEPTION.name()).increment();
+            pktCounters.packetDrop(getDpnLabel(packet), PktDropReason.EXCEPTION.name());
             LOG.error("Failed to handle dhcp packet in ", e);
         }
     }
 
-    private String getSourceMacAddress(PacketReceived packet) {
-        Ethernet ethPkt = new Ethernet();
-        try {
-            byte[] inPayload = packet.getPayload();
-            ethPkt.deserialize(inPayload, 0, inPayload.length * Byte.SIZE);
-            return DHCPUtils.byteArrayToString(ethPkt.getSourceMACAddress());
-        } catch (PacketException pktException) {
-            LOG.error("Failed to parse the packet {}", packet);
-        }
-        return UNKNOWN_LABEL;
+    static String getDpnLabel(PacketReceived packet) {
+        NodeConnectorKey nodeConnectorKey = packet.getIngress() != null
+                ? packet.getIngress().getValue().firstKeyOf(NodeConnector.class) : null;
+        return nodeConnectorKey != null
+                ? DhcpServiceUtils.getDpnIdFromNodeConnectorId(nodeConnectorKey.getId()).toString() : UNKNOWN_LABEL;
     }
 
-    public void onPacketReceivedInternal(PacketReceived packet) {
+    public void onPacketReceivedInternal(PacketReceived packet, long receivedNanos) {
         if (!config.isControllerDhcpEnabled()) {
             return;
         }
@@ -170,8 +190,7 @@ public class DhcpPktHandler implements PacketProcessingListener {
             try {
                 ethPkt.deserialize(inPayload, 0, inPayload.length * Byte.SIZE);
             } catch (PacketException e) {
-                pktDropCounter.label(UNKNOWN_LABEL).label(UNKNOWN_LABEL).label(
-                        PktDropReason.PKT_DESERIALIZATION_ERROR.name()).increment();
+                pktCounters.packetDrop(getDpnLabel(packet), PktDropReason.PKT_DESERIALIZATION_ERROR.name());
                 LOG.warn("Failed to decode DHCP Packet.", e);
                 LOG.trace("Received packet {}", packet);
                 return;
@@ -184,24 +203,23 @@ public class DhcpPktHandler implements PacketProcessingListener {
                 Uint64 metadata = packet.getMatch().getMetadata().getMetadata();
                 long portTag = MetaDataUtil.getLportFromMetadata(metadata).intValue();
                 String macAddress = DHCPUtils.byteArrayToString(ethPkt.getSourceMACAddress());
-                pktInCounter.label(macAddress).increment();
+                String dpnLabel = getDpnLabel(packet);
+                pktCounters.packetIn(pktIn.getMsgType(), dpnLabel, macAddress);
                 Uint64 tunnelId =
                         packet.getMatch().getTunnel() == null ? null
                                                               : packet.getMatch().getTunnel().getTunnelId();
                 String interfaceName = getInterfaceNameFromTag(portTag);
                 if (interfaceName == null) {
-                    pktDropCounter.label(macAddress).label(UNKNOWN_LABEL).label(
-                            PktDropReason.INTERFACE_NAME_NOT_FOUND.name()).increment();
+                    pktCounters.packetDrop(dpnLabel, PktDropReason.INTERFACE_NAME_NOT_FOUND.name());
                     return;
                 }
-                InterfaceInfo interfaceInfo =
-                        interfaceManager.getInterfaceInfoFromOperationalDataStore(interfaceName);
+                InterfaceInfo interfaceInfo = getInterfaceInfo(interfaceName);
                 if (interfaceInfo == null) {
                     LOG.error("Failed to get interface info for interface name {}", interfaceName);
-                    pktDropCounter.label(macAddress).label(interfaceName).label(
-                            PktDropReason.INTERFACE_INFO_NOT_FOUND.name()).increment();
+                    pktCounters.packetDrop(dpnLabel, PktDropReason.INTERFACE_INFO_NOT_FOUND.name());
                     return;
                 }
+                long templateGeneration = dhcpReplyTemplateCache.getGeneration();
                 Port port;
                 if (tunnelId != null) {
                     port = dhcpExternalTunnelManager.readVniMacToPortCache(tunnelId, macAddress);
@@ -212,8 +230,7 @@ public class DhcpPktHandler implements PacketProcessingListener {
                 String serverMacAddress = interfaceInfo.getMacAddress();
                 String serverIp = null;
                 if (subnet != null) {
-                    java.util.Optional<SubnetToDhcpPort> dhcpPortData = DhcpServiceUtils
-                            .getSubnetDhcpPortData(broker, subnet.getUuid().getValue());
+                    java.util.Optional<SubnetToDhcpPort> dhcpPortData = getSubnetDhcpPortData(subnet);
                     /* If enable_dhcp_service flag was enabled and an ODL network DHCP Port data was made available use
                      * the ports Fixed IP as server IP for DHCP communication.
                      */
@@ -224,36 +241,55 @@ public class DhcpPktHandler implements PacketProcessingListener {
                         // DHCP Neutron Port not found for this network
                         LOG.error("Neutron DHCP port is not available for the Subnet {} and port {}.", subnet.getUuid(),
                                 port.getUuid());
-                        pktDropCounter.label(macAddress).label(interfaceName).label(
-                                PktDropReason.SUBNET_NOT_FOUND.name()).increment();
+                        pktCounters.packetDrop(dpnLabel, PktDropReason.SUBNET_NOT_FOUND.name());
                         return;
                     }
                 } else {
-                    pktDropCounter.label(macAddress).label(interfaceName).label(
-                            PktDropReason.SUBNET_NOT_FOUND.name()).increment();
+                    pktCounters.packetDrop(dpnLabel, PktDropReason.SUBNET_NOT_FOUND.name());
                 }
-                DHCP replyPkt = handleDhcpPacket(pktIn, interfaceName, macAddress, port, subnet, serverIp);
-                if (replyPkt == null) {
-                    LOG.warn("Unable to construct reply packet for interface name {}", interfaceName);
-                    return;
+                DhcpReplyTemplate replyTemplate = port != null && subnet != null
+                        ? dhcpReplyTemplateCache.get(port.getUuid().getValue(), pktIn) : null;
+                byte[] pktOut;
+                if (replyTemplate != null) {
+                    LOG.trace("Replying to DHCP pkt from the template of port {}", port.getUuid());
+                    pktOut = getDhcpPacketOut(replyTemplate.toReply(pktIn), replyTemplate.getServerIp(), ethPkt,
+                            serverMacAddress);
+                } else {
+                    DHCP replyPkt = handleDhcpPacket(pktIn, interfaceName, macAddress, port, subnet, serverIp);
+                    if (replyPkt == null) {
+                        LOG.warn("Unable to construct reply packet for interface name {}", interfaceName);
+                        return;
+                    }
+                    LOG.trace("Sending DHCP Pkt {}", replyPkt);
+                    byte[] rawReply = serializeDhcpReply(replyPkt);
+                    if (rawReply == null) {
+                        return;
+                    }
+                    if (port != null && subnet != null) {
+                        dhcpReplyTemplateCache.put(port.getUuid().getValue(), pktIn, replyPkt, rawReply,
+                                templateGeneration);
+                    }
+                    pktOut = getDhcpPacketOut(rawReply, replyPkt.getOptionInetAddr(
+                            DHCPConstants.OPT_SERVER_IDENTIFIER), ethPkt, serverMacAddress);
+                }
+                if (sendPacketOut(pktOut, dpnLabel, interfaceInfo.getDpId(), interfaceName, tunnelId)) {
+                    pktCounters.replied(pktIn.getMsgType(), receivedNanos);
                 }
-                byte[] pktOut = getDhcpPacketOut(replyPkt, ethPkt, serverMacAddress);
-                sendPacketOut(pktOut, macAddress, interfaceInfo.getDpId(), interfaceName, tunnelId);
             }
         }
     }
 
-    private void sendPacketOut(byte[] pktOut, String mac, Uint64 dpnId, String interfaceName,
-                               Uint64 tunnelId) {
+    private boolean sendPacketOut(byte[] pktOut, String dpnLabel, Uint64 dpnId, String interfaceName,
+                                  Uint64 tunnelId) {
         List<Action> action = getEgressAction(interfaceName, tunnelId);
         if (action == null) {
-            pktDropCounter.label(mac).label(interfaceName).label(
-                    PktDropReason.EGRESS_ACTIONS_NOT_FOUND.name()).increment();
-            return;
+            pktCounters.packetDrop(dpnLabel, PktDropReason.EGRESS_ACTIONS_NOT_FOUND.name());
+            return false;
         }
         TransmitPacketInput output = MDSALUtil.getPacketOut(action, pktOut, dpnId);
         LOG.trace("Transmitting packet: {}", output);
         LoggingFutures.addErrorLogging(pktService.transmitPacket(output), LOG, "Transmit packet");
+        return true;
     }
 
     @Nullable
@@ -396,13 +432,43 @@ public class DhcpPktHandler implements PacketProcessingListener {
     }
 
     @Nullable
-    private Subnet getNeutronSubnet(Port port) {
-        return dhcpMgr.getNeutronSubnet(port);
+    private Subnet getNeutronSubnet(@Nullable Port port) {
+        if (port == null) {
+            return null;
+        }
+        // DHCP Service is only interested in IPv4 IPs/Subnets
+        for (FixedIps fixedIp : port.nonnullFixedIps().values()) {
+            if (fixedIp.getIpAddress().getIpv4Address() != null) {
+                Subnet subnet = dhcpResponderCache.getSubnet(fixedIp.getSubnetId());
+                return subnet != null ? subnet : dhcpMgr.getNeutronSubnet(port);
+            }
+        }
+        return null;
     }
 
     @Nullable
     private Port getNeutronPort(String interfaceName) {
-        return dhcpMgr.getNeutronPort(interfaceName);
+        Port port = dhcpPortCache.get(interfaceName);
+        return port != null ? port : dhcpMgr.getNeutronPort(interfaceName);
+    }
+
+    private java.util.Optional<SubnetToDhcpPort> getSubnetDhcpPortData(Subnet subnet) {
+        String subnetId = subnet.getUuid().getValue();
+        SubnetToDhcpPort subnetToDhcpPort = dhcpResponderCache.getSubnetDhcpPort(subnetId);
+        return subnetToDhcpPort != null ? java.util.Optional.of(subnetToDhcpPort)
+                : DhcpServiceUtils.getSubnetDhcpPortData(broker, subnetId);
+    }
+
+    @Nullable
+    InterfaceInfo getInterfaceInfo(String interfaceName) {
+        InterfaceInfo interfaceInfo = dhcpResponderCache.getInterfaceInfo(interfaceName);
+        if (interfaceInfo == null) {
+            interfaceInfo = interfaceManager.getInterfaceInfoFromOperationalDataStore(interfaceName);
+            if (interfaceInfo != null) {
+                dhcpResponderCache.putInterfaceInfo(interfaceName, interfaceInfo);
+            }
+        }
+        return interfaceInfo;
     }
 
     @Nullable
@@ -516,21 +582,36 @@ public class DhcpPktHandler implements PacketProcessingListener {
             return null;
         }
         LOG.trace("Sending DHCP Pkt {}", reply);
-        InetAddress serverIp = reply.getOptionInetAddr(DHCPConstants.OPT_SERVER_IDENTIFIER);
-        // create UDP pkt
-        UDP udpPkt = new UDP();
-        byte[] rawPkt;
+        byte[] rawReply = serializeDhcpReply(reply);
+        if (rawReply == null) {
+            return null;
+        }
+        return getDhcpPacketOut(rawReply, reply.getOptionInetAddr(DHCPConstants.OPT_SERVER_IDENTIFIER), etherPkt,
+                phyAddrees);
+    }
+
+    @SuppressFBWarnings("PZLA_PREFER_ZERO_LENGTH_ARRAYS")
+    @Nullable
+    private static byte[] serializeDhcpReply(DHCP reply) {
         try {
-            rawPkt = reply.serialize();
+            return reply.serialize();
         } catch (PacketException e) {
             LOG.warn("Failed to serialize packet", e);
             return null;
         }
-        udpPkt.setRawPayload(rawPkt);
+    }
+
+    @SuppressFBWarnings("PZLA_PREFER_ZERO_LENGTH_ARRAYS")
+    @Nullable
+    private byte[] getDhcpPacketOut(byte[] rawReply, InetAddress serverIp, Ethernet etherPkt, String phyAddrees) {
+        // create UDP pkt
+        UDP udpPkt = new UDP();
+        udpPkt.setRawPayload(rawReply);
         udpPkt.setDestinationPort(DhcpMConstants.DHCP_CLIENT_PORT);
         udpPkt.setSourcePort(DhcpMConstants.DHCP_SERVER_PORT);
-        udpPkt.setLength((short) (rawPkt.length + 8));
+        udpPkt.setLength((short) (rawReply.length + 8));
         //Create IP Pkt
+        byte[] rawPkt;
         try {
             rawPkt = udpPkt.serialize();
         } catch (PacketException e) {
@@ -785,8 +866,11 @@ public class DhcpPktHandler implements PacketProcessingListener {
     }
 
     @Nullable
-    private String getInterfaceNameFromTag(long portTag) {
-        String interfaceName = null;
+    String getInterfaceNameFromTag(long portTag) {
+        String interfaceName = dhcpResponderCache.getInterfaceName((int) portTag);
+        if (interfaceName != null) {
+            return interfaceName;
+        }
         GetInterfaceFromIfIndexInput input =
                 new GetInterfaceFromIfIndexInputBuilder().setIfIndex((int) portTag).build();
         Future<RpcResult<GetInterfaceFromIfIndexOutput>> futureOutput =
@@ -798,6 +882,9 @@ public class DhcpPktHandler implements PacketProcessingListener {
             }
             GetInterfaceFromIfIndexOutput output = futureOutput.get().getResult();
             interfaceName = output.getInterfaceName();
+            if (interfaceName != null) {
+                dhcpResponderCache.putInterfaceName((int) portTag, interfaceName);
+            }
         } catch (InterruptedException | ExecutionException e) {
             LOG.error("Error while retrieving the interfaceName from tag using getInterfaceFromIfIndex RPC");
         }
@@ -805,7 +892,22 @@ public class DhcpPktHandler implements PacketProcessingListener {
         return interfaceName;
     }
 
-    private List<Action> getEgressAction(String interfaceName, Uint64 tunnelId) {
+    List<Action> getEgressAction(String interfaceName, @Nullable Uint64 tunnelId) {
+        if (tunnelId == null) {
+            // Only the egress actions of the local interfaces are cached, those towards a tunnel depend on its key
+            List<Action> actions = dhcpResponderCache.getEgressActions(interfaceName);
+            if (actions == null) {
+                actions = getEgressActionFromRpc(interfaceName, null);
+                if (!actions.isEmpty()) {
+                    dhcpResponderCache.putEgressActions(interfaceName, actions);
+                }
+            }
+            return actions;
+        }
+        return getEgressActionFromRpc(interfaceName, tunnelId);
+    }
+
+    private List<Action> getEgressActionFromRpc(String interfaceName, @Nullable Uint64 tunnelId) {
         try {
             if (interfaceManager.isItmDirectTunnelsEnabled() && tunnelId != null) {
                 GetEgressActionsForTunnelInputBuilder egressAction =
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.dhcpservice;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Singleton;
+import org.eclipse.jdt.annotation.Nullable;
+import org.opendaylight.netvirt.dhcpservice.api.DHCP;
+import org.opendaylight.netvirt.dhcpservice.api.DHCPConstants;
+
+/**
+ * Caches the encoded DHCP OFFER and ACK replies of the neutron ports, along with the parameter request list they
+ * answer.
+ *
+ * <p>A reply only depends on the port, its subnet, the subnet DHCP port and the DHCP config, besides a few fields
+ * of the request. A cached reply is reused by copying it and patching these request fields in, instead of building
+ * and encoding the reply again. The templates of a port are invalidated by the {@link DhcpNeutronPortListener}, and
+ * all the templates by the {@link DhcpSubnetListener}, the {@link DhcpResponderCache} and the {@link DhcpManager}
+ * on changes of the subnets, DHCP ports and DHCP config.
+ *
+ * <p>A port has at most one OFFER and one ACK template, for the parameter request list of its last full reply. A
+ * client changing its list replaces the template, so the templates of a port stay bounded whatever the clients send.
+ */
+@Singleton
+public class DhcpReplyTemplateCache {
+
+    private static final int HTYPE_OFFSET = 1;
+    private static final int HLEN_OFFSET = 2;
+    private static final int XID_OFFSET = 4;
+    private static final int FLAGS_OFFSET = 10;
+    private static final int CIADDR_OFFSET = 12;
+    private static final int YIADDR_OFFSET = 16;
+    private static final int GIADDR_OFFSET = 24;
+    private static final int CHADDR_OFFSET = 28;
+    private static final int ADDR_LENGTH = 4;
+    private static final int CHADDR_LENGTH = 16;
+
+    private final ConcurrentMap<String, ConcurrentMap<Byte, DhcpReplyTemplate>> templatesByPort =
+            new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Gets the generation of the templates, to be read before reading what a template is built from.
+     *
+     * @return the generation, which changes on every invalidation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Gets the template answering a DHCP request of a port.
+     *
+     * @param portId the neutron port uuid
+     * @param request the DHCP DISCOVER or REQUEST
+     * @return the template, or null if none, or if the request is not to be acknowledged
+     */
+    @Nullable
+    public DhcpReplyTemplate get(String portId, DHCP request) {
+        ConcurrentMap<Byte, DhcpReplyTemplate> templates = templatesByPort.get(portId);
+        if (templates == null) {
+            return null;
+        }
+        byte msgType = request.getMsgType();
+        if (msgType == DHCPConstants.MSG_DISCOVER) {
+            DhcpReplyTemplate template = templates.get(DHCPConstants.MSG_OFFER);
+            return template != null && template.answers(getParameterRequestList(request)) ? template : null;
+        }
+        if (msgType != DHCPConstants.MSG_REQUEST) {
+            return null;
+        }
+        DhcpReplyTemplate template = templates.get(DHCPConstants.MSG_ACK);
+        // Only acknowledge a renewal, or a request, of the allocated address; anything else takes the full path
+        return template != null && template.answers(getParameterRequestList(request))
+                && (template.isAllocatedIp(request.getCiaddr())
+                        || template.isAllocatedIp(request.getOptionBytes(DHCPConstants.OPT_REQUESTED_ADDRESS)))
+                ? template : null;
+    }
+
+    /**
+     * Caches an encoded OFFER or ACK reply as the template answering a DHCP request of a port, replacing the one of
+     * the same type if any.
+     *
+     * @param portId the neutron port uuid
+     * @param request the DHCP DISCOVER or REQUEST
+     * @param reply the reply
+     * @param rawReply the encoded reply
+     * @param expectedGeneration the generation read before reading what the reply was built from
+     */
+    public void put(String portId, DHCP request, DHCP reply, byte[] rawReply, long expectedGeneration) {
+        byte msgType = reply.getMsgType();
+        if ((msgType != DHCPConstants.MSG_OFFER && msgType != DHCPConstants.MSG_ACK)
+                || rawReply.length < CHADDR_OFFSET + CHADDR_LENGTH) {
+            return;
+        }
+        InetAddress serverIp = reply.getOptionInetAddr(DHCPConstants.OPT_SERVER_IDENTIFIER);
+        if (serverIp == null) {
+            return;
+        }
+        templatesByPort.computeIfAbsent(portId, key -> new ConcurrentHashMap<>())
+                .put(msgType, new DhcpReplyTemplate(rawReply, serverIp, getParameterRequestList(request)));
+        if (generation.get() != expectedGeneration) {
+            // Invalidated while the reply was built, it may be stale
+            invalidatePort(portId);
+        }
+    }
+
+    public void invalidatePort(String portId) {
+        generation.incrementAndGet();
+        templatesByPort.remove(portId);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        templatesByPort.clear();
+    }
+
+    private static byte[] getParameterRequestList(DHCP request) {
+        byte[] paramList = request.getOptionBytes(DHCPConstants.OPT_PARAMETER_REQUEST_LIST);
+        return paramList != null ? paramList : new byte[0];
+    }
+
+    private static void patch(byte[] data, int offset, int length, @Nullable byte[] value) {
+        Arrays.fill(data, offset, offset + length, (byte) 0);
+        if (value != null) {
+            System.arraycopy(value, 0, data, offset, Math.min(length, value.length));
+        }
+    }
+
+    /**
+     * An encoded DHCP reply, along with the server IP it is sent from.
+     */
+    public static final class DhcpReplyTemplate {
+        private final byte[] rawReply;
+        private final InetAddress serverIp;
+        private final byte[] paramList;
+
+        DhcpReplyTemplate(byte[] rawReply, InetAddress serverIp, byte[] paramList) {
+            this.rawReply = rawReply;
+            this.serverIp = serverIp;
+            this.paramList = paramList;
+        }
+
+        public InetAddress getServerIp() {
+            return serverIp;
+        }
+
+        /**
+         * Encodes the reply to a DHCP request.
+         *
+         * @param request the DHCP request
+         * @return a copy of the template, with the xid, flags, hardware type and address, and the client and relay
+         *     addresses of the request
+         */
+        public byte[] toReply(DHCP request) {
+            byte[] data = rawReply.clone();
+            data[HTYPE_OFFSET] = request.getHtype();
+            data[HLEN_OFFSET] = request.getHlen();
+            int xid = request.getXid();
+            data[XID_OFFSET] = (byte) (xid >>> 24);
+            data[XID_OFFSET + 1] = (byte) (xid >>> 16);
+            data[XID_OFFSET + 2] = (byte) (xid >>> 8);
+            data[XID_OFFSET + 3] = (byte) xid;
+            short flags = request.getFlags();
+            data[FLAGS_OFFSET] = (byte) (flags >>> 8);
+            data[FLAGS_OFFSET + 1] = (byte) flags;
+            if (request.getMsgType() == DHCPConstants.MSG_REQUEST) {
+                patch(data, CIADDR_OFFSET, ADDR_LENGTH, request.getCiaddr());
+            }
+            patch(data, GIADDR_OFFSET, ADDR_LENGTH, request.getGiaddr());
+            patch(data, CHADDR_OFFSET, CHADDR_LENGTH, request.getChaddr());
+            return data;
+        }
+
+        boolean answers(byte[] requestParamList) {
+            return Arrays.equals(paramList, requestParamList);
+        }
+
+        boolean isAllocatedIp(@Nullable byte[] ipAddress) {
+            return ipAddress != null && ipAddress.length == ADDR_LENGTH
+                    && Arrays.equals(rawReply, YIADDR_OFFSET, YIADDR_OFFSET + ADDR_LENGTH, ipAddress, 0, ADDR_LENGTH);
+        }
+    }
+}
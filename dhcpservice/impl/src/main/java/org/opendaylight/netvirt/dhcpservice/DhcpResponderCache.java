@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.dhcpservice;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.opendaylight.genius.interfacemanager.globals.InterfaceInfo;
+import org.opendaylight.infrautils.utils.concurrent.Executors;
+import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
+import org.opendaylight.serviceutils.tools.listener.AbstractClusteredAsyncDataTreeChangeListener;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.yang.types.rev130715.Uuid;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.action.types.rev131112.action.list.Action;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.neutron.subnets.rev150712.subnets.attributes.subnets.Subnet;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.dhcpservice.api.rev150710.SubnetDhcpPortData;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.dhcpservice.api.rev150710.subnet.dhcp.port.data.SubnetToDhcpPort;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches what the DHCP responder needs to reply to a DHCP packet, so that the replies are built without datastore
+ * reads or RPC calls.
+ *
+ * <p>The DHCP ports of the subnets are maintained by this listener, the neutron subnets by the
+ * {@link DhcpSubnetListener} and the interface names by lport tag by the {@link DhcpInterfaceStateCacheFeeder}, all
+ * clustered, as the DHCP packets are punted to any node. The interface info and egress actions of an interface are
+ * cached on first use, until the state of the interface changes.
+ */
+@Singleton
+public class DhcpResponderCache extends AbstractClusteredAsyncDataTreeChangeListener<SubnetToDhcpPort> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DhcpResponderCache.class);
+
+    private final ConcurrentMap<Integer, String> interfaceNamesByLportTag = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, InterfaceInfo> interfaceInfos = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, List<Action>> egressActions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, SubnetToDhcpPort> subnetDhcpPorts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Uuid, Subnet> subnets = new ConcurrentHashMap<>();
+    private final DhcpReplyTemplateCache dhcpReplyTemplateCache;
+
+    @Inject
+    public DhcpResponderCache(final DataBroker dataBroker, final DhcpReplyTemplateCache dhcpReplyTemplateCache) {
+        super(dataBroker, LogicalDatastoreType.CONFIGURATION, InstanceIdentifier.create(SubnetDhcpPortData.class)
+                .child(SubnetToDhcpPort.class),
+                Executors.newListeningSingleThreadExecutor("DhcpResponderCache", LOG));
+        this.dhcpReplyTemplateCache = dhcpReplyTemplateCache;
+    }
+
+    @Override
+    @PreDestroy
+    public void close() {
+        super.close();
+        Executors.shutdownAndAwaitTermination(getExecutorService());
+    }
+
+    @Override
+    public void add(InstanceIdentifier<SubnetToDhcpPort> identifier, SubnetToDhcpPort subnetToDhcpPort) {
+        subnetDhcpPorts.put(identifier.firstKeyOf(SubnetToDhcpPort.class).getSubnetId(), subnetToDhcpPort);
+        dhcpReplyTemplateCache.invalidateAll();
+    }
+
+    @Override
+    public void update(InstanceIdentifier<SubnetToDhcpPort> identifier, SubnetToDhcpPort original,
+            SubnetToDhcpPort update) {
+        add(identifier, update);
+    }
+
+    @Override
+    public void remove(InstanceIdentifier<SubnetToDhcpPort> identifier, SubnetToDhcpPort subnetToDhcpPort) {
+        subnetDhcpPorts.remove(identifier.firstKeyOf(SubnetToDhcpPort.class).getSubnetId());
+        dhcpReplyTemplateCache.invalidateAll();
+    }
+
+    @Nullable
+    public SubnetToDhcpPort getSubnetDhcpPort(@NonNull String subnetId) {
+        return subnetDhcpPorts.get(subnetId);
+    }
+
+    public void putSubnet(@NonNull Subnet subnet) {
+        subnets.put(subnet.getUuid(), subnet);
+    }
+
+    public void removeSubnet(@NonNull Uuid subnetId) {
+        subnets.remove(subnetId);
+    }
+
+    @Nullable
+    public Subnet getSubnet(@NonNull Uuid subnetId) {
+        return subnets.get(subnetId);
+    }
+
+    public void putInterfaceName(int lportTag, @NonNull String interfaceName) {
+        interfaceNamesByLportTag.put(lportTag, interfaceName);
+    }
+
+    @Nullable
+    public String getInterfaceName(int lportTag) {
+        return interfaceNamesByLportTag.get(lportTag);
+    }
+
+    public void putInterfaceInfo(@NonNull String interfaceName, @NonNull InterfaceInfo interfaceInfo) {
+        interfaceInfos.put(interfaceName, interfaceInfo);
+    }
+
+    @Nullable
+    public InterfaceInfo getInterfaceInfo(@NonNull String interfaceName) {
+        return interfaceInfos.get(interfaceName);
+    }
+
+    public void putEgressActions(@NonNull String interfaceName, @NonNull List<Action> actions) {
+        egressActions.put(interfaceName, actions);
+    }
+
+    @Nullable
+    public List<Action> getEgressActions(@NonNull String interfaceName) {
+        return egressActions.get(interfaceName);
+    }
+
+    /**
+     * Drops the interface info and egress actions of an interface, on a change of its state.
+     *
+     * @param interfaceName the interface name
+     */
+    public void invalidateInterface(@NonNull String interfaceName) {
+        interfaceInfos.remove(interfaceName);
+        egressActions.remove(interfaceName);
+    }
+
+    /**
+     * Drops an interface, on the removal of its state.
+     *
+     * @param lportTag the lport tag of the interface, if known
+     * @param interfaceName the interface name
+     */
+    public void removeInterface(@Nullable Integer lportTag, @NonNull String interfaceName) {
+        if (lportTag != null) {
+            interfaceNamesByLportTag.remove(lportTag, interfaceName);
+        }
+        invalidateInterface(interfaceName);
+    }
+}
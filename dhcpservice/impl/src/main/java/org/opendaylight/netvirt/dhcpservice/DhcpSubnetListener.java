@@ -55,10 +55,13 @@ public class DhcpSubnetListener extends AbstractClusteredAsyncDataTreeChangeList
     private final DhcpManager dhcpManager;
     private final DhcpExternalTunnelManager dhcpExternalTunnelManager;
     private final DhcpserviceConfig config;
+    private final DhcpResponderCache dhcpResponderCache;
+    private final DhcpReplyTemplateCache dhcpReplyTemplateCache;
 
     @Inject
     public DhcpSubnetListener(final DhcpManager dhcpManager, final DhcpExternalTunnelManager
-            dhcpExternalTunnelManager, final DataBroker broker, final DhcpserviceConfig config) {
+            dhcpExternalTunnelManager, final DataBroker broker, final DhcpserviceConfig config,
+            final DhcpResponderCache dhcpResponderCache, final DhcpReplyTemplateCache dhcpReplyTemplateCache) {
         super(broker, LogicalDatastoreType.CONFIGURATION, InstanceIdentifier.create(Neutron.class).child(Subnets.class)
                 .child(Subnet.class), Executors.newListeningSingleThreadExecutor("DhcpSubnetListener", LOG));
         this.dhcpManager = dhcpManager;
@@ -66,6 +69,8 @@ public class DhcpSubnetListener extends AbstractClusteredAsyncDataTreeChangeList
         this.txRunner = new ManagedNewTransactionRunnerImpl(broker);
         this.dhcpExternalTunnelManager = dhcpExternalTunnelManager;
         this.config = config;
+        this.dhcpResponderCache = dhcpResponderCache;
+        this.dhcpReplyTemplateCache = dhcpReplyTemplateCache;
         init();
     }
 
@@ -77,16 +82,20 @@ public class DhcpSubnetListener extends AbstractClusteredAsyncDataTreeChangeList
 
     @Override
     public void add(InstanceIdentifier<Subnet> identifier, Subnet add) {
-
+        dhcpResponderCache.putSubnet(add);
+        dhcpReplyTemplateCache.invalidateAll();
     }
 
     @Override
     public void remove(InstanceIdentifier<Subnet> identifier, Subnet del) {
-
+        dhcpResponderCache.removeSubnet(del.getUuid());
+        dhcpReplyTemplateCache.invalidateAll();
     }
 
     @Override
     public void update(InstanceIdentifier<Subnet> identifier, Subnet original, Subnet update) {
+        dhcpResponderCache.putSubnet(update);
+        dhcpReplyTemplateCache.invalidateAll();
         if (!config.isControllerDhcpEnabled()) {
             return;
         }
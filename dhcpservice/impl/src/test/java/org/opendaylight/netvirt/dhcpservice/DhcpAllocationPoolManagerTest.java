@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.dhcpservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.opendaylight.mdsal.binding.util.Datastore.CONFIGURATION;
+
+import com.google.common.util.concurrent.FluentFuture;
+import com.google.common.util.concurrent.Futures;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.mdsal.binding.api.ReadTransaction;
+import org.opendaylight.mdsal.binding.util.Datastore.Configuration;
+import org.opendaylight.mdsal.binding.util.InterruptibleCheckedConsumer;
+import org.opendaylight.mdsal.binding.util.ManagedNewTransactionRunner;
+import org.opendaylight.mdsal.binding.util.TypedWriteTransaction;
+import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.IpAddress;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.IpAddressBuilder;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.IpPrefix;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.IpPrefixBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.AllocateIdRangeInput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.AllocateIdRangeInputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.AllocateIdRangeOutputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.IdManagerService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.IdPools;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.ReleaseIdOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.id.pools.IdPool;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.id.pools.IdPoolBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.id.pools.IdPoolKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.id.pools.id.pool.IdEntries;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.id.pools.id.pool.IdEntriesBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.id.pools.id.pool.IdEntriesKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.dhcp_allocation_pool.network.AllocationPool;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.dhcp_allocation_pool.network.AllocationPoolBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.dhcp_allocation_pool.network.AllocationPoolKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.dhcp_allocation_pool.rev161214.dhcp_allocation_pool.network.allocations.AllocationInstance;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.common.RpcResultBuilder;
+import org.opendaylight.yangtools.yang.common.Uint32;
+
+public class DhcpAllocationPoolManagerTest {
+
+    private static final String NETWORK = "net-1";
+    private static final String NODE = "node-1";
+    private static final IpPrefix SUBNET = IpPrefixBuilder.getDefaultInstance("10.0.0.0/24");
+    private static final String POOL_NAME = "dhcpAllocationPool." + NETWORK + "." + SUBNET.stringValue();
+    private static final long LOW = DhcpServiceUtils.convertIpToLong(
+            IpAddressBuilder.getDefaultInstance("10.0.0.10"));
+    private static final long HIGH = DhcpServiceUtils.convertIpToLong(
+            IpAddressBuilder.getDefaultInstance("10.0.0.20"));
+    private static final int BLOCK_SIZE = 4;
+
+    private final DataBroker dataBroker = mock(DataBroker.class);
+    private final ReadTransaction readTx = mock(ReadTransaction.class);
+    private final ManagedNewTransactionRunner txRunner = mock(ManagedNewTransactionRunner.class);
+    private final IdManagerService idManager = mock(IdManagerService.class);
+    private final List<TypedWriteTransaction<Configuration>> transactions = new ArrayList<>();
+    private final AllocationPool pool = new AllocationPoolBuilder().withKey(new AllocationPoolKey(SUBNET))
+            .setAllocateFrom(DhcpServiceUtils.convertLongToIp(LOW))
+            .setAllocateTo(DhcpServiceUtils.convertLongToIp(HIGH)).build();
+    private final DhcpAllocationPoolManager manager =
+        new DhcpAllocationPoolManager(dataBroker, txRunner, idManager, null, null, NODE, BLOCK_SIZE);
+    private long nextIp = LOW;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        when(dataBroker.newReadOnlyTransaction()).thenReturn(readTx);
+        doReturn(FluentFuture.from(Futures.immediateFuture(Optional.empty()))).when(readTx).read(any(), any());
+        doAnswer(invocation -> {
+            InterruptibleCheckedConsumer<TypedWriteTransaction<Configuration>, ?> txConsumer =
+                invocation.getArgument(1);
+            TypedWriteTransaction<Configuration> tx = mock(TypedWriteTransaction.class);
+            txConsumer.accept(tx);
+            transactions.add(tx);
+            return FluentFuture.from(Futures.immediateFuture(null));
+        }).when(txRunner).callWithNewWriteOnlyTransactionAndSubmit(eq(CONFIGURATION), any());
+        when(idManager.releaseId(any())).thenReturn(RpcResultBuilder.<ReleaseIdOutput>success().buildFuture());
+        // IdManager hands out the next IPs of the pool, as far as they go
+        when(idManager.allocateIdRange(any())).thenAnswer(invocation -> {
+            AllocateIdRangeInput input = invocation.getArgument(0);
+            long size = input.getSize().toJava();
+            if (nextIp + size - 1 > HIGH) {
+                return RpcResultBuilder.failed().buildFuture();
+            }
+            List<Uint32> ips = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                ips.add(Uint32.valueOf(nextIp++));
+            }
+            return RpcResultBuilder.success(new AllocateIdRangeOutputBuilder().setIdValues(ips).build())
+                .buildFuture();
+        });
+    }
+
+    @Test
+    public void testBlockReservedUpFront() {
+        manager.createIpAllocationCache(NETWORK, pool);
+
+        verify(idManager).allocateIdRange(rangeInput("dhcpBlock.node-1.0", BLOCK_SIZE));
+    }
+
+    @Test
+    public void testNewMacsServedFromBlockWithoutRpc() {
+        manager.createIpAllocationCache(NETWORK, pool);
+
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            assertEquals(ip(LOW + i), manager.getIpAllocation(NETWORK, pool, mac(i)));
+        }
+        // a repeat request is answered the same IP, without a lease persisted again
+        assertEquals(ip(LOW), manager.getIpAllocation(NETWORK, pool, mac(0)));
+
+        verify(idManager, times(1)).allocateIdRange(any());
+        verify(idManager, never()).allocateId(any());
+        assertEquals(BLOCK_SIZE, transactions.size());
+    }
+
+    @Test
+    public void testLeasePersisted() {
+        manager.createIpAllocationCache(NETWORK, pool);
+
+        manager.getIpAllocation(NETWORK, pool, mac(0));
+
+        ArgumentCaptor<AllocationInstance> lease = ArgumentCaptor.forClass(AllocationInstance.class);
+        verify(transactions.get(0)).mergeParentStructurePut(any(), lease.capture());
+        assertEquals(mac(0), lease.getValue().getMac().getValue());
+        assertEquals(ip(LOW), lease.getValue().getAllocatedIp());
+    }
+
+    @Test
+    public void testNextBlockReservedOnceExhausted() {
+        manager.createIpAllocationCache(NETWORK, pool);
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            manager.getIpAllocation(NETWORK, pool, mac(i));
+        }
+
+        assertEquals(ip(LOW + BLOCK_SIZE), manager.getIpAllocation(NETWORK, pool, mac(BLOCK_SIZE)));
+
+        verify(idManager).allocateIdRange(rangeInput("dhcpBlock.node-1.1", BLOCK_SIZE));
+    }
+
+    @Test
+    public void testShorterBlockReservedAtPoolTail() {
+        manager.createIpAllocationCache(NETWORK, pool);
+        // 11 IPs in the pool, the third block only gets the last 2 and then the last one
+        for (int i = 0; i < 11; i++) {
+            assertEquals(ip(LOW + i), manager.getIpAllocation(NETWORK, pool, mac(i)));
+        }
+
+        assertNull(manager.getIpAllocation(NETWORK, pool, mac(11)));
+        verify(idManager).allocateIdRange(rangeInput("dhcpBlock.node-1.2", 2));
+        verify(idManager).allocateIdRange(rangeInput("dhcpBlock.node-1.3", 1));
+    }
+
+    @Test
+    public void testReleasedIpServedAgain() {
+        manager.createIpAllocationCache(NETWORK, pool);
+        manager.getIpAllocation(NETWORK, pool, mac(0));
+
+        manager.releaseIpAllocation(NETWORK, pool, mac(0));
+
+        verify(transactions.get(1)).delete(any());
+        assertEquals(ip(LOW), manager.getIpAllocation(NETWORK, pool, mac(1)));
+        verify(idManager, times(1)).allocateIdRange(any());
+    }
+
+    @Test
+    public void testBlocksOfNodeReclaimedOnRestart() {
+        // reserved by this node and another one before, and leased by IdManager before the blocks
+        nextIp = LOW + 8;
+        IdPool idPool = new IdPoolBuilder().setPoolName(POOL_NAME).setIdEntries(Map.of(
+            new IdEntriesKey("dhcpBlock.node-1.0"), idEntry("dhcpBlock.node-1.0", LOW, LOW + 1, LOW + 2, LOW + 3),
+            new IdEntriesKey("dhcpBlock.node-2.0"), idEntry("dhcpBlock.node-2.0", LOW + 4, LOW + 5, LOW + 6),
+            new IdEntriesKey(mac(9)), idEntry(mac(9), LOW + 7))).build();
+        doReturn(FluentFuture.from(Futures.immediateFuture(Optional.of(idPool)))).when(readTx)
+            .read(LogicalDatastoreType.CONFIGURATION,
+                InstanceIdentifier.create(IdPools.class).child(IdPool.class, new IdPoolKey(POOL_NAME)));
+
+        manager.createIpAllocationCache(NETWORK, pool);
+
+        assertEquals(ip(LOW + 7), manager.getIpAllocation(NETWORK, pool, mac(9)));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(ip(LOW + i), manager.getIpAllocation(NETWORK, pool, mac(i)));
+        }
+        verify(idManager, never()).allocateIdRange(any());
+        // the blocks of this node go on from the last one reclaimed
+        assertEquals(ip(LOW + 8), manager.getIpAllocation(NETWORK, pool, mac(4)));
+        verify(idManager).allocateIdRange(rangeInput("dhcpBlock.node-1.1", BLOCK_SIZE));
+    }
+
+    @Test
+    public void testLeaseOfOtherNodeAnsweredAndFreedByOwner() {
+        manager.createIpAllocationCache(NETWORK, pool);
+        manager.getIpAllocation(NETWORK, pool, mac(0));
+
+        // the lease of another node is fed back
+        manager.cacheIpAllocation(NETWORK, SUBNET, mac(1), LOW + 6);
+        assertEquals(ip(LOW + 6), manager.getIpAllocation(NETWORK, pool, mac(1)));
+
+        // the release of a lease of this node by another node is fed back
+        manager.releaseCachedIpAllocation(NETWORK, SUBNET, mac(0), LOW);
+        assertEquals(ip(LOW), manager.getIpAllocation(NETWORK, pool, mac(2)));
+    }
+
+    @Test
+    public void testNoIpWithoutCache() {
+        assertNull(manager.getIpAllocation(NETWORK, pool, mac(0)));
+        verify(idManager, never()).allocateId(any());
+    }
+
+    private static AllocateIdRangeInput rangeInput(String idKey, long size) {
+        return new AllocateIdRangeInputBuilder().setPoolName(POOL_NAME).setIdKey(idKey).setSize(Uint32.valueOf(size))
+            .build();
+    }
+
+    private static IdEntries idEntry(String idKey, long... ips) {
+        List<Uint32> idValues = new ArrayList<>();
+        for (long ip : ips) {
+            idValues.add(Uint32.valueOf(ip));
+        }
+        return new IdEntriesBuilder().withKey(new IdEntriesKey(idKey)).setIdValue(idValues).build();
+    }
+
+    private static String mac(int index) {
+        return String.format("fa:16:3e:00:00:%02x", index);
+    }
+
+    private static IpAddress ip(long ip) {
+        return DhcpServiceUtils.convertLongToIp(ip);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.dhcpservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.packet.service.rev130709.PacketReceived;
+
+public class DhcpClientShardedResponderTest {
+    private static final long WAIT_MS = 5000;
+
+    private final DhcpPacketCounters pktCounters = mock(DhcpPacketCounters.class);
+    private DhcpClientShardedResponder responder;
+
+    @After
+    public void tearDown() {
+        if (responder != null) {
+            responder.close();
+        }
+    }
+
+    @Test
+    public void testPacketsOfClientRepliedInOrderOnOneWorker() throws Exception {
+        responder = new DhcpClientShardedResponder(pktCounters, 4, 1000);
+        int clients = 4;
+        int packetsPerClient = 50;
+        Map<Long, List<Integer>> packetsByClient = new ConcurrentHashMap<>();
+        Map<Long, Set<String>> workersByClient = new ConcurrentHashMap<>();
+        CountDownLatch replied = new CountDownLatch(clients * packetsPerClient);
+
+        for (int sequence = 0; sequence < packetsPerClient; sequence++) {
+            for (long client = 0; client < clients; client++) {
+                long clientMac = 0xfa163e000000L + client;
+                int packetSequence = sequence;
+                assertTrue(responder.execute(newPacket(clientMac), () -> {
+                    packetsByClient.computeIfAbsent(clientMac, key -> Collections.synchronizedList(new ArrayList<>()))
+                        .add(packetSequence);
+                    workersByClient.computeIfAbsent(clientMac, key -> ConcurrentHashMap.newKeySet())
+                        .add(Thread.currentThread().getName());
+                    replied.countDown();
+                }));
+            }
+        }
+
+        assertTrue(replied.await(WAIT_MS, TimeUnit.MILLISECONDS));
+        List<Integer> expected = new ArrayList<>();
+        for (int sequence = 0; sequence < packetsPerClient; sequence++) {
+            expected.add(sequence);
+        }
+        Set<String> workers = new HashSet<>();
+        for (long client = 0; client < clients; client++) {
+            long clientMac = 0xfa163e000000L + client;
+            // a REQUEST is never replied before the DISCOVER of its client
+            assertEquals(expected, packetsByClient.get(clientMac));
+            assertEquals(1, workersByClient.get(clientMac).size());
+            workers.addAll(workersByClient.get(clientMac));
+        }
+        // the clients are spread across the workers
+        assertEquals(clients, workers.size());
+        verify(pktCounters, never()).packetDrop(anyString(), anyString());
+    }
+
+    @Test
+    public void testPacketDroppedAndCountedWhenQueueFull() throws Exception {
+        responder = new DhcpClientShardedResponder(pktCounters, 1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        long clientMac = 0xfa163e000001L;
+
+        assertTrue(responder.execute(newPacket(clientMac), () -> {
+            started.countDown();
+            awaitQuietly(release);
+        }));
+        assertTrue(started.await(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(responder.execute(newPacket(clientMac), () -> { }));
+        assertFalse(responder.execute(newPacket(clientMac), () -> { }));
+
+        verify(pktCounters, times(1)).packetDrop("unknown", "RESPONDER_QUEUE_FULL");
+        release.countDown();
+    }
+
+    @Test
+    public void testSourceMacReadFromFrame() {
+        assertEquals(0xfa163e0a0b0cL, DhcpClientShardedResponder.getSourceMac(newFrame(0xfa163e0a0b0cL)));
+        assertEquals(0, DhcpClientShardedResponder.getSourceMac(new byte[8]));
+    }
+
+    private static PacketReceived newPacket(long clientMac) {
+        PacketReceived packet = mock(PacketReceived.class);
+        when(packet.getPayload()).thenReturn(newFrame(clientMac));
+        return packet;
+    }
+
+    private static byte[] newFrame(long sourceMac) {
+        byte[] frame = new byte[64];
+        for (int i = 0; i < 6; i++) {
+            frame[11 - i] = (byte) (sourceMac >>> (i * Byte.SIZE));
+        }
+        return frame;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.dhcpservice;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import org.junit.Test;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.IpAddressBuilder;
+
+public class DhcpIpAllocationCacheTest {
+
+    private static final String MAC_1 = "fa:16:3e:00:00:01";
+    private static final String MAC_2 = "fa:16:3e:00:00:02";
+    private static final String MAC_3 = "fa:16:3e:00:00:03";
+    private static final long LOW = DhcpServiceUtils.convertIpToLong(
+            IpAddressBuilder.getDefaultInstance("10.0.0.10"));
+    private static final long HIGH = DhcpServiceUtils.convertIpToLong(
+            IpAddressBuilder.getDefaultInstance("10.0.0.20"));
+
+    private final DhcpIpAllocationCache cache = new DhcpIpAllocationCache(LOW, HIGH);
+
+    @Test
+    public void testPersistedAllocationCached() {
+        assertEquals(0, cache.getAllocation(MAC_1));
+
+        cache.allocated(MAC_1, LOW);
+        assertEquals(LOW, cache.getAllocation(MAC_1));
+
+        cache.allocated(MAC_1, LOW + 1);
+        assertEquals(LOW + 1, cache.getAllocation(MAC_1));
+    }
+
+    @Test
+    public void testAllocationOutOfPoolNotCached() {
+        cache.allocated(MAC_1, HIGH + 1);
+
+        assertEquals(0, cache.getAllocation(MAC_1));
+    }
+
+    @Test
+    public void testIpPersistedToOtherMacDropsStaleAllocation() {
+        cache.allocated(MAC_1, LOW);
+
+        // the release of MAC_1 was not seen before its IP was persisted to MAC_2
+        cache.allocated(MAC_2, LOW);
+
+        assertEquals(0, cache.getAllocation(MAC_1));
+        assertEquals(LOW, cache.getAllocation(MAC_2));
+    }
+
+    @Test
+    public void testRelease() {
+        cache.allocated(MAC_1, LOW);
+        cache.allocated(MAC_2, LOW + 1);
+
+        cache.release(MAC_1);
+
+        assertEquals(0, cache.getAllocation(MAC_1));
+        assertEquals(LOW + 1, cache.getAllocation(MAC_2));
+    }
+
+    @Test
+    public void testNewMacsServedFromBlocks() {
+        cache.addBlock(0, List.of(LOW, LOW + 1));
+
+        assertEquals(LOW, cache.allocate(MAC_1));
+        assertEquals(LOW + 1, cache.allocate(MAC_2));
+        // a repeat request gets the same IP
+        assertEquals(LOW, cache.allocate(MAC_1));
+        // the blocks are exhausted
+        assertEquals(0, cache.allocate(MAC_3));
+        assertEquals(0, cache.getFreeCount());
+        assertEquals(1, cache.getNextBlockIndex());
+    }
+
+    @Test
+    public void testIpLeasedByOtherNodeNotServed() {
+        cache.allocated(MAC_1, LOW);
+
+        cache.addBlock(0, List.of(LOW, LOW + 1));
+
+        assertEquals(1, cache.getFreeCount());
+        assertEquals(LOW + 1, cache.allocate(MAC_2));
+    }
+
+    @Test
+    public void testReleasedIpOfBlockServedAgain() {
+        cache.addBlock(0, List.of(LOW));
+        cache.allocate(MAC_1);
+
+        cache.release(MAC_1);
+
+        assertEquals(LOW, cache.allocate(MAC_2));
+    }
+
+    @Test
+    public void testReleasedIpOfOtherNodeNotServed() {
+        cache.addBlock(0, List.of(LOW));
+        cache.allocated(MAC_1, LOW + 1);
+
+        cache.release(MAC_1, LOW + 1);
+
+        assertEquals(0, cache.getAllocation(MAC_1));
+        assertEquals(1, cache.getFreeCount());
+    }
+
+    @Test
+    public void testStaleReleaseIgnored() {
+        cache.addBlock(0, List.of(LOW, LOW + 1));
+        cache.allocate(MAC_1);
+        cache.release(MAC_1);
+        cache.allocate(MAC_2);
+        cache.allocate(MAC_1);
+
+        // the removal of the first lease of MAC_1 is fed back after its new lease
+        cache.release(MAC_1, LOW);
+
+        assertEquals(LOW + 1, cache.getAllocation(MAC_1));
+        assertEquals(LOW, cache.getAllocation(MAC_2));
+        assertEquals(0, cache.getFreeCount());
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.dhcpservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.infrautils.metrics.Counter;
+import org.opendaylight.infrautils.metrics.Labeled;
+import org.opendaylight.infrautils.metrics.MetricDescriptor;
+import org.opendaylight.infrautils.metrics.MetricProvider;
+import org.opendaylight.netvirt.dhcpservice.api.DHCPConstants;
+
+public class DhcpPacketCountersTest {
+
+    private static final String MAC_1 = "fa:16:3e:00:00:01";
+    private static final String MAC_2 = "fa:16:3e:00:00:02";
+    private static final String MAC_3 = "fa:16:3e:00:00:03";
+    // long enough for the noisy MACs never to be reported, and reset, during a test
+    private static final long REPORT_INTERVAL_SECONDS = TimeUnit.HOURS.toSeconds(1);
+
+    private final MetricProvider metricProvider = mock(MetricProvider.class);
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private DhcpPacketCounters pktCounters;
+
+    @Before
+    public void setUp() {
+        // each counter is keyed by the id of its metric followed by its labels
+        when(metricProvider.newCounter(any(MetricDescriptor.class), anyString(), anyString())).thenAnswer(
+            invocation -> {
+                MetricDescriptor descriptor = invocation.getArgument(0);
+                Labeled<Labeled<Counter>> counter = first -> second -> counters.computeIfAbsent(
+                    descriptor.id() + "/" + first + "/" + second, key -> mock(Counter.class));
+                return counter;
+            });
+    }
+
+    @After
+    public void tearDown() {
+        if (pktCounters != null) {
+            pktCounters.close();
+        }
+    }
+
+    @Test
+    public void testLatencyBucketBoundaries() {
+        assertEquals("le_1", DhcpPacketCounters.bucket(0));
+        assertEquals("le_1", DhcpPacketCounters.bucket(1));
+        assertEquals("le_10", DhcpPacketCounters.bucket(2));
+        assertEquals("le_10", DhcpPacketCounters.bucket(10));
+        assertEquals("le_100", DhcpPacketCounters.bucket(11));
+        assertEquals("le_100", DhcpPacketCounters.bucket(100));
+        assertEquals("le_1000", DhcpPacketCounters.bucket(101));
+        assertEquals("le_1000", DhcpPacketCounters.bucket(1000));
+        assertEquals("gt_1000", DhcpPacketCounters.bucket(1001));
+        assertEquals("gt_1000", DhcpPacketCounters.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testReplyLatencyLabelledByMsgTypeAndBucket() {
+        pktCounters = new DhcpPacketCounters(metricProvider, 0, 0);
+
+        pktCounters.replied(DHCPConstants.MSG_REQUEST, System.nanoTime() - TimeUnit.SECONDS.toNanos(5));
+
+        verify(counters.get("reply_latency/request/gt_1000")).increment();
+        assertEquals(Set.of("reply_latency/request/gt_1000"), counters.keySet());
+    }
+
+    @Test
+    public void testPacketInsLabelledByMsgTypeAndDpn() {
+        pktCounters = new DhcpPacketCounters(metricProvider, 0, 0);
+
+        pktCounters.packetIn(DHCPConstants.MSG_DISCOVER, "1", MAC_1);
+        pktCounters.packetIn(DHCPConstants.MSG_DISCOVER, "1", MAC_2);
+        pktCounters.packetIn(DHCPConstants.MSG_REQUEST, "1", MAC_1);
+        pktCounters.packetIn(DHCPConstants.MSG_DISCOVER, "2", MAC_3);
+        pktCounters.packetIn(DHCPConstants.MSG_RELEASE, "2", MAC_3);
+        pktCounters.packetIn(DHCPConstants.MSG_OFFER, "2", MAC_3);
+
+        verify(counters.get("packet_in/discover/1"), times(2)).increment();
+        verify(counters.get("packet_in/request/1")).increment();
+        verify(counters.get("packet_in/discover/2")).increment();
+        verify(counters.get("packet_in/release/2")).increment();
+        // the message types a client does not send are counted together
+        verify(counters.get("packet_in/other/2")).increment();
+        // bounded whatever the number of client MACs
+        assertEquals(5, counters.size());
+    }
+
+    @Test
+    public void testDropsLabelledByDpnAndReason() {
+        pktCounters = new DhcpPacketCounters(metricProvider, 0, 0);
+
+        pktCounters.packetDrop("1", "SUBNET_NOT_FOUND");
+        pktCounters.packetDrop("1", "SUBNET_NOT_FOUND");
+        pktCounters.packetDrop("1", "RESPONDER_QUEUE_FULL");
+        pktCounters.packetDrop("2", "SUBNET_NOT_FOUND");
+
+        verify(counters.get("packet_drop/1/SUBNET_NOT_FOUND"), times(2)).increment();
+        verify(counters.get("packet_drop/1/RESPONDER_QUEUE_FULL")).increment();
+        verify(counters.get("packet_drop/2/SUBNET_NOT_FOUND")).increment();
+        assertEquals(3, counters.size());
+    }
+
+    @Test
+    public void testTopKEvictsLeastCountedMac() {
+        pktCounters = new DhcpPacketCounters(metricProvider, 2, REPORT_INTERVAL_SECONDS);
+        packetIns(MAC_1, 5);
+        packetIns(MAC_2, 3);
+
+        // the new MAC takes over the least counted one, along with its count
+        packetIns(MAC_3, 1);
+
+        assertEquals(List.of(entry(MAC_1, 5), entry(MAC_3, 4)), pktCounters.drainNoisyMacs());
+    }
+
+    @Test
+    public void testTopKNoisiestMacKeptOverEvictions() {
+        pktCounters = new DhcpPacketCounters(metricProvider, 2, REPORT_INTERVAL_SECONDS);
+        packetIns(MAC_1, 10);
+
+        // the other two MACs keep taking over each other
+        for (int i = 0; i < 4; i++) {
+            packetIns(MAC_2, 1);
+            packetIns(MAC_3, 1);
+        }
+
+        List<Entry<String, Long>> topMacs = pktCounters.drainNoisyMacs();
+        assertEquals(2, topMacs.size());
+        assertEquals(entry(MAC_1, 10), topMacs.get(0));
+        // overestimated, never underestimated
+        assertEquals(MAC_3, topMacs.get(1).getKey());
+        assertTrue(topMacs.get(1).getValue() >= 4);
+    }
+
+    @Test
+    public void testTopKResetOnReport() {
+        pktCounters = new DhcpPacketCounters(metricProvider, 2, REPORT_INTERVAL_SECONDS);
+        packetIns(MAC_1, 3);
+
+        assertEquals(List.of(entry(MAC_1, 3)), pktCounters.drainNoisyMacs());
+
+        assertTrue(pktCounters.drainNoisyMacs().isEmpty());
+        packetIns(MAC_2, 1);
+        assertEquals(List.of(entry(MAC_2, 1)), pktCounters.drainNoisyMacs());
+    }
+
+    @Test
+    public void testNoisyMacsNotSampledByDefault() {
+        pktCounters = new DhcpPacketCounters(metricProvider, 0, REPORT_INTERVAL_SECONDS);
+
+        packetIns(MAC_1, 3);
+
+        assertTrue(pktCounters.drainNoisyMacs().isEmpty());
+    }
+
+    private void packetIns(String macAddress, int count) {
+        for (int i = 0; i < count; i++) {
+            pktCounters.packetIn(DHCPConstants.MSG_DISCOVER, "1", macAddress);
+        }
+    }
+
+    private static Entry<String, Long> entry(String macAddress, long count) {
+        return new SimpleEntry<>(macAddress, count);
+    }
+}
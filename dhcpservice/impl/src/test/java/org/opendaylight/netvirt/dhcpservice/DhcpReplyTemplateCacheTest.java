@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.dhcpservice;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import org.junit.Test;
+import org.opendaylight.netvirt.dhcpservice.DhcpReplyTemplateCache.DhcpReplyTemplate;
+import org.opendaylight.netvirt.dhcpservice.api.DHCP;
+import org.opendaylight.netvirt.dhcpservice.api.DHCPConstants;
+
+public class DhcpReplyTemplateCacheTest {
+
+    private static final String PORT = "8e1c0c1f-1d5d-4e7b-9c7e-2b9d6d2f0a01";
+    private static final String OTHER_PORT = "8e1c0c1f-1d5d-4e7b-9c7e-2b9d6d2f0a02";
+    private static final byte[] PARAM_LIST = {1, 3, 6, 15, 51, 54};
+    private static final byte[] OTHER_PARAM_LIST = {1, 3, 6, 12, 15, 28, 42, 51, 54, 119};
+    private static final String ALLOCATED_IP = "10.0.0.5";
+    private static final String SERVER_IP = "10.0.0.2";
+    private static final int YIADDR_OFFSET = 16;
+
+    private final DhcpReplyTemplateCache cache = new DhcpReplyTemplateCache();
+
+    @Test
+    public void testOfferPatchedWithRequestFields() throws Exception {
+        DHCP discover = buildRequest(DHCPConstants.MSG_DISCOVER, 0x1234, PARAM_LIST, 1);
+        cacheReply(PORT, discover, DHCPConstants.MSG_OFFER);
+
+        DHCP nextDiscover = buildRequest(DHCPConstants.MSG_DISCOVER, 0xcafe0001, PARAM_LIST, 2);
+        nextDiscover.setFlags((short) 0x8000);
+        nextDiscover.setGiaddr(InetAddress.getByName("10.0.0.1").getAddress());
+        DhcpReplyTemplate template = cache.get(PORT, nextDiscover);
+        assertNotNull(template);
+        assertEquals(InetAddress.getByName(SERVER_IP), template.getServerIp());
+
+        byte[] rawReply = template.toReply(nextDiscover);
+        DHCP reply = new DHCP();
+        reply.deserialize(rawReply, 0, rawReply.length);
+        assertEquals(DHCPConstants.MSG_OFFER, reply.getMsgType());
+        assertEquals(0xcafe0001, reply.getXid());
+        assertEquals((short) 0x8000, reply.getFlags());
+        assertArrayEquals(nextDiscover.getChaddr(), reply.getChaddr());
+        assertArrayEquals(nextDiscover.getGiaddr(), reply.getGiaddr());
+        assertArrayEquals(InetAddress.getByName(ALLOCATED_IP).getAddress(),
+                Arrays.copyOfRange(rawReply, YIADDR_OFFSET, YIADDR_OFFSET + 4));
+        assertEquals(InetAddress.getByName(SERVER_IP), reply.getOptionInetAddr(DHCPConstants.OPT_SERVER_IDENTIFIER));
+    }
+
+    @Test
+    public void testAckOnlyForAllocatedIp() throws Exception {
+        DHCP request = buildRequest(DHCPConstants.MSG_REQUEST, 1, PARAM_LIST, 1);
+        request.setOptionInetAddr(DHCPConstants.OPT_REQUESTED_ADDRESS, ALLOCATED_IP);
+        cacheReply(PORT, request, DHCPConstants.MSG_ACK);
+
+        DHCP renewal = buildRequest(DHCPConstants.MSG_REQUEST, 2, PARAM_LIST, 1);
+        renewal.setCiaddr(InetAddress.getByName(ALLOCATED_IP).getAddress());
+        DhcpReplyTemplate template = cache.get(PORT, renewal);
+        assertNotNull(template);
+        byte[] rawReply = template.toReply(renewal);
+        DHCP reply = new DHCP();
+        reply.deserialize(rawReply, 0, rawReply.length);
+        assertArrayEquals(renewal.getCiaddr(), reply.getCiaddr());
+
+        DHCP otherRequest = buildRequest(DHCPConstants.MSG_REQUEST, 3, PARAM_LIST, 1);
+        otherRequest.setOptionInetAddr(DHCPConstants.OPT_REQUESTED_ADDRESS, "10.0.0.6");
+        assertNull(cache.get(PORT, otherRequest));
+        assertNull(cache.get(PORT, buildRequest(DHCPConstants.MSG_DISCOVER, 4, PARAM_LIST, 1)));
+    }
+
+    @Test
+    public void testOneTemplatePerReplyTypeAndPort() throws Exception {
+        cacheReply(PORT, buildRequest(DHCPConstants.MSG_DISCOVER, 1, PARAM_LIST, 1), DHCPConstants.MSG_OFFER);
+        cacheReply(PORT, buildRequest(DHCPConstants.MSG_DISCOVER, 2, OTHER_PARAM_LIST, 1), DHCPConstants.MSG_OFFER);
+
+        // the last parameter request list replaced the previous one
+        assertNull(cache.get(PORT, buildRequest(DHCPConstants.MSG_DISCOVER, 3, PARAM_LIST, 1)));
+        assertNotNull(cache.get(PORT, buildRequest(DHCPConstants.MSG_DISCOVER, 4, OTHER_PARAM_LIST, 1)));
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        DHCP discover = buildRequest(DHCPConstants.MSG_DISCOVER, 1, PARAM_LIST, 1);
+        cacheReply(PORT, discover, DHCPConstants.MSG_OFFER);
+        cacheReply(OTHER_PORT, discover, DHCPConstants.MSG_OFFER);
+
+        cache.invalidatePort(PORT);
+        assertNull(cache.get(PORT, discover));
+        assertNotNull(cache.get(OTHER_PORT, discover));
+
+        cache.invalidateAll();
+        assertNull(cache.get(OTHER_PORT, discover));
+    }
+
+    @Test
+    public void testReplyBuiltAcrossInvalidationNotCached() throws Exception {
+        DHCP discover = buildRequest(DHCPConstants.MSG_DISCOVER, 1, PARAM_LIST, 1);
+        long generation = cache.getGeneration();
+        DHCP offer = buildReply(DHCPConstants.MSG_OFFER);
+
+        cache.invalidateAll();
+        cache.put(PORT, discover, offer, offer.serialize(), generation);
+
+        assertNull(cache.get(PORT, discover));
+    }
+
+    private void cacheReply(String portId, DHCP request, byte msgType) throws Exception {
+        DHCP reply = buildReply(msgType);
+        cache.put(portId, request, reply, reply.serialize(), cache.getGeneration());
+    }
+
+    private static DHCP buildRequest(byte msgType, int xid, byte[] paramList, int mac) {
+        DHCP request = new DHCP();
+        request.setOp(DHCPConstants.BOOTREQUEST);
+        request.setXid(xid);
+        request.setChaddr(new byte[] {(byte) 0xfa, 0x16, 0x3e, 0, 0, (byte) mac, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+        request.setMsgType(msgType);
+        request.setOptionBytes(DHCPConstants.OPT_PARAMETER_REQUEST_LIST, paramList);
+        return request;
+    }
+
+    private static DHCP buildReply(byte msgType) throws Exception {
+        DHCP reply = new DHCP();
+        reply.setOp(DHCPConstants.BOOTREPLY);
+        reply.setYiaddr(ALLOCATED_IP);
+        reply.setMsgType(msgType);
+        reply.setOptionInetAddr(DHCPConstants.OPT_SERVER_IDENTIFIER, SERVER_IP);
+        reply.setOptionInt(DHCPConstants.OPT_LEASE_TIME, 86400);
+        return reply;
+    }
+}
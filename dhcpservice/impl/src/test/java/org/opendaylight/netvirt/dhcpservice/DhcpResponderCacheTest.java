@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.dhcpservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.opendaylight.genius.interfacemanager.globals.InterfaceInfo;
+import org.opendaylight.genius.interfacemanager.interfaces.IInterfaceManager;
+import org.opendaylight.infrautils.metrics.MetricProvider;
+import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.iana._if.type.rev170119.L2vlan;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.iana._if.type.rev170119.Other;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.interfaces.rev140508.InterfaceType;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.interfaces.rev140508.interfaces.state.Interface;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.interfaces.rev140508.interfaces.state.InterfaceBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.action.types.rev131112.action.list.Action;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.interfacemanager.rpcs.rev160406.GetInterfaceFromIfIndexOutputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.interfacemanager.rpcs.rev160406.OdlInterfaceRpcService;
+import org.opendaylight.yangtools.yang.common.RpcResultBuilder;
+
+public class DhcpResponderCacheTest {
+
+    private static final String INTERFACE = "8e1c0c1f-1d5d-4e7b-9c7e-2b9d6d2f0a01";
+    private static final int LPORT_TAG = 5;
+
+    private final DataBroker dataBroker = mock(DataBroker.class);
+    private final OdlInterfaceRpcService interfaceManagerRpc = mock(OdlInterfaceRpcService.class);
+    private final IInterfaceManager interfaceManager = mock(IInterfaceManager.class);
+    private final DhcpResponderCache dhcpResponderCache =
+        new DhcpResponderCache(dataBroker, new DhcpReplyTemplateCache());
+    private final DhcpInterfaceStateCacheFeeder feeder =
+        new DhcpInterfaceStateCacheFeeder(dataBroker, dhcpResponderCache);
+    private final DhcpPktHandler dhcpPktHandler = new DhcpPktHandler(null, null, interfaceManagerRpc, null,
+        interfaceManager, null, null, dataBroker, null, mock(MetricProvider.class), dhcpResponderCache, null, null);
+
+    @After
+    public void tearDown() {
+        dhcpPktHandler.close();
+    }
+
+    @Test
+    public void testInterfaceNameFedFromInterfaceState() {
+        feeder.add(null, newInterfaceState(L2vlan.class));
+
+        assertEquals(INTERFACE, dhcpPktHandler.getInterfaceNameFromTag(LPORT_TAG));
+        verify(interfaceManagerRpc, never()).getInterfaceFromIfIndex(any());
+    }
+
+    @Test
+    public void testInterfaceInvalidatedOnInterfaceStateUpdate() {
+        cacheInterface();
+        Interface state = newInterfaceState(L2vlan.class);
+
+        feeder.update(null, state, state);
+
+        assertNull(dhcpResponderCache.getInterfaceInfo(INTERFACE));
+        assertNull(dhcpResponderCache.getEgressActions(INTERFACE));
+        assertEquals(INTERFACE, dhcpResponderCache.getInterfaceName(LPORT_TAG));
+    }
+
+    @Test
+    public void testInterfaceEvictedOnInterfaceStateRemoval() {
+        cacheInterface();
+
+        feeder.remove(null, newInterfaceState(L2vlan.class));
+
+        assertNull(dhcpResponderCache.getInterfaceName(LPORT_TAG));
+        assertNull(dhcpResponderCache.getInterfaceInfo(INTERFACE));
+        assertNull(dhcpResponderCache.getEgressActions(INTERFACE));
+    }
+
+    @Test
+    public void testNonDhcpInterfaceStateIgnored() {
+        cacheInterface();
+
+        feeder.add(null, new InterfaceBuilder().setName("other").setType(Other.class).setIfIndex(LPORT_TAG + 1)
+            .build());
+        feeder.remove(null, newInterfaceState(Other.class));
+
+        assertNull(dhcpResponderCache.getInterfaceName(LPORT_TAG + 1));
+        assertEquals(INTERFACE, dhcpResponderCache.getInterfaceName(LPORT_TAG));
+        assertSame(dhcpResponderCache.getInterfaceInfo(INTERFACE), dhcpPktHandler.getInterfaceInfo(INTERFACE));
+    }
+
+    @Test
+    public void testInterfaceNameFromRpcOnMissThenCached() {
+        when(interfaceManagerRpc.getInterfaceFromIfIndex(any())).thenReturn(RpcResultBuilder
+            .success(new GetInterfaceFromIfIndexOutputBuilder().setInterfaceName(INTERFACE).build()).buildFuture());
+
+        assertEquals(INTERFACE, dhcpPktHandler.getInterfaceNameFromTag(LPORT_TAG));
+        assertEquals(INTERFACE, dhcpPktHandler.getInterfaceNameFromTag(LPORT_TAG));
+
+        verify(interfaceManagerRpc, times(1)).getInterfaceFromIfIndex(any());
+        assertEquals(INTERFACE, dhcpResponderCache.getInterfaceName(LPORT_TAG));
+    }
+
+    @Test
+    public void testInterfaceInfoFromDatastoreOnMissThenCached() {
+        InterfaceInfo interfaceInfo = mock(InterfaceInfo.class);
+        when(interfaceManager.getInterfaceInfoFromOperationalDataStore(INTERFACE)).thenReturn(interfaceInfo);
+
+        assertSame(interfaceInfo, dhcpPktHandler.getInterfaceInfo(INTERFACE));
+        assertSame(interfaceInfo, dhcpPktHandler.getInterfaceInfo(INTERFACE));
+
+        verify(interfaceManager, times(1)).getInterfaceInfoFromOperationalDataStore(INTERFACE);
+    }
+
+    @Test
+    public void testInterfaceInfoReadAgainOnceInvalidated() {
+        InterfaceInfo interfaceInfo = mock(InterfaceInfo.class);
+        when(interfaceManager.getInterfaceInfoFromOperationalDataStore(INTERFACE)).thenReturn(interfaceInfo);
+        dhcpPktHandler.getInterfaceInfo(INTERFACE);
+
+        feeder.add(null, newInterfaceState(L2vlan.class));
+        dhcpPktHandler.getInterfaceInfo(INTERFACE);
+
+        verify(interfaceManager, times(2)).getInterfaceInfoFromOperationalDataStore(INTERFACE);
+    }
+
+    @Test
+    public void testCachedEgressActionsServedWithoutRpc() {
+        List<Action> actions = List.of(mock(Action.class));
+        dhcpResponderCache.putEgressActions(INTERFACE, actions);
+
+        assertSame(actions, dhcpPktHandler.getEgressAction(INTERFACE, null));
+        verify(interfaceManagerRpc, never()).getEgressActionsForInterface(any());
+    }
+
+    private void cacheInterface() {
+        dhcpResponderCache.putInterfaceName(LPORT_TAG, INTERFACE);
+        dhcpResponderCache.putInterfaceInfo(INTERFACE, mock(InterfaceInfo.class));
+        dhcpResponderCache.putEgressActions(INTERFACE, List.of(mock(Action.class)));
+    }
+
+    private static Interface newInterfaceState(Class<? extends InterfaceType> type) {
+        return new InterfaceBuilder().setName(INTERFACE).setType(type).setIfIndex(LPORT_TAG).build();
+    }
+}
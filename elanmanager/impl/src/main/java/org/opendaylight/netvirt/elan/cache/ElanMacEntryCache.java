@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.elan.cache;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.opendaylight.infrautils.utils.concurrent.Executors;
+import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
+import org.opendaylight.serviceutils.tools.listener.AbstractClusteredAsyncDataTreeChangeListener;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.yang.types.rev130715.PhysAddress;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.elan.rev150602.ElanForwardingTables;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.elan.rev150602.elan.forwarding.tables.MacTable;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.elan.rev150602.forwarding.entries.MacEntry;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the operational ELAN forwarding table MacEntry instances by ELAN name and MAC, and the MACs being learnt.
+ *
+ * <p>Each ELAN has its own map, keyed by the MAC address as a long. The MACs being learnt are kept until their
+ * MacEntry is seen in the datastore, or at most {@link #LEARN_PROTECTION_MILLIS}, so that the packets of a MAC
+ * received before it is written are not learnt again. The expired ones are swept at most once per protection window,
+ * for the MACs which are never written, such as the provider network ones, and for the deleted ELANs.
+ */
+@Singleton
+public class ElanMacEntryCache extends AbstractClusteredAsyncDataTreeChangeListener<MacEntry> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ElanMacEntryCache.class);
+
+    public static final long LEARN_PROTECTION_MILLIS = 1000;
+
+    private final ConcurrentMap<String, ConcurrentMap<Long, MacEntry>> macEntriesByElan = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<Long, PendingLearn>> learnsByElan = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweepMillis = new AtomicLong();
+
+    @Inject
+    public ElanMacEntryCache(final DataBroker dataBroker) {
+        super(dataBroker, LogicalDatastoreType.OPERATIONAL, InstanceIdentifier.create(ElanForwardingTables.class)
+                .child(MacTable.class).child(MacEntry.class),
+                Executors.newListeningSingleThreadExecutor("ElanMacEntryCache", LOG));
+    }
+
+    @Override
+    @PreDestroy
+    public void close() {
+        super.close();
+        Executors.shutdownAndAwaitTermination(getExecutorService());
+    }
+
+    @Override
+    public void add(InstanceIdentifier<MacEntry> identifier, MacEntry macEntry) {
+        String elanName = identifier.firstKeyOf(MacTable.class).getElanInstanceName();
+        long mac = toMacKey(macEntry.getMacAddress());
+        macEntriesByElan.computeIfAbsent(elanName, key -> new ConcurrentHashMap<>()).put(mac, macEntry);
+        learnDone(elanName, mac);
+    }
+
+    @Override
+    public void update(InstanceIdentifier<MacEntry> identifier, MacEntry original, MacEntry update) {
+        add(identifier, update);
+    }
+
+    @Override
+    public void remove(InstanceIdentifier<MacEntry> identifier, MacEntry macEntry) {
+        String elanName = identifier.firstKeyOf(MacTable.class).getElanInstanceName();
+        long mac = toMacKey(macEntry.getMacAddress());
+        macEntriesByElan.computeIfPresent(elanName, (key, macEntries) -> {
+            macEntries.remove(mac);
+            return macEntries.isEmpty() ? null : macEntries;
+        });
+        learnDone(elanName, mac);
+    }
+
+    public Optional<MacEntry> get(String elanName, PhysAddress macAddress) {
+        ConcurrentMap<Long, MacEntry> macEntries = macEntriesByElan.get(elanName);
+        return macEntries != null ? Optional.ofNullable(macEntries.get(toMacKey(macAddress)))
+                : Optional.empty();
+    }
+
+    /**
+     * Checks if a MAC was learnt, or is being learnt, on an interface within the last
+     * {@link #LEARN_PROTECTION_MILLIS}. Past that, a packet of a known MAC is a flow miss to be learnt again.
+     *
+     * @param elanName the ELAN name
+     * @param macAddress the MAC address
+     * @param interfaceName the interface the MAC was seen on
+     * @return true if the MAC needs not be learnt again, else false
+     */
+    public boolean isLearnt(String elanName, PhysAddress macAddress, String interfaceName) {
+        return isLearnt(elanName, macAddress, interfaceName, System.currentTimeMillis());
+    }
+
+    boolean isLearnt(String elanName, PhysAddress macAddress, String interfaceName, long nowMillis) {
+        long mac = toMacKey(macAddress);
+        ConcurrentMap<Long, MacEntry> macEntries = macEntriesByElan.get(elanName);
+        MacEntry macEntry = macEntries != null ? macEntries.get(mac) : null;
+        if (macEntry != null && interfaceName.equals(macEntry.getInterface())
+                && macEntry.getControllerLearnedForwardingEntryTimestamp() != null
+                && nowMillis <= macEntry.getControllerLearnedForwardingEntryTimestamp().longValue()
+                        + LEARN_PROTECTION_MILLIS) {
+            return true;
+        }
+        ConcurrentMap<Long, PendingLearn> learns = learnsByElan.get(elanName);
+        PendingLearn learn = learns != null ? learns.get(mac) : null;
+        return learn != null && !learn.isExpired(nowMillis) && interfaceName.equals(learn.interfaceName);
+    }
+
+    /**
+     * Records a MAC being learnt on an interface, until its MacEntry is written.
+     *
+     * @param elanName the ELAN name
+     * @param macAddress the MAC address
+     * @param interfaceName the interface the MAC was seen on
+     */
+    public void learning(String elanName, PhysAddress macAddress, String interfaceName) {
+        learning(elanName, macAddress, interfaceName, System.currentTimeMillis());
+    }
+
+    void learning(String elanName, PhysAddress macAddress, String interfaceName, long nowMillis) {
+        sweepExpiredLearns(nowMillis);
+        PendingLearn learn = new PendingLearn(interfaceName, nowMillis);
+        learnsByElan.compute(elanName, (key, learns) -> {
+            ConcurrentMap<Long, PendingLearn> elanLearns = learns != null ? learns : new ConcurrentHashMap<>();
+            elanLearns.put(toMacKey(macAddress), learn);
+            return elanLearns;
+        });
+    }
+
+    int pendingLearnCount() {
+        return learnsByElan.values().stream().mapToInt(ConcurrentMap::size).sum();
+    }
+
+    private void learnDone(String elanName, long mac) {
+        learnsByElan.computeIfPresent(elanName, (key, learns) -> {
+            learns.remove(mac);
+            return learns.isEmpty() ? null : learns;
+        });
+    }
+
+    private void sweepExpiredLearns(long nowMillis) {
+        long sweepMillis = nextSweepMillis.get();
+        if (nowMillis < sweepMillis
+                || !nextSweepMillis.compareAndSet(sweepMillis, nowMillis + LEARN_PROTECTION_MILLIS)) {
+            return;
+        }
+        for (String elanName : learnsByElan.keySet()) {
+            learnsByElan.computeIfPresent(elanName, (key, learns) -> {
+                learns.values().removeIf(learn -> learn.isExpired(nowMillis));
+                return learns.isEmpty() ? null : learns;
+            });
+        }
+    }
+
+    /**
+     * Converts a MAC address to a long, whatever its case.
+     *
+     * @param macAddress the MAC address, as six colon separated hex bytes
+     * @return the MAC address as a long
+     */
+    static long toMacKey(PhysAddress macAddress) {
+        String mac = macAddress.getValue();
+        long key = 0;
+        for (int i = 0; i < mac.length(); i++) {
+            int digit = Character.digit(mac.charAt(i), 16);
+            if (digit >= 0) {
+                key = key << 4 | digit;
+            }
+        }
+        return key;
+    }
+
+    private static final class PendingLearn {
+        final String interfaceName;
+        final long learnedMillis;
+
+        PendingLearn(String interfaceName, long learnedMillis) {
+            this.interfaceName = interfaceName;
+            this.learnedMillis = learnedMillis;
+        }
+
+        boolean isExpired(long nowMillis) {
+            return nowMillis > learnedMillis + LEARN_PROTECTION_MILLIS;
+        }
+    }
+}
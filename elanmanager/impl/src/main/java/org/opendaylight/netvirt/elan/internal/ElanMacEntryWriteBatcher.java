@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.elan.internal;
+
+import static org.opendaylight.mdsal.binding.util.Datastore.OPERATIONAL;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.opendaylight.infrautils.utils.concurrent.Executors;
+import org.opendaylight.mdsal.binding.util.Datastore.Operational;
+import org.opendaylight.mdsal.binding.util.ManagedNewTransactionRunner;
+import org.opendaylight.mdsal.binding.util.TypedWriteTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Batches the operational MacEntry writes of the learnt MACs into one transaction.
+ *
+ * <p>The writes are committed together once the batch is full, or at most {@code batchIntervalMillis} after the
+ * first write of the batch. The batches are committed one after the other, each once the previous one is, and the
+ * future of a write completes once its batch is committed. A MAC job returning that future, the next job of the MAC
+ * only runs once the writes of the previous one are in the datastore, so the writes and deletes of a MacEntry are
+ * never reordered.
+ */
+final class ElanMacEntryWriteBatcher implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(ElanMacEntryWriteBatcher.class);
+
+    private final ManagedNewTransactionRunner txRunner;
+    private final int batchSize;
+    private final long batchIntervalMillis;
+    private final ScheduledThreadPoolExecutor flusher;
+    private List<PendingWrite> batch = new ArrayList<>();
+
+    ElanMacEntryWriteBatcher(ManagedNewTransactionRunner txRunner, int batchSize, long batchIntervalMillis) {
+        this.txRunner = txRunner;
+        this.batchSize = batchSize;
+        this.batchIntervalMillis = batchIntervalMillis;
+        this.flusher = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactoryBuilder().setNameFormat("ElanMacEntryWriteBatcher").setDaemon(true).build());
+        flusher.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Adds MacEntry writes to the current batch.
+     *
+     * @param writes the writes, applied to the transaction of the batch
+     * @return the future completing once the batch is committed
+     */
+    ListenableFuture<Void> write(Consumer<TypedWriteTransaction<Operational>> writes) {
+        PendingWrite pendingWrite = new PendingWrite(writes);
+        synchronized (this) {
+            batch.add(pendingWrite);
+            if (batch.size() == 1) {
+                flusher.schedule(this::flush, batchIntervalMillis, TimeUnit.MILLISECONDS);
+            } else if (batch.size() == batchSize) {
+                flusher.execute(this::flush);
+            }
+        }
+        return pendingWrite.future;
+    }
+
+    /**
+     * Commits the pending writes, and stops.
+     */
+    @Override
+    public void close() {
+        flusher.execute(this::flush);
+        Executors.shutdownAndAwaitTermination(flusher);
+    }
+
+    private void flush() {
+        List<PendingWrite> writes;
+        synchronized (this) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            writes = batch;
+            batch = new ArrayList<>();
+        }
+        try {
+            txRunner.callWithNewWriteOnlyTransactionAndSubmit(OPERATIONAL,
+                tx -> writes.forEach(write -> write.writes.accept(tx))).get();
+            writes.forEach(write -> write.future.set(null));
+        } catch (InterruptedException | ExecutionException e) {
+            LOG.error("Failed to commit a batch of {} MacEntry writes", writes.size(), e);
+            writes.forEach(write -> write.future.setException(e));
+        }
+    }
+
+    private static final class PendingWrite {
+        final Consumer<TypedWriteTransaction<Operational>> writes;
+        final SettableFuture<Void> future = SettableFuture.create();
+
+        PendingWrite(Consumer<TypedWriteTransaction<Operational>> writes) {
+            this.writes = writes;
+        }
+    }
+}
@@ -22,6 +22,7 @@ public final class ElanManagerCounters {
     private final Meter unknownSmacPktinFlowsRemovedForRelearnedMeter;
     private final Meter unknownSmacPktinRemovedForRelearnedMeter;
     private final Meter unknownSmacPktinMacMigrationIgnoredDueToProtectionMeter;
+    private final Meter unknownSmacPktinAlreadyLearnedIgnoredMeter;
 
     @Inject
     public ElanManagerCounters(MetricProvider metricProvider) {
@@ -35,6 +36,8 @@ public final class ElanManagerCounters {
             meter(metricProvider, "unknown_smac_pktin_removed_for_relearned");
         this.unknownSmacPktinMacMigrationIgnoredDueToProtectionMeter =
             meter(metricProvider, "unknown_smac_pktin_mac_migration_ignored_due_to_protection");
+        this.unknownSmacPktinAlreadyLearnedIgnoredMeter =
+            meter(metricProvider, "unknown_smac_pktin_already_learned_ignored");
     }
 
     private Meter meter(MetricProvider metricProvider, String id) {
@@ -65,4 +68,8 @@ public final class ElanManagerCounters {
     public void unknownSmacPktinMacMigrationIgnoredDueToProtection() {
         unknownSmacPktinMacMigrationIgnoredDueToProtectionMeter.mark();
     }
+
+    public void unknownSmacPktinAlreadyLearnedIgnored() {
+        unknownSmacPktinAlreadyLearnedIgnoredMeter.mark();
+    }
 }
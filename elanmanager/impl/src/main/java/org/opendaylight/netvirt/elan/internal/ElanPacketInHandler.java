@@ -8,17 +8,16 @@
 package org.opendaylight.netvirt.elan.internal;
 
 import static org.opendaylight.mdsal.binding.util.Datastore.CONFIGURATION;
-import static org.opendaylight.mdsal.binding.util.Datastore.OPERATIONAL;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import java.math.BigInteger;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import org.eclipse.jdt.annotation.Nullable;
 import org.opendaylight.genius.interfacemanager.globals.InterfaceInfo;
 import org.opendaylight.genius.interfacemanager.interfaces.IInterfaceManager;
 import org.opendaylight.genius.mdsalutil.MetaDataUtil;
@@ -31,8 +30,10 @@ import org.opendaylight.mdsal.binding.api.DataBroker;
 import org.opendaylight.mdsal.binding.util.ManagedNewTransactionRunner;
 import org.opendaylight.mdsal.binding.util.ManagedNewTransactionRunnerImpl;
 import org.opendaylight.netvirt.elan.cache.ElanInstanceCache;
+import org.opendaylight.netvirt.elan.cache.ElanMacEntryCache;
 import org.opendaylight.netvirt.elan.evpn.utils.EvpnUtils;
 import org.opendaylight.netvirt.elan.l2gw.utils.ElanL2GatewayUtils;
+import org.opendaylight.netvirt.elan.utils.ElanConstants;
 import org.opendaylight.netvirt.elan.utils.ElanUtils;
 import org.opendaylight.openflowplugin.libraries.liblldp.PacketException;
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.IpAddress;
@@ -67,11 +68,14 @@ public class ElanPacketInHandler implements PacketProcessingListener {
     private final JobCoordinator jobCoordinator;
     private final ElanInstanceCache elanInstanceCache;
     private final ElanManagerCounters elanManagerCounters;
+    private final ElanMacEntryCache elanMacEntryCache;
+    private final ElanMacEntryWriteBatcher macEntryWriteBatcher;
 
     @Inject
     public ElanPacketInHandler(DataBroker dataBroker, final IInterfaceManager interfaceManager, ElanUtils elanUtils,
             EvpnUtils evpnUtils, ElanL2GatewayUtils elanL2GatewayUtils, JobCoordinator jobCoordinator,
-            ElanInstanceCache elanInstanceCache, ElanManagerCounters elanManagerCounters) {
+            ElanInstanceCache elanInstanceCache, ElanManagerCounters elanManagerCounters,
+            ElanMacEntryCache elanMacEntryCache) {
         this.txRunner = new ManagedNewTransactionRunnerImpl(dataBroker);
         this.interfaceManager = interfaceManager;
         this.elanUtils = elanUtils;
@@ -80,6 +84,14 @@ public class ElanPacketInHandler implements PacketProcessingListener {
         this.jobCoordinator = jobCoordinator;
         this.elanInstanceCache = elanInstanceCache;
         this.elanManagerCounters = elanManagerCounters;
+        this.elanMacEntryCache = elanMacEntryCache;
+        this.macEntryWriteBatcher = new ElanMacEntryWriteBatcher(txRunner, ElanConstants.MAC_LEARN_BATCH_SIZE,
+                ElanConstants.MAC_LEARN_BATCH_INTERVAL_MILLIS);
+    }
+
+    @PreDestroy
+    public void close() {
+        macEntryWriteBatcher.close();
     }
 
     @Override
@@ -114,14 +126,21 @@ public class ElanPacketInHandler implements PacketProcessingListener {
                     LOG.warn("not able to find elanTagName in elan-tag-name-map for elan tag {}", elanTag);
                     return;
                 }
+                String elanName = elanTagName.getName();
+                PhysAddress physAddress = new PhysAddress(macAddress);
+                if (elanMacEntryCache.isLearnt(elanName, physAddress, interfaceName)) {
+                    // a burst of packets from a MAC not yet programmed, or just learnt on the same interface
+                    elanManagerCounters.unknownSmacPktinAlreadyLearnedIgnored();
+                    return;
+                }
                 ElanInterfaceMac elanInterfaceMac = elanUtils.getElanInterfaceMacByInterfaceName(interfaceName);
                 if (elanInterfaceMac == null) {
                     LOG.info("There is no ElanInterfaceForwardingEntryDS created for interface :{}", interfaceName);
                     return;
                 }
-                String elanName = elanTagName.getName();
-                PhysAddress physAddress = new PhysAddress(macAddress);
-                MacEntry oldMacEntry = elanUtils.getMacEntryForElanInstance(elanName, physAddress).orElse(null);
+                // the cache is eventually consistent, a miss is read again under the MAC job key
+                MacEntry cachedMacEntry = elanMacEntryCache.get(elanName, physAddress).orElse(null);
+                elanMacEntryCache.learning(elanName, physAddress, interfaceName);
                 boolean isVlanOrFlatProviderIface = interfaceManager.isExternalInterface(interfaceName);
 
                 Optional<IpAddress> srcIpAddress = elanUtils.getSourceIpAddress(res);
@@ -144,58 +163,76 @@ public class ElanPacketInHandler implements PacketProcessingListener {
                     ElanInstance elanInstance = elanInstanceCache.get(elanName).orElse(null);
                     evpnUtils.advertisePrefix(elanInstance, macAddress, prefix, interfaceName, interfaceInfo.getDpId());
                 }
-                enqueueJobForMacSpecificTasks(macAddress, elanTag, interfaceName, elanName, physAddress, oldMacEntry,
-                        newMacEntry, isVlanOrFlatProviderIface);
-
                 ElanInstance elanInstance = elanInstanceCache.get(elanName).orElse(null);
                 InterfaceInfo interfaceInfo = interfaceManager.getInterfaceInfo(interfaceName);
                 if (interfaceInfo == null) {
                     LOG.trace("Interface:{} is not present under Config DS", interfaceName);
-                    return;
                 }
-                enqueueJobForDPNSpecificTasks(macAddress, elanTag, interfaceName, physAddress, elanInstance,
-                        interfaceInfo, oldMacEntry, newMacEntry, isVlanOrFlatProviderIface);
-
-
+                enqueueJobForMacSpecificTasks(macAddress, elanTag, interfaceName, elanName, physAddress, cachedMacEntry,
+                        newMacEntry, isVlanOrFlatProviderIface, elanInstance, interfaceInfo);
             } catch (PacketException e) {
                 LOG.error("Failed to decode packet: {}", notification, e);
             }
         }
     }
 
+    /**
+     * Writes the learnt MAC, in the MAC job. The old MacEntry of the MAC is read from the datastore when it is not
+     * cached, so that the MacEntry and flows of a moved MAC are removed even before the cache has seen it. The
+     * MacEntry writes of the learn are batched with the ones of other learns, the job completing once they are
+     * committed, and the flows are then programmed by the DPN job.
+     */
     private void enqueueJobForMacSpecificTasks(final String macAddress, final Uint32 elanTag, String interfaceName,
                                                String elanName, PhysAddress physAddress,
-                                               MacEntry oldMacEntry, MacEntry newMacEntry,
-                                               final boolean isVlanOrFlatProviderIface) {
-        jobCoordinator.enqueueJob(getElanMacKey(elanTag, macAddress),
-            () -> Collections.singletonList(txRunner.callWithNewWriteOnlyTransactionAndSubmit(OPERATIONAL, tx -> {
-                if (oldMacEntry != null && Objects.equals(oldMacEntry.getInterface(), interfaceName)) {
-                    // This should never occur because of ovs temporary mac learning
-                    elanManagerCounters.unknownSmacPktinForwardingEntriesRemoved();
-                } else if (oldMacEntry != null && !isVlanOrFlatProviderIface) {
-                    long macTimeStamp = oldMacEntry.getControllerLearnedForwardingEntryTimestamp().longValue();
-                    if (System.currentTimeMillis() > macTimeStamp + 1000) {
-                        InstanceIdentifier<MacEntry> macEntryId = ElanUtils
-                                .getInterfaceMacEntriesIdentifierOperationalDataPath(oldMacEntry.getInterface(),
-                                        physAddress);
-                        tx.delete(macEntryId);
-                    } else {
-                        // New FEs flood their packets on all interfaces. This can lead
-                        // to many contradicting packet_ins. Ignore all packets received
-                        // within 1s after the first packet_in
-                        elanManagerCounters.unknownSmacPktinMacMigrationIgnoredDueToProtection();
-                    }
-                } else if (oldMacEntry != null) {
-                    elanManagerCounters.unknownSmacPktinRemovedForRelearned();
+                                               @Nullable MacEntry cachedMacEntry, MacEntry newMacEntry,
+                                               final boolean isVlanOrFlatProviderIface,
+                                               @Nullable ElanInstance elanInstance,
+                                               @Nullable InterfaceInfo interfaceInfo) {
+        jobCoordinator.enqueueJob(getElanMacKey(elanTag, macAddress), () -> {
+            MacEntry oldMacEntry = cachedMacEntry != null ? cachedMacEntry
+                    : elanUtils.getMacEntryForElanInstance(elanName, physAddress).orElse(null);
+            InstanceIdentifier<MacEntry> oldMacEntryId = null;
+            if (oldMacEntry != null && Objects.equals(oldMacEntry.getInterface(), interfaceName)) {
+                // This should never occur because of ovs temporary mac learning
+                elanManagerCounters.unknownSmacPktinForwardingEntriesRemoved();
+            } else if (oldMacEntry != null && !isVlanOrFlatProviderIface) {
+                long macTimeStamp = oldMacEntry.getControllerLearnedForwardingEntryTimestamp().longValue();
+                if (System.currentTimeMillis() > macTimeStamp + ElanMacEntryCache.LEARN_PROTECTION_MILLIS) {
+                    oldMacEntryId = ElanUtils.getInterfaceMacEntriesIdentifierOperationalDataPath(
+                            oldMacEntry.getInterface(), physAddress);
+                } else {
+                    // New FEs flood their packets on all interfaces. This can lead
+                    // to many contradicting packet_ins. Ignore all packets received
+                    // within 1s after the first packet_in
+                    elanManagerCounters.unknownSmacPktinMacMigrationIgnoredDueToProtection();
+                }
+            } else if (oldMacEntry != null) {
+                elanManagerCounters.unknownSmacPktinRemovedForRelearned();
+            }
+            // This check is required only to update elan-forwarding-tables when mac is learned
+            // in ports (example: VM interfaces) other than on vlan provider port.
+            InstanceIdentifier<MacEntry> elanMacEntryId = !isVlanOrFlatProviderIface && oldMacEntry == null
+                    ? ElanUtils.getMacEntryOperationalDataPath(elanName, physAddress) : null;
+            InstanceIdentifier<MacEntry> interfaceMacEntryId = interfaceInfo != null
+                    ? ElanUtils.getInterfaceMacEntriesIdentifierOperationalDataPath(interfaceName, physAddress) : null;
+            InstanceIdentifier<MacEntry> removedMacEntryId = oldMacEntryId;
+            ListenableFuture<Void> future = macEntryWriteBatcher.write(tx -> {
+                if (removedMacEntryId != null) {
+                    tx.delete(removedMacEntryId);
                 }
-                // This check is required only to update elan-forwarding-tables when mac is learned
-                // in ports (example: VM interfaces) other than on vlan provider port.
-                if (!isVlanOrFlatProviderIface && oldMacEntry == null) {
-                    InstanceIdentifier<MacEntry> elanMacEntryId =
-                            ElanUtils.getMacEntryOperationalDataPath(elanName, physAddress);
+                if (elanMacEntryId != null) {
                     tx.mergeParentStructurePut(elanMacEntryId, newMacEntry);
                 }
-            })));
+                if (interfaceMacEntryId != null) {
+                    tx.mergeParentStructurePut(interfaceMacEntryId, newMacEntry);
+                }
+            });
+            if (interfaceInfo != null) {
+                enqueueJobForDPNSpecificTasks(macAddress, elanTag, interfaceName, physAddress, elanInstance,
+                        interfaceInfo, oldMacEntry, isVlanOrFlatProviderIface);
+            }
+            return Collections.singletonList(future);
+        });
     }
 
     private static String getElanMacKey(Uint32 elanTag, String macAddress) {
@@ -209,24 +246,16 @@ public class ElanPacketInHandler implements PacketProcessingListener {
     private void enqueueJobForDPNSpecificTasks(final String macAddress, final Uint32 elanTag, String interfaceName,
                                                PhysAddress physAddress, ElanInstance elanInstance,
                                                InterfaceInfo interfaceInfo, MacEntry oldMacEntry,
-                                               MacEntry newMacEntry, boolean isVlanOrFlatProviderIface) {
+                                               boolean isVlanOrFlatProviderIface) {
         jobCoordinator.enqueueJob(getElanMacDPNKey(elanTag, macAddress, interfaceInfo.getDpId()), () -> {
             macMigrationFlowsCleanup(interfaceName, elanInstance, oldMacEntry, isVlanOrFlatProviderIface);
             Uint64 dpId = interfaceManager.getDpnForInterface(interfaceName);
             elanL2GatewayUtils.scheduleAddDpnMacInExtDevices(elanInstance.getElanInstanceName(), dpId,
                     Collections.singletonList(physAddress));
             elanManagerCounters.unknownSmacPktinLearned();
-            List<ListenableFuture<?>> futures = new ArrayList<>();
-            futures.add(txRunner.callWithNewWriteOnlyTransactionAndSubmit(CONFIGURATION, tx -> {
-                futures.add(txRunner.callWithNewWriteOnlyTransactionAndSubmit(OPERATIONAL, operTx -> {
-                    elanUtils.setupMacFlows(elanInstance, interfaceInfo, elanInstance.getMacTimeout().toJava(),
-                        macAddress, !isVlanOrFlatProviderIface, tx);
-                    InstanceIdentifier<MacEntry> macEntryId =
-                        ElanUtils.getInterfaceMacEntriesIdentifierOperationalDataPath(interfaceName, physAddress);
-                    operTx.mergeParentStructurePut(macEntryId, newMacEntry);
-                }));
-            }));
-            return futures;
+            return Collections.singletonList(txRunner.callWithNewWriteOnlyTransactionAndSubmit(CONFIGURATION,
+                tx -> elanUtils.setupMacFlows(elanInstance, interfaceInfo, elanInstance.getMacTimeout().toJava(),
+                    macAddress, !isVlanOrFlatProviderIface, tx)));
         });
     }
 
@@ -8,8 +8,11 @@
 package org.opendaylight.netvirt.elan.l2gw.ha.commands;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 
@@ -50,6 +53,11 @@ public abstract class BaseCommand<T> {
 
     /**
      * Abstract method give diff between two List passed.
+     *
+     * <p>The original elements are indexed by their {@link #getMergeKey(Object) merge key}, so that an updated
+     * element is only compared against the original elements sharing its key. Elements without a merge key are
+     * compared against all the others.
+     *
      * @param updated Updated List
      * @param original Origina list to be compared with
      * @return List of diff based
@@ -62,15 +70,22 @@ public abstract class BaseCommand<T> {
         if (original == null) {
             return new ArrayList<>(updated);
         }
+        Map<Object, List<T>> originalsByKey = new HashMap<>();
+        List<T> unkeyedOriginals = new ArrayList<>();
+        for (T orig : original) {
+            Object key = getMergeKey(orig);
+            if (key == null) {
+                unkeyedOriginals.add(orig);
+            } else {
+                originalsByKey.computeIfAbsent(key, k -> new ArrayList<>(1)).add(orig);
+            }
+        }
         List<T> result = new ArrayList<>();
         for (T ele : updated) {
-            boolean present = false;
-            for (T orig : original) {
-                if (areEqual(ele, orig)) {
-                    present = true;
-                    break;
-                }
-            }
+            Object key = getMergeKey(ele);
+            boolean present = key == null ? containsEqual(original, ele)
+                : containsEqual(originalsByKey.getOrDefault(key, Collections.emptyList()), ele)
+                    || containsEqual(unkeyedOriginals, ele);
             if (!present) {
                 result.add(ele);
             }
@@ -78,6 +93,27 @@ public abstract class BaseCommand<T> {
         return result;
     }
 
+    /**
+     * Returns the key used to index the elements compared by {@link #diffOf(List, List)}. Elements which are
+     * {@link #areEqual(Object, Object) equal} must have equal keys; elements with equal keys are still compared.
+     *
+     * @param data the element
+     * @return the key, or null to compare the element against all the others
+     */
+    @Nullable
+    protected Object getMergeKey(T data) {
+        return null;
+    }
+
+    private boolean containsEqual(List<T> candidates, T ele) {
+        for (T candidate : candidates) {
+            if (areEqual(ele, candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public abstract boolean areEqual(T objA, T objB);
 
 }
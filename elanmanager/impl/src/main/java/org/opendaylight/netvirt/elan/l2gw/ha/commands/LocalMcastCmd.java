@@ -109,6 +109,12 @@ public class LocalMcastCmd
         return false;
     }
 
+    @Override
+    @Nullable
+    protected Object getMergeKey(LocalMcastMacs data) {
+        return getMacMergeKey(data.getMacEntryKey(), data.getLogicalSwitchRef());
+    }
+
     @Override
     public LocalMcastMacs withoutUuid(LocalMcastMacs data) {
         return new LocalMcastMacsBuilder(data).setMacEntryUuid(null).build();
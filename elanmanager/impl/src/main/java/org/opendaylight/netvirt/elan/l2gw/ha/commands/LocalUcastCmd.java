@@ -90,6 +90,12 @@ public class LocalUcastCmd
         return updated.getMacEntryKey().equals(orig.getMacEntryKey()) && updatedMacNodeName.equals(origMacNodeName);
     }
 
+    @Override
+    @Nullable
+    protected Object getMergeKey(LocalUcastMacs data) {
+        return getMacMergeKey(data.getMacEntryKey(), data.getLogicalSwitchRef());
+    }
+
     @Override
     public LocalUcastMacs withoutUuid(LocalUcastMacs data) {
         return new LocalUcastMacsBuilder(data).setMacEntryUuid(null).build();
@@ -66,6 +66,12 @@ public class LogicalSwitchesCmd extends MergeCommand<LogicalSwitches,
         return updated.getHwvtepNodeName().getValue().equals(orig.getHwvtepNodeName().getValue());
     }
 
+    @Override
+    @Nullable
+    protected Object getMergeKey(LogicalSwitches data) {
+        return data.getHwvtepNodeName() != null ? data.getHwvtepNodeName().getValue() : null;
+    }
+
     @Override
     public LogicalSwitches withoutUuid(LogicalSwitches data) {
         return new LogicalSwitchesBuilder(data).setLogicalSwitchUuid(null).build();
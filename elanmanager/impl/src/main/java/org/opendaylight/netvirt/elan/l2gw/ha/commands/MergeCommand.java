@@ -13,15 +13,21 @@ import java.io.Serializable;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 import org.opendaylight.netvirt.elan.l2gw.ha.HwvtepHAUtil;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.ovsdb.hwvtep.rev150901.HwvtepLogicalSwitchRef;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.ovsdb.hwvtep.rev150901.hwvtep.global.attributes.LogicalSwitches;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.ovsdb.hwvtep.rev150901.hwvtep.global.attributes.LogicalSwitchesKey;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.ovsdb.hwvtep.rev150901.hwvtep.global.attributes.RemoteUcastMacs;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.ovsdb.hwvtep.rev150901.hwvtep.physical.locator.set.attributes.LocatorSet;
 import org.opendaylight.yang.gen.v1.urn.tbd.params.xml.ns.yang.network.topology.rev131021.TpId;
@@ -63,16 +69,13 @@ public abstract class MergeCommand<T extends DataObject, Y extends Builder, Z ex
             return new ArrayList<>(updated);
         }
 
+        Set<Identifier> originalKeys = new HashSet<>();
+        for (T orig : original) {
+            originalKeys.add(getKey(orig));
+        }
         List<T> result = new ArrayList<>();
         for (T ele : updated) {
-            boolean present = false;
-            for (T orig : original) {
-                if (Objects.equals(getKey(ele), getKey(orig))) {
-                    present = true;
-                    break;
-                }
-            }
-            if (!present) {
+            if (!originalKeys.contains(getKey(ele))) {
                 result.add(ele);
             }
         }
@@ -114,12 +117,12 @@ public abstract class MergeCommand<T extends DataObject, Y extends Builder, Z ex
                                      Z existingData,
                                      Z src,
                                      InstanceIdentifier<Node> nodePath) {
-        List<T> origDstData = getDataSafe(existingData);
-        List<T> srcData = getDataSafe(src);
-        List<T> data = transformOpData(origDstData, srcData, nodePath);
         if (classType == RemoteUcastMacs.class) {
             return;
         }
+        List<T> origDstData = getDataSafe(existingData);
+        List<T> srcData = getDataSafe(src);
+        List<T> data = transformOpData(origDstData, srcData, nodePath);
         setData(dst, data);
         if (!isEmptyList(data)) {
             String nodeId = nodePath.firstKeyOf(Node.class).getNodeId().getValue();
@@ -151,6 +154,21 @@ public abstract class MergeCommand<T extends DataObject, Y extends Builder, Z ex
     }
 
 
+    /**
+     * Returns the merge key of a mac entry, made of its mac and the name of its logical switch.
+     */
+    @Nullable
+    static Object getMacMergeKey(@Nullable Object macEntryKey, @Nullable HwvtepLogicalSwitchRef logicalSwitchRef) {
+        if (logicalSwitchRef == null) {
+            return null;
+        }
+        LogicalSwitchesKey logicalSwitchKey = logicalSwitchRef.getValue().firstKeyOf(LogicalSwitches.class);
+        if (logicalSwitchKey == null) {
+            return null;
+        }
+        return Arrays.asList(macEntryKey, logicalSwitchKey.getHwvtepNodeName());
+    }
+
     static LocatorSetComparator locatorSetComparator = new LocatorSetComparator();
 
     static class LocatorSetComparator implements Comparator<LocatorSet>, Serializable {
@@ -8,6 +8,7 @@
 package org.opendaylight.netvirt.elan.l2gw.ha.commands;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import org.eclipse.jdt.annotation.Nullable;
@@ -67,6 +68,17 @@ public class PhysicalLocatorCmd extends MergeCommand<TerminationPoint, NodeBuild
                 && updatedPhysicalLocator.getEncapsulationType() == origPhysicalLocator.getEncapsulationType();
     }
 
+    @Override
+    @Nullable
+    protected Object getMergeKey(TerminationPoint data) {
+        HwvtepPhysicalLocatorAugmentation physicalLocator =
+                data.augmentation(HwvtepPhysicalLocatorAugmentation.class);
+        if (physicalLocator == null) {
+            return null;
+        }
+        return Arrays.asList(physicalLocator.getDstIp(), physicalLocator.getEncapsulationType());
+    }
+
     @Override
     public TerminationPoint withoutUuid(TerminationPoint data) {
         return data;
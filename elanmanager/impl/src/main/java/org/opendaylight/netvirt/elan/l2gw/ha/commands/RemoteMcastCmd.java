@@ -110,6 +110,12 @@ public class RemoteMcastCmd extends
         return false;
     }
 
+    @Override
+    @Nullable
+    protected Object getMergeKey(RemoteMcastMacs data) {
+        return getMacMergeKey(data.getMacEntryKey(), data.getLogicalSwitchRef());
+    }
+
     @Override
     public RemoteMcastMacs withoutUuid(RemoteMcastMacs data) {
         return new RemoteMcastMacsBuilder(data).setMacEntryUuid(null).build();
@@ -86,6 +86,12 @@ public class RemoteUcastCmd extends MergeCommand<RemoteUcastMacs,
                 && updatedMacNodeName.equals(origMacNodeName);
     }
 
+    @Override
+    @Nullable
+    protected Object getMergeKey(RemoteUcastMacs data) {
+        return getMacMergeKey(data.getMacEntryKey(), data.getLogicalSwitchRef());
+    }
+
     @Override
     public RemoteUcastMacs withoutUuid(RemoteUcastMacs data) {
         return new RemoteUcastMacsBuilder(data).setMacEntryUuid(null).build();
@@ -102,6 +102,12 @@ public class TerminationPointCmd extends MergeCommand<TerminationPoint, NodeBuil
         return "vlanbindings";
     }
 
+    @Override
+    @Nullable
+    protected Object getMergeKey(TerminationPoint data) {
+        return data.key();
+    }
+
     @Override
     public TerminationPoint withoutUuid(TerminationPoint data) {
         return data;
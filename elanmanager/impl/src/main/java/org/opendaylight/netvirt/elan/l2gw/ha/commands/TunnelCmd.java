@@ -20,6 +20,7 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.ovsdb.hw
 import org.opendaylight.yang.gen.v1.urn.tbd.params.xml.ns.yang.network.topology.rev131021.TpId;
 import org.opendaylight.yang.gen.v1.urn.tbd.params.xml.ns.yang.network.topology.rev131021.network.topology.topology.Node;
 import org.opendaylight.yang.gen.v1.urn.tbd.params.xml.ns.yang.network.topology.rev131021.network.topology.topology.node.TerminationPoint;
+import org.opendaylight.yang.gen.v1.urn.tbd.params.xml.ns.yang.network.topology.rev131021.network.topology.topology.node.TerminationPointKey;
 import org.opendaylight.yangtools.yang.binding.Identifier;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
 
@@ -88,6 +89,17 @@ public class TunnelCmd  extends MergeCommand<Tunnels, PhysicalSwitchAugmentation
         return tpId1.equals(tpId2);
     }
 
+    @Override
+    @Nullable
+    protected Object getMergeKey(Tunnels data) {
+        if (data.getRemoteLocatorRef() == null) {
+            return null;
+        }
+        TerminationPointKey remoteLocatorKey = data.getRemoteLocatorRef().getValue()
+                .firstKeyOf(TerminationPoint.class);
+        return remoteLocatorKey != null ? remoteLocatorKey.getTpId() : null;
+    }
+
     @Override
     public Tunnels withoutUuid(Tunnels data) {
         return new TunnelsBuilder(data).setTunnelUuid(null).build();
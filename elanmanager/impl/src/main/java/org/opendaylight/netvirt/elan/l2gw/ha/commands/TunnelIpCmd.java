@@ -63,6 +63,12 @@ public class TunnelIpCmd extends
         return Objects.equals(updated, orig);
     }
 
+    @Override
+    @Nullable
+    protected Object getMergeKey(TunnelIps data) {
+        return data;
+    }
+
     @Override
     public TunnelIps withoutUuid(TunnelIps data) {
         return data;
@@ -46,6 +46,8 @@ public interface ElanConstants {
     String L2GATEWAY_DS_JOB_NAME = "L2GW";
     String UNKNOWN_DMAC = "00:00:00:00:00:00";
     int JOB_MAX_RETRIES = 6;
+    int MAC_LEARN_BATCH_SIZE = 500;
+    int MAC_LEARN_BATCH_INTERVAL_MILLIS = 100;
     TopologyId OVSDB_TOPOLOGY_ID = new TopologyId(new Uri("ovsdb:1"));
     String OVSDB_BRIDGE_URI_PREFIX = "bridge";
     Class<? extends NxmNxReg> ELAN_REG_ID = NxmNxReg7.class;
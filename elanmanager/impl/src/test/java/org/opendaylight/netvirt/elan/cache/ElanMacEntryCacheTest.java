@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.elan.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.mdsal.binding.testutils.DataBrokerTestModule;
+import org.opendaylight.netvirt.elan.utils.ElanUtils;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.yang.types.rev130715.PhysAddress;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.elan.rev150602.forwarding.entries.MacEntry;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.elan.rev150602.forwarding.entries.MacEntryBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.elan.rev150602.forwarding.entries.MacEntryKey;
+
+public class ElanMacEntryCacheTest {
+
+    private static final String ELAN = "elan1";
+    private static final String OTHER_ELAN = "elan2";
+    private static final String PORT = "port1";
+    private static final String OTHER_PORT = "port2";
+    private static final PhysAddress MAC = new PhysAddress("fa:16:3e:0a:0b:0c");
+    private static final PhysAddress OTHER_MAC = new PhysAddress("fa:16:3e:0a:0b:0d");
+    private static final long NOW = 1_600_000_000_000L;
+
+    private ElanMacEntryCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ElanMacEntryCache(DataBrokerTestModule.dataBroker());
+    }
+
+    @After
+    public void tearDown() {
+        cache.close();
+    }
+
+    @Test
+    public void testMacKeyIgnoresCase() {
+        assertEquals(ElanMacEntryCache.toMacKey(new PhysAddress("FA:16:3E:0A:0B:0C")), ElanMacEntryCache.toMacKey(MAC));
+        assertEquals(0xfa163e0a0b0cL, ElanMacEntryCache.toMacKey(MAC));
+        assertNotEquals(ElanMacEntryCache.toMacKey(MAC), ElanMacEntryCache.toMacKey(OTHER_MAC));
+    }
+
+    @Test
+    public void testKnownMacLearntWithinProtectionWindowOnly() {
+        add(ELAN, buildMacEntry(MAC, PORT, NOW));
+
+        assertTrue(cache.isLearnt(ELAN, MAC, PORT, NOW + ElanMacEntryCache.LEARN_PROTECTION_MILLIS));
+        // past the window, a packet of the known MAC is a flow miss and must be learnt again
+        assertFalse(cache.isLearnt(ELAN, MAC, PORT, NOW + ElanMacEntryCache.LEARN_PROTECTION_MILLIS + 1));
+        // a move to another interface is always learnt
+        assertFalse(cache.isLearnt(ELAN, MAC, OTHER_PORT, NOW));
+        assertFalse(cache.isLearnt(OTHER_ELAN, MAC, PORT, NOW));
+    }
+
+    @Test
+    public void testPendingLearnWithinProtectionWindowOnly() {
+        cache.learning(ELAN, MAC, PORT, NOW);
+
+        assertTrue(cache.isLearnt(ELAN, MAC, PORT, NOW + ElanMacEntryCache.LEARN_PROTECTION_MILLIS));
+        assertFalse(cache.isLearnt(ELAN, MAC, OTHER_PORT, NOW));
+        assertFalse(cache.isLearnt(ELAN, MAC, PORT, NOW + ElanMacEntryCache.LEARN_PROTECTION_MILLIS + 1));
+    }
+
+    @Test
+    public void testPendingLearnClearedByMacEntry() {
+        cache.learning(ELAN, MAC, PORT, NOW);
+        add(ELAN, buildMacEntry(MAC, PORT, NOW));
+        assertEquals(0, cache.pendingLearnCount());
+        assertEquals(PORT, cache.get(ELAN, MAC).get().getInterface());
+
+        cache.learning(ELAN, MAC, OTHER_PORT, NOW);
+        cache.remove(ElanUtils.getMacEntryOperationalDataPath(ELAN, MAC), buildMacEntry(MAC, PORT, NOW));
+        assertEquals(0, cache.pendingLearnCount());
+        assertFalse(cache.get(ELAN, MAC).isPresent());
+    }
+
+    @Test
+    public void testExpiredPendingLearnsSwept() {
+        // provider network MACs are learnt without a MacEntry being written
+        cache.learning(ELAN, MAC, PORT, NOW);
+        cache.learning(OTHER_ELAN, MAC, PORT, NOW);
+        assertEquals(2, cache.pendingLearnCount());
+
+        cache.learning(ELAN, OTHER_MAC, PORT, NOW + ElanMacEntryCache.LEARN_PROTECTION_MILLIS + 1);
+
+        assertEquals(1, cache.pendingLearnCount());
+        assertTrue(cache.isLearnt(ELAN, OTHER_MAC, PORT, NOW + ElanMacEntryCache.LEARN_PROTECTION_MILLIS + 1));
+    }
+
+    private void add(String elanName, MacEntry macEntry) {
+        cache.add(ElanUtils.getMacEntryOperationalDataPath(elanName, macEntry.getMacAddress()), macEntry);
+    }
+
+    private static MacEntry buildMacEntry(PhysAddress macAddress, String interfaceName, long learnedMillis) {
+        return new MacEntryBuilder().withKey(new MacEntryKey(macAddress)).setMacAddress(macAddress)
+                .setInterface(interfaceName)
+                .setControllerLearnedForwardingEntryTimestamp(BigInteger.valueOf(learnedMillis))
+                .setIsStaticAddress(false).build();
+    }
+}
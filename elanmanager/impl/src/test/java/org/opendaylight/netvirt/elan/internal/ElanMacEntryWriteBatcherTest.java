@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.elan.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.opendaylight.mdsal.binding.util.Datastore.OPERATIONAL;
+
+import com.google.common.util.concurrent.FluentFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import org.junit.After;
+import org.junit.Test;
+import org.opendaylight.mdsal.binding.util.Datastore.Operational;
+import org.opendaylight.mdsal.binding.util.InterruptibleCheckedConsumer;
+import org.opendaylight.mdsal.binding.util.ManagedNewTransactionRunner;
+import org.opendaylight.mdsal.binding.util.TypedWriteTransaction;
+import org.opendaylight.mdsal.common.api.TransactionCommitFailedException;
+
+public class ElanMacEntryWriteBatcherTest {
+    private static final long WAIT_MS = 5000;
+
+    private final ManagedNewTransactionRunner txRunner = mock(ManagedNewTransactionRunner.class);
+    private final List<List<String>> committedBatches = Collections.synchronizedList(new ArrayList<>());
+    private final Map<TypedWriteTransaction<Operational>, List<String>> writesByTx = new ConcurrentHashMap<>();
+    private final AtomicBoolean failCommit = new AtomicBoolean();
+    private ElanMacEntryWriteBatcher batcher;
+
+    @After
+    public void tearDown() {
+        if (batcher != null) {
+            batcher.close();
+        }
+    }
+
+    @Test
+    public void testWritesWithinIntervalCommittedInOneTransaction() throws Exception {
+        commitTransactions();
+        batcher = new ElanMacEntryWriteBatcher(txRunner, 500, 100);
+
+        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(batcher.write(writeOf("mac-" + i)));
+        }
+
+        for (ListenableFuture<Void> future : futures) {
+            future.get(WAIT_MS, TimeUnit.MILLISECONDS);
+        }
+        verify(txRunner, times(1)).callWithNewWriteOnlyTransactionAndSubmit(eq(OPERATIONAL), any());
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            expected.add("mac-" + i);
+        }
+        // the writes are applied in order
+        assertEquals(List.of(expected), committedBatches);
+    }
+
+    @Test
+    public void testFullBatchCommittedWithoutWaiting() throws Exception {
+        commitTransactions();
+        batcher = new ElanMacEntryWriteBatcher(txRunner, 3, TimeUnit.HOURS.toMillis(1));
+
+        ListenableFuture<Void> first = batcher.write(writeOf("mac-1"));
+        batcher.write(writeOf("mac-2"));
+        ListenableFuture<Void> last = batcher.write(writeOf("mac-3"));
+        ListenableFuture<Void> next = batcher.write(writeOf("mac-4"));
+
+        first.get(WAIT_MS, TimeUnit.MILLISECONDS);
+        last.get(WAIT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(List.of(List.of("mac-1", "mac-2", "mac-3")), committedBatches);
+        // the next batch waits for its interval
+        assertFalse(next.isDone());
+    }
+
+    @Test
+    public void testWriteFutureCompletesOnceCommitted() throws Exception {
+        commitTransactions();
+        batcher = new ElanMacEntryWriteBatcher(txRunner, 500, 200);
+
+        ListenableFuture<Void> future = batcher.write(writeOf("mac-1"));
+        assertFalse(future.isDone());
+
+        future.get(WAIT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(List.of(List.of("mac-1")), committedBatches);
+    }
+
+    @Test
+    public void testFailedCommitFailsAllWritesOfBatch() throws Exception {
+        failCommit.set(true);
+        commitTransactions();
+        batcher = new ElanMacEntryWriteBatcher(txRunner, 500, 50);
+
+        ListenableFuture<Void> first = batcher.write(writeOf("mac-1"));
+        ListenableFuture<Void> second = batcher.write(writeOf("mac-2"));
+
+        assertFailed(first);
+        assertFailed(second);
+        assertTrue(committedBatches.isEmpty());
+
+        // the next batch is committed again
+        failCommit.set(false);
+        batcher.write(writeOf("mac-3")).get(WAIT_MS, TimeUnit.MILLISECONDS);
+        verify(txRunner, timeout(WAIT_MS).times(2)).callWithNewWriteOnlyTransactionAndSubmit(eq(OPERATIONAL), any());
+        assertEquals(List.of(List.of("mac-3")), committedBatches);
+    }
+
+    /**
+     * Commits the transactions of the mocked tx runner, recording the MACs written by each committed one.
+     */
+    @SuppressWarnings("unchecked")
+    private void commitTransactions() {
+        doAnswer(invocation -> {
+            InterruptibleCheckedConsumer<TypedWriteTransaction<Operational>, ?> txConsumer =
+                invocation.getArgument(1);
+            TypedWriteTransaction<Operational> tx = mock(TypedWriteTransaction.class);
+            txConsumer.accept(tx);
+            if (failCommit.get()) {
+                return FluentFuture.from(Futures.immediateFailedFuture(
+                    new TransactionCommitFailedException("commit of the batch failed")));
+            }
+            committedBatches.add(writesByTx.getOrDefault(tx, List.of()));
+            return FluentFuture.from(Futures.immediateFuture(null));
+        }).when(txRunner).callWithNewWriteOnlyTransactionAndSubmit(eq(OPERATIONAL), any());
+    }
+
+    private Consumer<TypedWriteTransaction<Operational>> writeOf(String macAddress) {
+        return tx -> writesByTx.computeIfAbsent(tx, key -> new ArrayList<>()).add(macAddress);
+    }
+
+    private static void assertFailed(ListenableFuture<Void> future) throws Exception {
+        try {
+            future.get(WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            return;
+        }
+        fail("The write did not fail");
+    }
+}
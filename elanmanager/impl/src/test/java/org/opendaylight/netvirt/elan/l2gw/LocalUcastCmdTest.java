@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.elan.l2gw;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.opendaylight.netvirt.elan.l2gw.ha.HwvtepHAUtil;
+import org.opendaylight.netvirt.elan.l2gw.ha.commands.LocalUcastCmd;
+import org.opendaylight.netvirt.elan.l2gw.nodehandlertest.TestBuilders;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.ovsdb.hwvtep.rev150901.hwvtep.global.attributes.LocalUcastMacs;
+import org.opendaylight.yang.gen.v1.urn.tbd.params.xml.ns.yang.network.topology.rev131021.network.topology.topology.Node;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+
+public class LocalUcastCmdTest {
+
+    private static final int HA_NODE_MACS = 50000;
+
+    InstanceIdentifier<Node> d1NodePath = HwvtepHAUtil.convertToInstanceIdentifier("d1");
+    InstanceIdentifier<Node> d2NodePath = HwvtepHAUtil.convertToInstanceIdentifier("d2");
+    LocalUcastCmd cmd = new LocalUcastCmd();
+
+    @Test
+    public void testDiffMatchesMacAndLogicalSwitch() {
+        LocalUcastMacs mac1Ls1 = buildMac(d1NodePath, 1, "ls1");
+        LocalUcastMacs mac2Ls1 = buildMac(d1NodePath, 2, "ls1");
+        // same macs seen by the other device, their refs point to another node
+        LocalUcastMacs mac1Ls1OnD2 = buildMac(d2NodePath, 1, "ls1");
+        LocalUcastMacs mac2Ls2OnD2 = buildMac(d2NodePath, 2, "ls2");
+
+        List<LocalUcastMacs> added = cmd.diffOf(Arrays.asList(mac1Ls1OnD2, mac2Ls2OnD2),
+            Arrays.asList(mac1Ls1, mac2Ls1));
+
+        assertEquals(Arrays.asList(mac2Ls2OnD2), added);
+        assertEquals(nestedLoopDiff(Arrays.asList(mac1Ls1OnD2, mac2Ls2OnD2), Arrays.asList(mac1Ls1, mac2Ls1)),
+            added);
+    }
+
+    @Test(timeout = 60000)
+    public void testDiffOfLargeHaNode() {
+        List<LocalUcastMacs> existing = new ArrayList<>(HA_NODE_MACS);
+        List<LocalUcastMacs> src = new ArrayList<>(HA_NODE_MACS + 100);
+        for (int i = 0; i < HA_NODE_MACS; i++) {
+            existing.add(buildMac(d1NodePath, i, "ls" + i % 100));
+            src.add(buildMac(d2NodePath, i, "ls" + i % 100));
+        }
+        List<LocalUcastMacs> newMacs = new ArrayList<>();
+        for (int i = HA_NODE_MACS; i < HA_NODE_MACS + 100; i++) {
+            newMacs.add(buildMac(d2NodePath, i, "ls" + i % 100));
+        }
+        src.addAll(newMacs);
+
+        // the nested loop needs 2.5 billion comparisons here, the indexed diff one per mac
+        assertEquals(newMacs, cmd.diffOf(src, existing));
+    }
+
+    private List<LocalUcastMacs> nestedLoopDiff(List<LocalUcastMacs> updated, List<LocalUcastMacs> original) {
+        List<LocalUcastMacs> result = new ArrayList<>();
+        for (LocalUcastMacs ele : updated) {
+            if (original.stream().noneMatch(orig -> cmd.areEqual(ele, orig))) {
+                result.add(ele);
+            }
+        }
+        return result;
+    }
+
+    private static LocalUcastMacs buildMac(InstanceIdentifier<Node> nodePath, int index, String logicalSwitchName) {
+        String mac = String.format("00:00:00:%02x:%02x:%02x", index >> 16 & 0xff, index >> 8 & 0xff, index & 0xff);
+        String ip = String.format("10.%d.%d.%d", index >> 16 & 0xff, index >> 8 & 0xff, index & 0xff);
+        return TestBuilders.buildLocalUcastMacs(nodePath, mac, ip, "192.168.122.30", logicalSwitchName);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.fibmanager;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.FutureCallback;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.eclipse.jdt.annotation.Nullable;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.fibmanager.rev150330.vrfentries.VrfEntryKey;
+
+/**
+ * The FIB populations of new DPNs in progress, per VPN and DPN.
+ *
+ * <p>A DPN is populated in chunks, each chunk being its own job. A chunk is only programmed while its population is
+ * still the current one for the VPN and DPN. A population is superseded by a later population of the same DPN, and
+ * cancelled by the DPN being cleaned up, so a chunk queued before the cleanup cannot program the DPN again after it.
+ *
+ * <p>A population completes once only: the first of its success or failure ends it and is reported to its callback,
+ * so a chunk retried by the job coordinator after the population failed or was superseded reports nothing.
+ */
+final class DpnFibPopulations {
+    private final ConcurrentMap<String, Population> populations = new ConcurrentHashMap<>();
+
+    /**
+     * A FIB population of a DPN.
+     */
+    static final class Population {
+        private final AtomicBoolean completed = new AtomicBoolean();
+        @Nullable
+        private final FutureCallback<List<?>> callback;
+
+        private Population(@Nullable FutureCallback<List<?>> callback) {
+            this.callback = callback;
+        }
+
+        boolean isCompleted() {
+            return completed.get();
+        }
+    }
+
+    /**
+     * Starts a population, superseding the one in progress if any.
+     *
+     * @param jobKey the VPN and DPN job key
+     * @param callback the callback notified once the population completes, if any
+     * @return the population
+     */
+    Population start(String jobKey, @Nullable FutureCallback<List<?>> callback) {
+        Population population = new Population(callback);
+        populations.put(jobKey, population);
+        return population;
+    }
+
+    void cancel(String jobKey) {
+        populations.remove(jobKey);
+    }
+
+    boolean isCurrent(String jobKey, Population population) {
+        return populations.get(jobKey) == population;
+    }
+
+    /**
+     * Completes a population successfully, unless it already completed.
+     *
+     * @return true if the population completed now
+     */
+    boolean succeed(String jobKey, Population population) {
+        if (!complete(jobKey, population)) {
+            return false;
+        }
+        if (population.callback != null) {
+            population.callback.onSuccess(Collections.emptyList());
+        }
+        return true;
+    }
+
+    /**
+     * Completes a population with a failure, unless it already completed.
+     *
+     * @return true if the population completed now
+     */
+    boolean fail(String jobKey, Population population, Throwable cause) {
+        if (!complete(jobKey, population)) {
+            return false;
+        }
+        if (population.callback != null) {
+            population.callback.onFailure(cause);
+        }
+        return true;
+    }
+
+    private boolean complete(String jobKey, Population population) {
+        if (!population.completed.compareAndSet(false, true)) {
+            return false;
+        }
+        populations.remove(jobKey, population);
+        return true;
+    }
+
+    /**
+     * Splits the prefixes of a VRF table into chunks, in prefix order.
+     *
+     * @param keys the keys of the VRF entries
+     * @param chunkSize the maximum number of prefixes per chunk
+     * @return the chunks, none if there are no prefixes
+     */
+    static List<List<String>> chunkPrefixes(Collection<VrfEntryKey> keys, int chunkSize) {
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> destPrefixes = new ArrayList<>(keys.size());
+        keys.forEach(key -> destPrefixes.add(key.getDestPrefix()));
+        Collections.sort(destPrefixes);
+        return Lists.partition(destPrefixes, chunkSize);
+    }
+}
@@ -667,6 +667,10 @@ public class FibUtil {
         return "FIB-" + vpnId.toString() + "-" + dpnId.toString() + "-" + prefix;
     }
 
+    public static String getLocalNextHopJobKey(Uint32 vpnId, String primaryIpAddress) {
+        return "FIB-NEXTHOP-" + vpnId.toString() + "-" + primaryIpAddress;
+    }
+
     public static String getCreateRemoteNextHopJobKey(Uint32 vpnId, Uint64 dpnId, String prefix) {
         return getCreateLocalNextHopJobKey(vpnId, dpnId, prefix);
     }
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.fibmanager;
+
+import com.google.common.util.concurrent.FluentFuture;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.opendaylight.infrautils.utils.concurrent.Executors;
+import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.mdsal.binding.api.ReadTransaction;
+import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.group.service.rev130918.AddGroupOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.group.types.rev131018.groups.Group;
+import org.opendaylight.yangtools.yang.common.RpcResult;
+import org.opendaylight.yangtools.yang.common.Uint64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Confirms the groups installed directly on the DPNs, in batches per DPN.
+ *
+ * <p>The first group installed on a DPN schedules the confirmation of the batch of that DPN, after the install wait
+ * time. All the groups installed on the DPN meanwhile are then confirmed together, instead of each install waiting
+ * for its own reply: the groups are looked up in the operational inventory of the DPN, which is fed by the group
+ * statistics the DPN reports, in a single read transaction for the whole batch. A group is confirmed once the DPN
+ * reports it, whether or not the reply to its install has come back yet.
+ */
+final class GroupInstallConfirmations implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(GroupInstallConfirmations.class);
+
+    private final DataBroker dataBroker;
+    private final long waitTimeMillis;
+    private final ConcurrentMap<Uint64, Map<Long, PendingGroupInstall>> pendingByDpn = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService confirmer;
+
+    GroupInstallConfirmations(DataBroker dataBroker, long waitTimeMillis) {
+        this.dataBroker = dataBroker;
+        this.waitTimeMillis = waitTimeMillis;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setNameFormat("fib-group-install-confirmer").setDaemon(true).build());
+        // The batches still waiting are not confirmed on close
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.confirmer = executor;
+    }
+
+    void add(Uint64 dpnId, long groupId, String nextHopKey, ListenableFuture<RpcResult<AddGroupOutput>> result) {
+        pendingByDpn.compute(dpnId, (key, pending) -> {
+            if (pending == null) {
+                pending = new HashMap<>();
+                confirmer.schedule(() -> confirm(dpnId), waitTimeMillis, TimeUnit.MILLISECONDS);
+            }
+            pending.put(groupId, new PendingGroupInstall(nextHopKey, result));
+            return pending;
+        });
+    }
+
+    @Override
+    public void close() {
+        Executors.shutdownAndAwaitTermination(confirmer);
+    }
+
+    /**
+     * Confirms the batch of groups pending on a DPN.
+     *
+     * @param dpnId the DPN
+     * @return the ids of the groups confirmed
+     */
+    List<Long> confirm(Uint64 dpnId) {
+        List<Long> installedGroupIds = new ArrayList<>();
+        Map<Long, PendingGroupInstall> pending = pendingByDpn.remove(dpnId);
+        if (pending == null) {
+            return installedGroupIds;
+        }
+        Map<Long, FluentFuture<Optional<Group>>> reads = new HashMap<>();
+        try (ReadTransaction tx = dataBroker.newReadOnlyTransaction()) {
+            for (Map.Entry<Long, PendingGroupInstall> entry : pending.entrySet()) {
+                Long groupId = entry.getKey();
+                if (isInstallFailed(dpnId, groupId, entry.getValue())) {
+                    continue;
+                }
+                reads.put(groupId, tx.read(LogicalDatastoreType.OPERATIONAL,
+                        FibUtil.buildGroupInstanceIdentifier(groupId, dpnId)));
+            }
+            for (Map.Entry<Long, FluentFuture<Optional<Group>>> entry : reads.entrySet()) {
+                Long groupId = entry.getKey();
+                try {
+                    if (entry.getValue().get().isPresent()) {
+                        installedGroupIds.add(groupId);
+                    } else {
+                        LOG.error("confirm: Group {} with key {} installation on dpn {} timed out.", groupId,
+                                pending.get(groupId).nextHopKey, dpnId);
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    LOG.error("confirm: Error while reading group {} of dpn {}", groupId, dpnId, e);
+                }
+            }
+        }
+        if (!installedGroupIds.isEmpty()) {
+            LOG.info("confirm: Groups {} have been successfully installed directly on dpn {}.", installedGroupIds,
+                    dpnId);
+        }
+        return installedGroupIds;
+    }
+
+    private static boolean isInstallFailed(Uint64 dpnId, Long groupId, PendingGroupInstall install) {
+        if (!install.result.isDone()) {
+            return false;
+        }
+        try {
+            RpcResult<AddGroupOutput> rpcResult = install.result.get();
+            if (rpcResult != null && rpcResult.isSuccessful()) {
+                return false;
+            }
+            LOG.error("confirm: Unable to install group {} with key {} directly on dpn {} due to {}.",
+                    groupId, install.nextHopKey, dpnId, rpcResult != null ? rpcResult.getErrors() : null);
+        } catch (InterruptedException | ExecutionException e) {
+            LOG.error("confirm: Error while installing group {} directly on dpn {}", groupId, dpnId, e);
+        }
+        return true;
+    }
+
+    private static final class PendingGroupInstall {
+        final String nextHopKey;
+        final ListenableFuture<RpcResult<AddGroupOutput>> result;
+
+        PendingGroupInstall(String nextHopKey, ListenableFuture<RpcResult<AddGroupOutput>> result) {
+            this.nextHopKey = nextHopKey;
+            this.result = result;
+        }
+    }
+}
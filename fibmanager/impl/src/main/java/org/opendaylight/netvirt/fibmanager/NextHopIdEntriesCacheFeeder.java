@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.fibmanager;
+
+import java.util.List;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.opendaylight.infrautils.utils.concurrent.Executors;
+import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
+import org.opendaylight.serviceutils.tools.listener.AbstractClusteredAsyncDataTreeChangeListener;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.IdPools;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.id.pools.IdPool;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.id.pools.IdPoolKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.id.pools.id.pool.IdEntries;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.common.Uint32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Clustered listener whose only purpose is to evict the cached group id of a local next hop from every node once
+ * IdManager releases it, whichever node released it, including the releases which do not go along with the removal
+ * of the next hop.
+ */
+@Singleton
+public class NextHopIdEntriesCacheFeeder extends AbstractClusteredAsyncDataTreeChangeListener<IdEntries> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NextHopIdEntriesCacheFeeder.class);
+
+    private final NexthopManager nexthopManager;
+
+    @Inject
+    public NextHopIdEntriesCacheFeeder(final DataBroker dataBroker, final NexthopManager nexthopManager) {
+        super(dataBroker, LogicalDatastoreType.CONFIGURATION, InstanceIdentifier.create(IdPools.class)
+                .child(IdPool.class, new IdPoolKey(NexthopManager.NEXTHOP_ID_POOL_NAME)).child(IdEntries.class),
+                Executors.newListeningSingleThreadExecutor("NextHopIdEntriesCacheFeeder", LOG));
+        this.nexthopManager = nexthopManager;
+    }
+
+    @Override
+    @PreDestroy
+    public void close() {
+        super.close();
+        Executors.shutdownAndAwaitTermination(getExecutorService());
+    }
+
+    @Override
+    public void remove(InstanceIdentifier<IdEntries> identifier, IdEntries del) {
+        List<Uint32> idValues = del.getIdValue();
+        if (idValues != null && !idValues.isEmpty()) {
+            nexthopManager.evictNextHopPointer(del.getIdKey(), idValues.get(0).toJava());
+        }
+    }
+
+    @Override
+    public void update(InstanceIdentifier<IdEntries> identifier, IdEntries original, IdEntries update) {
+        List<Uint32> idValues = original.getIdValue();
+        if (idValues != null && !idValues.equals(update.getIdValue())) {
+            remove(identifier, original);
+        }
+    }
+
+    @Override
+    public void add(InstanceIdentifier<IdEntries> identifier, IdEntries add) {
+        // Only the releases evict the cache
+    }
+}
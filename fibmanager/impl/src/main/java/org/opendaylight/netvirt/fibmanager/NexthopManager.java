@@ -13,7 +13,9 @@ import static org.opendaylight.genius.mdsalutil.NWUtil.isIpv4Address;
 import static org.opendaylight.mdsal.binding.util.Datastore.CONFIGURATION;
 import static org.opendaylight.mdsal.binding.util.Datastore.OPERATIONAL;
 
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -23,11 +25,11 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -54,8 +56,10 @@ import org.opendaylight.genius.mdsalutil.actions.ActionSetFieldVlanVid;
 import org.opendaylight.genius.mdsalutil.interfaces.IMdsalApiManager;
 import org.opendaylight.infrautils.jobcoordinator.JobCoordinator;
 import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.mdsal.binding.util.Datastore.Operational;
 import org.opendaylight.mdsal.binding.util.ManagedNewTransactionRunner;
 import org.opendaylight.mdsal.binding.util.ManagedNewTransactionRunnerImpl;
+import org.opendaylight.mdsal.binding.util.TypedWriteTransaction;
 import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
 import org.opendaylight.mdsal.common.api.ReadFailedException;
 import org.opendaylight.netvirt.elanmanager.api.IElanService;
@@ -101,10 +105,8 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.itm.rpcs.rev160406.G
 import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.itm.rpcs.rev160406.GetTunnelInterfaceNameInputBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.itm.rpcs.rev160406.GetTunnelInterfaceNameOutput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.itm.rpcs.rev160406.ItmRpcService;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.lockmanager.rev160413.LockManagerService;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.group.service.rev130918.AddGroupInput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.group.service.rev130918.AddGroupInputBuilder;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.group.service.rev130918.AddGroupOutput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.group.service.rev130918.SalGroupService;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.group.types.rev131018.GroupId;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.group.types.rev131018.GroupRef;
@@ -147,11 +149,8 @@ import org.slf4j.LoggerFactory;
 @Singleton
 public class NexthopManager implements AutoCloseable {
     private static final Logger LOG = LoggerFactory.getLogger(NexthopManager.class);
-    private static final String NEXTHOP_ID_POOL_NAME = "nextHopPointerPool";
+    static final String NEXTHOP_ID_POOL_NAME = "nextHopPointerPool";
     private static final long WAIT_TIME_FOR_SYNC_INSTALL = Long.getLong("wait.time.sync.install", 300L);
-    //  We set the total wait time for lock to be obtained at 9 seconds since GC pauses can be upto 8 seconds
-    //in scale setups.
-    private static final long WAIT_TIME_TO_ACQUIRE_LOCK = 9000L;
     private static final int SELECT_GROUP_WEIGHT = 1;
     private static final int RETRY_COUNT = 6;
 
@@ -162,11 +161,15 @@ public class NexthopManager implements AutoCloseable {
     private final ItmRpcService itmManager;
     private final IdManagerService idManager;
     private final IElanService elanService;
-    private final LockManagerService lockManager;
     private final SalGroupService salGroupService;
     private final JobCoordinator jobCoordinator;
     private final FibUtil fibUtil;
     private final IInterfaceManager interfaceManager;
+    // Local next-hop group ids by next-hop key, so that they are only allocated from IdManager once. The entries are
+    // evicted on the release of their id, by this node or any other (see VpnNexthopCacheFeeder and
+    // NextHopIdEntriesCacheFeeder)
+    private final ConcurrentMap<String, Long> localNextHopGroupIds = new ConcurrentHashMap<>();
+    private final GroupInstallConfirmations groupInstallConfirmations;
     private volatile L3VPNTransportTypes configuredTransportTypeL3VPN = L3VPNTransportTypes.Invalid;
 
     /**
@@ -185,7 +188,6 @@ public class NexthopManager implements AutoCloseable {
                           final IdManagerService idManager,
                           final OdlInterfaceRpcService odlInterfaceRpcService,
                           final ItmRpcService itmManager,
-                          final LockManagerService lockManager,
                           final IElanService elanService,
                           final SalGroupService salGroupService,
                           final JobCoordinator jobCoordinator,
@@ -201,8 +203,8 @@ public class NexthopManager implements AutoCloseable {
         this.salGroupService = salGroupService;
         this.jobCoordinator = jobCoordinator;
         this.fibUtil = fibUtil;
-        this.lockManager = lockManager;
         this.interfaceManager = interfaceManager;
+        this.groupInstallConfirmations = new GroupInstallConfirmations(dataBroker, WAIT_TIME_FOR_SYNC_INSTALL);
         createIdPool();
     }
 
@@ -222,7 +224,7 @@ public class NexthopManager implements AutoCloseable {
         }
     }
 
-    private String getNextHopKey(Uint32 vpnId, String ipAddress) {
+    String getNextHopKey(Uint32 vpnId, String ipAddress) {
         return "nexthop." + vpnId + ipAddress;
     }
 
@@ -254,7 +256,33 @@ public class NexthopManager implements AutoCloseable {
         return 0;
     }
 
+    private long getLocalNextHopPointer(Uint32 vpnId, String ipAddress) {
+        String nextHopKey = getNextHopKey(vpnId, ipAddress);
+        Long groupId = localNextHopGroupIds.get(nextHopKey);
+        if (groupId != null) {
+            return groupId;
+        }
+        long allocatedGroupId = createNextHopPointer(nextHopKey);
+        if (allocatedGroupId != FibConstants.INVALID_GROUP_ID) {
+            localNextHopGroupIds.put(nextHopKey, allocatedGroupId);
+        }
+        return allocatedGroupId;
+    }
+
+    /**
+     * Evicts the cached group id of a local next hop, unless the next hop has been allocated another id since.
+     *
+     * @param nexthopKey the next-hop key
+     * @param groupId the released group id
+     */
+    void evictNextHopPointer(String nexthopKey, long groupId) {
+        if (localNextHopGroupIds.remove(nexthopKey, groupId)) {
+            LOG.debug("Evicted group id {} of next hop {} from the cache", groupId, nexthopKey);
+        }
+    }
+
     protected void removeNextHopPointer(String nexthopKey) {
+        localNextHopGroupIds.remove(nexthopKey);
         ReleaseIdInput idInput = new ReleaseIdInputBuilder()
             .setPoolName(NEXTHOP_ID_POOL_NAME)
             .setIdKey(nexthopKey).build();
@@ -382,7 +410,7 @@ public class NexthopManager implements AutoCloseable {
 
     public long getLocalNextHopGroup(Uint32 vpnId,
             String ipNextHopAddress) {
-        long groupId = createNextHopPointer(getNextHopKey(vpnId, ipNextHopAddress));
+        long groupId = getLocalNextHopPointer(vpnId, ipNextHopAddress);
         if (groupId == FibConstants.INVALID_GROUP_ID) {
             LOG.error("Unable to allocate groupId for vpnId {} , prefix {}", vpnId, ipNextHopAddress);
         }
@@ -408,85 +436,86 @@ public class NexthopManager implements AutoCloseable {
         }
         String macAddress = fibUtil.getMacAddressFromPrefix(ifName, vpnName, primaryIpAddress);
 
-        long groupId = createNextHopPointer(getNextHopKey(vpnId, primaryIpAddress));
+        long groupId = getLocalNextHopPointer(vpnId, primaryIpAddress);
         if (groupId == 0) {
             LOG.error("Unable to allocate groupId for vpnId {} , IntfName {}, primaryIpAddress {} curIpPrefix {}",
                     vpnId, ifName, primaryIpAddress, currDestIpPrefix);
             return groupId;
         }
-        String nextHopLockStr = vpnId + primaryIpAddress;
-        String jobKey = FibUtil.getCreateLocalNextHopJobKey(vpnId, dpnId, currDestIpPrefix);
+        // The nexthop is read and written in the same transaction instead of under a cluster lock. The jobs creating
+        // and removing the nexthop are serialized on the nexthop, and a concurrent update of the nexthop from another
+        // node fails the transaction and the job is retried
+        String jobKey = FibUtil.getLocalNextHopJobKey(vpnId, primaryIpAddress);
         jobCoordinator.enqueueJob(jobKey, () -> {
-            try {
-                if (FibUtil.lockCluster(lockManager, nextHopLockStr, WAIT_TIME_TO_ACQUIRE_LOCK)) {
-                    VpnNexthop nexthop = getVpnNexthop(vpnId, primaryIpAddress);
-                    LOG.trace("nexthop: {} retrieved for vpnId {}, prefix {}, ifName {} on dpn {}", nexthop, vpnId,
-                            primaryIpAddress, ifName, dpnId);
-                    if (nexthop == null) {
-                        String encMacAddress = macAddress == null
-                                ? fibUtil.getMacAddressFromPrefix(ifName, vpnName, primaryIpAddress) : macAddress;
-                        List<ActionInfo> listActionInfo = new ArrayList<>();
-                        int actionKey = 0;
-                        // MAC re-write
-                        if (encMacAddress != null) {
-                            if (gwMacAddress != null) {
-                                LOG.trace("The Local NextHop Group Source Mac {} for VpnInterface {} on VPN {}",
-                                        gwMacAddress, ifName, vpnId);
-                                listActionInfo.add(new ActionSetFieldEthernetSource(actionKey++,
-                                        new MacAddress(gwMacAddress)));
-                            }
-                            listActionInfo.add(new ActionSetFieldEthernetDestination(actionKey++,
-                                    new MacAddress(encMacAddress)));
-                            // listActionInfo.add(0, new ActionPopMpls());
-                        } else {
-                            LOG.error("mac address for new local nexthop group {} is null for vpnId {}, prefix {}, "
-                                    + "ifName {} on dpn {}", groupId, vpnId, primaryIpAddress, ifName, dpnId);
-                        }
-                        List<ActionInfo> nhActionInfoList = getEgressActionsForInterface(ifName, actionKey, false,
-                                vpnId, currDestIpPrefix);
-                        if (nhActionInfoList.isEmpty()) {
-                            LOG.error("createLocalNextHop: Skipping, Empty list of egress actions received for "
-                                    + "interface {} on dpn {} for vpn {} prefix {}", ifName, dpnId, vpnId,
-                                    currDestIpPrefix);
+            List<ListenableFuture<?>> futures = new ArrayList<>();
+            futures.add(txRunner.callWithNewReadWriteTransactionAndSubmit(OPERATIONAL, operationalTx -> {
+                VpnNexthop nexthop = operationalTx.read(getVpnNexthopIdentifier(vpnId, primaryIpAddress)).get()
+                        .orElse(null);
+                LOG.trace("nexthop: {} retrieved for vpnId {}, prefix {}, ifName {} on dpn {}", nexthop, vpnId,
+                        primaryIpAddress, ifName, dpnId);
+                if (nexthop == null) {
+                    String encMacAddress = macAddress == null
+                            ? fibUtil.getMacAddressFromPrefix(ifName, vpnName, primaryIpAddress) : macAddress;
+                    List<ActionInfo> listActionInfo = new ArrayList<>();
+                    int actionKey = 0;
+                    // MAC re-write
+                    if (encMacAddress != null) {
+                        if (gwMacAddress != null) {
+                            LOG.trace("The Local NextHop Group Source Mac {} for VpnInterface {} on VPN {}",
+                                    gwMacAddress, ifName, vpnId);
+                            listActionInfo.add(new ActionSetFieldEthernetSource(actionKey++,
+                                    new MacAddress(gwMacAddress)));
                         }
-                        listActionInfo.addAll(nhActionInfoList);
-                        BucketInfo bucket = new BucketInfo(listActionInfo);
-                        List<BucketInfo> listBucketInfo = new ArrayList<>();
-                        listBucketInfo.add(bucket);
-                        GroupEntity groupEntity = MDSALUtil.buildGroupEntity(dpnId, groupId, primaryIpAddress,
-                                GroupTypes.GroupAll, listBucketInfo);
-                        LOG.trace("Install LNH Group: id {}, mac address {}, interface {} for prefix {}", groupId,
-                                encMacAddress, ifName, primaryIpAddress);
-                        //Try to install group directly on the DPN bypassing the FRM, in order to avoid waiting for the
-                        // group to get installed before programming the flows
-                        installGroupOnDpn(groupId, dpnId, primaryIpAddress, listBucketInfo,
-                                getNextHopKey(vpnId, primaryIpAddress), GroupTypes.GroupAll);
-                        // install Group
-                        mdsalApiManager.syncInstallGroup(groupEntity);
-                        // update MD-SAL DS
-                        addVpnNexthopToDS(dpnId, vpnId, primaryIpAddress, currDestIpPrefix, groupId);
+                        listActionInfo.add(new ActionSetFieldEthernetDestination(actionKey++,
+                                new MacAddress(encMacAddress)));
+                        // listActionInfo.add(0, new ActionPopMpls());
+                    } else {
+                        LOG.error("mac address for new local nexthop group {} is null for vpnId {}, prefix {}, "
+                                + "ifName {} on dpn {}", groupId, vpnId, primaryIpAddress, ifName, dpnId);
+                    }
+                    List<ActionInfo> nhActionInfoList = getEgressActionsForInterface(ifName, actionKey, false,
+                            vpnId, currDestIpPrefix);
+                    if (nhActionInfoList.isEmpty()) {
+                        LOG.error("createLocalNextHop: Skipping, Empty list of egress actions received for "
+                                + "interface {} on dpn {} for vpn {} prefix {}", ifName, dpnId, vpnId,
+                                currDestIpPrefix);
+                    }
+                    listActionInfo.addAll(nhActionInfoList);
+                    BucketInfo bucket = new BucketInfo(listActionInfo);
+                    List<BucketInfo> listBucketInfo = new ArrayList<>();
+                    listBucketInfo.add(bucket);
+                    GroupEntity groupEntity = MDSALUtil.buildGroupEntity(dpnId, groupId, primaryIpAddress,
+                            GroupTypes.GroupAll, listBucketInfo);
+                    LOG.trace("Install LNH Group: id {}, mac address {}, interface {} for prefix {}", groupId,
+                            encMacAddress, ifName, primaryIpAddress);
+                    //Try to install group directly on the DPN bypassing the FRM, in order to avoid waiting for the
+                    // group to get installed before programming the flows
+                    installGroupOnDpn(groupId, dpnId, primaryIpAddress, listBucketInfo,
+                            getNextHopKey(vpnId, primaryIpAddress), GroupTypes.GroupAll);
+                    // install Group
+                    futures.add(txRunner.callWithNewWriteOnlyTransactionAndSubmit(CONFIGURATION,
+                        configTx -> mdsalApiManager.addGroup(configTx, groupEntity)));
+                    // update MD-SAL DS
+                    addVpnNexthopToDS(operationalTx, dpnId, vpnId, primaryIpAddress, currDestIpPrefix, groupId);
 
+                } else {
+                    // Ignore adding new prefix , if it already exists
+                    Map<IpAdjacenciesKey, IpAdjacencies> keyIpAdjacenciesMap = nexthop.getIpAdjacencies();
+                    IpAdjacencies prefix = new IpAdjacenciesBuilder().setIpAdjacency(currDestIpPrefix).build();
+                    if (keyIpAdjacenciesMap != null && keyIpAdjacenciesMap.values().contains(prefix)) {
+                        LOG.trace("Prefix {} is already present in l3nextHop {} ", currDestIpPrefix, nexthop);
                     } else {
-                        // Ignore adding new prefix , if it already exists
-                        Map<IpAdjacenciesKey, IpAdjacencies> keyIpAdjacenciesMap = nexthop.getIpAdjacencies();
-                        IpAdjacencies prefix = new IpAdjacenciesBuilder().setIpAdjacency(currDestIpPrefix).build();
-                        if (keyIpAdjacenciesMap != null && keyIpAdjacenciesMap.values().contains(prefix)) {
-                            LOG.trace("Prefix {} is already present in l3nextHop {} ", currDestIpPrefix, nexthop);
-                        } else {
-                            IpAdjacenciesBuilder ipPrefixesBuilder =
-                                    new IpAdjacenciesBuilder().withKey(new IpAdjacenciesKey(currDestIpPrefix));
-                            LOG.trace("Updating prefix {} to vpnNextHop {} Operational DS", currDestIpPrefix, nexthop);
-                            MDSALUtil.syncWrite(dataBroker, LogicalDatastoreType.OPERATIONAL,
-                                    getVpnNextHopIpPrefixIdentifier(vpnId, primaryIpAddress, currDestIpPrefix),
-                                    ipPrefixesBuilder.build());
-                        }
+                        IpAdjacenciesBuilder ipPrefixesBuilder =
+                                new IpAdjacenciesBuilder().withKey(new IpAdjacenciesKey(currDestIpPrefix));
+                        LOG.trace("Updating prefix {} to vpnNextHop {} Operational DS", currDestIpPrefix, nexthop);
+                        operationalTx.mergeParentStructurePut(
+                                getVpnNextHopIpPrefixIdentifier(vpnId, primaryIpAddress, currDestIpPrefix),
+                                ipPrefixesBuilder.build());
                     }
                 }
-            } finally {
-                FibUtil.unlockCluster(lockManager, nextHopLockStr);
-            }
-            return Collections.emptyList();
-        });
+            }));
+            return futures;
+        }, RETRY_COUNT);
         return groupId;
     }
 
@@ -498,29 +527,12 @@ public class NexthopManager implements AutoCloseable {
         AddGroupInput input = new AddGroupInputBuilder().setNode(nodeRef).setGroupId(new GroupId(groupId))
                 .setBuckets(buckets).setGroupRef(groupRef).setGroupType(groupType)
                 .setGroupName(groupName).build();
-        Future<RpcResult<AddGroupOutput>> groupStats = salGroupService.addGroup(input);
-        RpcResult<AddGroupOutput> rpcResult = null;
-        try {
-            rpcResult = groupStats.get(WAIT_TIME_FOR_SYNC_INSTALL, TimeUnit.MILLISECONDS);
-            if (rpcResult != null && rpcResult.isSuccessful()) {
-                LOG.info("installGroupOnDpn: Group {} with key {} has been successfully installed directly on dpn {}.",
-                        groupId, nextHopKey, dpnId);
-            } else {
-                LOG.error("installGroupOnDpn: Unable to install group {} with key {} directly on dpn {} due to {}.",
-                        groupId, nextHopKey, dpnId, rpcResult != null ? rpcResult.getErrors() : null);
-            }
-        } catch (InterruptedException | ExecutionException e) {
-            LOG.error("installGroupOnDpn: Error while installing group {} directly on dpn {}", groupId, dpnId);
-        } catch (TimeoutException e) {
-            LOG.error("installGroupOnDpn: Group {} installation on dpn {} timed out.", groupId, dpnId);
-        }
+        // Confirmed later on, along with the other groups installed on the dpn meanwhile
+        groupInstallConfirmations.add(dpnId, groupId, nextHopKey, salGroupService.addGroup(input));
     }
 
-    protected void addVpnNexthopToDS(Uint64 dpnId, Uint32 vpnId, String primaryIpAddr,
-                                     String currIpAddr, long egressPointer) {
-        InstanceIdentifierBuilder<VpnNexthops> idBuilder = InstanceIdentifier.builder(L3nexthop.class)
-            .child(VpnNexthops.class, new VpnNexthopsKey(vpnId));
-
+    protected void addVpnNexthopToDS(TypedWriteTransaction<Operational> tx, Uint64 dpnId, Uint32 vpnId,
+                                     String primaryIpAddr, String currIpAddr, long egressPointer) {
         List<IpAdjacencies> ipPrefixesList = new ArrayList<>();
         IpAdjacencies prefix = new IpAdjacenciesBuilder().setIpAdjacency(currIpAddr).build();
         ipPrefixesList.add(prefix);
@@ -531,11 +543,15 @@ public class NexthopManager implements AutoCloseable {
             .setIpAdjacencies(ipPrefixesList)
             .setEgressPointer(egressPointer).build();
 
-        InstanceIdentifier<VpnNexthop> id1 = idBuilder
-            .child(VpnNexthop.class, new VpnNexthopKey(primaryIpAddr)).build();
         LOG.trace("Adding vpnnextHop {} to Operational DS", nh);
-        MDSALUtil.syncWrite(dataBroker, LogicalDatastoreType.OPERATIONAL, id1, nh);
+        tx.mergeParentStructurePut(getVpnNexthopIdentifier(vpnId, primaryIpAddr), nh);
+
+    }
 
+    private static InstanceIdentifier<VpnNexthop> getVpnNexthopIdentifier(Uint32 vpnId, String primaryIpAddress) {
+        return InstanceIdentifier.builder(L3nexthop.class)
+                .child(VpnNexthops.class, new VpnNexthopsKey(vpnId))
+                .child(VpnNexthop.class, new VpnNexthopKey(primaryIpAddress)).build();
     }
 
     protected InstanceIdentifier<IpAdjacencies> getVpnNextHopIpPrefixIdentifier(Uint32 vpnId, String primaryIpAddress,
@@ -607,52 +623,48 @@ public class NexthopManager implements AutoCloseable {
                 prefixIp) : null;
     }
 
-    private void removeVpnNexthopFromDS(Uint32 vpnId, String ipPrefix) {
-
-        InstanceIdentifierBuilder<VpnNexthop> idBuilder = InstanceIdentifier.builder(L3nexthop.class)
-            .child(VpnNexthops.class, new VpnNexthopsKey(vpnId))
-            .child(VpnNexthop.class, new VpnNexthopKey(ipPrefix));
-        InstanceIdentifier<VpnNexthop> id = idBuilder.build();
-        // remove from DS
-        LOG.trace("Removing vpn next hop from datastore : {}", id);
-        MDSALUtil.syncDelete(dataBroker, LogicalDatastoreType.OPERATIONAL, id);
-    }
-
     public void removeLocalNextHop(Uint64 dpnId, Uint32 vpnId, String primaryIpAddress, String currDestIpPrefix) {
-        String nextHopLockStr = vpnId + primaryIpAddress;
-        try {
-            if (FibUtil.lockCluster(lockManager, nextHopLockStr, WAIT_TIME_TO_ACQUIRE_LOCK)) {
-                VpnNexthop nh = getVpnNexthop(vpnId, primaryIpAddress);
-                if (nh != null) {
+        String jobKey = FibUtil.getLocalNextHopJobKey(vpnId, primaryIpAddress);
+        jobCoordinator.enqueueJob(jobKey, () -> {
+            // The group is only removed, and its id released, once the nexthop removal is committed
+            ListenableFuture<VpnNexthop> removedNexthop =
+                txRunner.applyWithNewReadWriteTransactionAndSubmit(OPERATIONAL, operationalTx -> {
+                    VpnNexthop nh = operationalTx.read(getVpnNexthopIdentifier(vpnId, primaryIpAddress)).get()
+                            .orElse(null);
+                    if (nh == null) {
+                        //throw error
+                        LOG.error("Local NextHop for VpnId {} curIpPrefix {} on dpn {} primaryIpAddress {} not "
+                                + "deleted", vpnId, currDestIpPrefix, dpnId, primaryIpAddress);
+                        return null;
+                    }
                     List<IpAdjacencies> prefixesList = new ArrayList<IpAdjacencies>(nh.nonnullIpAdjacencies().values());
                     IpAdjacencies prefix = new IpAdjacenciesBuilder().setIpAdjacency(currDestIpPrefix).build();
                     prefixesList.remove(prefix);
                     if (prefixesList.isEmpty()) { //remove the group only if there are no more flows using this group
-                        GroupEntity groupEntity = MDSALUtil.buildGroupEntity(dpnId, nh.getEgressPointer().toJava(),
-                                primaryIpAddress, GroupTypes.GroupAll, Collections.emptyList());
-                        // remove Group ...
-                        mdsalApiManager.removeGroup(groupEntity);
                         //update MD-SAL DS
-                        removeVpnNexthopFromDS(vpnId, primaryIpAddress);
-                        //release groupId
-                        removeNextHopPointer(getNextHopKey(vpnId, primaryIpAddress));
-                        LOG.debug("Local Next hop {} for {} {} on dpn {} successfully deleted",
-                                nh.getEgressPointer(), vpnId, primaryIpAddress, dpnId);
-                    } else {
-                        //remove the currIpPrefx from IpPrefixList of the vpnNexthop
-                        LOG.trace("Removing the prefix {} from vpnNextHop {} Operational DS", currDestIpPrefix, nh);
-                        MDSALUtil.syncDelete(dataBroker, LogicalDatastoreType.OPERATIONAL,
-                                getVpnNextHopIpPrefixIdentifier(vpnId, primaryIpAddress, currDestIpPrefix));
+                        LOG.trace("Removing vpn next hop {} from Operational DS", nh);
+                        operationalTx.delete(getVpnNexthopIdentifier(vpnId, primaryIpAddress));
+                        return nh;
                     }
-                } else {
-                    //throw error
-                    LOG.error("Local NextHop for VpnId {} curIpPrefix {} on dpn {} primaryIpAddress {} not deleted",
-                            vpnId, currDestIpPrefix, dpnId, primaryIpAddress);
+                    //remove the currIpPrefx from IpPrefixList of the vpnNexthop
+                    LOG.trace("Removing the prefix {} from vpnNextHop {} Operational DS", currDestIpPrefix, nh);
+                    operationalTx.delete(getVpnNextHopIpPrefixIdentifier(vpnId, primaryIpAddress, currDestIpPrefix));
+                    return null;
+                });
+            return Collections.singletonList(Futures.transform(removedNexthop, nh -> {
+                if (nh != null) {
+                    GroupEntity groupEntity = MDSALUtil.buildGroupEntity(dpnId, nh.getEgressPointer().toJava(),
+                            primaryIpAddress, GroupTypes.GroupAll, Collections.emptyList());
+                    // remove Group ...
+                    mdsalApiManager.removeGroup(groupEntity);
+                    //release groupId
+                    removeNextHopPointer(getNextHopKey(vpnId, primaryIpAddress));
+                    LOG.debug("Local Next hop {} for {} {} on dpn {} successfully deleted",
+                            nh.getEgressPointer(), vpnId, primaryIpAddress, dpnId);
                 }
-            }
-        } finally {
-            FibUtil.unlockCluster(lockManager, nextHopLockStr);
-        }
+                return null;
+            }, MoreExecutors.directExecutor()));
+        }, RETRY_COUNT);
     }
 
     public void setConfTransType(String service, String transportType) {
@@ -761,6 +773,7 @@ public class NexthopManager implements AutoCloseable {
     @Override
     @PreDestroy
     public void close() {
+        groupInstallConfirmations.close();
         LOG.info("{} close", getClass().getSimpleName());
     }
 
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.fibmanager;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.opendaylight.infrautils.utils.concurrent.Executors;
+import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
+import org.opendaylight.serviceutils.tools.listener.AbstractClusteredAsyncDataTreeChangeListener;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3nexthop.rev150409.L3nexthop;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3nexthop.rev150409.l3nexthop.VpnNexthops;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3nexthop.rev150409.l3nexthop.vpnnexthops.VpnNexthop;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Clustered listener whose only purpose is to evict the cached group id of a local next hop from every node once
+ * the next hop is removed, whichever node removed it, so that no node hands out a group id released meanwhile.
+ */
+@Singleton
+public class VpnNexthopCacheFeeder extends AbstractClusteredAsyncDataTreeChangeListener<VpnNexthop> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VpnNexthopCacheFeeder.class);
+
+    private final NexthopManager nexthopManager;
+
+    @Inject
+    public VpnNexthopCacheFeeder(final DataBroker dataBroker, final NexthopManager nexthopManager) {
+        super(dataBroker, LogicalDatastoreType.OPERATIONAL, InstanceIdentifier.create(L3nexthop.class)
+                .child(VpnNexthops.class).child(VpnNexthop.class),
+                Executors.newListeningSingleThreadExecutor("VpnNexthopCacheFeeder", LOG));
+        this.nexthopManager = nexthopManager;
+    }
+
+    @Override
+    @PreDestroy
+    public void close() {
+        super.close();
+        Executors.shutdownAndAwaitTermination(getExecutorService());
+    }
+
+    @Override
+    public void remove(InstanceIdentifier<VpnNexthop> identifier, VpnNexthop del) {
+        if (del.getEgressPointer() != null) {
+            nexthopManager.evictNextHopPointer(nexthopManager.getNextHopKey(
+                    identifier.firstKeyOf(VpnNexthops.class).getVpnId(), del.getIpAddress()),
+                    del.getEgressPointer().toJava());
+        }
+    }
+
+    @Override
+    public void update(InstanceIdentifier<VpnNexthop> identifier, VpnNexthop original, VpnNexthop update) {
+        if (original.getEgressPointer() != null && !original.getEgressPointer().equals(update.getEgressPointer())) {
+            remove(identifier, original);
+        }
+    }
+
+    @Override
+    public void add(InstanceIdentifier<VpnNexthop> identifier, VpnNexthop add) {
+        // Only the removals evict the cache
+    }
+}
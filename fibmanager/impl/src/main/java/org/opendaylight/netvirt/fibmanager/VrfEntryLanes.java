@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.fibmanager;
+
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.opendaylight.infrautils.metrics.Counter;
+import org.opendaylight.infrautils.metrics.Labeled;
+import org.opendaylight.infrautils.metrics.MetricDescriptor;
+import org.opendaylight.infrautils.metrics.MetricProvider;
+import org.opendaylight.infrautils.utils.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ordered lanes processing the VrfEntry events.
+ *
+ * <p>An event is hashed by its (rd, destPrefix) onto one of the lanes, each drained in order by its own thread, so
+ * the events of a prefix keep their order while the events of different prefixes are processed in parallel. With a
+ * single lane, the events are processed inline by the listener thread, as they were before the lanes.
+ *
+ * <p>The queue depth of every lane is kept as a counter, and the latency from an event being queued to it being
+ * processed as bucketed counters per lane.
+ */
+final class VrfEntryLanes implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(VrfEntryLanes.class);
+    private static final long[] LATENCY_BUCKETS_MILLIS = {1, 10, 100, 1000, 10000};
+
+    private final ExecutorService[] lanes;
+    private final Labeled<Counter> queueDepths;
+    private final Labeled<Labeled<Counter>> latencies;
+
+    VrfEntryLanes(int laneCount, MetricProvider metricProvider) {
+        this.lanes = new ExecutorService[laneCount > 1 ? laneCount : 0];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = Executors.newListeningSingleThreadExecutor("VrfEntryListener-lane-" + i, LOG);
+        }
+        this.queueDepths = metricProvider.newCounter(MetricDescriptor.builder().anchor(this)
+            .project("netvirt").module("fibmanager").id("vrfentry_lane_queue_depth").build(), "lane");
+        this.latencies = metricProvider.newCounter(MetricDescriptor.builder().anchor(this)
+            .project("netvirt").module("fibmanager").id("vrfentry_lane_latency").build(), "lane", "millis");
+    }
+
+    void execute(String rd, String destPrefix, Runnable event) {
+        if (lanes.length == 0) {
+            event.run();
+            return;
+        }
+        int lane = Math.floorMod(Objects.hash(rd, destPrefix), lanes.length);
+        String laneLabel = String.valueOf(lane);
+        long queuedNanos = System.nanoTime();
+        queueDepths.label(laneLabel).increment();
+        lanes[lane].execute(() -> {
+            queueDepths.label(laneLabel).decrement();
+            try {
+                event.run();
+            } finally {
+                long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queuedNanos);
+                latencies.label(laneLabel).label(bucket(latencyMillis)).increment();
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        for (ExecutorService lane : lanes) {
+            Executors.shutdownAndAwaitTermination(lane);
+        }
+    }
+
+    private static String bucket(long millis) {
+        for (long bound : LATENCY_BUCKETS_MILLIS) {
+            if (millis <= bound) {
+                return "le_" + bound;
+            }
+        }
+        return "gt_" + LATENCY_BUCKETS_MILLIS[LATENCY_BUCKETS_MILLIS.length - 1];
+    }
+}
@@ -14,6 +14,7 @@ import static org.opendaylight.mdsal.binding.util.Datastore.CONFIGURATION;
 import static org.opendaylight.mdsal.binding.util.Datastore.OPERATIONAL;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.FluentFuture;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -30,6 +31,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.locks.ReentrantLock;
@@ -62,6 +64,7 @@ import org.opendaylight.genius.mdsalutil.matches.MatchTunnelId;
 import org.opendaylight.genius.utils.JvmGlobalLocks;
 import org.opendaylight.genius.utils.batching.SubTransaction;
 import org.opendaylight.infrautils.jobcoordinator.JobCoordinator;
+import org.opendaylight.infrautils.metrics.MetricProvider;
 import org.opendaylight.infrautils.utils.concurrent.Executors;
 import org.opendaylight.infrautils.utils.concurrent.LoggingFutures;
 import org.opendaylight.mdsal.binding.api.DataBroker;
@@ -93,6 +96,7 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.ta
 import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.FlowKey;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.Nodes;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.nodes.Node;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.fibmanager.config.rev200601.FibmanagerConfig;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.fibmanager.rev150330.FibEntries;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.fibmanager.rev150330.LabelRouteMap;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.fibmanager.rev150330.RouterInterface;
@@ -134,6 +138,8 @@ public class VrfEntryListener extends AbstractAsyncDataTreeChangeListener<VrfEnt
     private static final int LFIB_INTERVPN_PRIORITY = 15;
     public static final Uint64 COOKIE_TUNNEL = Uint64.valueOf("9000000", 16).intern();
     private static final int MAX_RETRIES = 3;
+    private static final int POPULATE_FIB_CHUNK_SIZE = 1000;
+    private static final int DEFAULT_LANE_COUNT = 1;
     private static final Uint64 COOKIE_TABLE_MISS = Uint64.valueOf("8000004", 16).intern();
 
     private final DataBroker dataBroker;
@@ -150,6 +156,8 @@ public class VrfEntryListener extends AbstractAsyncDataTreeChangeListener<VrfEnt
     private final List<AutoCloseable> closeables = new CopyOnWriteArrayList<>();
     private final UpgradeState upgradeState;
     private final DataTreeEventCallbackRegistrar eventCallbacks;
+    private final VrfEntryLanes lanes;
+    private final DpnFibPopulations populations = new DpnFibPopulations();
 
     @Inject
     public VrfEntryListener(final DataBroker dataBroker, final IMdsalApiManager mdsalApiManager,
@@ -161,7 +169,9 @@ public class VrfEntryListener extends AbstractAsyncDataTreeChangeListener<VrfEnt
                             final JobCoordinator jobCoordinator,
                             final FibUtil fibUtil,
                             final UpgradeState upgradeState,
-                            final DataTreeEventCallbackRegistrar eventCallbacks) {
+                            final DataTreeEventCallbackRegistrar eventCallbacks,
+                            final MetricProvider metricProvider,
+                            final FibmanagerConfig fibmanagerConfig) {
         super(dataBroker, LogicalDatastoreType.CONFIGURATION, InstanceIdentifier.create(FibEntries.class)
                 .child(VrfTables.class).child(VrfEntry.class),
                 Executors.newListeningSingleThreadExecutor("VrfEntryListener", LOG));
@@ -178,6 +188,12 @@ public class VrfEntryListener extends AbstractAsyncDataTreeChangeListener<VrfEnt
         this.fibUtil = fibUtil;
         this.upgradeState = upgradeState;
         this.eventCallbacks = eventCallbacks;
+        this.lanes = new VrfEntryLanes(getLaneCount(fibmanagerConfig), metricProvider);
+    }
+
+    private static int getLaneCount(FibmanagerConfig fibmanagerConfig) {
+        return fibmanagerConfig != null && fibmanagerConfig.getVrfEntryListenerLanes() != null
+            ? fibmanagerConfig.getVrfEntryListenerLanes().toJava() : DEFAULT_LANE_COUNT;
     }
 
     public void init() {
@@ -195,6 +211,7 @@ public class VrfEntryListener extends AbstractAsyncDataTreeChangeListener<VrfEnt
             }
         });
         Executors.shutdownAndAwaitTermination(getExecutorService());
+        lanes.close();
     }
 
     @Override
@@ -203,9 +220,11 @@ public class VrfEntryListener extends AbstractAsyncDataTreeChangeListener<VrfEnt
         String rd = identifier.firstKeyOf(VrfTables.class).getRouteDistinguisher();
         LOG.debug("ADD: Adding Fib Entry rd {} prefix {} route-paths {}",
                 rd, vrfEntry.getDestPrefix(), vrfEntry.getRoutePaths());
-        addFibEntries(identifier, vrfEntry, rd);
-        LOG.info("ADD: Added Fib Entry rd {} prefix {} route-paths {}",
-                 rd, vrfEntry.getDestPrefix(), vrfEntry.getRoutePaths());
+        lanes.execute(rd, vrfEntry.getDestPrefix(), () -> {
+            addFibEntries(identifier, vrfEntry, rd);
+            LOG.info("ADD: Added Fib Entry rd {} prefix {} route-paths {}",
+                     rd, vrfEntry.getDestPrefix(), vrfEntry.getRoutePaths());
+        });
     }
 
     //This method is temporary. Eventually Factory design pattern will be used to get
@@ -241,9 +260,11 @@ public class VrfEntryListener extends AbstractAsyncDataTreeChangeListener<VrfEnt
         String rd = identifier.firstKeyOf(VrfTables.class).getRouteDistinguisher();
         LOG.debug("REMOVE: Removing Fib Entry rd {} prefix {} route-paths {}",
                 rd, vrfEntry.getDestPrefix(), vrfEntry.getRoutePaths());
-        removeFibEntries(identifier, vrfEntry, rd);
-        LOG.info("REMOVE: Removed Fib Entry rd {} prefix {} route-paths {}",
-            rd, vrfEntry.getDestPrefix(), vrfEntry.getRoutePaths());
+        lanes.execute(rd, vrfEntry.getDestPrefix(), () -> {
+            removeFibEntries(identifier, vrfEntry, rd);
+            LOG.info("REMOVE: Removed Fib Entry rd {} prefix {} route-paths {}",
+                rd, vrfEntry.getDestPrefix(), vrfEntry.getRoutePaths());
+        });
     }
 
     //This method is temporary. Eventually Factory design pattern will be used to get
@@ -274,12 +295,17 @@ public class VrfEntryListener extends AbstractAsyncDataTreeChangeListener<VrfEnt
     }
 
     @Override
-    // "Redundant nullcheck of originalRoutePath, which is known to be non-null" - the null checking for
-    // originalRoutePath is a little dicey - safest to keep the checking even if not needed.
-    @SuppressFBWarnings("RCN_REDUNDANT_NULLCHECK_OF_NONNULL_VALUE")
     public void update(InstanceIdentifier<VrfEntry> identifier, VrfEntry original, VrfEntry update) {
         requireNonNull(update, "VrfEntry should not be null or empty.");
         final String rd = identifier.firstKeyOf(VrfTables.class).getRouteDistinguisher();
+        lanes.execute(rd, update.getDestPrefix(), () -> updateFibEntries(identifier, original, update, rd));
+    }
+
+    // "Redundant nullcheck of originalRoutePath, which is known to be non-null" - the null checking for
+    // originalRoutePath is a little dicey - safest to keep the checking even if not needed.
+    @SuppressFBWarnings("RCN_REDUNDANT_NULLCHECK_OF_NONNULL_VALUE")
+    private void updateFibEntries(InstanceIdentifier<VrfEntry> identifier, VrfEntry original, VrfEntry update,
+            String rd) {
         LOG.debug("UPDATE: Updating Fib Entries to rd {} prefix {} route-paths {} origin {} old-origin {}", rd,
                 update.getDestPrefix(), update.getRoutePaths(), update.getOrigin(), original.getOrigin());
 
@@ -1491,90 +1517,163 @@ public class VrfEntryListener extends AbstractAsyncDataTreeChangeListener<VrfEnt
     public void populateFibOnNewDpn(final Uint64 dpnId, final Uint32 vpnId, final String rd,
                                     final FutureCallback<List<?>> callback) {
         LOG.trace("New dpn {} for vpn {} : populateFibOnNewDpn", dpnId, rd);
-        jobCoordinator.enqueueJob(FibUtil.getJobKeyForVpnIdDpnId(vpnId, dpnId),
+        String jobKey = FibUtil.getJobKeyForVpnIdDpnId(vpnId, dpnId);
+        DpnFibPopulations.Population population = populations.start(jobKey, callback);
+        jobCoordinator.enqueueJob(jobKey,
             () -> {
                 InstanceIdentifier<VrfTables> id = buildVrfId(rd);
                 final VpnInstanceOpDataEntry vpnInstance = fibUtil.getVpnInstance(rd);
                 final Optional<VrfTables> vrfTable = MDSALUtil.read(dataBroker,
                         LogicalDatastoreType.CONFIGURATION, id);
-                List<ListenableFuture<?>> futures = new ArrayList<>();
                 if (!vrfTable.isPresent()) {
                     LOG.info("populateFibOnNewDpn: dpn: {}: VRF Table not yet available for RD {}", dpnId, rd);
-                    if (callback != null) {
-                        ListenableFuture<List<Object>> listenableFuture = Futures.allAsList(futures);
-                        Futures.addCallback(listenableFuture, callback, MoreExecutors.directExecutor());
+                    populations.succeed(jobKey, population);
+                    return Collections.emptyList();
+                }
+                // The prefixes are programmed in chunks, in prefix order, each chunk being its own job
+                List<List<String>> chunks = DpnFibPopulations.chunkPrefixes(
+                    vrfTable.get().nonnullVrfEntry().keySet(), POPULATE_FIB_CHUNK_SIZE);
+                if (chunks.isEmpty()) {
+                    populations.succeed(jobKey, population);
+                    return Collections.emptyList();
+                }
+                return new PopulateFibChunkJob(dpnId, vpnId, rd, vpnInstance, chunks, 0, population).call();
+            });
+    }
+
+    /**
+     * Programs a chunk of the prefixes of a VPN on a new DPN, in one transaction taken under the VPN lock.
+     *
+     * <p>The lock is released between chunks, so other FIB work on the VPN interleaves with a large VPN being
+     * programmed. The VRF entries of a chunk are read again in its transaction, so a prefix removed or updated since
+     * the VRF table was first read is skipped or programmed as it is now. The next chunk is enqueued once a chunk is
+     * committed, the index of the chunk being the progress checkpoint. A chunk failing ends the population as failed,
+     * and a chunk of a population superseded or cancelled by the DPN being cleaned up is not programmed and ends the
+     * population; the population completing once only, a retry of the chunk then reports nothing.
+     */
+    private final class PopulateFibChunkJob implements Callable<List<? extends ListenableFuture<?>>> {
+        private final Uint64 dpnId;
+        private final Uint32 vpnId;
+        private final String rd;
+        private final VpnInstanceOpDataEntry vpnInstance;
+        private final List<List<String>> chunks;
+        private final int chunkIndex;
+        private final DpnFibPopulations.Population population;
+
+        PopulateFibChunkJob(Uint64 dpnId, Uint32 vpnId, String rd, VpnInstanceOpDataEntry vpnInstance,
+                List<List<String>> chunks, int chunkIndex, DpnFibPopulations.Population population) {
+            this.dpnId = dpnId;
+            this.vpnId = vpnId;
+            this.rd = rd;
+            this.vpnInstance = vpnInstance;
+            this.chunks = chunks;
+            this.chunkIndex = chunkIndex;
+            this.population = population;
+        }
+
+        @Override
+        public List<? extends ListenableFuture<?>> call() {
+            String jobKey = FibUtil.getJobKeyForVpnIdDpnId(vpnId, dpnId);
+            if (!populations.isCurrent(jobKey, population)) {
+                if (populations.fail(jobKey, population, new CancellationException("FIB population of dpn "
+                        + dpnId + " for rd " + rd + " superseded or cleaned up"))) {
+                    LOG.info("populateFibOnNewDpn: dpn {} rd {}: population superseded or cleaned up after {} of {} "
+                        + "chunks", dpnId, rd, chunkIndex, chunks.size());
+                }
+                return Collections.emptyList();
+            }
+            List<String> chunk = chunks.get(chunkIndex);
+            ListenableFuture<?> future;
+            final ReentrantLock lock = lockFor(vpnInstance);
+            lock.lock();
+            try {
+                future = retryingTxRunner.callWithNewReadWriteTransactionAndSubmit(CONFIGURATION, tx -> {
+                    // the reads of the chunk are all issued before waiting for any of them
+                    List<FluentFuture<Optional<VrfEntry>>> vrfEntryReads = new ArrayList<>(chunk.size());
+                    for (String destPrefix : chunk) {
+                        vrfEntryReads.add(tx.read(buildVrfId(rd).child(VrfEntry.class, new VrfEntryKey(destPrefix))));
                     }
-                    return futures;
+                    for (FluentFuture<Optional<VrfEntry>> vrfEntryRead : vrfEntryReads) {
+                        Optional<VrfEntry> vrfEntry = vrfEntryRead.get();
+                        if (vrfEntry.isPresent()) {
+                            populateVrfEntryOnNewDpn(dpnId, vpnId, rd, vrfEntry.get(), tx);
+                        }
+                    }
+                });
+            } finally {
+                lock.unlock();
+            }
+            Futures.addCallback(future, new FutureCallback<Object>() {
+                @Override
+                public void onSuccess(Object result) {
+                    LOG.debug("populateFibOnNewDpn: dpn {} rd {}: programmed {} of {} chunks", dpnId, rd,
+                        chunkIndex + 1, chunks.size());
+                    if (chunkIndex + 1 < chunks.size()) {
+                        jobCoordinator.enqueueJob(jobKey, new PopulateFibChunkJob(dpnId, vpnId, rd, vpnInstance,
+                            chunks, chunkIndex + 1, population));
+                        return;
+                    }
+                    populations.succeed(jobKey, population);
                 }
 
-                final ReentrantLock lock = lockFor(vpnInstance);
-                lock.lock();
-                try {
-                    futures.add(retryingTxRunner.callWithNewReadWriteTransactionAndSubmit(CONFIGURATION, tx -> {
-                        for (final VrfEntry vrfEntry : vrfTable.get().nonnullVrfEntry().values()) {
-                            SubnetRoute subnetRoute = vrfEntry.augmentation(SubnetRoute.class);
-                            if (subnetRoute != null) {
-                                long elanTag = subnetRoute.getElantag().toJava();
-                                installSubnetRouteInFib(dpnId, elanTag, rd, vpnId, vrfEntry, tx);
-                                installSubnetBroadcastAddrDropRule(dpnId, rd, vpnId, vrfEntry, NwConstants.ADD_FLOW,
-                                        tx);
-                                continue;
-                            }
-                            RouterInterface routerInt = vrfEntry.augmentation(RouterInterface.class);
-                            if (routerInt != null) {
-                                LOG.trace("Router augmented vrfentry found rd:{}, uuid:{}, ip:{}, mac:{}",
-                                        rd, routerInt.getUuid(), routerInt.getIpAddress(), routerInt.getMacAddress());
-                                routerInterfaceVrfEntryHandler.installRouterFibEntry(vrfEntry, dpnId, vpnId,
-                                        routerInt.getIpAddress(), new MacAddress(routerInt.getMacAddress()),
-                                        NwConstants.ADD_FLOW);
-                                continue;
-                            }
-                            //Handle local flow creation for imports
-                            if (RouteOrigin.value(vrfEntry.getOrigin()) == RouteOrigin.SELF_IMPORTED) {
-                                java.util.Optional<Uint32> optionalLabel = FibUtil.getLabelFromRoutePaths(vrfEntry);
-                                if (optionalLabel.isPresent()) {
-                                    List<String> nextHopList = FibHelper.getNextHopListFromRoutePaths(vrfEntry);
-                                    LabelRouteInfo lri = getLabelRouteInfo(optionalLabel.get());
-                                    if (isPrefixAndNextHopPresentInLri(vrfEntry.getDestPrefix(), nextHopList, lri)) {
-                                        if (Objects.equals(lri.getDpnId(), dpnId)) {
-                                            try {
-                                                int etherType = NWUtil.getEtherTypeFromIpPrefix(
-                                                        vrfEntry.getDestPrefix());
-                                                createLocalFibEntry(vpnId, rd, vrfEntry, etherType);
-                                            } catch (IllegalArgumentException ex) {
-                                                LOG.warn("Unable to get etherType for IP Prefix {}",
-                                                        vrfEntry.getDestPrefix());
-                                            }
-                                            continue;
-                                        }
-                                    }
-                                }
-                            }
-                            boolean shouldCreateRemoteFibEntry = shouldCreateFibEntryForVrfAndVpnIdOnDpn(vpnId,
-                                    vrfEntry, dpnId);
-                            if (shouldCreateRemoteFibEntry) {
-                                LOG.trace("Will create remote FIB entry for vrfEntry {} on DPN {}", vrfEntry, dpnId);
-                                if (RouteOrigin.BGP.getValue().equals(vrfEntry.getOrigin())) {
-                                    List<SubTransaction> txnObjects =  new ArrayList<>();
-                                    bgpRouteVrfEntryHandler.createRemoteFibEntry(dpnId, vpnId,
-                                            vrfTable.get().getRouteDistinguisher(), vrfEntry,
-                                            TransactionAdapter.toWriteTransaction(tx), txnObjects);
-                                } else {
-                                    createRemoteFibEntry(dpnId, vpnId, vrfTable.get().getRouteDistinguisher(),
-                                            vrfEntry, tx);
-                                }
-                            }
+                @Override
+                public void onFailure(Throwable throwable) {
+                    LOG.error("populateFibOnNewDpn: dpn {} rd {}: failed to program chunk {} of {}", dpnId, rd,
+                        chunkIndex + 1, chunks.size(), throwable);
+                    populations.fail(jobKey, population, throwable);
+                }
+            }, MoreExecutors.directExecutor());
+            return Collections.singletonList(future);
+        }
+    }
+
+    private void populateVrfEntryOnNewDpn(Uint64 dpnId, Uint32 vpnId, String rd, VrfEntry vrfEntry,
+            TypedReadWriteTransaction<Configuration> tx) {
+        SubnetRoute subnetRoute = vrfEntry.augmentation(SubnetRoute.class);
+        if (subnetRoute != null) {
+            long elanTag = subnetRoute.getElantag().toJava();
+            installSubnetRouteInFib(dpnId, elanTag, rd, vpnId, vrfEntry, tx);
+            installSubnetBroadcastAddrDropRule(dpnId, rd, vpnId, vrfEntry, NwConstants.ADD_FLOW, tx);
+            return;
+        }
+        RouterInterface routerInt = vrfEntry.augmentation(RouterInterface.class);
+        if (routerInt != null) {
+            LOG.trace("Router augmented vrfentry found rd:{}, uuid:{}, ip:{}, mac:{}",
+                    rd, routerInt.getUuid(), routerInt.getIpAddress(), routerInt.getMacAddress());
+            routerInterfaceVrfEntryHandler.installRouterFibEntry(vrfEntry, dpnId, vpnId, routerInt.getIpAddress(),
+                    new MacAddress(routerInt.getMacAddress()), NwConstants.ADD_FLOW);
+            return;
+        }
+        //Handle local flow creation for imports
+        if (RouteOrigin.value(vrfEntry.getOrigin()) == RouteOrigin.SELF_IMPORTED) {
+            java.util.Optional<Uint32> optionalLabel = FibUtil.getLabelFromRoutePaths(vrfEntry);
+            if (optionalLabel.isPresent()) {
+                List<String> nextHopList = FibHelper.getNextHopListFromRoutePaths(vrfEntry);
+                LabelRouteInfo lri = getLabelRouteInfo(optionalLabel.get());
+                if (isPrefixAndNextHopPresentInLri(vrfEntry.getDestPrefix(), nextHopList, lri)) {
+                    if (Objects.equals(lri.getDpnId(), dpnId)) {
+                        try {
+                            int etherType = NWUtil.getEtherTypeFromIpPrefix(vrfEntry.getDestPrefix());
+                            createLocalFibEntry(vpnId, rd, vrfEntry, etherType);
+                        } catch (IllegalArgumentException ex) {
+                            LOG.warn("Unable to get etherType for IP Prefix {}", vrfEntry.getDestPrefix());
                         }
-                    }));
-                    if (callback != null) {
-                        ListenableFuture<List<Object>> listenableFuture = Futures.allAsList(futures);
-                        Futures.addCallback(listenableFuture, callback, MoreExecutors.directExecutor());
+                        return;
                     }
-                } finally {
-                    lock.unlock();
                 }
-                return futures;
-            });
+            }
+        }
+        boolean shouldCreateRemoteFibEntry = shouldCreateFibEntryForVrfAndVpnIdOnDpn(vpnId, vrfEntry, dpnId);
+        if (shouldCreateRemoteFibEntry) {
+            LOG.trace("Will create remote FIB entry for vrfEntry {} on DPN {}", vrfEntry, dpnId);
+            if (RouteOrigin.BGP.getValue().equals(vrfEntry.getOrigin())) {
+                List<SubTransaction> txnObjects =  new ArrayList<>();
+                bgpRouteVrfEntryHandler.createRemoteFibEntry(dpnId, vpnId, rd, vrfEntry,
+                        TransactionAdapter.toWriteTransaction(tx), txnObjects);
+            } else {
+                createRemoteFibEntry(dpnId, vpnId, rd, vrfEntry, tx);
+            }
+        }
     }
 
     public void populateExternalRoutesOnDpn(final Uint64 dpnId, final Uint32 vpnId, final String rd,
@@ -1676,7 +1775,10 @@ public class VrfEntryListener extends AbstractAsyncDataTreeChangeListener<VrfEnt
     public void cleanUpDpnForVpn(final Uint64 dpnId, final Uint32 vpnId, final String rd,
                                  final FutureCallback<List<?>> callback) {
         LOG.trace("cleanUpDpnForVpn: Remove dpn {} for vpn {} : cleanUpDpnForVpn", dpnId, rd);
-        jobCoordinator.enqueueJob(FibUtil.getJobKeyForVpnIdDpnId(vpnId, dpnId),
+        String jobKey = FibUtil.getJobKeyForVpnIdDpnId(vpnId, dpnId);
+        // the chunks of a population still queued must not program the dpn again once cleaned up
+        populations.cancel(jobKey);
+        jobCoordinator.enqueueJob(jobKey,
             () -> {
                 InstanceIdentifier<VrfTables> id = buildVrfId(rd);
                 final VpnInstanceOpDataEntry vpnInstance = fibUtil.getVpnInstance(rd);
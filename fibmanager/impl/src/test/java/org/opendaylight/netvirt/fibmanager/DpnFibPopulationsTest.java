@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.fibmanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.util.concurrent.FutureCallback;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.opendaylight.netvirt.fibmanager.DpnFibPopulations.Population;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.fibmanager.rev150330.vrfentries.VrfEntryKey;
+
+public class DpnFibPopulationsTest {
+    private static final String JOB_KEY = "FIB-101-1";
+
+    @Test
+    public void testChunkPrefixesInOrder() {
+        List<VrfEntryKey> keys = new ArrayList<>();
+        for (int i = 2499; i >= 0; i--) {
+            keys.add(new VrfEntryKey(String.format("10.%d.%d.0/24", i / 256, i % 256)));
+        }
+
+        List<List<String>> chunks = DpnFibPopulations.chunkPrefixes(keys, 1000);
+
+        assertEquals(3, chunks.size());
+        assertEquals(1000, chunks.get(0).size());
+        assertEquals(1000, chunks.get(1).size());
+        assertEquals(500, chunks.get(2).size());
+        List<String> destPrefixes = new ArrayList<>();
+        chunks.forEach(destPrefixes::addAll);
+        List<String> expected = new ArrayList<>();
+        keys.forEach(key -> expected.add(key.getDestPrefix()));
+        Collections.sort(expected);
+        assertEquals(expected, destPrefixes);
+    }
+
+    @Test
+    public void testChunkPrefixesOfEmptyTable() {
+        assertTrue(DpnFibPopulations.chunkPrefixes(Collections.emptyList(), 1000).isEmpty());
+    }
+
+    @Test
+    public void testChunkPrefixesSmallerThanChunk() {
+        List<List<String>> chunks = DpnFibPopulations.chunkPrefixes(
+            List.of(new VrfEntryKey("10.0.0.2/32"), new VrfEntryKey("10.0.0.1/32")), 1000);
+
+        assertEquals(List.of(List.of("10.0.0.1/32", "10.0.0.2/32")), chunks);
+    }
+
+    @Test
+    public void testCleanupCancelsPopulation() {
+        DpnFibPopulations populations = new DpnFibPopulations();
+        Population population = populations.start(JOB_KEY, null);
+        assertTrue(populations.isCurrent(JOB_KEY, population));
+
+        populations.cancel(JOB_KEY);
+
+        assertFalse(populations.isCurrent(JOB_KEY, population));
+    }
+
+    @Test
+    public void testNewPopulationSupersedesPrevious() {
+        DpnFibPopulations populations = new DpnFibPopulations();
+        Population first = populations.start(JOB_KEY, null);
+        Population second = populations.start(JOB_KEY, null);
+
+        assertFalse(populations.isCurrent(JOB_KEY, first));
+        assertTrue(populations.isCurrent(JOB_KEY, second));
+
+        // the superseded population completing does not end the current one
+        assertTrue(populations.fail(JOB_KEY, first, new CancellationException()));
+        assertTrue(populations.isCurrent(JOB_KEY, second));
+
+        assertTrue(populations.succeed(JOB_KEY, second));
+        assertFalse(populations.isCurrent(JOB_KEY, second));
+    }
+
+    @Test
+    public void testFailedPopulationNotReportedDone() {
+        DpnFibPopulations populations = new DpnFibPopulations();
+        FutureCallback<List<?>> callback = newCallback();
+        Population population = populations.start(JOB_KEY, callback);
+        Throwable cause = new IllegalStateException("chunk failed");
+
+        assertTrue(populations.fail(JOB_KEY, population, cause));
+        // the retried chunk finds the population ended
+        assertFalse(populations.isCurrent(JOB_KEY, population));
+        assertFalse(populations.fail(JOB_KEY, population, new CancellationException()));
+        assertFalse(populations.succeed(JOB_KEY, population));
+
+        assertTrue(population.isCompleted());
+        verify(callback).onFailure(cause);
+        verify(callback, never()).onSuccess(any());
+    }
+
+    @Test
+    public void testDonePopulationNotReportedFailed() {
+        DpnFibPopulations populations = new DpnFibPopulations();
+        FutureCallback<List<?>> callback = newCallback();
+        Population population = populations.start(JOB_KEY, callback);
+
+        assertTrue(populations.succeed(JOB_KEY, population));
+        assertFalse(populations.fail(JOB_KEY, population, new IllegalStateException("late failure")));
+        assertFalse(populations.succeed(JOB_KEY, population));
+
+        verify(callback, times(1)).onSuccess(Collections.emptyList());
+        verify(callback, never()).onFailure(any());
+    }
+
+    @Test
+    public void testConcurrentCompletionsReportedOnce() throws Exception {
+        DpnFibPopulations populations = new DpnFibPopulations();
+        FutureCallback<List<?>> callback = newCallback();
+        Population population = populations.start(JOB_KEY, callback);
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> completions = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                boolean succeed = i % 2 == 0;
+                completions.add(executor.submit(() -> {
+                    start.await();
+                    return succeed ? populations.succeed(JOB_KEY, population)
+                        : populations.fail(JOB_KEY, population, new IllegalStateException("chunk failed"));
+                }));
+            }
+            start.countDown();
+            int completed = 0;
+            for (Future<Boolean> completion : completions) {
+                if (completion.get(5, TimeUnit.SECONDS)) {
+                    completed++;
+                }
+            }
+            assertEquals(1, completed);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, mockingDetails(callback).getInvocations().size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static FutureCallback<List<?>> newCallback() {
+        return mock(FutureCallback.class);
+    }
+}
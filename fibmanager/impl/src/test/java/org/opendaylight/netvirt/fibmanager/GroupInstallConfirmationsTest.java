@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.fibmanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.FluentFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.mdsal.binding.api.ReadTransaction;
+import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.group.service.rev130918.AddGroupOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.group.service.rev130918.AddGroupOutputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.group.types.rev131018.groups.Group;
+import org.opendaylight.yangtools.yang.common.RpcError.ErrorType;
+import org.opendaylight.yangtools.yang.common.RpcResult;
+import org.opendaylight.yangtools.yang.common.RpcResultBuilder;
+import org.opendaylight.yangtools.yang.common.Uint64;
+
+public class GroupInstallConfirmationsTest {
+    private static final long WAIT_MS = 5000;
+    private static final Uint64 DPN_1 = Uint64.valueOf(1);
+    private static final Uint64 DPN_2 = Uint64.valueOf(2);
+
+    private final DataBroker dataBroker = mock(DataBroker.class);
+    private final ReadTransaction readTx = mock(ReadTransaction.class);
+    private GroupInstallConfirmations confirmations;
+
+    @Before
+    public void setUp() {
+        when(dataBroker.newReadOnlyTransaction()).thenReturn(readTx);
+        doReturn(FluentFuture.from(Futures.immediateFuture(Optional.empty()))).when(readTx).read(any(), any());
+    }
+
+    @After
+    public void tearDown() {
+        if (confirmations != null) {
+            confirmations.close();
+        }
+    }
+
+    @Test
+    public void testBatchConfirmedFromDpnGroupsInOneRead() {
+        // long enough for the batches to only be confirmed by the test
+        confirmations = new GroupInstallConfirmations(dataBroker, TimeUnit.HOURS.toMillis(1));
+        reportGroup(DPN_1, 150001L);
+        reportGroup(DPN_1, 150003L);
+        reportGroup(DPN_1, 150004L);
+
+        confirmations.add(DPN_1, 150001L, "nexthop.1", succeeded());
+        // not reported by the dpn
+        confirmations.add(DPN_1, 150002L, "nexthop.2", succeeded());
+        // reported by the dpn before the reply to its install
+        confirmations.add(DPN_1, 150003L, "nexthop.3", SettableFuture.create());
+        // reported by the dpn, but its install failed
+        confirmations.add(DPN_1, 150004L, "nexthop.4", failed());
+        confirmations.add(DPN_2, 150005L, "nexthop.5", succeeded());
+
+        List<Long> confirmed = new ArrayList<>(confirmations.confirm(DPN_1));
+
+        confirmed.sort(null);
+        assertEquals(List.of(150001L, 150003L), confirmed);
+        verify(dataBroker, times(1)).newReadOnlyTransaction();
+        verify(readTx, never()).read(LogicalDatastoreType.OPERATIONAL,
+                FibUtil.buildGroupInstanceIdentifier(150004L, DPN_1));
+        verify(readTx, never()).read(LogicalDatastoreType.OPERATIONAL,
+                FibUtil.buildGroupInstanceIdentifier(150005L, DPN_2));
+        verify(readTx).close();
+        // the batch is confirmed once only
+        assertTrue(confirmations.confirm(DPN_1).isEmpty());
+    }
+
+    @Test
+    public void testBatchConfirmedAfterWaitTime() {
+        confirmations = new GroupInstallConfirmations(dataBroker, 10);
+        reportGroup(DPN_1, 150001L);
+
+        confirmations.add(DPN_1, 150001L, "nexthop.1", succeeded());
+        confirmations.add(DPN_1, 150002L, "nexthop.2", succeeded());
+
+        verify(readTx, timeout(WAIT_MS)).close();
+        // the groups installed before the batch is confirmed are confirmed along with the first one
+        verify(dataBroker, times(1)).newReadOnlyTransaction();
+        verify(readTx).read(LogicalDatastoreType.OPERATIONAL, FibUtil.buildGroupInstanceIdentifier(150001L, DPN_1));
+        verify(readTx).read(LogicalDatastoreType.OPERATIONAL, FibUtil.buildGroupInstanceIdentifier(150002L, DPN_1));
+    }
+
+    private void reportGroup(Uint64 dpnId, long groupId) {
+        doReturn(FluentFuture.from(Futures.immediateFuture(Optional.of(mock(Group.class))))).when(readTx)
+                .read(eq(LogicalDatastoreType.OPERATIONAL), eq(FibUtil.buildGroupInstanceIdentifier(groupId, dpnId)));
+    }
+
+    private static SettableFuture<RpcResult<AddGroupOutput>> succeeded() {
+        SettableFuture<RpcResult<AddGroupOutput>> result = SettableFuture.create();
+        result.set(RpcResultBuilder.success(new AddGroupOutputBuilder().build()).build());
+        return result;
+    }
+
+    private static SettableFuture<RpcResult<AddGroupOutput>> failed() {
+        SettableFuture<RpcResult<AddGroupOutput>> result = SettableFuture.create();
+        result.set(RpcResultBuilder.<AddGroupOutput>failed().withError(ErrorType.APPLICATION, "failed").build());
+        return result;
+    }
+}
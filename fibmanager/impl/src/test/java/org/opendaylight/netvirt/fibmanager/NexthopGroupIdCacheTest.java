@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.fibmanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.genius.interfacemanager.interfaces.IInterfaceManager;
+import org.opendaylight.genius.mdsalutil.interfaces.IMdsalApiManager;
+import org.opendaylight.infrautils.jobcoordinator.JobCoordinator;
+import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.netvirt.elanmanager.api.IElanService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.AllocateIdInput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.AllocateIdOutputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.IdManagerService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.IdPools;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.ReleaseIdInput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.ReleaseIdOutputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.id.pools.IdPool;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.id.pools.IdPoolKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.id.pools.id.pool.IdEntries;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.id.pools.id.pool.IdEntriesBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.id.pools.id.pool.IdEntriesKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.interfacemanager.rpcs.rev160406.OdlInterfaceRpcService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.itm.rpcs.rev160406.ItmRpcService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.group.service.rev130918.SalGroupService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3nexthop.rev150409.L3nexthop;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3nexthop.rev150409.l3nexthop.VpnNexthops;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3nexthop.rev150409.l3nexthop.VpnNexthopsKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3nexthop.rev150409.l3nexthop.vpnnexthops.VpnNexthop;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3nexthop.rev150409.l3nexthop.vpnnexthops.VpnNexthopBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3nexthop.rev150409.l3nexthop.vpnnexthops.VpnNexthopKey;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.common.RpcResultBuilder;
+import org.opendaylight.yangtools.yang.common.Uint32;
+import org.opendaylight.yangtools.yang.common.Uint64;
+
+public class NexthopGroupIdCacheTest {
+    private static final Uint32 VPN_ID = Uint32.valueOf(100);
+    private static final String NEXTHOP_IP = "10.0.0.1";
+    private static final long GROUP_ID = 150001L;
+    private static final long OTHER_GROUP_ID = 150002L;
+
+    private final DataBroker dataBroker = mock(DataBroker.class);
+    private final IdManagerService idManager = mock(IdManagerService.class);
+    private NexthopManager nexthopManager;
+    private String nextHopKey;
+
+    @Before
+    public void setUp() {
+        when(idManager.allocateId(any(AllocateIdInput.class))).thenReturn(
+                RpcResultBuilder.success(new AllocateIdOutputBuilder().setIdValue(Uint32.valueOf(GROUP_ID)).build())
+                        .buildFuture());
+        when(idManager.releaseId(any(ReleaseIdInput.class))).thenReturn(
+                RpcResultBuilder.success(new ReleaseIdOutputBuilder().build()).buildFuture());
+        nexthopManager = new NexthopManager(dataBroker, mock(IMdsalApiManager.class), idManager,
+                mock(OdlInterfaceRpcService.class), mock(ItmRpcService.class), mock(IElanService.class),
+                mock(SalGroupService.class), mock(JobCoordinator.class), mock(FibUtil.class),
+                mock(IInterfaceManager.class));
+        nextHopKey = nexthopManager.getNextHopKey(VPN_ID, NEXTHOP_IP);
+    }
+
+    @After
+    public void tearDown() {
+        nexthopManager.close();
+    }
+
+    @Test
+    public void testGroupIdAllocatedOnceThenCached() {
+        assertEquals(GROUP_ID, nexthopManager.getLocalNextHopGroup(VPN_ID, NEXTHOP_IP));
+        assertEquals(GROUP_ID, nexthopManager.getLocalNextHopGroup(VPN_ID, NEXTHOP_IP));
+
+        verify(idManager, times(1)).allocateId(any(AllocateIdInput.class));
+    }
+
+    @Test
+    public void testGroupIdEvictedOnLocalRelease() {
+        nexthopManager.getLocalNextHopGroup(VPN_ID, NEXTHOP_IP);
+
+        nexthopManager.removeNextHopPointer(nextHopKey);
+        nexthopManager.getLocalNextHopGroup(VPN_ID, NEXTHOP_IP);
+
+        verify(idManager, times(2)).allocateId(any(AllocateIdInput.class));
+    }
+
+    @Test
+    public void testGroupIdEvictedOnNexthopRemovedByAnyNode() {
+        VpnNexthopCacheFeeder feeder = new VpnNexthopCacheFeeder(dataBroker, nexthopManager);
+        nexthopManager.getLocalNextHopGroup(VPN_ID, NEXTHOP_IP);
+
+        // a nexthop of another group id, which this node has not cached, does not evict the cached one
+        feeder.remove(vpnNexthopIdentifier(), vpnNexthop(OTHER_GROUP_ID));
+        nexthopManager.getLocalNextHopGroup(VPN_ID, NEXTHOP_IP);
+        verify(idManager, times(1)).allocateId(any(AllocateIdInput.class));
+
+        feeder.remove(vpnNexthopIdentifier(), vpnNexthop(GROUP_ID));
+        nexthopManager.getLocalNextHopGroup(VPN_ID, NEXTHOP_IP);
+        verify(idManager, times(2)).allocateId(any(AllocateIdInput.class));
+    }
+
+    @Test
+    public void testGroupIdEvictedOnIdReleasedByAnyNode() {
+        NextHopIdEntriesCacheFeeder feeder = new NextHopIdEntriesCacheFeeder(dataBroker, nexthopManager);
+        nexthopManager.getLocalNextHopGroup(VPN_ID, NEXTHOP_IP);
+
+        // an id entry still allocated does not evict the cached group id
+        feeder.update(idEntriesIdentifier(), idEntries(GROUP_ID), idEntries(GROUP_ID));
+        nexthopManager.getLocalNextHopGroup(VPN_ID, NEXTHOP_IP);
+        verify(idManager, times(1)).allocateId(any(AllocateIdInput.class));
+
+        feeder.remove(idEntriesIdentifier(), idEntries(GROUP_ID));
+        nexthopManager.getLocalNextHopGroup(VPN_ID, NEXTHOP_IP);
+        verify(idManager, times(2)).allocateId(any(AllocateIdInput.class));
+    }
+
+    private static InstanceIdentifier<VpnNexthop> vpnNexthopIdentifier() {
+        return InstanceIdentifier.builder(L3nexthop.class).child(VpnNexthops.class, new VpnNexthopsKey(VPN_ID))
+                .child(VpnNexthop.class, new VpnNexthopKey(NEXTHOP_IP)).build();
+    }
+
+    private static VpnNexthop vpnNexthop(long groupId) {
+        return new VpnNexthopBuilder().withKey(new VpnNexthopKey(NEXTHOP_IP)).setDpnId(Uint64.ONE)
+                .setEgressPointer(groupId).build();
+    }
+
+    private InstanceIdentifier<IdEntries> idEntriesIdentifier() {
+        return InstanceIdentifier.builder(IdPools.class)
+                .child(IdPool.class, new IdPoolKey(NexthopManager.NEXTHOP_ID_POOL_NAME))
+                .child(IdEntries.class, new IdEntriesKey(nextHopKey)).build();
+    }
+
+    private IdEntries idEntries(long groupId) {
+        return new IdEntriesBuilder().withKey(new IdEntriesKey(nextHopKey)).setIdValue(List.of(Uint32.valueOf(groupId)))
+                .build();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.fibmanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.opendaylight.infrautils.metrics.testimpl.TestMetricProviderImpl;
+
+public class VrfEntryLanesTest {
+    private static final String RD = "100:1";
+    private static final long WAIT_MS = 5000;
+
+    private VrfEntryLanes lanes;
+
+    @After
+    public void tearDown() {
+        if (lanes != null) {
+            lanes.close();
+        }
+    }
+
+    @Test
+    public void testEventsOfPrefixOrderedWithinLane() throws Exception {
+        lanes = new VrfEntryLanes(4, new TestMetricProviderImpl());
+        int prefixCount = 32;
+        int eventsPerPrefix = 100;
+        Map<String, List<Integer>> eventsByPrefix = new ConcurrentHashMap<>();
+        Map<String, Set<String>> lanesByPrefix = new ConcurrentHashMap<>();
+        CountDownLatch processed = new CountDownLatch(prefixCount * eventsPerPrefix);
+
+        for (int event = 0; event < eventsPerPrefix; event++) {
+            for (int i = 0; i < prefixCount; i++) {
+                String destPrefix = "10.0." + i + ".0/24";
+                int sequence = event;
+                lanes.execute(RD, destPrefix, () -> {
+                    eventsByPrefix.computeIfAbsent(destPrefix, key -> Collections.synchronizedList(new ArrayList<>()))
+                        .add(sequence);
+                    lanesByPrefix.computeIfAbsent(destPrefix, key -> ConcurrentHashMap.newKeySet())
+                        .add(Thread.currentThread().getName());
+                    processed.countDown();
+                });
+            }
+        }
+
+        assertTrue(processed.await(WAIT_MS, TimeUnit.MILLISECONDS));
+        List<Integer> expected = new ArrayList<>();
+        for (int event = 0; event < eventsPerPrefix; event++) {
+            expected.add(event);
+        }
+        Set<String> usedLanes = new HashSet<>();
+        for (int i = 0; i < prefixCount; i++) {
+            String destPrefix = "10.0." + i + ".0/24";
+            assertEquals(expected, eventsByPrefix.get(destPrefix));
+            assertEquals(1, lanesByPrefix.get(destPrefix).size());
+            usedLanes.addAll(lanesByPrefix.get(destPrefix));
+        }
+        // the prefixes are spread across the lanes
+        assertEquals(4, usedLanes.size());
+    }
+
+    @Test
+    public void testSameRdAndPrefixOnSameLane() throws Exception {
+        lanes = new VrfEntryLanes(8, new TestMetricProviderImpl());
+        Set<String> laneNames = ConcurrentHashMap.newKeySet();
+        CountDownLatch processed = new CountDownLatch(2);
+
+        lanes.execute(RD, "10.0.0.1/32", () -> {
+            laneNames.add(Thread.currentThread().getName());
+            processed.countDown();
+        });
+        lanes.execute(RD, "10.0.0.1/32", () -> {
+            laneNames.add(Thread.currentThread().getName());
+            processed.countDown();
+        });
+
+        assertTrue(processed.await(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, laneNames.size());
+        assertTrue(laneNames.iterator().next().startsWith("VrfEntryListener-lane-"));
+    }
+
+    @Test
+    public void testSingleLaneProcessesInline() {
+        lanes = new VrfEntryLanes(1, new TestMetricProviderImpl());
+        List<String> threads = new ArrayList<>();
+
+        lanes.execute(RD, "10.0.0.1/32", () -> threads.add(Thread.currentThread().getName()));
+        lanes.execute(RD, "10.0.0.2/32", () -> threads.add(Thread.currentThread().getName()));
+
+        String caller = Thread.currentThread().getName();
+        assertEquals(List.of(caller, caller), threads);
+    }
+}
@@ -7,36 +7,130 @@
  */
 package org.opendaylight.netvirt.natservice.internal;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.config.rev170206.NatserviceConfig;
 import org.opendaylight.yangtools.util.concurrent.SpecialExecutors;
+import org.opendaylight.yangtools.yang.common.Uint32;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Dispatches the NAPT flow removed events to a fixed number of workers chosen by router ID.
+ *
+ * <p>The events of a router are always handled by the same worker, so they stay ordered, while different routers
+ * are processed in parallel. A worker drains its queue in batches and hands all the events of a router in a batch
+ * to {@link NaptEventHandler#handleFlowRemovedEvents(Uint32, List)}, which removes their flows in one transaction
+ * and releases their ports together. An event which does not fit the queue of its worker is handled on the thread
+ * of the caller.
+ */
 @Singleton
 public class EventDispatcher implements AutoCloseable {
     private static final Logger LOG = LoggerFactory.getLogger(EventDispatcher.class);
 
+    private static final int DEFAULT_WORKER_COUNT = 4;
+    private static final int MAX_BATCH_SIZE = 256;
+
     private final NaptEventHandler naptEventHandler;
-    private final ExecutorService executor = SpecialExecutors.newBoundedSingleThreadExecutor(
-            NatConstants.EVENT_QUEUE_LENGTH, "NatServiceEventDispatcher", EventDispatcher.class);
+    private final NatServiceCounters natServiceCounters;
+    private final Shard[] shards;
 
     @Inject
-    public EventDispatcher(final NaptEventHandler naptEventHandler) {
+    public EventDispatcher(final NaptEventHandler naptEventHandler, final NatServiceCounters natServiceCounters,
+                           final NatserviceConfig config) {
+        this(naptEventHandler, natServiceCounters, getWorkerCount(config),
+            NatConstants.EVENT_QUEUE_LENGTH / getWorkerCount(config));
+    }
+
+    EventDispatcher(NaptEventHandler naptEventHandler, NatServiceCounters natServiceCounters, int workerCount,
+                    int queueLength) {
         this.naptEventHandler = naptEventHandler;
+        this.natServiceCounters = natServiceCounters;
+        this.shards = new Shard[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            shards[i] = new Shard(i, queueLength);
+        }
+        LOG.info("EventDispatcher : started with {} flow removed workers", workerCount);
+    }
+
+    private static int getWorkerCount(NatserviceConfig config) {
+        return config != null && config.getNaptFlowRemovedWorkerCount() != null
+            ? config.getNaptFlowRemovedWorkerCount().toJava() : DEFAULT_WORKER_COUNT;
     }
 
     @PreDestroy
     @Override
     public void close() {
-        executor.shutdown();
+        for (Shard shard : shards) {
+            shard.executor.shutdown();
+        }
     }
 
     public void addFlowRemovedNaptEvent(NAPTEntryEvent naptEntryEvent) {
         LOG.trace("addFlowRemovedNaptEvent : Adding Flow Removed event {}", naptEntryEvent);
 
-        executor.execute(() -> naptEventHandler.handleEvent(naptEntryEvent));
+        shards[(int) (naptEntryEvent.getRouterId().longValue() % shards.length)].add(naptEntryEvent);
+    }
+
+    private final class Shard {
+        private final BlockingQueue<NAPTEntryEvent> events;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final ExecutorService executor;
+
+        Shard(int index, int queueLength) {
+            this.events = new LinkedBlockingQueue<>(queueLength);
+            // At most one drain task is queued at any time, the events themselves wait in the shard queue
+            this.executor = SpecialExecutors.newBoundedSingleThreadExecutor(1,
+                "NatServiceEventDispatcher-" + index, EventDispatcher.class);
+        }
+
+        void add(NAPTEntryEvent naptEntryEvent) {
+            if (!events.offer(naptEntryEvent)) {
+                // Discarding the event would leak the port of its session, it is handled on this thread instead
+                LOG.warn("add : Flow removed queue full, handling event {} synchronously", naptEntryEvent);
+                natServiceCounters.naptFlowRemovedDropped();
+                naptEventHandler.handleEvent(naptEntryEvent);
+                return;
+            }
+            natServiceCounters.naptFlowRemovedQueued(1);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                List<NAPTEntryEvent> batch = new ArrayList<>(MAX_BATCH_SIZE);
+                events.drainTo(batch, MAX_BATCH_SIZE);
+                if (batch.isEmpty()) {
+                    return;
+                }
+                natServiceCounters.naptFlowRemovedDequeued(batch.size());
+                Map<Uint32, List<NAPTEntryEvent>> eventsByRouter = new LinkedHashMap<>();
+                for (NAPTEntryEvent event : batch) {
+                    eventsByRouter.computeIfAbsent(event.getRouterId(), routerId -> new ArrayList<>()).add(event);
+                }
+                eventsByRouter.forEach((routerId, routerEvents) -> natServiceCounters.naptFlowRemovedBatchTimer()
+                    .time(() -> naptEventHandler.handleFlowRemovedEvents(routerId, routerEvents)));
+            } finally {
+                scheduled.set(false);
+                if (!events.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
     }
 }
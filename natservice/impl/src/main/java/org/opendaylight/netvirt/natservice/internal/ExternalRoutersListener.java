@@ -108,7 +108,6 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.config.r
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.config.rev170206.NatserviceConfig.NatMode;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.ExtRouters;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.ExternalIpsCounter;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.IntextIpPortMap;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.NaptSwitches;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.ProtocolTypes;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.ProviderTypes;
@@ -123,7 +122,6 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev16011
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.map.ip.mapping.IpMapBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.map.ip.mapping.IpMapKey;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.IpPortMapping;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.IpPortMappingKey;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.IntextIpProtocolType;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.intext.ip.protocol.type.IpPortMap;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.intext.ip.protocol.type.ip.port.map.IpPortExternal;
@@ -1432,18 +1430,8 @@ public class ExternalRoutersListener extends AbstractAsyncDataTreeChangeListener
                                     + "Inbound and Outbound NAPT tables for the removed external IPs.");
                             //Get the internalIP and internal Port which were associated to the removed external IP.
                             Map<ProtocolTypes, List<String>> protoTypesIntIpPortsMap = new HashMap<>();
-                            InstanceIdentifier<IpPortMapping> ipPortMappingId = InstanceIdentifier
-                                    .builder(IntextIpPortMap.class)
-                                    .child(IpPortMapping.class, new IpPortMappingKey(routerId)).build();
-                            Optional<IpPortMapping> ipPortMapping;
-                            try {
-                                ipPortMapping = SingleTransactionDataBroker
-                                            .syncReadOptional(dataBroker,
-                                                    LogicalDatastoreType.CONFIGURATION, ipPortMappingId);
-                            } catch (InterruptedException | ExecutionException e) {
-                                LOG.error("Failed to read ipPortMapping for router id {}", routerId, e);
-                                ipPortMapping = Optional.empty();
-                            }
+                            Optional<IpPortMapping> ipPortMapping =
+                                    Optional.ofNullable(naptManager.getIpPortMapping(routerId));
 
                             if (ipPortMapping.isPresent()) {
                                 for (IntextIpProtocolType intextIpProtocolType :
@@ -1537,7 +1525,7 @@ public class ExternalRoutersListener extends AbstractAsyncDataTreeChangeListener
                                 naptManager.removeFromSnatIpPortDS(routerId, internalIp);
                             }
 
-                            naptManager.removeNaptPortPool(externalIp);
+                            naptManager.removeNaptPortPool(routerId, externalIp);
                         }
                         LOG.debug(
                                 "update : End processing of the External IPs removal for router {}", routerName);
@@ -2093,7 +2081,7 @@ public class ExternalRoutersListener extends AbstractAsyncDataTreeChangeListener
         }
 
         //For the router ID get the internal IP , internal port and the corresponding external IP and external Port.
-        IpPortMapping ipPortMapping = NatUtil.getIportMapping(dataBroker, routerId);
+        IpPortMapping ipPortMapping = naptManager.getIpPortMapping(routerId);
         if (ipPortMapping == null) {
             LOG.error("removeNaptFlowsFromActiveSwitch : Unable to retrieve the IpPortMapping");
             return;
@@ -2205,7 +2193,7 @@ public class ExternalRoutersListener extends AbstractAsyncDataTreeChangeListener
             // Remove IP-PORT active NAPT entries and release port from IdManager
             // For the router ID get the internal IP , internal port and the corresponding
             // external IP and external Port.
-            IpPortMapping ipPortMapping = NatUtil.getIportMapping(dataBroker, routerId);
+            IpPortMapping ipPortMapping = naptManager.getIpPortMapping(routerId);
             if (ipPortMapping == null) {
                 LOG.error("removeNaptFlowsFromActiveSwitchInternetVpn : Unable to retrieve the IpPortMapping");
                 return;
@@ -2252,7 +2240,7 @@ public class ExternalRoutersListener extends AbstractAsyncDataTreeChangeListener
 
                     // Finally release port from idmanager
                     String internalIpPort = internalIp + ":" + internalPort;
-                    naptManager.removePortFromPool(internalIpPort, externalIp);
+                    naptManager.removePortFromPool(routerId, internalIpPort, externalIp);
 
                     //Remove sessions from models
                     naptManager.removeIpPortMappingForRouterID(routerId);
@@ -2811,7 +2799,7 @@ public class ExternalRoutersListener extends AbstractAsyncDataTreeChangeListener
 
     public void updateNaptFlowsWithVpnId(Uint64 dpnId, String routerName, Uint32 routerId, Uint32 bgpVpnId) {
         //For the router ID get the internal IP , internal port and the corresponding external IP and external Port.
-        IpPortMapping ipPortMapping = NatUtil.getIportMapping(dataBroker, routerId);
+        IpPortMapping ipPortMapping = naptManager.getIpPortMapping(routerId);
         if (ipPortMapping == null) {
             LOG.error("updateNaptFlowsWithVpnId : Unable to retrieve the IpPortMapping");
             return;
@@ -8,6 +8,8 @@
 
 package org.opendaylight.netvirt.natservice.internal;
 
+import static org.opendaylight.mdsal.binding.util.Datastore.CONFIGURATION;
+
 import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
@@ -66,7 +68,10 @@ import org.opendaylight.genius.mdsalutil.packet.TCP;
 import org.opendaylight.genius.mdsalutil.packet.UDP;
 import org.opendaylight.infrautils.utils.concurrent.LoggingFutures;
 import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.mdsal.binding.util.ManagedNewTransactionRunner;
+import org.opendaylight.mdsal.binding.util.ManagedNewTransactionRunnerImpl;
 import org.opendaylight.netvirt.elanmanager.api.IElanService;
+import org.opendaylight.netvirt.natservice.internal.NaptPacketInHandler.NatPacketProcessingState;
 import org.opendaylight.openflowplugin.libraries.liblldp.PacketException;
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.Uri;
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.yang.types.rev130715.MacAddress;
@@ -99,6 +104,7 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.nodes.N
 import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.nodes.NodeKey;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.ext.routers.Routers;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.packet.service.rev130709.PacketProcessingService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.packet.service.rev130709.PacketReceived;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.packet.service.rev130709.TransmitPacketInput;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier.PathArgument;
@@ -121,6 +127,7 @@ public class NaptEventHandler {
     private final IInterfaceManager interfaceManager;
     private final SalFlowService salFlowServiceRpc;
     private final NatOverVxlanUtil natOverVxlanUtil;
+    private final ManagedNewTransactionRunner txRunner;
 
     @Inject
     public NaptEventHandler(final DataBroker dataBroker, final IMdsalApiManager mdsalManager,
@@ -142,6 +149,7 @@ public class NaptEventHandler {
         this.idManager = idManager;
         this.salFlowServiceRpc = salFlowServiceRpc;
         this.natOverVxlanUtil = natOverVxlanUtil;
+        this.txRunner = new ManagedNewTransactionRunnerImpl(dataBroker);
     }
 
     // TODO Clean up the exception handling
@@ -189,7 +197,7 @@ public class NaptEventHandler {
                 String vpnName = NatUtil.getRouterName(dataBroker, bgpVpnId);
                 String routerName = NatUtil.getRouterIdfromVpnInstance(dataBroker, vpnName, internalIpAddress);
                 if (routerName == null) {
-                    NaptPacketInHandler.removeIncomingPacketMap(sourceIPPortKey);
+                    NaptPacketInHandler.removeIncomingPacketState(naptEntryEvent, sourceIPPortKey);
                     LOG.error("handleEvent: Unable to find router for VpnName {}. Droping packet for SNAT ({})"
                         + "session", vpnName, sourceIPPortKey);
                     return;
@@ -198,7 +206,7 @@ public class NaptEventHandler {
                 LOG.debug("handleEvent : Router ID {}", routerId);
                 dpnId = NatUtil.getPrimaryNaptfromRouterId(dataBroker, routerId);
                 if (dpnId == null) {
-                    NaptPacketInHandler.removeIncomingPacketMap(sourceIPPortKey);
+                    NaptPacketInHandler.removeIncomingPacketState(naptEntryEvent, sourceIPPortKey);
                     LOG.error("handleEvent: Unable to find router for VpnName {}. Droping packet for SNAT ({})"
                         + "session", vpnName, sourceIPPortKey);
                     return;
@@ -216,7 +224,7 @@ public class NaptEventHandler {
                         LOG.debug("handleEvent : External Gateway MAC address {} found for External Router ID {}",
                                   extGwMacAddress, routerId);
                     } else {
-                        NaptPacketInHandler.removeIncomingPacketMap(sourceIPPortKey);
+                        NaptPacketInHandler.removeIncomingPacketState(naptEntryEvent, sourceIPPortKey);
                         LOG.error("handleEvent: No External Gateway MAC address found for External Router ID {}."
                             + "Droping packet for SNAT ({}) session", routerId, sourceIPPortKey);
                         return;
@@ -225,7 +233,7 @@ public class NaptEventHandler {
                     //Get the external network ID from the ExternalRouter model
                     Uuid networkId = NatUtil.getNetworkIdFromRouterId(dataBroker, routerId);
                     if (networkId == null) {
-                        NaptPacketInHandler.removeIncomingPacketMap(sourceIPPortKey);
+                        NaptPacketInHandler.removeIncomingPacketState(naptEntryEvent, sourceIPPortKey);
                         LOG.error("handleEvent: networkId is null. Droping packet for SNAT ({}) session",
                                  sourceIPPortKey);
                         return;
@@ -234,7 +242,7 @@ public class NaptEventHandler {
                     //Get the VPN ID from the ExternalNetworks model
                     Uuid vpnUuid = NatUtil.getVpnIdfromNetworkId(dataBroker, networkId);
                     if (vpnUuid == null) {
-                        NaptPacketInHandler.removeIncomingPacketMap(sourceIPPortKey);
+                        NaptPacketInHandler.removeIncomingPacketState(naptEntryEvent, sourceIPPortKey);
                         LOG.error("handleEvent: vpnUuid is null. Droping packet for SNAT ({}) session",
                                  sourceIPPortKey);
                         return;
@@ -248,7 +256,7 @@ public class NaptEventHandler {
                             naptManager.getExternalAddressMapping(routerId, internalAddress,
                                     naptEntryEvent.getProtocol());
                     if (externalAddress == null) {
-                        NaptPacketInHandler.removeIncomingPacketMap(sourceIPPortKey);
+                        NaptPacketInHandler.removeIncomingPacketState(naptEntryEvent, sourceIPPortKey);
                         LOG.error("handleEvent: externalAddress is null. Droping packet for SNAT ({}) session",
                                   sourceIPPortKey);
                         return;
@@ -273,6 +281,13 @@ public class NaptEventHandler {
 
                                 @Override
                                 public void onSuccess(@Nullable RpcResult<AddFlowOutput> result) {
+                                    if (result == null || !result.isSuccessful()) {
+                                        LOG.error("handleEvent : Failed to configure inbound SNAT flows for SNAT "
+                                                + "connection from {} to {} due to {}", internalAddress,
+                                                externalAddress, result != null ? result.getErrors() : null);
+                                        discardPendingSession(naptEntryEvent, sourceIPPortKey);
+                                        return;
+                                    }
                                     LOG.debug("handleEvent : Configured inbound rule for {} to {}",
                                              internalAddress, externalAddress);
                                     Future<RpcResult<AddFlowOutput>> addFlowResult =
@@ -285,16 +300,26 @@ public class NaptEventHandler {
 
                                             @Override
                                             public void onSuccess(@Nullable RpcResult<AddFlowOutput> result) {
+                                                if (result == null || !result.isSuccessful()) {
+                                                    LOG.error("handleEvent : Failed to configure outbound SNAT flows "
+                                                            + "for SNAT connection from {} to {} due to {}",
+                                                            internalAddress, externalAddress,
+                                                            result != null ? result.getErrors() : null);
+                                                    discardPendingSession(naptEntryEvent, sourceIPPortKey);
+                                                    return;
+                                                }
                                                 LOG.debug("handleEvent : Configured outbound rule, sending packet out"
                                                         + "from {} to {}", internalAddress, externalAddress);
                                                 prepareAndSendPacketOut(naptEntryEvent, finalRouterId, sourceIPPortKey);
+                                                sendPendingPacketsOut(naptEntryEvent, finalRouterId, sourceIPPortKey);
                                             }
 
                                             @Override
                                             public void onFailure(@NonNull Throwable throwable) {
                                                 LOG.error("handleEvent : Error configuring outbound "
                                                         + "SNAT flows using RPC for SNAT connection from {} to {}",
-                                                                  internalAddress, externalAddress);
+                                                                  internalAddress, externalAddress, throwable);
+                                                discardPendingSession(naptEntryEvent, sourceIPPortKey);
                                             }
                                         }, MoreExecutors.directExecutor());
                                 }
@@ -303,7 +328,8 @@ public class NaptEventHandler {
                                 public void onFailure(@NonNull Throwable throwable) {
                                     LOG.error("handleEvent : Error configuring inbound SNAT flows "
                                             + "using RPC for SNAT connection from {} to {}",
-                                            internalAddress, externalAddress);
+                                            internalAddress, externalAddress, throwable);
+                                    discardPendingSession(naptEntryEvent, sourceIPPortKey);
                                 }
                             }, MoreExecutors.directExecutor());
                 } else {
@@ -333,7 +359,7 @@ public class NaptEventHandler {
             try {
                 ethPkt.deserialize(inPayload, 0, inPayload.length * Byte.SIZE);
             } catch (PacketException e) {
-                NaptPacketInHandler.removeIncomingPacketMap(sourceIPPortKey);
+                NaptPacketInHandler.removeIncomingPacketState(naptEntryEvent, sourceIPPortKey);
                 LOG.error("prepareAndSendPacketOut : Failed to decode Packet", e);
                 return;
             }
@@ -352,7 +378,7 @@ public class NaptEventHandler {
             int vlanId = 0;
             iface = interfaceManager.getInterfaceInfoFromConfigDataStore(interfaceName);
             if (iface == null) {
-                NaptPacketInHandler.removeIncomingPacketMap(sourceIPPortKey);
+                NaptPacketInHandler.removeIncomingPacketState(naptEntryEvent, sourceIPPortKey);
                 LOG.error("prepareAndSendPacketOut : Unable to read interface {} from config DataStore", interfaceName);
                 return;
             }
@@ -416,6 +442,28 @@ public class NaptEventHandler {
         }
     }
 
+    private void sendPendingPacketsOut(NAPTEntryEvent naptEntryEvent, Uint32 routerId, String sourceIPPortKey) {
+        NatPacketProcessingState state = naptEntryEvent.getState();
+        if (state == null) {
+            return;
+        }
+        for (PacketReceived packetReceived : state.setFlowInstalled()) {
+            prepareAndSendPacketOut(new NAPTEntryEvent(naptEntryEvent.getIpAddress(), naptEntryEvent.getPortNumber(),
+                naptEntryEvent.getRouterId(), naptEntryEvent.getOperation(), naptEntryEvent.getProtocol(),
+                packetReceived, true, state), routerId, sourceIPPortKey);
+        }
+    }
+
+    private static void discardPendingSession(NAPTEntryEvent naptEntryEvent, String sourceIPPortKey) {
+        NaptPacketInHandler.removeIncomingPacketState(naptEntryEvent, sourceIPPortKey);
+        NatPacketProcessingState state = naptEntryEvent.getState();
+        if (state != null) {
+            int dropped = state.discardPendingPackets();
+            LOG.debug("discardPendingSession : Dropped {} pending packets of SNAT ({}) session", dropped + 1,
+                sourceIPPortKey);
+        }
+    }
+
     public void buildAndInstallNatFlows(Uint64 dpnId, short tableId, Uint32 vpnId, Uint32 routerId,
                                         Uint32 bgpVpnId, SessionAddress actualSourceAddress,
                                         SessionAddress translatedSourceAddress,
@@ -431,7 +479,47 @@ public class NaptEventHandler {
             boolean sendRpc) {
         LOG.debug("buildAndInstallNatFlowsOptionalRpc : Build and install table={} flow on dpnId {} and routerId {}",
                 tableId, dpnId, routerId);
-        //Build the flow for replacing the actual IP and port with the translated IP and port.
+        FlowEntity snatFlowEntity = buildNatFlowEntity(dpnId, tableId, vpnId, routerId, bgpVpnId,
+            actualSourceAddress, translatedSourceAddress, protocol, extGwMacAddress);
+
+        // Install flows using RPC to prevent race with future packet-out that depends on this flow
+        Future<RpcResult<AddFlowOutput>> addFlowResult = null;
+        if (sendRpc) {
+            Flow flow = snatFlowEntity.getFlowBuilder().build();
+            NodeRef nodeRef = getNodeRef(dpnId);
+            FlowRef flowRef = getFlowRef(dpnId, flow);
+            AddFlowInput addFlowInput = new AddFlowInputBuilder(flow).setFlowRef(flowRef).setNode(nodeRef).build();
+            long startTime = System.currentTimeMillis();
+            addFlowResult = salFlowServiceRpc.addFlow(addFlowInput);
+            LOG.debug("buildAndInstallNatFlowsOptionalRpc : Time elapsed for salFlowServiceRpc table {}: {}ms ",
+                    tableId, System.currentTimeMillis() - startTime);
+         // Keep flow installation through MDSAL as well to be able to handle switch failures
+            startTime = System.currentTimeMillis();
+            mdsalManager.installFlow(snatFlowEntity);
+            LOG.trace("buildAndInstallNatFlowsOptionalRpc : Time Elapsed while installing table-{} "
+                    + "flow on DPN:{} for snat packet({},{}): {}ms", tableId, dpnId,
+                    actualSourceAddress.getIpAddress(),actualSourceAddress.getPortNumber(),
+                    System.currentTimeMillis() - startTime);
+        } else {
+            long startTime = System.currentTimeMillis();
+            mdsalManager.syncInstallFlow(snatFlowEntity);
+            LOG.trace("buildAndInstallNatFlowsOptionalRpc : Time Elapsed while installing table-{} "
+                    + "flow on DPN:{} for snat packet({},{}): {}ms", tableId, dpnId,
+                    actualSourceAddress.getIpAddress(),actualSourceAddress.getPortNumber(),
+                    System.currentTimeMillis() - startTime);
+        }
+        LOG.trace("buildAndInstallNatFlowsOptionalRpc : Exited");
+
+        return addFlowResult;
+    }
+
+    /**
+     * Builds the flow replacing the actual IP and port of a session with the translated IP and port.
+     */
+    static FlowEntity buildNatFlowEntity(Uint64 dpnId, short tableId, Uint32 vpnId, Uint32 routerId,
+                                         Uint32 bgpVpnId, SessionAddress actualSourceAddress,
+                                         SessionAddress translatedSourceAddress,
+                                         NAPTEntryEvent.Protocol protocol, String extGwMacAddress) {
         int idleTimeout = 0;
         if (tableId == NwConstants.OUTBOUND_NAPT_TABLE) {
             idleTimeout = NatConstants.DEFAULT_NAPT_IDLE_TIMEOUT;
@@ -442,7 +530,7 @@ public class NaptEventHandler {
         } else {
             intranetVpnId = routerId;
         }
-        LOG.debug("buildAndInstallNatFlowsOptionalRpc : Intranet VPN ID {} Router ID {}", intranetVpnId, routerId);
+        LOG.debug("buildNatFlowEntity : Intranet VPN ID {} Router ID {}", intranetVpnId, routerId);
         String translatedIp = translatedSourceAddress.getIpAddress();
         int translatedPort = translatedSourceAddress.getPortNumber();
         String actualIp = actualSourceAddress.getIpAddress();
@@ -455,7 +543,7 @@ public class NaptEventHandler {
             switchFlowRef = NatUtil.getNaptFlowRef(dpnId, tableId, String.valueOf(routerId), translatedIp,
                 translatedPort, protocol.name());
         }
-        FlowEntity snatFlowEntity = new FlowEntityBuilder()
+        return new FlowEntityBuilder()
             .setDpnId(dpnId)
             .setTableId(tableId)
             .setFlowId(switchFlowRef)
@@ -469,36 +557,6 @@ public class NaptEventHandler {
                                             intranetVpnId, vpnId, tableId, protocol, extGwMacAddress))
             .setSendFlowRemFlag(true)
             .build();
-
-        // Install flows using RPC to prevent race with future packet-out that depends on this flow
-        Future<RpcResult<AddFlowOutput>> addFlowResult = null;
-        if (sendRpc) {
-            Flow flow = snatFlowEntity.getFlowBuilder().build();
-            NodeRef nodeRef = getNodeRef(dpnId);
-            FlowRef flowRef = getFlowRef(dpnId, flow);
-            AddFlowInput addFlowInput = new AddFlowInputBuilder(flow).setFlowRef(flowRef).setNode(nodeRef).build();
-            long startTime = System.currentTimeMillis();
-            addFlowResult = salFlowServiceRpc.addFlow(addFlowInput);
-            LOG.debug("buildAndInstallNatFlowsOptionalRpc : Time elapsed for salFlowServiceRpc table {}: {}ms ",
-                    tableId, System.currentTimeMillis() - startTime);
-         // Keep flow installation through MDSAL as well to be able to handle switch failures
-            startTime = System.currentTimeMillis();
-            mdsalManager.installFlow(snatFlowEntity);
-            LOG.trace("buildAndInstallNatFlowsOptionalRpc : Time Elapsed while installing table-{} "
-                    + "flow on DPN:{} for snat packet({},{}): {}ms", tableId, dpnId,
-                    actualSourceAddress.getIpAddress(),actualSourceAddress.getPortNumber(),
-                    System.currentTimeMillis() - startTime);
-        } else {
-            long startTime = System.currentTimeMillis();
-            mdsalManager.syncInstallFlow(snatFlowEntity);
-            LOG.trace("buildAndInstallNatFlowsOptionalRpc : Time Elapsed while installing table-{} "
-                    + "flow on DPN:{} for snat packet({},{}): {}ms", tableId, dpnId,
-                    actualSourceAddress.getIpAddress(),actualSourceAddress.getPortNumber(),
-                    System.currentTimeMillis() - startTime);
-        }
-        LOG.trace("buildAndInstallNatFlowsOptionalRpc : Exited");
-
-        return addFlowResult;
     }
 
     private static Node buildInventoryDpnNode(Uint64 dpnId) {
@@ -723,6 +781,44 @@ public class NaptEventHandler {
         return NatConstants.INVALID_ID;
     }
 
+    /**
+     * Handles the flow removed events of one router together: the NAPT flows of all the sessions are removed in
+     * one transaction and their ports released in one batch. Falls back to {@link #handleEvent(NAPTEntryEvent)}
+     * per event when the router has no NAPT switch, as the router then has to be resolved per internal IP, and when
+     * the transaction fails, so that the ports are only released once the flows of their sessions are removed.
+     */
+    public void handleFlowRemovedEvents(Uint32 routerId, List<NAPTEntryEvent> naptEntryEvents) {
+        Uint64 dpnId = NatUtil.getPrimaryNaptfromRouterId(dataBroker, routerId);
+        if (dpnId == null || dpnId.equals(Uint64.ZERO)) {
+            naptEntryEvents.forEach(this::handleEvent);
+            return;
+        }
+        try {
+            txRunner.callWithNewReadWriteTransactionAndSubmit(CONFIGURATION, tx -> {
+                for (NAPTEntryEvent naptEntryEvent : naptEntryEvents) {
+                    String protocol = naptEntryEvent.getProtocol().name();
+                    for (short tableId : new short[] {NwConstants.OUTBOUND_NAPT_TABLE,
+                        NwConstants.INBOUND_NAPT_TABLE}) {
+                        String switchFlowRef = NatUtil.getNaptFlowRef(dpnId, tableId, String.valueOf(routerId),
+                            naptEntryEvent.getIpAddress(), naptEntryEvent.getPortNumber(), protocol);
+                        mdsalManager.removeFlow(tx, NatUtil.buildFlowEntity(dpnId, tableId, switchFlowRef));
+                    }
+                }
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            LOG.error("handleFlowRemovedEvents : Failed to remove NAPT flows of {} sessions of router {} "
+                + "on switch {}, removing them one by one", naptEntryEvents.size(), routerId, dpnId, e);
+            naptEntryEvents.forEach(this::handleEvent);
+            return;
+        }
+        for (NAPTEntryEvent naptEntryEvent : naptEntryEvents) {
+            NaptPacketInHandler.removeIncomingPacketState(naptEntryEvent, routerId + NatConstants.COLON_SEPARATOR
+                + naptEntryEvent.getIpAddress() + NatConstants.COLON_SEPARATOR + naptEntryEvent.getPortNumber());
+        }
+        naptManager.releaseIpExtPortMappings(routerId, naptEntryEvents);
+        LOG.debug("handleFlowRemovedEvents : Released {} sessions of router {}", naptEntryEvents.size(), routerId);
+    }
+
     public void handleFlowRemoved(NAPTEntryEvent naptEntryEvent, Uint32 routerId, String sourceIPPortKey,
                                   Uint64 dpnId) {
         String internalIpv4HostAddress = naptEntryEvent.getIpAddress();
@@ -742,7 +838,7 @@ public class NaptEventHandler {
             internalPortNumber, protocol.name());
 
         //Remove the SourceIP:Port key from the Napt packet handler map.
-        NaptPacketInHandler.removeIncomingPacketMap(sourceIPPortKey);
+        NaptPacketInHandler.removeIncomingPacketState(naptEntryEvent, sourceIPPortKey);
 
         //Remove the mapping of internal fixed ip/port to external ip/port from the datastore.
         SessionAddress internalSessionAddress = new SessionAddress(internalIpv4HostAddress, internalPortNumber);
@@ -11,16 +11,15 @@
  */
 package org.opendaylight.netvirt.natservice.internal;
 
-import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.locks.ReentrantLock;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.apache.commons.net.util.SubnetUtils;
@@ -29,16 +28,8 @@ import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 import org.opendaylight.genius.datastoreutils.SingleTransactionDataBroker;
 import org.opendaylight.genius.mdsalutil.MDSALUtil;
-import org.opendaylight.genius.utils.JvmGlobalLocks;
 import org.opendaylight.mdsal.binding.api.DataBroker;
 import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.CreateIdPoolInput;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.CreateIdPoolInputBuilder;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.CreateIdPoolOutput;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.DeleteIdPoolInput;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.DeleteIdPoolInputBuilder;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.DeleteIdPoolOutput;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.IdManagerService;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.ExternalIpsCounter;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.IntextIpMap;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.IntextIpPortMap;
@@ -67,14 +58,8 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev16011
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.intext.ip.protocol.type.ip.port.map.IpPortExternalBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.snatint.ip.port.map.IntipPortMap;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.snatint.ip.port.map.IntipPortMapKey;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.snatint.ip.port.map.intip.port.map.IpPort;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.snatint.ip.port.map.intip.port.map.IpPortKey;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.snatint.ip.port.map.intip.port.map.ip.port.IntIpProtoType;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.snatint.ip.port.map.intip.port.map.ip.port.IntIpProtoTypeBuilder;
-import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.snatint.ip.port.map.intip.port.map.ip.port.IntIpProtoTypeKey;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier.InstanceIdentifierBuilder;
-import org.opendaylight.yangtools.yang.common.RpcResult;
 import org.opendaylight.yangtools.yang.common.Uint16;
 import org.opendaylight.yangtools.yang.common.Uint32;
 import org.slf4j.Logger;
@@ -84,50 +69,21 @@ import org.slf4j.LoggerFactory;
 public class NaptManager {
     private static final Logger LOG = LoggerFactory.getLogger(NaptManager.class);
 
-    private static final long LOW_PORT = 49152L;
-    private static final long HIGH_PORT = 65535L;
-
     private final DataBroker dataBroker;
-    private final IdManagerService idManager;
+    private final NaptPortAllocator naptPortAllocator;
+    private final NaptMappingWriter naptMappingWriter;
 
     @Inject
-    public NaptManager(final DataBroker dataBroker, final IdManagerService idManager) {
+    public NaptManager(final DataBroker dataBroker, final NaptPortAllocator naptPortAllocator,
+                       final NaptMappingWriter naptMappingWriter) {
         this.dataBroker = dataBroker;
-        this.idManager = idManager;
-    }
-
-    protected void createNaptPortPool(String poolName) {
-        LOG.debug("createNaptPortPool : requested for : {}", poolName);
-        CreateIdPoolInput createPool = new CreateIdPoolInputBuilder()
-            .setPoolName(poolName)
-            .setLow(LOW_PORT)
-            .setHigh(HIGH_PORT)
-            .build();
-        try {
-            Future<RpcResult<CreateIdPoolOutput>> result = idManager.createIdPool(createPool);
-            if (result != null && result.get().isSuccessful()) {
-                LOG.debug("createNaptPortPool : Created PortPool :{}", poolName);
-            } else {
-                LOG.error("createNaptPortPool : Unable to create PortPool : {}", poolName);
-            }
-        } catch (InterruptedException | ExecutionException e) {
-            LOG.error("createNaptPortPool : Failed to create PortPool for NAPT Service", e);
-        }
+        this.naptPortAllocator = naptPortAllocator;
+        this.naptMappingWriter = naptMappingWriter;
     }
 
-    void removeNaptPortPool(String poolName) {
-        DeleteIdPoolInput deleteIdPoolInput = new DeleteIdPoolInputBuilder().setPoolName(poolName).build();
+    void removeNaptPortPool(Uint32 segmentId, String poolName) {
         LOG.debug("removeNaptPortPool : Remove Napt port pool requested for : {}", poolName);
-        try {
-            Future<RpcResult<DeleteIdPoolOutput>> result = idManager.deleteIdPool(deleteIdPoolInput);
-            if (result != null && result.get().isSuccessful()) {
-                LOG.debug("removeNaptPortPool : Deleted PortPool {}", poolName);
-            } else {
-                LOG.error("removeNaptPortPool : Unable to delete PortPool {}", poolName);
-            }
-        } catch (InterruptedException | ExecutionException e) {
-            LOG.error("removeNaptPortPool : Failed to delete PortPool {} for NAPT Service", poolName, e);
-        }
+        naptPortAllocator.removePool(segmentId, poolName);
     }
 
     // 1. napt service functions
@@ -145,20 +101,7 @@ public class NaptManager {
         LOG.debug("registerMapping : called with segmentid {}, internalIp {}, prefix {}, externalIp {} "
             + "and prefix {} ", segmentId, internal.getIpAddress(),
             internal.getPrefixLength(), external.getIpAddress(), external.getPrefixLength());
-        // Create Pool per ExternalIp and not for all IPs in the subnet.
-        // Create new Pools during getExternalAddressMapping if exhausted.
-        String externalIpPool;
-        // subnet case
-        if (external.getPrefixLength() != 0 && external.getPrefixLength() != NatConstants.DEFAULT_PREFIX) {
-            String externalSubnet = external.getIpAddress() + "/" + external.getPrefixLength();
-            LOG.debug("registerMapping : externalSubnet is : {}", externalSubnet);
-            SubnetUtils subnetUtils = new SubnetUtils(externalSubnet);
-            SubnetInfo subnetInfo = subnetUtils.getInfo();
-            externalIpPool = subnetInfo.getLowAddress();
-        } else {  // ip case
-            externalIpPool = external.getIpAddress();
-        }
-        createNaptPortPool(externalIpPool);
+        // Port pools per ExternalIp are created by NaptPortAllocator on first use.
 
         // Store the ip to ip map in Operational DS
         String internalIp = internal.getIpAddress();
@@ -291,17 +234,12 @@ public class NaptManager {
             allIps.add(externalIp);
         }
 
-        boolean nextExtIpFlag = false;
         for (String extIp : allIps) {
             LOG.info("getExternalAddressMapping : Looping externalIPs with externalIP now as {}", extIp);
-            if (nextExtIpFlag) {
-                createNaptPortPool(extIp);
-                LOG.debug("getExternalAddressMapping : Created Pool for next Ext IP {}", extIp);
-            }
-            Uint32 extPort = NatUtil.getUniqueId(idManager, extIp, internalIpPort);
+            Uint32 extPort = naptPortAllocator.allocatePort(segmentId, extIp, internalIpPort);
             if (extPort == NatConstants.INVALID_ID) {
-                LOG.error("getExternalAddressMapping : getExternalAddressMapping, idManager could not "
-                    + "allocate id retry if subnet");
+                LOG.error("getExternalAddressMapping : getExternalAddressMapping, could not "
+                    + "allocate port retry if subnet");
                 if (!extSubnetFlag) {
                     LOG.error("getExternalAddressMapping : getExternalAddressMapping returning null "
                         + "for single IP case, may be ports exhausted");
@@ -309,10 +247,9 @@ public class NaptManager {
                 }
                 LOG.debug("getExternalAddressMapping : Could be ports exhausted case, "
                     + "try with another externalIP if possible");
-                nextExtIpFlag = true;
                 continue;
             }
-            // Write to ip-port-map before returning
+            // Write to ip-port-map, persisted in the background
             IpPortExternalBuilder ipExt = new IpPortExternalBuilder();
             IpPortExternal ipPortExt = ipExt.setIpAddress(extIp).setPortNum(extPort.intValue()).build();
             IpPortMap ipm = new IpPortMapBuilder().withKey(new IpPortMapKey(internalIpPort))
@@ -320,40 +257,11 @@ public class NaptManager {
             LOG.debug("getExternalAddressMapping : writing into ip-port-map with "
                     + "externalIP {} and port {}",
                     ipPortExt.getIpAddress(), ipPortExt.getPortNum());
-            try {
-                MDSALUtil.syncWrite(dataBroker, LogicalDatastoreType.CONFIGURATION,
-                    getIpPortMapIdentifier(segmentId, internalIpPort, protocol), ipm);
-            } catch (UncheckedExecutionException uee) {
-                LOG.error("getExternalAddressMapping : Failed to write into ip-port-map with exception",
-                    uee);
-            }
+            naptMappingWriter.writeIpPortMap(getIpPortMapIdentifier(segmentId, internalIpPort, protocol), ipm);
 
-            // Write to snat-internal-ip-port-info
-            String internalIpAddress = sourceAddress.getIpAddress();
-            int ipPort = sourceAddress.getPortNumber();
-            ProtocolTypes protocolType = NatUtil.getProtocolType(protocol);
-            final ReentrantLock lock = lockFor(segmentId, internalIpAddress, protocolType);
-            lock.lock();
-            try {
-                List<Uint16> portList = new ArrayList<>(
-                        NatUtil.getInternalIpPortListInfo(dataBroker, segmentId, internalIpAddress,
-                            protocolType));
-                portList.add(Uint16.valueOf(ipPort));
-
-                IntIpProtoTypeBuilder builder = new IntIpProtoTypeBuilder();
-                IntIpProtoType intIpProtocolType =
-                        builder.withKey(new IntIpProtoTypeKey(protocolType)).setPorts(portList).build();
-                try {
-                    MDSALUtil.syncWrite(dataBroker, LogicalDatastoreType.CONFIGURATION,
-                        NatUtil.buildSnatIntIpPortIdentifier(segmentId, internalIpAddress, protocolType),
-                        intIpProtocolType);
-                } catch (Exception ex) {
-                    LOG.error("getExternalAddressMapping : Failed to write into snat-internal-ip-port-info "
-                            + "with exception", ex);
-                }
-            } finally {
-                lock.unlock();
-            }
+            // Write to snat-internal-ip-port-info, coalesced with the other ports of the internal IP
+            naptMappingWriter.addInternalPort(segmentId, sourceAddress.getIpAddress(),
+                NatUtil.getProtocolType(protocol), sourceAddress.getPortNumber());
             SessionAddress externalIpPort = new SessionAddress(extIp, extPort.intValue());
             LOG.debug("getExternalAddressMapping : successfully returning externalIP {} "
                     + "and port {}", externalIpPort.getIpAddress(), externalIpPort.getPortNumber());
@@ -374,8 +282,9 @@ public class NaptManager {
             // delete the entry from IpPortMap DS
             try {
                 removeFromIpPortMapDS(segmentId, internalIpPort, protocol);
-                // Finally release port from idmanager
-                Uint32 releasedId = NatUtil.releaseId(idManager, existingIpPort.getIpAddress(), internalIpPort);
+                // Finally release port from the pool
+                Uint32 releasedId = naptPortAllocator.releasePort(segmentId, existingIpPort.getIpAddress(),
+                    internalIpPort);
                 if (releasedId == NatConstants.INVALID_ID) {
                     LOG.error("releaseIpExtPortMapping : Unable to release ID for key {}",
                         existingIpPort.getIpAddress());
@@ -390,17 +299,39 @@ public class NaptManager {
         }
 
         //delete the entry of port for InternalIp from snatIntIpportMappingDS
-        ProtocolTypes protocolType = NatUtil.getProtocolType(protocol);
-        final ReentrantLock lock = lockFor(segmentId, address.getIpAddress(), protocolType);
-        lock.lock();
-        try {
-            removeSnatIntIpPortDS(segmentId, address, protocolType);
-        } catch (Exception e) {
-            LOG.error("releaseSnatIpPortMapping : failed, Removal of snatipportmap {} for router {} failed",
-                address.getIpAddress(), segmentId, e);
-        } finally {
-            lock.unlock();
+        removeSnatIntIpPortDS(segmentId, address, NatUtil.getProtocolType(protocol));
+    }
+
+    /**
+     * Releases the mappings of several sessions of a router, the ports of each external IP in one batch.
+     *
+     * @param segmentId - Router ID
+     * @param naptEntryEvents - flow removed events of the sessions
+     */
+    protected void releaseIpExtPortMappings(Uint32 segmentId, List<NAPTEntryEvent> naptEntryEvents) {
+        Map<String, List<String>> internalIpPortsByExternalIp = new HashMap<>();
+        for (NAPTEntryEvent naptEntryEvent : naptEntryEvents) {
+            SessionAddress address = new SessionAddress(naptEntryEvent.getIpAddress(),
+                naptEntryEvent.getPortNumber());
+            String internalIpPort = address.getIpAddress() + ":" + address.getPortNumber();
+            SessionAddress existingIpPort = checkIpPortMap(segmentId, internalIpPort, naptEntryEvent.getProtocol());
+            if (existingIpPort != null) {
+                removeFromIpPortMapDS(segmentId, internalIpPort, naptEntryEvent.getProtocol());
+                internalIpPortsByExternalIp.computeIfAbsent(existingIpPort.getIpAddress(),
+                    key -> new ArrayList<>()).add(internalIpPort);
+            } else {
+                LOG.error("releaseIpExtPortMappings : failed, segmentId {} and "
+                    + "internalIpPort {} not found in IpPortMap DS", segmentId, internalIpPort);
+            }
+            removeSnatIntIpPortDS(segmentId, address, NatUtil.getProtocolType(naptEntryEvent.getProtocol()));
         }
+        internalIpPortsByExternalIp.forEach((externalIp, internalIpPorts) -> {
+            int released = naptPortAllocator.releasePorts(segmentId, externalIp, internalIpPorts);
+            if (released != internalIpPorts.size()) {
+                LOG.error("releaseIpExtPortMappings : Released {} of {} ports for external IP {}", released,
+                    internalIpPorts.size(), externalIp);
+            }
+        });
     }
 
     /**
@@ -416,6 +347,7 @@ public class NaptManager {
             removeIpMappingForRouterID(segmentId);
             removeIpPortMappingForRouterID(segmentId);
             removeIntIpPortMappingForRouterID(segmentId);
+            naptPortAllocator.removePoolsForSegment(segmentId);
         } catch (Exception e) {
             LOG.error("removeMapping : Removal of  IPMapping for router {} failed", segmentId, e);
             return false;
@@ -474,9 +406,10 @@ public class NaptManager {
                 .child(IpPortMap.class, new IpPortMapKey(internalIpPort));
         InstanceIdentifier<IpPortMap> id = idBuilder.build();
         Optional<IpPortMap> ipPortMapType = Optional.empty();
+        Optional<Optional<IpPortMap>> pendingIpPortMap = naptMappingWriter.getPendingIpPortMap(id);
         try {
-            ipPortMapType = SingleTransactionDataBroker.syncReadOptional(dataBroker,
-                    LogicalDatastoreType.CONFIGURATION, id);
+            ipPortMapType = pendingIpPortMap.isPresent() ? pendingIpPortMap.get()
+                : SingleTransactionDataBroker.syncReadOptional(dataBroker, LogicalDatastoreType.CONFIGURATION, id);
         } catch (ExecutionException | InterruptedException e) {
             LOG.error("checkIpPortMap: Exception while reading IpMap DS for the segmentId {} "
                     + "internalIpPort {} protocol {}", segmentId, internalIpPort, protocol, e);
@@ -537,44 +470,34 @@ public class NaptManager {
         return null;
     }
 
-    // TODO Clean up the exception handling
-    @SuppressWarnings("checkstyle:IllegalCatch")
     protected void removeSnatIntIpPortDS(Uint32 segmentId, SessionAddress address, ProtocolTypes protocolType) {
-        LOG.trace("removeSnatIntIpPortDS : method called for IntIpport {} of router {} ",
-            address, segmentId);
-        List<Uint16> portList =
-            NatUtil.getInternalIpPortListInfo(dataBroker, segmentId, address.getIpAddress(), protocolType);
-        if (portList.isEmpty() || !portList.contains(Uint16.valueOf(address.getPortNumber()))) {
-            LOG.error("removeSnatIntIpPortDS : Internal IP {} for port {} entry not found in SnatIntIpPort DS",
-                address.getIpAddress(), address.getPortNumber());
-            return;
-        }
-        LOG.trace("removeSnatIntIpPortDS : PortList {} retrieved for InternalIp {} of router {}",
-            portList, address.getIpAddress(), segmentId);
-        Integer port = address.getPortNumber();
-        portList.remove(Uint16.valueOf(port));
-
-        IntIpProtoTypeBuilder builder = new IntIpProtoTypeBuilder();
-        IntIpProtoType intIpProtocolType =
-            builder.withKey(new IntIpProtoTypeKey(protocolType)).setPorts(portList).build();
-        try {
-            MDSALUtil.syncWrite(dataBroker, LogicalDatastoreType.CONFIGURATION,
-                NatUtil.buildSnatIntIpPortIdentifier(segmentId, address.getIpAddress(), protocolType),
-                intIpProtocolType);
-        } catch (Exception ex) {
-            LOG.error("removeSnatIntIpPortDS : Failed to write into snat-internal-ip-port-info with exception", ex);
-        }
         LOG.debug("removeSnatIntIpPortDS : Removing SnatIp {} Port {} of router {} from SNATIntIpport datastore",
             address.getIpAddress(), address.getPortNumber(), segmentId);
+        naptMappingWriter.removeInternalPort(segmentId, address.getIpAddress(), protocolType,
+            address.getPortNumber());
+    }
+
+    /**
+     * Returns the ports of the internal IP, including the changes not yet persisted to snat-internal-ip-port-info.
+     */
+    List<Uint16> getInternalIpPortListInfo(Uint32 segmentId, String internalIp, ProtocolTypes protocolType) {
+        return naptMappingWriter.applyPendingPorts(segmentId, internalIp, protocolType,
+            NatUtil.getInternalIpPortListInfo(dataBroker, segmentId, internalIp, protocolType));
+    }
+
+    /**
+     * Returns the ip-port-map of the router, including the changes not yet persisted.
+     */
+    @Nullable
+    IpPortMapping getIpPortMapping(Uint32 segmentId) {
+        return naptMappingWriter.applyPendingIpPortMaps(segmentId, NatUtil.getIportMapping(dataBroker, segmentId));
     }
 
     protected void removeFromSnatIpPortDS(Uint32 segmentId, String internalIp) {
-        InstanceIdentifier<IpPort> intIp = InstanceIdentifier.builder(SnatintIpPortMap.class)
-            .child(IntipPortMap.class, new IntipPortMapKey(segmentId))
-            .child(IpPort.class, new IpPortKey(internalIp)).build();
-        // remove from SnatIpPortDS
-        LOG.debug("removeFromSnatIpPortDS : Removing SnatIpPort from datastore : {}", intIp);
-        MDSALUtil.syncDelete(dataBroker, LogicalDatastoreType.CONFIGURATION, intIp);
+        // remove from SnatIpPortDS, ordered with the port changes of the internal IP still pending
+        LOG.debug("removeFromSnatIpPortDS : Removing SnatIpPort of internal IP {} of router {} from datastore",
+            internalIp, segmentId);
+        naptMappingWriter.deleteInternalIp(segmentId, internalIp);
     }
 
     protected void removeFromIpPortMapDS(Uint32 segmentId, String internalIpPort, NAPTEntryEvent.Protocol protocol) {
@@ -588,9 +511,9 @@ public class NaptManager {
             .child(IntextIpProtocolType.class, new IntextIpProtocolTypeKey(protocolType))
             .child(IpPortMap.class, new IpPortMapKey(internalIpPort));
         InstanceIdentifier<IpPortMap> id = idBuilder.build();
-        // remove from ipportmap DS
+        // remove from ipportmap DS, ordered after any write of the same entry still pending
         LOG.debug("removeFromIpPortMapDS : Removing ipportmap from datastore : {}", id);
-        MDSALUtil.syncDelete(dataBroker, LogicalDatastoreType.CONFIGURATION, id);
+        naptMappingWriter.deleteIpPortMap(id);
     }
 
     protected void removeFromIpMapDS(Uint32 segmentId, String internalIp) {
@@ -687,6 +610,7 @@ public class NaptManager {
     void removeIpPortMappingForRouterID(Uint32 segmentId) {
         InstanceIdentifier<IpPortMapping> idBuilder = InstanceIdentifier.builder(IntextIpPortMap.class)
             .child(IpPortMapping.class, new IpPortMappingKey(segmentId)).build();
+        naptMappingWriter.discardPending(segmentId);
         Optional<IpPortMapping> ipPortMapping = Optional.empty();
         try {
             ipPortMapping = SingleTransactionDataBroker.syncReadOptional(dataBroker,
@@ -706,6 +630,7 @@ public class NaptManager {
     void removeIntIpPortMappingForRouterID(Uint32 segmentId) {
         InstanceIdentifier<IntipPortMap> intIp = InstanceIdentifier.builder(SnatintIpPortMap.class)
             .child(IntipPortMap.class, new IntipPortMapKey(segmentId)).build();
+        naptMappingWriter.discardPending(segmentId);
         Optional<IntipPortMap> intIpPortMap = Optional.empty();
         try {
             intIpPortMap = SingleTransactionDataBroker.syncReadOptional(dataBroker,
@@ -721,8 +646,8 @@ public class NaptManager {
         }
     }
 
-    void removePortFromPool(String internalIpPort, String externalIp) {
-        if (NatUtil.releaseId(idManager, externalIp, internalIpPort) == NatConstants.INVALID_ID) {
+    void removePortFromPool(Uint32 segmentId, String internalIpPort, String externalIp) {
+        if (naptPortAllocator.releasePort(segmentId, externalIp, internalIpPort) == NatConstants.INVALID_ID) {
             LOG.error("Unable to release id {} from Pool {}", internalIpPort, externalIp);
         }
     }
@@ -766,16 +691,4 @@ public class NaptManager {
         LOG.debug("removeExternalIpCounter : Removing ExternalIpsCounter from datastore");
         MDSALUtil.syncDelete(dataBroker, LogicalDatastoreType.OPERATIONAL, id);
     }
-
-    private static ReentrantLock lockFor(final Uint32 segmentId, String ipAddress, final ProtocolTypes protocolType) {
-        // FIXME: use an Identifier class instead?
-        String lockName = new StringBuilder()
-            .append(segmentId)
-            .append(NatConstants.COLON_SEPARATOR)
-            .append(ipAddress)
-            .append(NatConstants.COLON_SEPARATOR)
-            .append(protocolType.getName()).toString();
-
-        return JvmGlobalLocks.getLockForString(lockName);
-    }
 }
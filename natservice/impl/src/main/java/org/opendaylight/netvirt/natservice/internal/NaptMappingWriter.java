@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.natservice.internal;
+
+import static org.opendaylight.mdsal.binding.util.Datastore.CONFIGURATION;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.eclipse.jdt.annotation.Nullable;
+import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.mdsal.binding.util.Datastore.Configuration;
+import org.opendaylight.mdsal.binding.util.ManagedNewTransactionRunner;
+import org.opendaylight.mdsal.binding.util.ManagedNewTransactionRunnerImpl;
+import org.opendaylight.mdsal.binding.util.TypedReadWriteTransaction;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.ProtocolTypes;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.SnatintIpPortMap;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.IpPortMapping;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.IpPortMappingBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.IpPortMappingKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.IntextIpProtocolType;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.IntextIpProtocolTypeBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.IntextIpProtocolTypeKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.intext.ip.protocol.type.IpPortMap;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.intext.ip.protocol.type.IpPortMapKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.snatint.ip.port.map.IntipPortMap;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.snatint.ip.port.map.IntipPortMapKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.snatint.ip.port.map.intip.port.map.IpPort;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.snatint.ip.port.map.intip.port.map.IpPortKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.snatint.ip.port.map.intip.port.map.ip.port.IntIpProtoType;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.snatint.ip.port.map.intip.port.map.ip.port.IntIpProtoTypeBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.snatint.ip.port.map.intip.port.map.ip.port.IntIpProtoTypeKey;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.common.Uint16;
+import org.opendaylight.yangtools.yang.common.Uint32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-behind persistence of the NAPT session state: the ip-port-map entries and the ports listed per internal
+ * IP in snat-internal-ip-port-info.
+ *
+ * <p>Changes are queued in memory and flushed every {@link NatConstants#NAPT_MAPPING_FLUSH_INTERVAL_MS} by a
+ * single writer thread, all pending changes in one transaction, so flow programming never waits for the
+ * datastore. A change stays visible through the {@code getPending*} methods until the transaction carrying it
+ * has been committed, so callers never miss state that is not yet in the datastore.
+ *
+ * <p>Ports of an internal IP are coalesced per router, internal IP and protocol into a delta of added and
+ * removed ports. A delta with only additions is merged into the leaf-list without reading it back; the stored
+ * list is only read when ports are removed, once per internal IP and flush instead of once per session.
+ *
+ * <p>A failed transaction leaves its changes queued, and the flush is retried with an exponential backoff, up to
+ * {@link #MAX_FLUSH_RETRY_INTERVAL_MS}.
+ */
+@Singleton
+public class NaptMappingWriter implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(NaptMappingWriter.class);
+    private static final long MAX_FLUSH_RETRY_INTERVAL_MS = 10000;
+
+    private final ManagedNewTransactionRunner txRunner;
+    private final ConcurrentMap<InstanceIdentifier<IpPortMap>, Optional<IpPortMap>> pendingIpPortMaps =
+        new ConcurrentHashMap<>();
+    private final ConcurrentMap<InstanceIdentifier<IntIpProtoType>, PortDelta> pendingPorts =
+        new ConcurrentHashMap<>();
+    // Removals of whole internal IP entries, applied before the port changes queued after them
+    private final ConcurrentMap<InstanceIdentifier<IpPort>, Object> pendingIpPortDeletes = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // Only used by the writer thread
+    private int failedFlushes;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("NaptMappingWriter-%d").setDaemon(true).build());
+
+    @Inject
+    public NaptMappingWriter(final DataBroker dataBroker) {
+        this.txRunner = new ManagedNewTransactionRunnerImpl(dataBroker);
+    }
+
+    @PreDestroy
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    public void writeIpPortMap(InstanceIdentifier<IpPortMap> id, IpPortMap ipPortMap) {
+        pendingIpPortMaps.put(id, Optional.of(ipPortMap));
+        scheduleFlush();
+    }
+
+    public void deleteIpPortMap(InstanceIdentifier<IpPortMap> id) {
+        pendingIpPortMaps.put(id, Optional.empty());
+        scheduleFlush();
+    }
+
+    /**
+     * Returns the change queued for the given entry, if any. An empty inner {@link Optional} means the entry
+     * is being deleted.
+     */
+    public Optional<Optional<IpPortMap>> getPendingIpPortMap(InstanceIdentifier<IpPortMap> id) {
+        return Optional.ofNullable(pendingIpPortMaps.get(id));
+    }
+
+    /**
+     * Returns the changes queued for the ip-port-map entries of the given router.
+     */
+    public Map<InstanceIdentifier<IpPortMap>, Optional<IpPortMap>> getPendingIpPortMaps(Uint32 routerId) {
+        Map<InstanceIdentifier<IpPortMap>, Optional<IpPortMap>> routerIpPortMaps = new HashMap<>();
+        pendingIpPortMaps.forEach((id, change) -> {
+            IpPortMappingKey key = id.firstKeyOf(IpPortMapping.class);
+            if (key != null && routerId.equals(key.getRouterId())) {
+                routerIpPortMaps.put(id, change);
+            }
+        });
+        return routerIpPortMaps;
+    }
+
+    /**
+     * Applies the queued changes of the given router to its ip-port-map read from the datastore.
+     *
+     * @param routerId the router id
+     * @param storedIpPortMapping the ip-port-map of the router read from the datastore, if any
+     * @return the ip-port-map including the queued changes, or null if there is none
+     */
+    @Nullable
+    public IpPortMapping applyPendingIpPortMaps(Uint32 routerId, @Nullable IpPortMapping storedIpPortMapping) {
+        Map<InstanceIdentifier<IpPortMap>, Optional<IpPortMap>> routerIpPortMaps = getPendingIpPortMaps(routerId);
+        if (routerIpPortMaps.isEmpty()) {
+            return storedIpPortMapping;
+        }
+        Map<ProtocolTypes, Map<IpPortMapKey, IpPortMap>> ipPortMapsByProtocol = new HashMap<>();
+        if (storedIpPortMapping != null) {
+            for (IntextIpProtocolType protocolType : storedIpPortMapping.nonnullIntextIpProtocolType().values()) {
+                ipPortMapsByProtocol.put(protocolType.getProtocol(), new HashMap<>(protocolType.nonnullIpPortMap()));
+            }
+        }
+        routerIpPortMaps.forEach((id, change) -> {
+            ProtocolTypes protocol = id.firstKeyOf(IntextIpProtocolType.class).getProtocol();
+            IpPortMapKey key = id.firstKeyOf(IpPortMap.class);
+            if (change.isPresent()) {
+                ipPortMapsByProtocol.computeIfAbsent(protocol, proto -> new HashMap<>()).put(key, change.get());
+            } else {
+                Map<IpPortMapKey, IpPortMap> ipPortMaps = ipPortMapsByProtocol.get(protocol);
+                if (ipPortMaps != null) {
+                    ipPortMaps.remove(key);
+                }
+            }
+        });
+        Map<IntextIpProtocolTypeKey, IntextIpProtocolType> protocolTypes = new HashMap<>();
+        ipPortMapsByProtocol.forEach((protocol, ipPortMaps) -> {
+            IntextIpProtocolTypeKey key = new IntextIpProtocolTypeKey(protocol);
+            protocolTypes.put(key, new IntextIpProtocolTypeBuilder().withKey(key).setIpPortMap(ipPortMaps).build());
+        });
+        return new IpPortMappingBuilder().withKey(new IpPortMappingKey(routerId))
+            .setIntextIpProtocolType(protocolTypes).build();
+    }
+
+    public void addInternalPort(Uint32 routerId, String internalIp, ProtocolTypes protocolType, int port) {
+        pendingPorts.computeIfAbsent(NatUtil.buildSnatIntIpPortIdentifier(routerId, internalIp, protocolType),
+            id -> new PortDelta()).add(Uint16.valueOf(port));
+        scheduleFlush();
+    }
+
+    public void removeInternalPort(Uint32 routerId, String internalIp, ProtocolTypes protocolType, int port) {
+        pendingPorts.computeIfAbsent(NatUtil.buildSnatIntIpPortIdentifier(routerId, internalIp, protocolType),
+            id -> new PortDelta()).remove(Uint16.valueOf(port));
+        scheduleFlush();
+    }
+
+    /**
+     * Applies the queued port changes of the given internal IP to a port list read from the datastore.
+     */
+    public List<Uint16> applyPendingPorts(Uint32 routerId, String internalIp, ProtocolTypes protocolType,
+                                          List<Uint16> storedPorts) {
+        PortDelta delta = pendingPorts.get(NatUtil.buildSnatIntIpPortIdentifier(routerId, internalIp,
+            protocolType));
+        return delta == null ? storedPorts : delta.applyTo(storedPorts);
+    }
+
+    /**
+     * Drops every queued change of the given router, used when the whole router mapping is being removed.
+     */
+    public void discardPending(Uint32 routerId) {
+        pendingIpPortMaps.keySet().removeIf(id -> {
+            IpPortMappingKey key = id.firstKeyOf(IpPortMapping.class);
+            return key != null && routerId.equals(key.getRouterId());
+        });
+        pendingPorts.keySet().removeIf(id -> {
+            IntipPortMapKey key = id.firstKeyOf(IntipPortMap.class);
+            return key != null && routerId.equals(key.getRouterId());
+        });
+        pendingIpPortDeletes.keySet().removeIf(id -> {
+            IntipPortMapKey key = id.firstKeyOf(IntipPortMap.class);
+            return key != null && routerId.equals(key.getRouterId());
+        });
+    }
+
+    /**
+     * Removes the snat-internal-ip-port-info entry of an internal IP, along with its queued port changes. The
+     * removal is applied before any port of the internal IP added after it.
+     */
+    public void deleteInternalIp(Uint32 routerId, String internalIp) {
+        pendingPorts.keySet().removeIf(id -> {
+            IntipPortMapKey routerKey = id.firstKeyOf(IntipPortMap.class);
+            IpPortKey ipKey = id.firstKeyOf(IpPort.class);
+            return routerKey != null && ipKey != null && routerId.equals(routerKey.getRouterId())
+                && internalIp.equals(ipKey.getInternalIp());
+        });
+        pendingIpPortDeletes.put(InstanceIdentifier.builder(SnatintIpPortMap.class)
+            .child(IntipPortMap.class, new IntipPortMapKey(routerId))
+            .child(IpPort.class, new IpPortKey(internalIp)).build(), new Object());
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::flush, NatConstants.NAPT_MAPPING_FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private boolean hasPending() {
+        return !pendingIpPortMaps.isEmpty() || !pendingIpPortDeletes.isEmpty() || !pendingPorts.isEmpty();
+    }
+
+    private void flush() {
+        Map<InstanceIdentifier<IpPortMap>, Optional<IpPortMap>> ipPortMapBatch = new HashMap<>(pendingIpPortMaps);
+        Map<InstanceIdentifier<IpPort>, Object> ipPortDeleteBatch = new HashMap<>(pendingIpPortDeletes);
+        Map<InstanceIdentifier<IntIpProtoType>, PortDelta> portBatch = new HashMap<>();
+        pendingPorts.forEach((id, delta) -> portBatch.put(id, delta.snapshot()));
+        if (ipPortMapBatch.isEmpty() && ipPortDeleteBatch.isEmpty() && portBatch.isEmpty()) {
+            // What failed to be persisted has been discarded meanwhile
+            failedFlushes = 0;
+        } else {
+            try {
+                txRunner.callWithNewReadWriteTransactionAndSubmit(CONFIGURATION, tx -> {
+                    ipPortMapBatch.forEach((id, change) -> {
+                        if (change.isPresent()) {
+                            tx.mergeParentStructurePut(id, change.get());
+                        } else {
+                            tx.delete(id);
+                        }
+                    });
+                    ipPortDeleteBatch.keySet().forEach(tx::delete);
+                    for (Map.Entry<InstanceIdentifier<IntIpProtoType>, PortDelta> entry : portBatch.entrySet()) {
+                        writePorts(tx, entry.getKey(), entry.getValue());
+                    }
+                }).get();
+                LOG.debug("flush : Persisted {} ip-port-map and {} snat-internal-ip-port-info changes",
+                    ipPortMapBatch.size(), ipPortDeleteBatch.size() + portBatch.size());
+                failedFlushes = 0;
+                // Only forget the changes which were not superseded while the transaction was in flight
+                ipPortMapBatch.forEach(pendingIpPortMaps::remove);
+                ipPortDeleteBatch.forEach(pendingIpPortDeletes::remove);
+                portBatch.forEach((id, flushed) -> pendingPorts.computeIfPresent(id,
+                    (key, delta) -> delta.subtract(flushed) ? null : delta));
+            } catch (InterruptedException | ExecutionException e) {
+                failedFlushes++;
+                LOG.error("flush : Failed to persist {} ip-port-map and {} snat-internal-ip-port-info changes, "
+                    + "retrying after {} failures", ipPortMapBatch.size(), ipPortDeleteBatch.size() + portBatch.size(),
+                    failedFlushes, e);
+            }
+        }
+        if (failedFlushes > 0) {
+            // Still flagged as scheduled, so that new changes do not bypass the backoff
+            executor.schedule(this::flush, Math.min(NatConstants.NAPT_MAPPING_FLUSH_INTERVAL_MS
+                << Math.min(failedFlushes, 16), MAX_FLUSH_RETRY_INTERVAL_MS), TimeUnit.MILLISECONDS);
+            return;
+        }
+        flushScheduled.set(false);
+        if (hasPending()) {
+            scheduleFlush();
+        }
+    }
+
+    private static void writePorts(TypedReadWriteTransaction<Configuration> tx, InstanceIdentifier<IntIpProtoType> id,
+                                   PortDelta delta) throws ExecutionException, InterruptedException {
+        IntIpProtoTypeKey key = id.firstKeyOf(IntIpProtoType.class);
+        if (delta.removed.isEmpty()) {
+            // Leaf-list entries are merged, so additions never need the stored list
+            tx.mergeParentStructureMerge(id, new IntIpProtoTypeBuilder().withKey(key)
+                .setPorts(new ArrayList<>(delta.added)).build());
+            return;
+        }
+        List<Uint16> storedPorts = tx.read(id).get().map(IntIpProtoType::getPorts).orElse(List.of());
+        tx.mergeParentStructurePut(id, new IntIpProtoTypeBuilder().withKey(key)
+            .setPorts(delta.applyTo(storedPorts)).build());
+    }
+
+    private static final class PortDelta {
+        private final Set<Uint16> added = new LinkedHashSet<>();
+        private final Set<Uint16> removed = new LinkedHashSet<>();
+
+        synchronized void add(Uint16 port) {
+            removed.remove(port);
+            added.add(port);
+        }
+
+        synchronized void remove(Uint16 port) {
+            added.remove(port);
+            removed.add(port);
+        }
+
+        synchronized List<Uint16> applyTo(List<Uint16> storedPorts) {
+            Set<Uint16> ports = new LinkedHashSet<>(storedPorts);
+            ports.removeAll(removed);
+            ports.addAll(added);
+            return new ArrayList<>(ports);
+        }
+
+        synchronized PortDelta snapshot() {
+            PortDelta copy = new PortDelta();
+            copy.added.addAll(added);
+            copy.removed.addAll(removed);
+            return copy;
+        }
+
+        /**
+         * Removes the changes which have been flushed, returns true if nothing is left to flush.
+         */
+        synchronized boolean subtract(PortDelta flushed) {
+            added.removeAll(flushed.added);
+            removed.removeAll(flushed.removed);
+            return added.isEmpty() && removed.isEmpty();
+        }
+    }
+}
@@ -8,6 +8,9 @@
 package org.opendaylight.netvirt.natservice.internal;
 
 import com.google.common.primitives.Ints;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
@@ -22,6 +25,8 @@ import org.opendaylight.genius.mdsalutil.packet.Ethernet;
 import org.opendaylight.genius.mdsalutil.packet.IPv4;
 import org.opendaylight.genius.mdsalutil.packet.TCP;
 import org.opendaylight.genius.mdsalutil.packet.UDP;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.config.rev170206.NatserviceConfig;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.config.rev170206.NatserviceConfig.SnatPacketProcessingMode;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.packet.service.rev130709.PacketProcessingListener;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.packet.service.rev130709.PacketReceived;
 import org.opendaylight.yangtools.util.concurrent.SpecialExecutors;
@@ -41,16 +46,38 @@ public class NaptPacketInHandler implements PacketProcessingListener {
     private final ExecutorService retryPacketExecutorService = SpecialExecutors.newBlockingBoundedFastThreadPool(
             NatConstants.SNAT_PACKET_RETRY_THEADPOOL_SIZE, Integer.MAX_VALUE, "Napt-retryPacket",
             NaptPacketInHandler.class);
+    private final NaptRouterShardedPacketProcessor routerShardedPacketProcessor;
 
     @Inject
-    public NaptPacketInHandler(NaptEventHandler naptEventHandler) {
+    public NaptPacketInHandler(NaptEventHandler naptEventHandler, NatServiceCounters natServiceCounters,
+                               final NatserviceConfig config) {
         this.naptEventHandler = naptEventHandler;
+        if (config != null && config.getSnatPacketProcessingMode() == SnatPacketProcessingMode.RouterSharded) {
+            this.routerShardedPacketProcessor = new NaptRouterShardedPacketProcessor(naptEventHandler,
+                natServiceCounters, config.getSnatPacketWorkerCount().toJava(),
+                getSnatPacketQueueSize(config));
+        } else {
+            this.routerShardedPacketProcessor = null;
+        }
+    }
+
+    private static int getSnatPacketQueueSize(NatserviceConfig config) {
+        long queueSize = config.getSnatPacketQueueSize().toJava();
+        if (queueSize < 1 || queueSize > Integer.MAX_VALUE) {
+            LOG.warn("getSnatPacketQueueSize : Invalid snat-packet-queue-size {}, using {}", queueSize,
+                NatConstants.SNAT_PACKET_DEFAULT_QUEUE_SIZE);
+            return NatConstants.SNAT_PACKET_DEFAULT_QUEUE_SIZE;
+        }
+        return (int) queueSize;
     }
 
     @PreDestroy
     public void close() {
         firstPacketExecutorService.shutdown();
         retryPacketExecutorService.shutdown();
+        if (routerShardedPacketProcessor != null) {
+            routerShardedPacketProcessor.close();
+        }
     }
 
     @Override
@@ -118,6 +145,12 @@ public class NaptPacketInHandler implements PacketProcessingListener {
                         LOG.error("onPacketReceived : Router ID is invalid");
                         return;
                     }
+                    if (routerShardedPacketProcessor != null) {
+                        routerShardedPacketProcessor.onPacketReceived(routerId,
+                            ((IPv4) ethPkt.getPayload()).getSourceAddress(), internalIPAddress, portNumber,
+                            protocol, packetReceived);
+                        return;
+                    }
                     String sourceIPPortKey = routerId + NatConstants.COLON_SEPARATOR
                             + internalIPAddress + NatConstants.COLON_SEPARATOR + portNumber;
 
@@ -165,8 +198,17 @@ public class NaptPacketInHandler implements PacketProcessingListener {
         LOG.debug("removeIncomingPacketMap : sourceIPPortKey {} mapping is removed from map", sourceIPPortKey);
     }
 
+    static void removeIncomingPacketState(NAPTEntryEvent naptEntryEvent, String sourceIPPortKey) {
+        removeIncomingPacketMap(sourceIPPortKey);
+        NaptRouterShardedPacketProcessor.removeInFlightSession(naptEntryEvent.getRouterId(),
+            naptEntryEvent.getIpAddress(), naptEntryEvent.getPortNumber());
+    }
+
     static class NatPacketProcessingState {
         private final long firstPacketInTime;
+        private final List<PacketReceived> pendingPackets = new ArrayList<>();
+        private boolean flowInstalled;
+        private boolean discarded;
 
         NatPacketProcessingState(long firstPacketInTime) {
             this.firstPacketInTime = firstPacketInTime;
@@ -176,7 +218,50 @@ public class NaptPacketInHandler implements PacketProcessingListener {
             return firstPacketInTime;
         }
 
-        void setFlowInstalledTime() {
+        /**
+         * Attaches a packet of the session to the flow install in progress.
+         *
+         * @return false if the flows are already installed, the session was discarded or too many packets are
+         *         pending
+         */
+        synchronized boolean attachPendingPacket(PacketReceived packetReceived) {
+            if (flowInstalled || discarded
+                    || pendingPackets.size() >= NatConstants.NAPT_MAX_PENDING_PACKETS_PER_SESSION) {
+                return false;
+            }
+            pendingPackets.add(packetReceived);
+            return true;
+        }
+
+        synchronized boolean isFlowInstalled() {
+            return flowInstalled;
+        }
+
+        /**
+         * Marks the flows of the session as installed.
+         *
+         * @return the packets attached while the flows were being installed, to be sent out
+         */
+        synchronized List<PacketReceived> setFlowInstalled() {
+            flowInstalled = true;
+            if (pendingPackets.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<PacketReceived> packets = new ArrayList<>(pendingPackets);
+            pendingPackets.clear();
+            return packets;
+        }
+
+        /**
+         * Discards the session after its flows failed to be installed, dropping the packets attached meanwhile.
+         *
+         * @return the number of packets dropped
+         */
+        synchronized int discardPendingPackets() {
+            discarded = true;
+            int dropped = pendingPackets.size();
+            pendingPackets.clear();
+            return dropped;
         }
     }
 }
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.natservice.internal;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.eclipse.jdt.annotation.Nullable;
+import org.opendaylight.infrautils.utils.concurrent.Executors;
+import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
+import org.opendaylight.serviceutils.tools.listener.AbstractClusteredAsyncDataTreeChangeListener;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.NaptSwitches;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.IpPortMapping;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.IntextIpProtocolType;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.intext.ip.protocol.type.IpPortMap;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.intext.ip.protocol.type.IpPortMapKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.intext.ip.protocol.type.ip.port.map.IpPortExternal;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.napt.switches.RouterToNaptSwitch;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.common.Uint32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory allocator for the external ports used by NAPT.
+ *
+ * <p>There is one bitmap backed pool per router and external IP, covering the same
+ * {@link #LOW_PORT} - {@link #HIGH_PORT} range the IdManager based pools used. Allocation keeps the IdManager
+ * semantics: an id key (internal ip:port) always maps to the same external port until it is released, so the
+ * same internal session allocated twice gets the same port back. Pools are independent of each other, so
+ * allocations against different external IPs never contend.
+ *
+ * <p>A pool is seeded from the router's ip-port-map, along with the mappings still queued in the
+ * {@link NaptMappingWriter}, the first time it is used, so that mappings persisted before a restart are not
+ * handed out again. The pools of a router are dropped, and so seeded again on their next use, whenever its NAPT
+ * switch changes on any cluster member, since the sessions are then allocated by the owner of the new switch.
+ */
+@Singleton
+public class NaptPortAllocator extends AbstractClusteredAsyncDataTreeChangeListener<RouterToNaptSwitch> {
+    private static final Logger LOG = LoggerFactory.getLogger(NaptPortAllocator.class);
+
+    static final int LOW_PORT = 49152;
+    static final int HIGH_PORT = 65535;
+
+    private final DataBroker dataBroker;
+    private final NaptMappingWriter naptMappingWriter;
+    private final ConcurrentMap<PoolKey, PortPool> pools = new ConcurrentHashMap<>();
+
+    @Inject
+    public NaptPortAllocator(final DataBroker dataBroker, final NaptMappingWriter naptMappingWriter) {
+        super(dataBroker, LogicalDatastoreType.CONFIGURATION, InstanceIdentifier.create(NaptSwitches.class)
+                .child(RouterToNaptSwitch.class),
+                Executors.newListeningSingleThreadExecutor("NaptPortAllocator", LOG));
+        this.dataBroker = dataBroker;
+        this.naptMappingWriter = naptMappingWriter;
+    }
+
+    @Override
+    @PreDestroy
+    public void close() {
+        super.close();
+        Executors.shutdownAndAwaitTermination(getExecutorService());
+    }
+
+    @Override
+    public void add(InstanceIdentifier<RouterToNaptSwitch> identifier, RouterToNaptSwitch routerToNaptSwitch) {
+        naptSwitchChanged(routerToNaptSwitch.getRouterName());
+    }
+
+    @Override
+    public void update(InstanceIdentifier<RouterToNaptSwitch> identifier, RouterToNaptSwitch original,
+                       RouterToNaptSwitch update) {
+        if (!Objects.equals(original.getPrimarySwitchId(), update.getPrimarySwitchId())) {
+            naptSwitchChanged(update.getRouterName());
+        }
+    }
+
+    @Override
+    public void remove(InstanceIdentifier<RouterToNaptSwitch> identifier, RouterToNaptSwitch routerToNaptSwitch) {
+        naptSwitchChanged(routerToNaptSwitch.getRouterName());
+    }
+
+    /**
+     * Allocates an external port on the given external IP for the given id key.
+     *
+     * @param segmentId router id owning the external IP
+     * @param externalIp external IP (pool name)
+     * @param idKey internal ip:port
+     * @return the allocated port, or {@link NatConstants#INVALID_ID} if the pool is exhausted
+     */
+    public Uint32 allocatePort(Uint32 segmentId, String externalIp, String idKey) {
+        PoolKey poolKey = new PoolKey(segmentId, externalIp);
+        PortPool pool = pools.get(poolKey);
+        if (pool == null) {
+            // Seeded outside of the map, the datastore read must not block the other pools
+            PortPool seededPool = seedPool(segmentId, externalIp);
+            pool = pools.putIfAbsent(poolKey, seededPool);
+            if (pool == null) {
+                pool = seededPool;
+            }
+        }
+        int port = pool.allocate(idKey);
+        if (port == 0) {
+            LOG.warn("allocatePort : Ports exhausted on external IP {} of router {} for key {}", externalIp,
+                segmentId, idKey);
+            return NatConstants.INVALID_ID;
+        }
+        return Uint32.valueOf(port);
+    }
+
+    /**
+     * Releases the port allocated for the given id key.
+     *
+     * @param segmentId router id owning the external IP
+     * @param externalIp external IP (pool name)
+     * @param idKey internal ip:port
+     * @return {@link Uint32#ONE} if a port was released, {@link NatConstants#INVALID_ID} otherwise
+     */
+    public Uint32 releasePort(Uint32 segmentId, String externalIp, String idKey) {
+        PortPool pool = pools.get(new PoolKey(segmentId, externalIp));
+        if (pool == null || pool.release(idKey) == 0) {
+            LOG.debug("releasePort : No port allocated on external IP {} of router {} for key {}", externalIp,
+                segmentId, idKey);
+            return NatConstants.INVALID_ID;
+        }
+        return Uint32.ONE;
+    }
+
+    /**
+     * Releases the ports allocated for several id keys of the same external IP.
+     *
+     * @return the number of ports released
+     */
+    public int releasePorts(Uint32 segmentId, String externalIp, Collection<String> idKeys) {
+        PortPool pool = pools.get(new PoolKey(segmentId, externalIp));
+        return pool == null ? 0 : pool.releaseAll(idKeys);
+    }
+
+    @Nullable
+    public Integer getAllocatedPort(Uint32 segmentId, String externalIp, String idKey) {
+        PortPool pool = pools.get(new PoolKey(segmentId, externalIp));
+        return pool == null ? null : pool.get(idKey);
+    }
+
+    public void removePool(Uint32 segmentId, String externalIp) {
+        if (pools.remove(new PoolKey(segmentId, externalIp)) != null) {
+            LOG.debug("removePool : Removed port pool for external IP {} of router {}", externalIp, segmentId);
+        }
+    }
+
+    public void removePoolsForSegment(Uint32 segmentId) {
+        pools.keySet().removeIf(poolKey -> segmentId.equals(poolKey.segmentId));
+    }
+
+    private void naptSwitchChanged(String routerName) {
+        Uint32 routerId = NatUtil.getVpnId(dataBroker, routerName);
+        if (routerId == NatConstants.INVALID_ID) {
+            LOG.debug("naptSwitchChanged : No router id for router {}, no port pool to reseed", routerName);
+            return;
+        }
+        LOG.debug("naptSwitchChanged : NAPT switch of router {} changed, its port pools will be reseeded",
+            routerName);
+        removePoolsForSegment(routerId);
+    }
+
+    private PortPool seedPool(Uint32 segmentId, String externalIp) {
+        PortPool pool = buildPool(externalIp, NatUtil.getIportMapping(dataBroker, segmentId),
+            naptMappingWriter.getPendingIpPortMaps(segmentId));
+        LOG.debug("seedPool : Created port pool for external IP {} of router {} with {} existing mappings",
+            externalIp, segmentId, pool.size());
+        return pool;
+    }
+
+    /**
+     * Builds the pool of an external IP from the persisted mappings and the changes still queued for them.
+     *
+     * @param externalIp external IP (pool name)
+     * @param ipPortMapping the persisted ip-port-map of the router, if any
+     * @param pendingIpPortMaps the queued ip-port-map changes of the router, an empty {@link Optional} being a
+     *     delete
+     * @return the pool
+     */
+    static PortPool buildPool(String externalIp, @Nullable IpPortMapping ipPortMapping,
+                              Map<InstanceIdentifier<IpPortMap>, Optional<IpPortMap>> pendingIpPortMaps) {
+        PortPool pool = new PortPool();
+        if (ipPortMapping != null) {
+            for (IntextIpProtocolType protocolType : ipPortMapping.nonnullIntextIpProtocolType().values()) {
+                for (IpPortMap ipPortMap : protocolType.nonnullIpPortMap().values()) {
+                    reserve(pool, externalIp, ipPortMap);
+                }
+            }
+        }
+        pendingIpPortMaps.forEach((id, pendingIpPortMap) -> {
+            if (!pendingIpPortMap.isPresent()) {
+                IpPortMapKey key = id.firstKeyOf(IpPortMap.class);
+                if (key != null) {
+                    pool.release(key.getIpPortInternal());
+                }
+            }
+        });
+        pendingIpPortMaps.values().forEach(
+            pendingIpPortMap -> pendingIpPortMap.ifPresent(ipPortMap -> reserve(pool, externalIp, ipPortMap)));
+        return pool;
+    }
+
+    private static void reserve(PortPool pool, String externalIp, IpPortMap ipPortMap) {
+        IpPortExternal ipPortExternal = ipPortMap.getIpPortExternal();
+        if (ipPortExternal != null && externalIp.equals(ipPortExternal.getIpAddress())) {
+            pool.reserve(ipPortMap.getIpPortInternal(), ipPortExternal.getPortNum().toJava());
+        }
+    }
+
+    private static final class PoolKey {
+        final Uint32 segmentId;
+        final String externalIp;
+
+        PoolKey(Uint32 segmentId, String externalIp) {
+            this.segmentId = segmentId;
+            this.externalIp = externalIp;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof PoolKey)) {
+                return false;
+            }
+            PoolKey other = (PoolKey) obj;
+            return segmentId.equals(other.segmentId) && externalIp.equals(other.externalIp);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * segmentId.hashCode() + externalIp.hashCode();
+        }
+    }
+
+    static final class PortPool {
+        private static final int SIZE = HIGH_PORT - LOW_PORT + 1;
+
+        private final BitSet used = new BitSet(SIZE);
+        private final Map<String, Integer> portsByKey = new HashMap<>();
+        // Allocation continues from the last allocated port instead of the lowest free one, so that a
+        // released port is not handed out again while stale packets of the old session may still be around.
+        private int cursor;
+
+        synchronized int allocate(String idKey) {
+            Integer existing = portsByKey.get(idKey);
+            if (existing != null) {
+                return existing;
+            }
+            int index = used.nextClearBit(cursor);
+            if (index >= SIZE) {
+                index = used.nextClearBit(0);
+                if (index >= SIZE) {
+                    return 0;
+                }
+            }
+            used.set(index);
+            cursor = index + 1;
+            int port = LOW_PORT + index;
+            portsByKey.put(idKey, port);
+            return port;
+        }
+
+        synchronized int release(String idKey) {
+            Integer port = portsByKey.remove(idKey);
+            if (port == null) {
+                return 0;
+            }
+            used.clear(port - LOW_PORT);
+            return port;
+        }
+
+        synchronized int releaseAll(Collection<String> idKeys) {
+            int released = 0;
+            for (String idKey : idKeys) {
+                if (release(idKey) != 0) {
+                    released++;
+                }
+            }
+            return released;
+        }
+
+        synchronized void reserve(String idKey, int port) {
+            if (port < LOW_PORT || port > HIGH_PORT) {
+                return;
+            }
+            used.set(port - LOW_PORT);
+            portsByKey.put(idKey, port);
+        }
+
+        @Nullable
+        synchronized Integer get(String idKey) {
+            return portsByKey.get(idKey);
+        }
+
+        synchronized int size() {
+            return portsByKey.size();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.natservice.internal;
+
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.opendaylight.netvirt.natservice.internal.NaptPacketInHandler.NatPacketProcessingState;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.packet.service.rev130709.PacketReceived;
+import org.opendaylight.yangtools.yang.common.Uint32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Router sharded processing of the SNAT packets punted from the outbound NAPT table.
+ *
+ * <p>Packets are dispatched to one of a fixed number of single threaded workers chosen by router ID, so the
+ * packets of a router are processed in order and a busy router cannot starve the others. Each worker has a
+ * bounded queue, packets which do not fit are dropped and counted. The queues are linked rather than array backed,
+ * so a large configured size does not allocate its full capacity upfront.
+ *
+ * <p>Sessions being set up are tracked in an in-flight table keyed by router ID, internal IP and port. Packets
+ * of a session whose flows are still being installed are attached to its pending state instead of being
+ * queued again, and are sent out once the flows are in place. Sessions whose flows are not installed within the
+ * pending session timeout are dropped, along with their attached packets, either by the next packet of the session
+ * or by the periodic sweep of the in-flight table.
+ */
+final class NaptRouterShardedPacketProcessor {
+    private static final Logger LOG = LoggerFactory.getLogger(NaptRouterShardedPacketProcessor.class);
+
+    private static final ConcurrentMap<SessionKey, NatPacketProcessingState> IN_FLIGHT_SESSIONS =
+        new ConcurrentHashMap<>();
+
+    private final NaptEventHandler naptEventHandler;
+    private final NatServiceCounters natServiceCounters;
+    private final ThreadPoolExecutor[] workers;
+    private final ScheduledExecutorService sweeper = new ScheduledThreadPoolExecutor(1,
+        new ThreadFactoryBuilder().setNameFormat("Napt-routerShard-sweeper").setDaemon(true).build());
+    private final LongSupplier clock;
+
+    NaptRouterShardedPacketProcessor(NaptEventHandler naptEventHandler, NatServiceCounters natServiceCounters,
+                                     int workerCount, int queueSize) {
+        this(naptEventHandler, natServiceCounters, workerCount, queueSize, System::currentTimeMillis);
+    }
+
+    NaptRouterShardedPacketProcessor(NaptEventHandler naptEventHandler, NatServiceCounters natServiceCounters,
+                                     int workerCount, int queueSize, LongSupplier clock) {
+        this.naptEventHandler = naptEventHandler;
+        this.natServiceCounters = natServiceCounters;
+        this.clock = clock;
+        this.workers = new ThreadPoolExecutor[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueSize),
+                new ThreadFactoryBuilder().setNameFormat("Napt-routerShard-" + i + "-%d").setDaemon(true).build());
+        }
+        sweeper.scheduleWithFixedDelay(this::sweepExpiredSessions, NatConstants.NAPT_PENDING_SESSION_TIMEOUT_MS,
+            NatConstants.NAPT_PENDING_SESSION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        LOG.info("NaptRouterShardedPacketProcessor : started with {} workers of queue size {}", workerCount,
+            queueSize);
+    }
+
+    void close() {
+        sweeper.shutdown();
+        for (ThreadPoolExecutor worker : workers) {
+            worker.shutdown();
+        }
+    }
+
+    void onPacketReceived(Uint32 routerId, int internalIp, String internalIpAddress, int portNumber,
+                          NAPTEntryEvent.Protocol protocol, PacketReceived packetReceived) {
+        SessionKey sessionKey = new SessionKey(routerId.longValue(), internalIp, portNumber);
+        NatPacketProcessingState newState = new NatPacketProcessingState(clock.getAsLong());
+        NatPacketProcessingState state = IN_FLIGHT_SESSIONS.putIfAbsent(sessionKey, newState);
+        if (state == null) {
+            LOG.trace("onPacketReceived : Processing new SNAT({}) Packet", sessionKey);
+            NAPTEntryEvent naptEntryEvent = new NAPTEntryEvent(internalIpAddress, portNumber, routerId,
+                NAPTEntryEvent.Operation.ADD, protocol, packetReceived, false, newState);
+            if (!dispatch(routerId, naptEntryEvent)) {
+                IN_FLIGHT_SESSIONS.remove(sessionKey, newState);
+            }
+            return;
+        }
+        if (isExpired(state, clock.getAsLong())) {
+            if (state.isFlowInstalled()) {
+                IN_FLIGHT_SESSIONS.remove(sessionKey, state);
+                // Still punted long after the flows were installed, so the flows are gone from the switch
+                LOG.debug("onPacketReceived : SNAT({}) Packet punted after flow install, setting up the session again",
+                    sessionKey);
+                onPacketReceived(routerId, internalIp, internalIpAddress, portNumber, protocol, packetReceived);
+                return;
+            }
+            expireSession(sessionKey, state);
+            natServiceCounters.naptPacketDropped(1);
+            return;
+        }
+        if (state.attachPendingPacket(packetReceived)) {
+            LOG.trace("onPacketReceived : SNAT({}) Packet attached to pending flow install", sessionKey);
+            natServiceCounters.naptPacketCoalesced();
+            return;
+        }
+        if (state.isFlowInstalled()) {
+            // Packet punted before the switch started matching the new flows, only needs a packet out
+            dispatch(routerId, new NAPTEntryEvent(internalIpAddress, portNumber, routerId,
+                NAPTEntryEvent.Operation.ADD, protocol, packetReceived, true, state));
+            return;
+        }
+        natServiceCounters.naptPacketDropped();
+    }
+
+    /**
+     * Drops the in-flight sessions which expired without another packet of theirs being punted.
+     */
+    void sweepExpiredSessions() {
+        long now = clock.getAsLong();
+        IN_FLIGHT_SESSIONS.forEach((sessionKey, state) -> {
+            if (isExpired(state, now)) {
+                if (state.isFlowInstalled()) {
+                    IN_FLIGHT_SESSIONS.remove(sessionKey, state);
+                } else {
+                    expireSession(sessionKey, state);
+                }
+            }
+        });
+    }
+
+    private void expireSession(SessionKey sessionKey, NatPacketProcessingState state) {
+        if (IN_FLIGHT_SESSIONS.remove(sessionKey, state)) {
+            int dropped = state.discardPendingPackets();
+            LOG.error("expireSession : Flow not installed even after {}ms. Dropping SNAT ({}) session with {} "
+                + "pending packets", NatConstants.NAPT_PENDING_SESSION_TIMEOUT_MS, sessionKey, dropped);
+            natServiceCounters.naptPacketDropped(dropped);
+        }
+    }
+
+    private static boolean isExpired(NatPacketProcessingState state, long now) {
+        return now - state.getFirstPacketInTime() > NatConstants.NAPT_PENDING_SESSION_TIMEOUT_MS;
+    }
+
+    private boolean dispatch(Uint32 routerId, NAPTEntryEvent naptEntryEvent) {
+        ThreadPoolExecutor worker = workers[(int) (routerId.longValue() % workers.length)];
+        try {
+            worker.execute(() -> naptEventHandler.handleEvent(naptEntryEvent));
+            return true;
+        } catch (RejectedExecutionException e) {
+            LOG.warn("dispatch : Queue full, dropping SNAT packet of router {} from {}:{}", routerId,
+                naptEntryEvent.getIpAddress(), naptEntryEvent.getPortNumber());
+            natServiceCounters.naptPacketDropped();
+            return false;
+        }
+    }
+
+    static void removeInFlightSession(Uint32 routerId, String internalIpAddress, int portNumber) {
+        if (!IN_FLIGHT_SESSIONS.isEmpty()) {
+            IN_FLIGHT_SESSIONS.remove(new SessionKey(routerId.longValue(),
+                InetAddresses.coerceToInteger(InetAddresses.forString(internalIpAddress)), portNumber));
+        }
+    }
+
+    private static final class SessionKey {
+        private final long routerId;
+        private final int internalIp;
+        private final int portNumber;
+
+        SessionKey(long routerId, int internalIp, int portNumber) {
+            this.routerId = routerId;
+            this.internalIp = internalIp;
+            this.portNumber = portNumber;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * Long.hashCode(routerId) + internalIp) + portNumber;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof SessionKey)) {
+                return false;
+            }
+            SessionKey other = (SessionKey) obj;
+            return routerId == other.routerId && internalIp == other.internalIp && portNumber == other.portNumber;
+        }
+
+        @Override
+        public String toString() {
+            return routerId + NatConstants.COLON_SEPARATOR + InetAddresses.fromInteger(internalIp).getHostAddress()
+                + NatConstants.COLON_SEPARATOR + portNumber;
+        }
+    }
+}
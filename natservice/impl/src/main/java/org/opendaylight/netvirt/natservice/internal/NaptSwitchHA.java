@@ -7,9 +7,18 @@
  */
 package org.opendaylight.netvirt.natservice.internal;
 
+import static org.opendaylight.mdsal.binding.util.Datastore.CONFIGURATION;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -18,6 +27,10 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.eclipse.jdt.annotation.NonNull;
@@ -42,6 +55,8 @@ import org.opendaylight.genius.mdsalutil.matches.MatchEthernetType;
 import org.opendaylight.genius.mdsalutil.matches.MatchMetadata;
 import org.opendaylight.mdsal.binding.api.DataBroker;
 import org.opendaylight.mdsal.binding.util.Datastore.Configuration;
+import org.opendaylight.mdsal.binding.util.ManagedNewTransactionRunner;
+import org.opendaylight.mdsal.binding.util.ManagedNewTransactionRunnerImpl;
 import org.opendaylight.mdsal.binding.util.TypedReadWriteTransaction;
 import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
 import org.opendaylight.netvirt.elanmanager.api.IElanService;
@@ -79,6 +94,7 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev16011
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.napt.switches.RouterToNaptSwitch;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.napt.switches.RouterToNaptSwitchBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.napt.switches.RouterToNaptSwitchKey;
+import org.opendaylight.yangtools.util.concurrent.SpecialExecutors;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
 import org.opendaylight.yangtools.yang.common.RpcResult;
 import org.opendaylight.yangtools.yang.common.Uint32;
@@ -96,7 +112,6 @@ public class NaptSwitchHA {
     private final IdManagerService idManager;
     private final NAPTSwitchSelector naptSwitchSelector;
     private final ExternalRoutersListener externalRouterListener;
-    private final NaptEventHandler naptEventHandler;
     private final IFibManager fibManager;
     private final IElanService elanManager;
     private final EvpnNaptSwitchHA evpnNaptSwitchHA;
@@ -104,6 +119,10 @@ public class NaptSwitchHA {
     private final NatMode natMode;
     private final IInterfaceManager interfaceManager;
     private final NatOverVxlanUtil natOverVxlanUtil;
+    private final NatServiceCounters natServiceCounters;
+    private final NaptMappingWriter naptMappingWriter;
+    private final ManagedNewTransactionRunner txRunner;
+    private final ListeningExecutorService failoverFlowBuilder;
 
     private volatile Collection<String> externalIpsCache;
 
@@ -119,9 +138,27 @@ public class NaptSwitchHA {
                         final IElanService elanManager,
                         final SnatServiceManager natServiceManager,
                         final NatserviceConfig config,
-                        final NaptEventHandler naptEventHandler,
                         final IInterfaceManager interfaceManager,
-                        final NatOverVxlanUtil natOverVxlanUtil) {
+                        final NatOverVxlanUtil natOverVxlanUtil,
+                        final NatServiceCounters natServiceCounters,
+                        final NaptMappingWriter naptMappingWriter) {
+        this(dataBroker, mdsalManager, externalRouterListener, itmManager, odlInterfaceRpcService, idManager,
+            naptSwitchSelector, fibManager, evpnNaptSwitchHA, elanManager, natServiceManager, config, interfaceManager,
+            natOverVxlanUtil, natServiceCounters, naptMappingWriter, new ManagedNewTransactionRunnerImpl(dataBroker),
+            MoreExecutors.listeningDecorator(SpecialExecutors.newBlockingBoundedFastThreadPool(
+                NatConstants.NAPT_FAILOVER_FLOW_BUILDER_THREADS, Integer.MAX_VALUE, "Napt-failoverFlowBuilder",
+                NaptSwitchHA.class)));
+    }
+
+    NaptSwitchHA(final DataBroker dataBroker, final IMdsalApiManager mdsalManager,
+                 final ExternalRoutersListener externalRouterListener, final ItmRpcService itmManager,
+                 final OdlInterfaceRpcService odlInterfaceRpcService, final IdManagerService idManager,
+                 final NAPTSwitchSelector naptSwitchSelector, final IFibManager fibManager,
+                 final EvpnNaptSwitchHA evpnNaptSwitchHA, final IElanService elanManager,
+                 final SnatServiceManager natServiceManager, final NatserviceConfig config,
+                 final IInterfaceManager interfaceManager, final NatOverVxlanUtil natOverVxlanUtil,
+                 final NatServiceCounters natServiceCounters, final NaptMappingWriter naptMappingWriter,
+                 final ManagedNewTransactionRunner txRunner, final ListeningExecutorService failoverFlowBuilder) {
         this.dataBroker = dataBroker;
         this.mdsalManager = mdsalManager;
         this.externalRouterListener = externalRouterListener;
@@ -129,7 +166,6 @@ public class NaptSwitchHA {
         this.odlInterfaceRpcService = odlInterfaceRpcService;
         this.idManager = idManager;
         this.naptSwitchSelector = naptSwitchSelector;
-        this.naptEventHandler = naptEventHandler;
         this.fibManager = fibManager;
         this.evpnNaptSwitchHA = evpnNaptSwitchHA;
         this.elanManager = elanManager;
@@ -141,6 +177,15 @@ public class NaptSwitchHA {
             this.natMode = NatMode.Controller;
         }
         this.natOverVxlanUtil = natOverVxlanUtil;
+        this.natServiceCounters = natServiceCounters;
+        this.naptMappingWriter = naptMappingWriter;
+        this.txRunner = txRunner;
+        this.failoverFlowBuilder = failoverFlowBuilder;
+    }
+
+    @PreDestroy
+    public void close() {
+        failoverFlowBuilder.shutdown();
     }
 
     protected void removeSnatFlowsInOldNaptSwitch(Routers extRouter, Uint32 routerId, Uint64 naptSwitch,
@@ -299,7 +344,8 @@ public class NaptSwitchHA {
         }
 
         //For the router ID get the internal IP , internal port and the corresponding external IP and external Port.
-        IpPortMapping ipPortMapping = NatUtil.getIportMapping(dataBroker, routerId);
+        IpPortMapping ipPortMapping = naptMappingWriter.applyPendingIpPortMaps(routerId,
+            NatUtil.getIportMapping(dataBroker, routerId));
         if (ipPortMapping == null || ipPortMapping.getIntextIpProtocolType() == null
             || ipPortMapping.getIntextIpProtocolType().isEmpty()) {
             LOG.warn("removeSnatFlowsInOldNaptSwitch : No Internal Ip Port mapping associated to router {}, "
@@ -487,8 +533,9 @@ public class NaptSwitchHA {
 
             installSnatFlows(routerName, routerId, naptSwitch, routerVpnId, networkId, vpnName, confTx);
 
-            boolean flowInstalledStatus = handleNatFlowsInNewNaptSwitch(routerName, routerId, dpnId, naptSwitch,
-                    routerVpnId, networkId);
+            Uint64 newNaptSwitch = naptSwitch;
+            boolean flowInstalledStatus = handleNatFlowsInNewNaptSwitch(routerName, routerId, dpnId, newNaptSwitch,
+                routerVpnId, networkId);
             if (flowInstalledStatus) {
                 LOG.debug("isNaptSwitchDown :Installed all active session flows in newNaptSwitch {} for routerName {}",
                         naptSwitch, routerName);
@@ -560,13 +607,12 @@ public class NaptSwitchHA {
         }
     }
 
-    // TODO Clean up the exception handling
-    @SuppressWarnings("checkstyle:IllegalCatch")
     private boolean handleNatFlowsInNewNaptSwitch(String routerName, Uint32 routerId, Uint64 oldNaptSwitch,
                                                     Uint64 newNaptSwitch, Uint32 routerVpnId, Uuid networkId) {
         LOG.debug("handleNatFlowsInNewNaptSwitch : Proceeding to install flows in newNaptSwitch {} for routerId {}",
                 newNaptSwitch, routerId);
-        IpPortMapping ipPortMapping = NatUtil.getIportMapping(dataBroker, routerId);
+        IpPortMapping ipPortMapping = naptMappingWriter.applyPendingIpPortMaps(routerId,
+            NatUtil.getIportMapping(dataBroker, routerId));
         if (ipPortMapping == null || ipPortMapping.getIntextIpProtocolType() == null
             || ipPortMapping.getIntextIpProtocolType().isEmpty()) {
             LOG.debug("handleNatFlowsInNewNaptSwitch : No Internal Ip Port mapping associated to router {},"
@@ -596,78 +642,118 @@ public class NaptSwitchHA {
                     routerId);
             return false;
         }
-        for (IntextIpProtocolType protocolType : ipPortMapping.nonnullIntextIpProtocolType().values()) {
-            if (protocolType.getIpPortMap() == null || protocolType.getIpPortMap().isEmpty()) {
-                LOG.debug("handleNatFlowsInNewNaptSwitch : No {} session associated to router {}",
-                        protocolType.getProtocol(), routerId);
-                return true;
-            }
-            for (IpPortMap intIpPortMap : protocolType.nonnullIpPortMap().values()) {
-                String internalIpAddress = intIpPortMap.getIpPortInternal().split(":")[0];
-                String intportnum = intIpPortMap.getIpPortInternal().split(":")[1];
-                LOG.debug("handleNatFlowsInNewNaptSwitch : Found Internal IP Address {} and Port Number {}",
-                    internalIpAddress, intportnum);
-                //Get the external IP address and the port from the model
+        return installNaptFlowsInNewNaptSwitch(routerName, routerId, oldNaptSwitch, newNaptSwitch, vpnId, bgpVpnId,
+            extGwMacAddress, ipPortMapping, () -> NatUtil.getSwitchStatus(dataBroker, newNaptSwitch));
+    }
+
+    /**
+     * Installs the flows of the sessions of a router in its new NAPT switch. Sessions are written in chunks, the
+     * flows of a chunk are built on the failover flow builder threads and written in one transaction, retried on
+     * failure. A bounded number of chunks are in flight at once, and the failover is aborted as soon as the new NAPT
+     * switch is down. The installation is timed by the NAPT switch failover timer of the router.
+     *
+     * @return true if the flows of all sessions are installed
+     */
+    boolean installNaptFlowsInNewNaptSwitch(String routerName, Uint32 routerId, Uint64 oldNaptSwitch,
+                                            Uint64 newNaptSwitch, Uint32 vpnId, Uint32 bgpVpnId,
+                                            String extGwMacAddress, IpPortMapping ipPortMapping,
+                                            BooleanSupplier newNaptSwitchUp) {
+        return natServiceCounters.naptSwitchFailoverTimer(routerName).time(
+            () -> installNaptFlowsInChunks(routerId, oldNaptSwitch, newNaptSwitch, vpnId, bgpVpnId, extGwMacAddress,
+                ipPortMapping, newNaptSwitchUp));
+    }
+
+    private boolean installNaptFlowsInChunks(Uint32 routerId, Uint64 oldNaptSwitch, Uint64 newNaptSwitch,
+                                             Uint32 vpnId, Uint32 bgpVpnId, String extGwMacAddress,
+                                             IpPortMapping ipPortMapping, BooleanSupplier newNaptSwitchUp) {
+        Deque<ListenableFuture<?>> inFlightChunks = new ArrayDeque<>();
+        int sessionCount = 0;
+        int chunkCount = 0;
+        try {
+            for (IntextIpProtocolType protocolType : ipPortMapping.nonnullIntextIpProtocolType().values()) {
+                if (protocolType.getIpPortMap() == null || protocolType.getIpPortMap().isEmpty()) {
+                    LOG.debug("installNaptFlowsInNewNaptSwitch : No {} session associated to router {}",
+                            protocolType.getProtocol(), routerId);
+                    continue;
+                }
                 NAPTEntryEvent.Protocol proto =
                     protocolType.getProtocol().toString().equals(ProtocolTypes.TCP.toString())
                     ? NAPTEntryEvent.Protocol.TCP : NAPTEntryEvent.Protocol.UDP;
-                IpPortExternal ipPortExternal = NatUtil.getExternalIpPortMap(dataBroker, routerId,
-                    internalIpAddress, intportnum, proto);
-                if (ipPortExternal == null) {
-                    LOG.debug("handleNatFlowsInNewNaptSwitch : External Ipport mapping is not found for internalIp {} "
-                            + "with port {}", internalIpAddress, intportnum);
-                    continue;
-                }
-                String externalIpAddress = ipPortExternal.getIpAddress();
-                Integer extportNumber = ipPortExternal.getPortNum().toJava();
-                LOG.debug("handleNatFlowsInNewNaptSwitch : ExternalIPport {}:{} mapping for internal ipport {}:{}",
-                        externalIpAddress, extportNumber, internalIpAddress, intportnum);
-
-                SessionAddress sourceAddress = new SessionAddress(internalIpAddress, Integer.parseInt(intportnum));
-                SessionAddress externalAddress = new SessionAddress(externalIpAddress, extportNumber);
-
-                //checking naptSwitch status before installing flows
-                if (NatUtil.getSwitchStatus(dataBroker, newNaptSwitch)) {
-                    //Install the flow in newNaptSwitch Inbound NAPT table.
-                    try {
-                        naptEventHandler.buildAndInstallNatFlows(newNaptSwitch, NwConstants.INBOUND_NAPT_TABLE,
-                            vpnId, routerId, bgpVpnId, externalAddress, sourceAddress, proto, extGwMacAddress);
-                    } catch (RuntimeException ex) {
-                        LOG.error("handleNatFlowsInNewNaptSwitch : Failed to add flow in INBOUND_NAPT_TABLE for "
-                                + "routerid {} dpnId {} extIpport{}:{} proto {} ipport {}:{} BgpVpnId {}",
-                            routerId, newNaptSwitch, externalAddress, extportNumber, proto,
-                            internalIpAddress, intportnum, bgpVpnId);
+                List<IpPortMap> sessions = new ArrayList<>(protocolType.nonnullIpPortMap().values());
+                for (List<IpPortMap> chunk
+                        : Lists.partition(sessions, NatConstants.NAPT_FAILOVER_SESSIONS_PER_TRANSACTION)) {
+                    //checking naptSwitch status before installing flows
+                    if (!newNaptSwitchUp.getAsBoolean()) {
+                        LOG.error("installNaptFlowsInNewNaptSwitch : NewNaptSwitch {} gone down while installing "
+                                + "flows from oldNaptswitch {}", newNaptSwitch, oldNaptSwitch);
                         return false;
                     }
-                    LOG.debug("handleNatFlowsInNewNaptSwitch : Successfully installed a flow in Primary switch {} "
-                            + "Inbound NAPT table for router {} ipport {}:{} proto {} extIpport {}:{} BgpVpnId {}",
-                        newNaptSwitch, routerId, internalIpAddress,
-                        intportnum, proto, externalAddress, extportNumber, bgpVpnId);
-                    //Install the flow in newNaptSwitch Outbound NAPT table.
-                    try {
-                        naptEventHandler.buildAndInstallNatFlows(newNaptSwitch, NwConstants.OUTBOUND_NAPT_TABLE,
-                            vpnId, routerId, bgpVpnId, sourceAddress, externalAddress, proto, extGwMacAddress);
-                    } catch (RuntimeException ex) {
-                        LOG.error("handleNatFlowsInNewNaptSwitch : Failed to add flow in OUTBOUND_NAPT_TABLE for "
-                                + "routerid {} dpnId {} ipport {}:{} proto {} extIpport {}:{} BgpVpnId {}",
-                            routerId, newNaptSwitch, internalIpAddress,
-                            intportnum, proto, externalAddress, extportNumber, bgpVpnId, ex);
-                        return false;
+                    if (inFlightChunks.size() >= NatConstants.NAPT_FAILOVER_CHUNKS_IN_FLIGHT) {
+                        inFlightChunks.poll().get();
                     }
-                    LOG.debug("handleNatFlowsInNewNaptSwitch : Successfully installed a flow in Primary switch {} "
-                            + "Outbound NAPT table for router {} ipport {}:{} proto {} extIpport {}:{} BgpVpnId {}",
-                        newNaptSwitch, routerId, internalIpAddress,
-                        intportnum, proto, externalAddress, extportNumber, bgpVpnId);
-                } else {
-                    LOG.error("handleNatFlowsInNewNaptSwitch : NewNaptSwitch {} gone down while installing flows "
-                            + "from oldNaptswitch {}", newNaptSwitch, oldNaptSwitch);
-                    return false;
+                    inFlightChunks.add(Futures.transformAsync(
+                        failoverFlowBuilder.submit(() -> buildNaptFlows(newNaptSwitch, vpnId, routerId, bgpVpnId,
+                            proto, extGwMacAddress, chunk)),
+                        flowEntities -> installNaptFlows(flowEntities, NatConstants.NAPT_FAILOVER_CHUNK_RETRIES),
+                        MoreExecutors.directExecutor()));
+                    sessionCount += chunk.size();
+                    chunkCount++;
                 }
             }
+            while (!inFlightChunks.isEmpty()) {
+                inFlightChunks.poll().get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            LOG.error("installNaptFlowsInNewNaptSwitch : Failed to install flows of {} sessions in newNaptSwitch {} "
+                    + "for router {}", sessionCount, newNaptSwitch, routerId, e);
+            return false;
         }
+        LOG.debug("installNaptFlowsInNewNaptSwitch : Installed flows of {} sessions in {} transactions in "
+                + "newNaptSwitch {} for router {}", sessionCount, chunkCount, newNaptSwitch, routerId);
         return true;
     }
 
+    private ListenableFuture<?> installNaptFlows(List<FlowEntity> flowEntities, int retries) {
+        ListenableFuture<?> future = txRunner.callWithNewWriteOnlyTransactionAndSubmit(CONFIGURATION, tx -> {
+            for (FlowEntity flowEntity : flowEntities) {
+                mdsalManager.addFlow(tx, flowEntity);
+            }
+        });
+        if (retries == 0) {
+            return future;
+        }
+        return Futures.catchingAsync(future, Exception.class, e -> {
+            LOG.warn("installNaptFlows : Failed to install {} flows, retrying", flowEntities.size(), e);
+            return installNaptFlows(flowEntities, retries - 1);
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Builds the inbound and outbound NAPT flows of the given sessions. Sessions without an external IP and port
+     * are skipped.
+     */
+    static List<FlowEntity> buildNaptFlows(Uint64 naptSwitch, Uint32 vpnId, Uint32 routerId, Uint32 bgpVpnId,
+                                           NAPTEntryEvent.Protocol proto, String extGwMacAddress,
+                                           List<IpPortMap> sessions) {
+        return sessions.stream().flatMap(intIpPortMap -> {
+            String[] ipPortParts = intIpPortMap.getIpPortInternal().split(":");
+            IpPortExternal ipPortExternal = intIpPortMap.getIpPortExternal();
+            if (ipPortParts.length != 2 || ipPortExternal == null) {
+                LOG.debug("buildNaptFlows : External Ipport mapping is not found for internal ipport {}",
+                    intIpPortMap.getIpPortInternal());
+                return Stream.empty();
+            }
+            SessionAddress sourceAddress = new SessionAddress(ipPortParts[0], Integer.parseInt(ipPortParts[1]));
+            SessionAddress externalAddress = new SessionAddress(ipPortExternal.getIpAddress(),
+                ipPortExternal.getPortNum().toJava());
+            return Stream.of(
+                NaptEventHandler.buildNatFlowEntity(naptSwitch, NwConstants.INBOUND_NAPT_TABLE, vpnId, routerId,
+                    bgpVpnId, externalAddress, sourceAddress, proto, extGwMacAddress),
+                NaptEventHandler.buildNatFlowEntity(naptSwitch, NwConstants.OUTBOUND_NAPT_TABLE, vpnId, routerId,
+                    bgpVpnId, sourceAddress, externalAddress, proto, extGwMacAddress));
+        }).collect(Collectors.toList());
+    }
+
     // TODO Clean up the exception handling
     @SuppressWarnings("checkstyle:IllegalCatch")
     private Uint32 getVpnIdForRouter(Uint32 routerId, Uuid networkId) {
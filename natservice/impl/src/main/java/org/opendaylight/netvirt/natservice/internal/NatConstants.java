@@ -22,6 +22,11 @@ public interface NatConstants {
     String COLON_SEPARATOR = ":";
     int DEFAULT_NAPT_IDLE_TIMEOUT = 300;
     int EVENT_QUEUE_LENGTH = 1000000;
+    long NAPT_MAPPING_FLUSH_INTERVAL_MS = 50;
+    int NAPT_FAILOVER_SESSIONS_PER_TRANSACTION = 500;
+    int NAPT_FAILOVER_CHUNKS_IN_FLIGHT = 8;
+    int NAPT_FAILOVER_CHUNK_RETRIES = 3;
+    int NAPT_FAILOVER_FLOW_BUILDER_THREADS = 4;
     String FLOWID_PREFIX = "L3.";
     int DEFAULT_DNAT_FLOW_PRIORITY = 10;
     Uint32 INVALID_ID = Uint32.valueOf(0L);
@@ -47,6 +52,9 @@ public interface NatConstants {
     short DEFAULT_IDLE_TIMEOUT = 0;
     int SNAT_PACKET_THEADPOOL_SIZE = 25;
     int SNAT_PACKET_RETRY_THEADPOOL_SIZE = 15;
+    long NAPT_PENDING_SESSION_TIMEOUT_MS = 4000;
+    int NAPT_MAX_PENDING_PACKETS_PER_SESSION = 16;
+    int SNAT_PACKET_DEFAULT_QUEUE_SIZE = 10000;
     String NAT_DJC_PREFIX = "NAT-";
     int NAT_DJC_MAX_RETRIES = 3;
     int DEFAULT_VPN_INTERNAL_TUNNEL_TABLE_PRIORITY = 8;
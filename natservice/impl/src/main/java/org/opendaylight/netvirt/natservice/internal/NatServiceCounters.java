@@ -10,9 +10,12 @@ package org.opendaylight.netvirt.natservice.internal;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import org.opendaylight.infrautils.metrics.Counter;
+import org.opendaylight.infrautils.metrics.Labeled;
 import org.opendaylight.infrautils.metrics.Meter;
 import org.opendaylight.infrautils.metrics.MetricDescriptor;
 import org.opendaylight.infrautils.metrics.MetricProvider;
+import org.opendaylight.infrautils.metrics.Timer;
 
 @Singleton
 public class NatServiceCounters {
@@ -26,6 +29,12 @@ public class NatServiceCounters {
     private final Meter garpFailedIpv6Meter;
     private final Meter garpFailedMissingInterfaceMeter;
     private final Meter garpFailedSendMeter;
+    private final Meter naptPacketDroppedMeter;
+    private final Meter naptPacketCoalescedMeter;
+    private final Meter naptFlowRemovedDroppedMeter;
+    private final Counter naptFlowRemovedQueueDepthCounter;
+    private final Timer naptFlowRemovedBatchTimer;
+    private final Labeled<Timer> naptSwitchFailoverTimer;
 
     @Inject
     public NatServiceCounters(MetricProvider metricProvider) {
@@ -39,11 +48,21 @@ public class NatServiceCounters {
         this.garpFailedIpv6Meter = meter(metricProvider, "garp_failed_ipv6");
         this.garpFailedMissingInterfaceMeter = meter(metricProvider, "garp_failed_missing_interface");
         this.garpFailedSendMeter = meter(metricProvider, "garp_failed_send");
+        this.naptPacketDroppedMeter = meter(metricProvider, "napt_packet_dropped");
+        this.naptPacketCoalescedMeter = meter(metricProvider, "napt_packet_coalesced");
+        this.naptFlowRemovedDroppedMeter = meter(metricProvider, "napt_flow_removed_dropped");
+        this.naptFlowRemovedQueueDepthCounter =
+            metricProvider.newCounter(descriptor("napt_flow_removed_queue_depth"));
+        this.naptFlowRemovedBatchTimer = metricProvider.newTimer(descriptor("napt_flow_removed_batch"));
+        this.naptSwitchFailoverTimer = metricProvider.newTimer(descriptor("napt_switch_failover"), "router");
     }
 
     private Meter meter(MetricProvider metricProvider, String id) {
-        return metricProvider.newMeter(
-                MetricDescriptor.builder().anchor(this).project("netvirt").module("natservice").id(id).build());
+        return metricProvider.newMeter(descriptor(id));
+    }
+
+    private MetricDescriptor descriptor(String id) {
+        return MetricDescriptor.builder().anchor(this).project("netvirt").module("natservice").id(id).build();
     }
 
     public void installDefaultNatFlow() {
@@ -85,4 +104,45 @@ public class NatServiceCounters {
     public void garpFailedSend() {
         garpFailedSendMeter.mark();
     }
+
+    public void naptPacketDropped() {
+        naptPacketDroppedMeter.mark();
+    }
+
+    public void naptPacketDropped(int count) {
+        if (count > 0) {
+            naptPacketDroppedMeter.mark(count);
+        }
+    }
+
+    public void naptPacketCoalesced() {
+        naptPacketCoalescedMeter.mark();
+    }
+
+    /**
+     * Counts a flow removed event dropped from its queue as the queue is full. The event is then handled on the
+     * thread of the caller, so that the port of its session is still released.
+     */
+    public void naptFlowRemovedDropped() {
+        naptFlowRemovedDroppedMeter.mark();
+    }
+
+    public void naptFlowRemovedQueued(int count) {
+        naptFlowRemovedQueueDepthCounter.increment(count);
+    }
+
+    public void naptFlowRemovedDequeued(int count) {
+        naptFlowRemovedQueueDepthCounter.decrement(count);
+    }
+
+    public Timer naptFlowRemovedBatchTimer() {
+        return naptFlowRemovedBatchTimer;
+    }
+
+    /**
+     * Returns the timer of the convergence of the NAPT sessions of a router on a new NAPT switch.
+     */
+    public Timer naptSwitchFailoverTimer(String routerName) {
+        return naptSwitchFailoverTimer.label(routerName);
+    }
 }
@@ -2895,7 +2895,7 @@ public final class NatUtil {
             LOG.debug("removeSnatEntriesForPort: Internal Ip retrieved for interface {} is {} in router with Id {}",
                 interfaceName, internalIp, routerId);
             for (ProtocolTypes protocol : protocolTypesList) {
-                List<Uint16> portList = NatUtil.getInternalIpPortListInfo(dataBroker, routerId, internalIp, protocol);
+                List<Uint16> portList = naptManager.getInternalIpPortListInfo(routerId, internalIp, protocol);
                 if (portList != null) {
                     for (Uint16 portnum : portList) {
                         //build and remove the flow in outbound table
@@ -2924,7 +2924,7 @@ public final class NatUtil {
                         // delete the entry from IntExtIpPortMap DS
 
                         naptManager.removeFromIpPortMapDS(routerId, internalIpPort, proto);
-                        naptManager.removePortFromPool(internalIpPort, externalIpAddress);
+                        naptManager.removePortFromPool(routerId, internalIpPort, externalIpAddress);
 
                     }
                 } else {
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.natservice.internal;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opendaylight.infrautils.metrics.testimpl.TestMetricProviderImpl;
+import org.opendaylight.yangtools.yang.common.Uint32;
+
+public class EventDispatcherTest {
+    private static final Uint32 ROUTER_1 = Uint32.valueOf(1);
+    private static final Uint32 ROUTER_5 = Uint32.valueOf(5);
+    private static final long WAIT_MS = 5000;
+
+    private final NaptEventHandler naptEventHandler = mock(NaptEventHandler.class);
+    private final NatServiceCounters natServiceCounters = spy(new NatServiceCounters(new TestMetricProviderImpl()));
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private EventDispatcher eventDispatcher;
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (eventDispatcher != null) {
+            eventDispatcher.close();
+        }
+    }
+
+    @Test
+    public void testEventsOfRouterHandledInOneBatch() throws Exception {
+        blockFirstBatch();
+        // routers 1 and 5 share the worker
+        eventDispatcher = new EventDispatcher(naptEventHandler, natServiceCounters, 4, 100);
+
+        NAPTEntryEvent first = newEvent(ROUTER_1, 1000);
+        eventDispatcher.addFlowRemovedNaptEvent(first);
+        Assert.assertTrue(started.await(WAIT_MS, TimeUnit.MILLISECONDS));
+        NAPTEntryEvent second = newEvent(ROUTER_1, 1001);
+        NAPTEntryEvent third = newEvent(ROUTER_5, 1000);
+        NAPTEntryEvent fourth = newEvent(ROUTER_1, 1002);
+        eventDispatcher.addFlowRemovedNaptEvent(second);
+        eventDispatcher.addFlowRemovedNaptEvent(third);
+        eventDispatcher.addFlowRemovedNaptEvent(fourth);
+        release.countDown();
+
+        verify(naptEventHandler, timeout(WAIT_MS)).handleFlowRemovedEvents(ROUTER_1, List.of(first));
+        verify(naptEventHandler, timeout(WAIT_MS)).handleFlowRemovedEvents(ROUTER_1, List.of(second, fourth));
+        verify(naptEventHandler, timeout(WAIT_MS)).handleFlowRemovedEvents(ROUTER_5, List.of(third));
+        verify(naptEventHandler, never()).handleEvent(any());
+        verify(natServiceCounters, never()).naptFlowRemovedDropped();
+    }
+
+    @Test
+    public void testEventHandledSynchronouslyWhenQueueFull() throws Exception {
+        blockFirstBatch();
+        eventDispatcher = new EventDispatcher(naptEventHandler, natServiceCounters, 1, 2);
+
+        eventDispatcher.addFlowRemovedNaptEvent(newEvent(ROUTER_1, 1000));
+        Assert.assertTrue(started.await(WAIT_MS, TimeUnit.MILLISECONDS));
+        NAPTEntryEvent second = newEvent(ROUTER_1, 1001);
+        NAPTEntryEvent third = newEvent(ROUTER_1, 1002);
+        NAPTEntryEvent overflow = newEvent(ROUTER_1, 1003);
+        eventDispatcher.addFlowRemovedNaptEvent(second);
+        eventDispatcher.addFlowRemovedNaptEvent(third);
+        eventDispatcher.addFlowRemovedNaptEvent(overflow);
+
+        // not discarded, its port would never be released
+        verify(naptEventHandler).handleEvent(overflow);
+        verify(natServiceCounters).naptFlowRemovedDropped();
+
+        release.countDown();
+        verify(naptEventHandler, timeout(WAIT_MS)).handleFlowRemovedEvents(ROUTER_1, List.of(second, third));
+        verify(naptEventHandler, never()).handleFlowRemovedEvents(eq(ROUTER_1), eq(List.of(overflow)));
+    }
+
+    private void blockFirstBatch() {
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await(WAIT_MS, TimeUnit.MILLISECONDS);
+            return null;
+        }).when(naptEventHandler).handleFlowRemovedEvents(any(), any());
+    }
+
+    private static NAPTEntryEvent newEvent(Uint32 routerId, int portNumber) {
+        return new NAPTEntryEvent("10.0.0.5", portNumber, "1", routerId, NAPTEntryEvent.Operation.DELETE,
+            NAPTEntryEvent.Protocol.TCP);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.natservice.internal;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opendaylight.netvirt.natservice.internal.NaptPortAllocator.PortPool;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.IntextIpPortMap;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.ProtocolTypes;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.IpPortMapping;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.IpPortMappingBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.IpPortMappingKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.IntextIpProtocolType;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.IntextIpProtocolTypeBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.IntextIpProtocolTypeKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.intext.ip.protocol.type.IpPortMap;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.intext.ip.protocol.type.IpPortMapBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.intext.ip.protocol.type.IpPortMapKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.intext.ip.protocol.type.ip.port.map.IpPortExternalBuilder;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.common.Uint16;
+import org.opendaylight.yangtools.yang.common.Uint32;
+
+public class NaptPortAllocatorTest {
+    private static final Uint32 ROUTER_ID = Uint32.valueOf(100);
+
+    @Test
+    public void testAllocateIsIdempotentPerKey() {
+        PortPool pool = new PortPool();
+        int port = pool.allocate("10.0.0.1:1000");
+        Assert.assertEquals(NaptPortAllocator.LOW_PORT, port);
+        Assert.assertEquals(port, pool.allocate("10.0.0.1:1000"));
+        Assert.assertEquals(port + 1, pool.allocate("10.0.0.1:1001"));
+    }
+
+    @Test
+    public void testExhaustionAndRelease() {
+        PortPool pool = new PortPool();
+        int size = NaptPortAllocator.HIGH_PORT - NaptPortAllocator.LOW_PORT + 1;
+        for (int i = 0; i < size; i++) {
+            Assert.assertNotEquals(0, pool.allocate("10.0.0.1:" + i));
+        }
+        Assert.assertEquals(0, pool.allocate("10.0.0.2:1"));
+        int released = pool.release("10.0.0.1:7");
+        Assert.assertEquals(NaptPortAllocator.LOW_PORT + 7, released);
+        Assert.assertEquals(0, pool.release("10.0.0.1:7"));
+        Assert.assertEquals(released, pool.allocate("10.0.0.2:1"));
+    }
+
+    @Test
+    public void testReleasedPortIsNotReusedImmediately() {
+        PortPool pool = new PortPool();
+        pool.reserve("10.0.0.1:1", NaptPortAllocator.LOW_PORT + 1);
+        int first = pool.allocate("10.0.0.1:2");
+        Assert.assertEquals(NaptPortAllocator.LOW_PORT, first);
+        pool.release("10.0.0.1:2");
+        Assert.assertEquals(NaptPortAllocator.LOW_PORT + 2, pool.allocate("10.0.0.1:3"));
+    }
+
+    @Test
+    public void testBuildPoolFromPersistedMappings() {
+        IpPortMapping ipPortMapping = new IpPortMappingBuilder().withKey(new IpPortMappingKey(ROUTER_ID))
+            .setIntextIpProtocolType(List.of(new IntextIpProtocolTypeBuilder()
+                .withKey(new IntextIpProtocolTypeKey(ProtocolTypes.TCP))
+                .setIpPortMap(List.of(ipPortMap("10.0.0.1:1000", "172.16.0.1", NaptPortAllocator.LOW_PORT),
+                    ipPortMap("10.0.0.1:1001", "172.16.0.2", NaptPortAllocator.LOW_PORT + 1)))
+                .build()))
+            .build();
+
+        PortPool pool = NaptPortAllocator.buildPool("172.16.0.1", ipPortMapping, Map.of());
+
+        Assert.assertEquals(1, pool.size());
+        Assert.assertEquals(Integer.valueOf(NaptPortAllocator.LOW_PORT), pool.get("10.0.0.1:1000"));
+        Assert.assertNull(pool.get("10.0.0.1:1001"));
+        Assert.assertEquals(NaptPortAllocator.LOW_PORT + 1, pool.allocate("10.0.0.2:1000"));
+    }
+
+    @Test
+    public void testBuildPoolAppliesPendingMappings() {
+        IpPortMapping ipPortMapping = new IpPortMappingBuilder().withKey(new IpPortMappingKey(ROUTER_ID))
+            .setIntextIpProtocolType(List.of(new IntextIpProtocolTypeBuilder()
+                .withKey(new IntextIpProtocolTypeKey(ProtocolTypes.TCP))
+                .setIpPortMap(List.of(ipPortMap("10.0.0.1:1000", "172.16.0.1", NaptPortAllocator.LOW_PORT)))
+                .build()))
+            .build();
+        Map<InstanceIdentifier<IpPortMap>, Optional<IpPortMap>> pending = new HashMap<>();
+        pending.put(ipPortMapId("10.0.0.1:1000"), Optional.empty());
+        pending.put(ipPortMapId("10.0.0.1:1001"),
+            Optional.of(ipPortMap("10.0.0.1:1001", "172.16.0.1", NaptPortAllocator.LOW_PORT + 5)));
+
+        PortPool pool = NaptPortAllocator.buildPool("172.16.0.1", ipPortMapping, pending);
+
+        Assert.assertNull(pool.get("10.0.0.1:1000"));
+        Assert.assertEquals(Integer.valueOf(NaptPortAllocator.LOW_PORT + 5), pool.get("10.0.0.1:1001"));
+        Assert.assertEquals(NaptPortAllocator.LOW_PORT, pool.allocate("10.0.0.2:1000"));
+    }
+
+    private static IpPortMap ipPortMap(String internalIpPort, String externalIp, int externalPort) {
+        return new IpPortMapBuilder().withKey(new IpPortMapKey(internalIpPort)).setIpPortInternal(internalIpPort)
+            .setIpPortExternal(new IpPortExternalBuilder().setIpAddress(externalIp)
+                .setPortNum(Uint16.valueOf(externalPort)).build())
+            .build();
+    }
+
+    private static InstanceIdentifier<IpPortMap> ipPortMapId(String internalIpPort) {
+        return InstanceIdentifier.builder(IntextIpPortMap.class)
+            .child(IpPortMapping.class, new IpPortMappingKey(ROUTER_ID))
+            .child(IntextIpProtocolType.class, new IntextIpProtocolTypeKey(ProtocolTypes.TCP))
+            .child(IpPortMap.class, new IpPortMapKey(internalIpPort)).build();
+    }
+}
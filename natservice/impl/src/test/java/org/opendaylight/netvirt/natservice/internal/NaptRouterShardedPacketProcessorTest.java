@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.natservice.internal;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.net.InetAddresses;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.opendaylight.netvirt.natservice.internal.NaptPacketInHandler.NatPacketProcessingState;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.packet.service.rev130709.PacketReceived;
+import org.opendaylight.yangtools.yang.common.Uint32;
+
+public class NaptRouterShardedPacketProcessorTest {
+    private static final String INTERNAL_IP = "10.0.0.5";
+    private static final long WAIT_MS = 5000;
+
+    private final NaptEventHandler naptEventHandler = mock(NaptEventHandler.class);
+    private final NatServiceCounters natServiceCounters = mock(NatServiceCounters.class);
+    private final AtomicLong now = new AtomicLong(1000000L);
+    private NaptRouterShardedPacketProcessor processor;
+
+    @After
+    public void tearDown() {
+        if (processor != null) {
+            // the in-flight sessions are shared by the processors
+            now.addAndGet(TimeUnit.HOURS.toMillis(1));
+            processor.sweepExpiredSessions();
+            processor.close();
+        }
+    }
+
+    @Test
+    public void testPacketsOfRouterProcessedInOrderOnOneWorker() throws Exception {
+        int routers = 4;
+        int sessionsPerRouter = 50;
+        Map<Long, List<Integer>> portsByRouter = new ConcurrentHashMap<>();
+        Map<Long, Set<String>> workersByRouter = new ConcurrentHashMap<>();
+        CountDownLatch processed = new CountDownLatch(routers * sessionsPerRouter);
+        doAnswer(invocation -> {
+            NAPTEntryEvent event = invocation.getArgument(0);
+            long routerId = event.getRouterId().longValue();
+            portsByRouter.computeIfAbsent(routerId, key -> Collections.synchronizedList(new ArrayList<>()))
+                .add(event.getPortNumber());
+            workersByRouter.computeIfAbsent(routerId, key -> ConcurrentHashMap.newKeySet())
+                .add(Thread.currentThread().getName());
+            processed.countDown();
+            return null;
+        }).when(naptEventHandler).handleEvent(any());
+        processor = newProcessor(routers, 1000);
+
+        for (int port = 1; port <= sessionsPerRouter; port++) {
+            for (long routerId = 101; routerId < 101 + routers; routerId++) {
+                receive(routerId, port, mock(PacketReceived.class));
+            }
+        }
+
+        Assert.assertTrue(processed.await(WAIT_MS, TimeUnit.MILLISECONDS));
+        List<Integer> expectedPorts = new ArrayList<>();
+        for (int port = 1; port <= sessionsPerRouter; port++) {
+            expectedPorts.add(port);
+        }
+        Set<String> workers = new HashSet<>();
+        for (long routerId = 101; routerId < 101 + routers; routerId++) {
+            Assert.assertEquals(expectedPorts, portsByRouter.get(routerId));
+            Assert.assertEquals(1, workersByRouter.get(routerId).size());
+            workers.addAll(workersByRouter.get(routerId));
+        }
+        // the routers are spread across the workers
+        Assert.assertEquals(routers, workers.size());
+    }
+
+    @Test
+    public void testPacketRejectedWhenQueueFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await(WAIT_MS, TimeUnit.MILLISECONDS);
+            return null;
+        }).when(naptEventHandler).handleEvent(any());
+        processor = newProcessor(1, 1);
+
+        receive(201, 1, mock(PacketReceived.class));
+        Assert.assertTrue(started.await(WAIT_MS, TimeUnit.MILLISECONDS));
+        receive(201, 2, mock(PacketReceived.class));
+        receive(201, 3, mock(PacketReceived.class));
+        verify(natServiceCounters, times(1)).naptPacketDropped();
+
+        // the rejected session is not left in flight, its next packet sets it up
+        release.countDown();
+        verify(naptEventHandler, timeout(WAIT_MS).times(2)).handleEvent(any());
+        receive(201, 3, mock(PacketReceived.class));
+        verify(naptEventHandler, timeout(WAIT_MS).times(3)).handleEvent(any());
+        verify(natServiceCounters, times(1)).naptPacketDropped();
+    }
+
+    @Test
+    public void testPendingPacketsReleasedOnFlowInstall() {
+        processor = newProcessor(1, 100);
+        PacketReceived secondPacket = mock(PacketReceived.class);
+        PacketReceived thirdPacket = mock(PacketReceived.class);
+
+        receive(301, 1, mock(PacketReceived.class));
+        NatPacketProcessingState state = captureEvents(1).get(0).getState();
+        receive(301, 1, secondPacket);
+        receive(301, 1, thirdPacket);
+        verify(natServiceCounters, times(2)).naptPacketCoalesced();
+
+        Assert.assertEquals(List.of(secondPacket, thirdPacket), state.setFlowInstalled());
+
+        // punted before the switch matched the new flows, only sent out
+        receive(301, 1, mock(PacketReceived.class));
+        NAPTEntryEvent packetOutEvent = captureEvents(2).get(1);
+        Assert.assertTrue(packetOutEvent.isPktProcessed());
+        Assert.assertSame(state, packetOutEvent.getState());
+        verify(natServiceCounters, never()).naptPacketDropped(anyInt());
+    }
+
+    @Test
+    public void testPendingPacketsDroppedAndCountedOnTimeout() {
+        processor = newProcessor(1, 100);
+
+        receive(401, 1, mock(PacketReceived.class));
+        NatPacketProcessingState state = captureEvents(1).get(0).getState();
+        receive(401, 1, mock(PacketReceived.class));
+        receive(401, 1, mock(PacketReceived.class));
+
+        // the packet punted after the timeout is dropped, along with the two attached to the session
+        now.addAndGet(NatConstants.NAPT_PENDING_SESSION_TIMEOUT_MS + 1);
+        receive(401, 1, mock(PacketReceived.class));
+        verify(natServiceCounters).naptPacketDropped(2);
+        verify(natServiceCounters).naptPacketDropped(1);
+        Assert.assertFalse(state.attachPendingPacket(mock(PacketReceived.class)));
+
+        // the next packet sets the session up again
+        receive(401, 1, mock(PacketReceived.class));
+        Assert.assertNotSame(state, captureEvents(2).get(1).getState());
+    }
+
+    @Test
+    public void testExpiredSessionsSwept() {
+        processor = newProcessor(1, 100);
+
+        receive(501, 1, mock(PacketReceived.class));
+        receive(501, 1, mock(PacketReceived.class));
+        receive(501, 2, mock(PacketReceived.class));
+        List<NAPTEntryEvent> events = captureEvents(2);
+        events.get(1).getState().setFlowInstalled();
+
+        processor.sweepExpiredSessions();
+        verify(natServiceCounters, never()).naptPacketDropped(anyInt());
+
+        now.addAndGet(NatConstants.NAPT_PENDING_SESSION_TIMEOUT_MS + 1);
+        processor.sweepExpiredSessions();
+        verify(natServiceCounters).naptPacketDropped(1);
+
+        // both sessions, installed or not, are set up again by their next packet
+        receive(501, 1, mock(PacketReceived.class));
+        receive(501, 2, mock(PacketReceived.class));
+        events = captureEvents(4);
+        Assert.assertFalse(events.get(2).isPktProcessed());
+        Assert.assertFalse(events.get(3).isPktProcessed());
+    }
+
+    private NaptRouterShardedPacketProcessor newProcessor(int workerCount, int queueSize) {
+        return new NaptRouterShardedPacketProcessor(naptEventHandler, natServiceCounters, workerCount, queueSize,
+            now::get);
+    }
+
+    private void receive(long routerId, int portNumber, PacketReceived packetReceived) {
+        processor.onPacketReceived(Uint32.valueOf(routerId),
+            InetAddresses.coerceToInteger(InetAddresses.forString(INTERNAL_IP)), INTERNAL_IP, portNumber,
+            NAPTEntryEvent.Protocol.TCP, packetReceived);
+    }
+
+    private List<NAPTEntryEvent> captureEvents(int count) {
+        ArgumentCaptor<NAPTEntryEvent> events = ArgumentCaptor.forClass(NAPTEntryEvent.class);
+        verify(naptEventHandler, timeout(WAIT_MS).times(count)).handleEvent(events.capture());
+        return events.getAllValues();
+    }
+}
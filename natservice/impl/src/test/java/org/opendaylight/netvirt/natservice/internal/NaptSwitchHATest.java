@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.natservice.internal;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.opendaylight.mdsal.binding.util.Datastore.CONFIGURATION;
+
+import com.google.common.util.concurrent.FluentFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntFunction;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.genius.mdsalutil.FlowEntity;
+import org.opendaylight.genius.mdsalutil.NwConstants;
+import org.opendaylight.genius.mdsalutil.interfaces.IMdsalApiManager;
+import org.opendaylight.infrautils.metrics.testimpl.TestMetricProviderImpl;
+import org.opendaylight.mdsal.binding.util.Datastore.Configuration;
+import org.opendaylight.mdsal.binding.util.InterruptibleCheckedConsumer;
+import org.opendaylight.mdsal.binding.util.ManagedNewTransactionRunner;
+import org.opendaylight.mdsal.binding.util.TypedWriteTransaction;
+import org.opendaylight.mdsal.common.api.TransactionCommitFailedException;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.ProtocolTypes;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.IpPortMapping;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.IpPortMappingBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.IpPortMappingKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.IntextIpProtocolType;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.IntextIpProtocolTypeBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.IntextIpProtocolTypeKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.intext.ip.protocol.type.IpPortMap;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.intext.ip.protocol.type.IpPortMapBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.intext.ip.protocol.type.IpPortMapKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.natservice.rev160111.intext.ip.port.map.ip.port.mapping.intext.ip.protocol.type.ip.port.map.IpPortExternalBuilder;
+import org.opendaylight.yangtools.yang.common.Uint16;
+import org.opendaylight.yangtools.yang.common.Uint32;
+import org.opendaylight.yangtools.yang.common.Uint64;
+
+public class NaptSwitchHATest {
+    private static final Uint64 OLD_NAPT_SWITCH = Uint64.valueOf(1);
+    private static final Uint64 NAPT_SWITCH = Uint64.valueOf(2);
+    private static final String ROUTER_NAME = "router1";
+    private static final Uint32 ROUTER_ID = Uint32.valueOf(100);
+    private static final Uint32 VPN_ID = Uint32.valueOf(200);
+    private static final String EXT_GW_MAC = "fa:16:3e:00:00:01";
+    private static final long WAIT_MS = 5000;
+
+    private final IMdsalApiManager mdsalManager = mock(IMdsalApiManager.class);
+    private final ManagedNewTransactionRunner txRunner = mock(ManagedNewTransactionRunner.class);
+    private final NatServiceCounters natServiceCounters = spy(new NatServiceCounters(new TestMetricProviderImpl()));
+    private final Map<TypedWriteTransaction<Configuration>, List<FlowEntity>> flowsByTx = new ConcurrentHashMap<>();
+    private final List<FlowEntity> committedFlows = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger attempts = new AtomicInteger();
+    private NaptSwitchHA naptSwitchHA;
+
+    @Before
+    public void setUp() {
+        doAnswer(invocation -> {
+            TypedWriteTransaction<Configuration> tx = invocation.getArgument(0);
+            flowsByTx.computeIfAbsent(tx, key -> Collections.synchronizedList(new ArrayList<>()))
+                .add(invocation.getArgument(1));
+            return null;
+        }).when(mdsalManager).addFlow(any(), any(FlowEntity.class));
+        naptSwitchHA = new NaptSwitchHA(null, mdsalManager, null, null, null, null, null, null, null, null, null,
+            null, null, null, natServiceCounters, null, txRunner, MoreExecutors.newDirectExecutorService());
+    }
+
+    @After
+    public void tearDown() {
+        naptSwitchHA.close();
+    }
+
+    @Test
+    public void testBuildNaptFlowsOfLargeMappingTable() {
+        int sessionCount = 100000;
+        List<IpPortMap> sessions = new ArrayList<>(sessionCount);
+        for (int i = 0; i < sessionCount; i++) {
+            String internalIpPort = "10.0." + (i >> 8 & 0xff) + "." + (i & 0xff) + ":" + (1024 + (i >> 16));
+            sessions.add(new IpPortMapBuilder().withKey(new IpPortMapKey(internalIpPort))
+                .setIpPortInternal(internalIpPort)
+                .setIpPortExternal(new IpPortExternalBuilder().setIpAddress("172.16.0." + i % 4)
+                    .setPortNum(Uint16.valueOf(NaptPortAllocator.LOW_PORT + i / 4)).build())
+                .build());
+        }
+        // a session whose external port is not allocated yet
+        sessions.add(new IpPortMapBuilder().withKey(new IpPortMapKey("10.1.0.1:1024"))
+            .setIpPortInternal("10.1.0.1:1024").build());
+
+        List<FlowEntity> flows = NaptSwitchHA.buildNaptFlows(NAPT_SWITCH, VPN_ID, ROUTER_ID, NatConstants.INVALID_ID,
+            NAPTEntryEvent.Protocol.TCP, EXT_GW_MAC, sessions);
+
+        Assert.assertEquals(2 * sessionCount, flows.size());
+        Set<String> flowIds = new HashSet<>();
+        int inboundFlows = 0;
+        for (FlowEntity flow : flows) {
+            Assert.assertEquals(NAPT_SWITCH, flow.getDpnId());
+            Assert.assertTrue(flowIds.add(flow.getTableId() + flow.getFlowId()));
+            if (flow.getTableId() == NwConstants.INBOUND_NAPT_TABLE) {
+                inboundFlows++;
+            }
+        }
+        Assert.assertEquals(sessionCount, inboundFlows);
+    }
+
+    @Test
+    public void testFailedChunkRetried() {
+        // the second transaction fails once
+        submitTransactions(attempt -> attempt == 1 ? failedSubmit() : successfulSubmit());
+        IpPortMapping ipPortMapping = newIpPortMapping(1200, 300);
+
+        Assert.assertTrue(installNaptFlows(ipPortMapping, () -> true));
+
+        // 500, 500 and 200 TCP sessions, 300 UDP sessions, and the retry of the failed chunk
+        verify(txRunner, times(5)).callWithNewWriteOnlyTransactionAndSubmit(eq(CONFIGURATION), any());
+        assertFlowsOfSessionsCommitted(1500);
+        verify(natServiceCounters).naptSwitchFailoverTimer(ROUTER_NAME);
+    }
+
+    @Test
+    public void testFailoverFailsWhenChunkRetriesExhausted() {
+        submitTransactions(attempt -> attempt <= NatConstants.NAPT_FAILOVER_CHUNK_RETRIES
+            ? failedSubmit() : successfulSubmit());
+
+        Assert.assertFalse(installNaptFlows(newIpPortMapping(1000, 0), () -> true));
+
+        // the remaining chunk is still written
+        verify(txRunner, times(NatConstants.NAPT_FAILOVER_CHUNK_RETRIES + 2))
+            .callWithNewWriteOnlyTransactionAndSubmit(eq(CONFIGURATION), any());
+        assertFlowsOfSessionsCommitted(NatConstants.NAPT_FAILOVER_SESSIONS_PER_TRANSACTION);
+    }
+
+    @Test
+    public void testFailoverAbortedWhenNewNaptSwitchDown() {
+        submitTransactions(attempt -> successfulSubmit());
+        AtomicInteger statusChecks = new AtomicInteger();
+
+        Assert.assertFalse(installNaptFlows(newIpPortMapping(1500, 0), () -> statusChecks.getAndIncrement() == 0));
+
+        verify(txRunner, times(1)).callWithNewWriteOnlyTransactionAndSubmit(eq(CONFIGURATION), any());
+        assertFlowsOfSessionsCommitted(NatConstants.NAPT_FAILOVER_SESSIONS_PER_TRANSACTION);
+    }
+
+    @Test
+    public void testChunksInFlightBounded() throws Exception {
+        List<SettableFuture<Void>> submits = Collections.synchronizedList(new ArrayList<>());
+        submitTransactions(attempt -> {
+            SettableFuture<Void> submit = SettableFuture.create();
+            submits.add(submit);
+            return FluentFuture.from(submit);
+        });
+        int chunkCount = NatConstants.NAPT_FAILOVER_CHUNKS_IN_FLIGHT + 2;
+        ExecutorService failover = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> installed = failover.submit(() -> installNaptFlows(
+                newIpPortMapping(chunkCount * NatConstants.NAPT_FAILOVER_SESSIONS_PER_TRANSACTION, 0), () -> true));
+
+            verify(txRunner, after(500).times(NatConstants.NAPT_FAILOVER_CHUNKS_IN_FLIGHT))
+                .callWithNewWriteOnlyTransactionAndSubmit(eq(CONFIGURATION), any());
+            submits.get(0).set(null);
+            verify(txRunner, timeout(WAIT_MS).times(NatConstants.NAPT_FAILOVER_CHUNKS_IN_FLIGHT + 1))
+                .callWithNewWriteOnlyTransactionAndSubmit(eq(CONFIGURATION), any());
+            submits.get(1).set(null);
+            verify(txRunner, timeout(WAIT_MS).times(chunkCount))
+                .callWithNewWriteOnlyTransactionAndSubmit(eq(CONFIGURATION), any());
+            submits.forEach(submit -> submit.set(null));
+
+            Assert.assertTrue(installed.get(WAIT_MS, TimeUnit.MILLISECONDS));
+            assertFlowsOfSessionsCommitted(chunkCount * NatConstants.NAPT_FAILOVER_SESSIONS_PER_TRANSACTION);
+        } finally {
+            failover.shutdownNow();
+        }
+    }
+
+    private boolean installNaptFlows(IpPortMapping ipPortMapping, BooleanSupplier newNaptSwitchUp) {
+        return naptSwitchHA.installNaptFlowsInNewNaptSwitch(ROUTER_NAME, ROUTER_ID, OLD_NAPT_SWITCH, NAPT_SWITCH,
+            VPN_ID, NatConstants.INVALID_ID, EXT_GW_MAC, ipPortMapping, newNaptSwitchUp);
+    }
+
+    /**
+     * Writes the flows of each transaction to the mocked tx runner, and commits them once the submit future of the
+     * given attempt succeeds.
+     */
+    @SuppressWarnings("unchecked")
+    private void submitTransactions(IntFunction<FluentFuture<?>> submitOfAttempt) {
+        doAnswer(invocation -> {
+            InterruptibleCheckedConsumer<TypedWriteTransaction<Configuration>, ?> txConsumer =
+                invocation.getArgument(1);
+            TypedWriteTransaction<Configuration> tx = mock(TypedWriteTransaction.class);
+            txConsumer.accept(tx);
+            FluentFuture<?> submit = submitOfAttempt.apply(attempts.getAndIncrement());
+            Futures.addCallback(submit, new FutureCallback<Object>() {
+                @Override
+                public void onSuccess(Object result) {
+                    committedFlows.addAll(flowsByTx.getOrDefault(tx, List.of()));
+                }
+
+                @Override
+                public void onFailure(Throwable throwable) {
+                }
+            }, MoreExecutors.directExecutor());
+            return submit;
+        }).when(txRunner).callWithNewWriteOnlyTransactionAndSubmit(eq(CONFIGURATION), any());
+    }
+
+    private void assertFlowsOfSessionsCommitted(int sessionCount) {
+        Set<String> flowIds = new HashSet<>();
+        for (FlowEntity flow : committedFlows) {
+            Assert.assertTrue(flowIds.add(flow.getTableId() + flow.getFlowId()));
+        }
+        Assert.assertEquals(2 * sessionCount, flowIds.size());
+    }
+
+    private static FluentFuture<?> successfulSubmit() {
+        return FluentFuture.from(Futures.immediateFuture(null));
+    }
+
+    private static FluentFuture<?> failedSubmit() {
+        return FluentFuture.from(Futures.immediateFailedFuture(
+            new TransactionCommitFailedException("commit of the chunk failed")));
+    }
+
+    private static IpPortMapping newIpPortMapping(int tcpSessions, int udpSessions) {
+        Map<IntextIpProtocolTypeKey, IntextIpProtocolType> protocolTypes = new HashMap<>();
+        addProtocolType(protocolTypes, ProtocolTypes.TCP, tcpSessions);
+        if (udpSessions > 0) {
+            addProtocolType(protocolTypes, ProtocolTypes.UDP, udpSessions);
+        }
+        return new IpPortMappingBuilder().withKey(new IpPortMappingKey(ROUTER_ID))
+            .setIntextIpProtocolType(protocolTypes).build();
+    }
+
+    private static void addProtocolType(Map<IntextIpProtocolTypeKey, IntextIpProtocolType> protocolTypes,
+                                        ProtocolTypes protocol, int sessionCount) {
+        Map<IpPortMapKey, IpPortMap> sessions = new HashMap<>();
+        for (int i = 0; i < sessionCount; i++) {
+            String internalIpPort = "10.0." + (i >> 8 & 0xff) + "." + (i & 0xff) + ":1024";
+            IpPortMapKey key = new IpPortMapKey(internalIpPort);
+            sessions.put(key, new IpPortMapBuilder().withKey(key).setIpPortInternal(internalIpPort)
+                .setIpPortExternal(new IpPortExternalBuilder().setIpAddress("172.16.0.1")
+                    .setPortNum(Uint16.valueOf(NaptPortAllocator.LOW_PORT + i)).build())
+                .build());
+        }
+        IntextIpProtocolTypeKey key = new IntextIpProtocolTypeKey(protocol);
+        protocolTypes.put(key, new IntextIpProtocolTypeBuilder().withKey(key).setIpPortMap(sessions).build());
+    }
+}
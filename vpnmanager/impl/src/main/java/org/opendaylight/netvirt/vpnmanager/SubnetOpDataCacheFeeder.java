@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.vpnmanager;
+
+import java.util.Objects;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.opendaylight.infrautils.utils.concurrent.Executors;
+import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
+import org.opendaylight.serviceutils.tools.listener.AbstractClusteredAsyncDataTreeChangeListener;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3vpn.rev130911.SubnetOpData;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3vpn.rev130911.subnet.op.data.SubnetOpDataEntry;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Clustered listener whose only purpose is to keep the subnet route resolution cache of every node updated, as the
+ * subnet route packets are punted to any of them. The subnet routes of a subnet are dropped when its subnet op data
+ * is added or removed, or its next hop dpn or cidr changes.
+ */
+@Singleton
+public class SubnetOpDataCacheFeeder extends AbstractClusteredAsyncDataTreeChangeListener<SubnetOpDataEntry> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SubnetOpDataCacheFeeder.class);
+
+    private final SubnetRouteResolutionCache subnetRouteCache;
+
+    @Inject
+    public SubnetOpDataCacheFeeder(final DataBroker dataBroker, final SubnetRouteResolutionCache subnetRouteCache) {
+        super(dataBroker, LogicalDatastoreType.OPERATIONAL, InstanceIdentifier.create(SubnetOpData.class)
+                .child(SubnetOpDataEntry.class),
+                Executors.newListeningSingleThreadExecutor("SubnetOpDataCacheFeeder", LOG));
+        this.subnetRouteCache = subnetRouteCache;
+    }
+
+    @Override
+    @PreDestroy
+    public void close() {
+        super.close();
+        Executors.shutdownAndAwaitTermination(getExecutorService());
+    }
+
+    @Override
+    public void remove(InstanceIdentifier<SubnetOpDataEntry> identifier, SubnetOpDataEntry del) {
+        LOG.debug("SubnetOpDataEntry of subnet {} has been removed", del.getSubnetId());
+        subnetRouteCache.invalidateSubnetRoutes(del.getSubnetId());
+    }
+
+    @Override
+    public void update(InstanceIdentifier<SubnetOpDataEntry> identifier, SubnetOpDataEntry original,
+            SubnetOpDataEntry update) {
+        if (!Objects.equals(original.getNhDpnId(), update.getNhDpnId())
+                || !Objects.equals(original.getSubnetCidr(), update.getSubnetCidr())) {
+            LOG.debug("SubnetOpDataEntry of subnet {} has moved from dpn {} to dpn {}", update.getSubnetId(),
+                    original.getNhDpnId(), update.getNhDpnId());
+            subnetRouteCache.invalidateSubnetRoutes(update.getSubnetId());
+        }
+    }
+
+    @Override
+    public void add(InstanceIdentifier<SubnetOpDataEntry> identifier, SubnetOpDataEntry add) {
+        LOG.debug("SubnetOpDataEntry of subnet {} has been added", add.getSubnetId());
+        subnetRouteCache.invalidateSubnetRoutes(add.getSubnetId());
+    }
+}
@@ -11,6 +11,7 @@ import com.google.common.primitives.Ints;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -32,6 +33,7 @@ import org.opendaylight.infrautils.metrics.MetricProvider;
 import org.opendaylight.infrautils.utils.concurrent.LoggingFutures;
 import org.opendaylight.mdsal.binding.api.DataBroker;
 import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
+import org.opendaylight.netvirt.vpnmanager.SubnetRouteResolutionCache.SubnetRoute;
 import org.opendaylight.netvirt.vpnmanager.api.ICentralizedSwitchProvider;
 import org.opendaylight.netvirt.vpnmanager.api.VpnHelper;
 import org.opendaylight.netvirt.vpnmanager.iplearn.ipv4.ArpUtils;
@@ -41,9 +43,8 @@ import org.opendaylight.openflowplugin.libraries.liblldp.BufferException;
 import org.opendaylight.openflowplugin.libraries.liblldp.HexEncode;
 import org.opendaylight.openflowplugin.libraries.liblldp.Packet;
 import org.opendaylight.openflowplugin.libraries.liblldp.PacketException;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.IpAddress;
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.IpAddressBuilder;
-import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.IpPrefix;
-import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.IpPrefixBuilder;
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.Ipv6Address;
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.yang.types.rev130715.MacAddress;
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.yang.types.rev130715.Uuid;
@@ -81,12 +82,14 @@ public class SubnetRoutePacketInHandler implements PacketProcessingListener {
     private final Ipv6NdUtilService ipv6NdUtilService;
     private final Labeled<Labeled<Counter>> packetInCounter;
     private final VpnUtil vpnUtil;
+    private final SubnetRouteResolutionCache subnetRouteCache;
 
     @Inject
     public SubnetRoutePacketInHandler(final DataBroker dataBroker, final PacketProcessingService packetService,
             final OdlInterfaceRpcService odlInterfaceRpcService,
             final ICentralizedSwitchProvider centralizedSwitchProvider, final IInterfaceManager interfaceManager,
-            final Ipv6NdUtilService ipv6NdUtilService, MetricProvider metricProvider, VpnUtil vpnUtil) {
+            final Ipv6NdUtilService ipv6NdUtilService, MetricProvider metricProvider, VpnUtil vpnUtil,
+            final SubnetRouteResolutionCache subnetRouteCache) {
         this.dataBroker = dataBroker;
         this.packetService = packetService;
         this.odlInterfaceRpcService = odlInterfaceRpcService;
@@ -97,6 +100,7 @@ public class SubnetRoutePacketInHandler implements PacketProcessingListener {
                 .project(CounterUtility.getProject()).module(CounterUtility.getModule())
                 .id(CounterUtility.getSubnetRouteId()).build(), "action","sourceIp.destinationIp");
         this.vpnUtil = vpnUtil;
+        this.subnetRouteCache = subnetRouteCache;
     }
 
     @Override
@@ -187,13 +191,21 @@ public class SubnetRoutePacketInHandler implements PacketProcessingListener {
             throws UnknownHostException, InterruptedException, ExecutionException {
         Uint32 vpnId = Uint32.valueOf(MetaDataUtil.getVpnIdFromMetadata(metadata));
 
+        if (!subnetRouteCache.tryPunt(vpnId, dstIpStr)) {
+            Counter counter = packetInCounter.label(CounterUtility.subnet_route_packet_ignored.toString())
+                    .label(srcIpStr + "." + dstIpStr);
+            counter.increment();
+            LOG.debug("{} onPacketReceived: Ignoring IP packet with destination Ip {} and source Ip {} vpnId {}"
+                    + " as a packet to the same destination was just processed", LOGGING_PREFIX, dstIpStr, srcIpStr,
+                    vpnId);
+            return;
+        }
+
         LOG.info("{} onPacketReceived: Processing IP Packet received with Source IP {} and Target IP {}"
                 + " and vpnId {}", LOGGING_PREFIX, srcIpStr, dstIpStr, vpnId);
 
-        Optional<VpnIds> vpnIdsOptional = SingleTransactionDataBroker.syncReadOptional(dataBroker,
-                LogicalDatastoreType.CONFIGURATION, VpnUtil.getVpnIdToVpnInstanceIdentifier(vpnId));
-
-        if (!vpnIdsOptional.isPresent()) {
+        VpnIds vpnIds = getVpnIds(vpnId);
+        if (vpnIds == null) {
             // Donot trigger subnetroute logic for packets from
             // unknown VPNs
             Counter counter = packetInCounter.label(CounterUtility.subnet_route_packet_drop.toString())
@@ -204,7 +216,7 @@ public class SubnetRoutePacketInHandler implements PacketProcessingListener {
             return;
         }
 
-        String vpnIdVpnInstanceName = vpnIdsOptional.get().getVpnInstanceName();
+        String vpnIdVpnInstanceName = vpnIds.getVpnInstanceName();
         VpnPortipToPort persistedIP =
                 vpnUtil.getNeutronPortFromVpnPortFixedIp(vpnIdVpnInstanceName, dstIpStr);
         if (persistedIP != null && !persistedIP.isLearntIp()) {
@@ -238,24 +250,38 @@ public class SubnetRoutePacketInHandler implements PacketProcessingListener {
             return;
         }
 
-        if (!vpnIdsOptional.get().isExternalVpn()) {
+        if (!vpnIds.isExternalVpn()) {
             handleInternalVpnSubnetRoutePacket(metadata, dstIp, srcIpStr, dstIpStr, vpnIdVpnInstanceName,
-                    elanTag);
+                    vpnId, elanTag);
             return;
         }
 
-        handleBgpVpnSubnetRoute(srcMac, dstIp, dstIpStr, srcIpStr, elanTag);
+        handleBgpVpnSubnetRoute(srcMac, dstIp, dstIpStr, srcIpStr, vpnId, elanTag);
+    }
+
+    @Nullable
+    private VpnIds getVpnIds(Uint32 vpnId) throws InterruptedException, ExecutionException {
+        VpnIds vpnIds = subnetRouteCache.getVpnIds(vpnId);
+        if (vpnIds == null) {
+            // Only the known VPNs are cached, as the VPN of a vpn id is written after its VPN instance event
+            Optional<VpnIds> vpnIdsOptional = SingleTransactionDataBroker.syncReadOptional(dataBroker,
+                    LogicalDatastoreType.CONFIGURATION, VpnUtil.getVpnIdToVpnInstanceIdentifier(vpnId));
+            if (vpnIdsOptional.isPresent()) {
+                vpnIds = vpnIdsOptional.get();
+                subnetRouteCache.putVpnIds(vpnId, vpnIds);
+            }
+        }
+        return vpnIds;
     }
 
     private void handleBgpVpnSubnetRoute(String srcMac, byte[] dstIp, String dstIpStr, String srcIpStr,
-            long elanTag) throws UnknownHostException {
+            Uint32 vpnId, long elanTag) throws UnknownHostException {
         LOG.info("{} handleBgpVpnSubnetRoute: Processing IP Packet received with Source IP {} and Target IP {}"
                 + " and elan Tag {}", LOGGING_PREFIX, srcIpStr, dstIpStr, elanTag);
-        SubnetOpDataEntry targetSubnetForPacketOut =
-                getTargetSubnetForPacketOut(elanTag, dstIpStr);
+        SubnetRoute targetSubnetForPacketOut = getTargetSubnetForPacketOut(vpnId, elanTag, dstIpStr);
         if (targetSubnetForPacketOut != null) {
             // Handle subnet routes ip requests
-            transmitArpOrNsPacket(targetSubnetForPacketOut.getNhDpnId(),
+            transmitArpOrNsPacket(targetSubnetForPacketOut.getSubnetOpDataEntry().getNhDpnId(),
                                         srcIpStr, srcMac, dstIp, dstIpStr, elanTag);
         } else {
             Counter counter = packetInCounter.label(CounterUtility.subnet_route_packet_failed.toString())
@@ -267,7 +293,7 @@ public class SubnetRoutePacketInHandler implements PacketProcessingListener {
     }
 
     private void handleInternalVpnSubnetRoutePacket(Uint64 metadata, byte[] dstIp, String srcIpStr, String dstIpStr,
-            String vpnIdVpnInstanceName, long elanTag)
+            String vpnIdVpnInstanceName, Uint32 vpnId, long elanTag)
             throws InterruptedException, ExecutionException, UnknownHostException {
         String vmVpnInterfaceName = vpnUtil.getVpnInterfaceName(metadata);
         if (isTunnel(vmVpnInterfaceName)) {
@@ -285,7 +311,7 @@ public class SubnetRoutePacketInHandler implements PacketProcessingListener {
                new ArrayList<>(vmVpnInterface.nonnullVpnInstanceNames().values()))
                && !vpnUtil.isBgpVpnInternet(vpnIdVpnInstanceName)) {
             LOG.trace("Unknown IP is in internal network");
-            handlePacketToInternalNetwork(dstIp, dstIpStr, elanTag, srcIpStr);
+            handlePacketToInternalNetwork(dstIp, dstIpStr, vpnId, elanTag, srcIpStr);
         } else {
             LOG.trace("Unknown IP is in external network");
             String vpnName = vpnUtil.getInternetVpnFromVpnInstanceList(
@@ -328,56 +354,39 @@ public class SubnetRoutePacketInHandler implements PacketProcessingListener {
         }
     }
 
-    private void handlePacketToInternalNetwork(byte[] dstIp, String dstIpStr, long elanTag, String srcIpStr)
-            throws UnknownHostException {
-        try {
-            SubnetOpDataEntry targetSubnetForPacketOut =
-                    getTargetSubnetForPacketOut(elanTag, dstIpStr);
+    private void handlePacketToInternalNetwork(byte[] dstIp, String dstIpStr, Uint32 vpnId, long elanTag,
+            String srcIpStr) throws UnknownHostException {
+        SubnetRoute targetSubnetForPacketOut = getTargetSubnetForPacketOut(vpnId, elanTag, dstIpStr);
 
-            if (targetSubnetForPacketOut == null) {
-                LOG.debug("Couldn't find matching subnet for elan tag {} and destination ip {}", elanTag, dstIpStr);
-                Counter counter = packetInCounter.label(CounterUtility.subnet_route_packet_failed.toString())
-                        .label(srcIpStr + "." + dstIpStr);
-                counter.increment();
-                return;
-            }
-
-            Optional<Subnetmap> subnetMap = SingleTransactionDataBroker.syncReadOptional(dataBroker,
-                    LogicalDatastoreType.CONFIGURATION,
-                    VpnUtil.buildSubnetmapIdentifier(targetSubnetForPacketOut.getSubnetId()));
-            if (!subnetMap.isPresent()) {
-                LOG.debug("Couldn't find subnet map for subnet {}", targetSubnetForPacketOut.getSubnetId());
-                Counter counter = packetInCounter.label(CounterUtility.subnet_route_packet_failed.toString())
-                        .label(srcIpStr + "." + dstIpStr);
-                counter.increment();
-                return;
-            }
-
-            String sourceIp = subnetMap.get().getRouterInterfaceFixedIp();
-            if (sourceIp == null) {
-                LOG.debug("Subnet map {} doesn't have a router interface ip defined", subnetMap.get().getId());
-                Counter counter = packetInCounter.label(CounterUtility.subnet_route_packet_failed.toString())
-                        .label("." + dstIpStr);
-                counter.increment();
-                return;
-            }
+        if (targetSubnetForPacketOut == null) {
+            LOG.debug("Couldn't find matching subnet for elan tag {} and destination ip {}", elanTag, dstIpStr);
+            Counter counter = packetInCounter.label(CounterUtility.subnet_route_packet_failed.toString())
+                    .label(srcIpStr + "." + dstIpStr);
+            counter.increment();
+            return;
+        }
 
-            String sourceMac = subnetMap.get().getRouterIntfMacAddress();
-            if (sourceMac == null) {
-                LOG.debug("Subnet map {} doesn't have a router interface mac address defined",
-                        subnetMap.get().getId());
-                Counter counter = packetInCounter.label(CounterUtility.subnet_route_packet_failed.toString())
-                        .label(sourceIp + "." + dstIpStr);
-                counter.increment();
-                return;
-            }
+        Subnetmap subnetMap = targetSubnetForPacketOut.getSubnetmap();
+        String sourceIp = subnetMap.getRouterInterfaceFixedIp();
+        if (sourceIp == null) {
+            LOG.debug("Subnet map {} doesn't have a router interface ip defined", subnetMap.getId());
+            Counter counter = packetInCounter.label(CounterUtility.subnet_route_packet_failed.toString())
+                    .label("." + dstIpStr);
+            counter.increment();
+            return;
+        }
 
-            transmitArpOrNsPacket(targetSubnetForPacketOut.getNhDpnId(),
-                                        sourceIp, sourceMac, dstIp, dstIpStr, elanTag);
-        } catch (InterruptedException | ExecutionException e) {
-            LOG.error("handlePacketToInternalNetwork: Failed to read data store for destIp {} elanTag {}", dstIpStr,
-                    elanTag);
+        String sourceMac = subnetMap.getRouterIntfMacAddress();
+        if (sourceMac == null) {
+            LOG.debug("Subnet map {} doesn't have a router interface mac address defined", subnetMap.getId());
+            Counter counter = packetInCounter.label(CounterUtility.subnet_route_packet_failed.toString())
+                    .label(sourceIp + "." + dstIpStr);
+            counter.increment();
+            return;
         }
+
+        transmitArpOrNsPacket(targetSubnetForPacketOut.getSubnetOpDataEntry().getNhDpnId(),
+                                    sourceIp, sourceMac, dstIp, dstIpStr, elanTag);
     }
 
     private void handlePacketFromTunnelToExternalNetwork(String vpnIdVpnInstanceName, String srcIpStr, byte[] dstIp,
@@ -412,11 +421,16 @@ public class SubnetRoutePacketInHandler implements PacketProcessingListener {
             return;
         }
 
-        java.util.Optional<ExternalIps> externalIp = externalRouter.getExternalIps().values().stream()
-                .filter(eip -> vpnInstanceNameUuid.equals(eip.getSubnetId())).findFirst();
-        if (!externalIp.isPresent()) {
+        ExternalIps externalIp = null;
+        for (ExternalIps eip : externalIpsMap.values()) {
+            if (vpnInstanceNameUuid.equals(eip.getSubnetId())) {
+                externalIp = eip;
+                break;
+            }
+        }
+        if (externalIp == null) {
             Counter counter = packetInCounter.label(CounterUtility.subnet_route_packet_failed.toString())
-                    .label(externalIp.get().getIpAddress() + "." + dstIpStr);
+                    .label("." + dstIpStr);
             counter.increment();
             LOG.debug("{} handlePacketToExternalNetwork: Router {} doesn't have an external ip for subnet id {}.",
                     LOGGING_PREFIX, externalRouter.getRouterName(), vpnInstanceNameUuid);
@@ -426,24 +440,47 @@ public class SubnetRoutePacketInHandler implements PacketProcessingListener {
         Uint64 dpnId = centralizedSwitchProvider.getPrimarySwitchForRouter(externalRouter.getRouterName());
         if (Uint64.ZERO.equals(dpnId)) {
             Counter counter = packetInCounter.label(CounterUtility.subnet_route_packet_failed.toString())
-                    .label(externalIp.get().getIpAddress() + "." + dstIpStr);
+                    .label(externalIp.getIpAddress() + "." + dstIpStr);
             counter.increment();
             LOG.debug("{} handlePacketToExternalNetwork: Could not find primary switch for router {}.",
                     LOGGING_PREFIX, externalRouter.getRouterName());
             return;
         }
 
-        transmitArpOrNsPacket(dpnId, externalIp.get().getIpAddress(), externalRouter.getExtGwMacAddress(), dstIp,
+        transmitArpOrNsPacket(dpnId, externalIp.getIpAddress(), externalRouter.getExtGwMacAddress(), dstIp,
                 dstIpStr, elanTag);
 
         Counter counter = packetInCounter.label(CounterUtility.subnet_route_packet_processed.toString())
-                .label(externalIp.get().getIpAddress() + "." + dstIpStr);
+                .label(externalIp.getIpAddress() + "." + dstIpStr);
         counter.increment();
     }
 
-    // return only the first VPN subnetopdataentry
+    // return only the first VPN subnet route
+    @Nullable
+    private SubnetRoute getTargetSubnetForPacketOut(Uint32 vpnId, long elanTag, String ipAddress) {
+        List<SubnetRoute> subnetRoutes = subnetRouteCache.getSubnetRoutes(vpnId, elanTag);
+        if (subnetRoutes == null) {
+            subnetRoutes = getSubnetRoutes(vpnId, elanTag);
+            if (subnetRoutes == null) {
+                return null;
+            }
+        }
+        IpAddress ip = IpAddressBuilder.getDefaultInstance(ipAddress);
+        for (SubnetRoute subnetRoute : subnetRoutes) {
+            boolean match = subnetRoute.matches(ip);
+            LOG.trace("{} getTargetDpnForPacketOut: Viewing Subnet {} matching {}", LOGGING_PREFIX,
+                subnetRoute.getSubnetOpDataEntry().getSubnetId().getValue(), match);
+            if (match) {
+                return subnetRoute;
+            }
+        }
+        return null;
+    }
+
+    // return the VPN subnet routes of the subnets of the network of the elan, or null if they could not be read.
+    // They are cached only once every VPN subnet of the network has its next hop dpn, no negative is cached.
     @Nullable
-    private SubnetOpDataEntry getTargetSubnetForPacketOut(long elanTag, String ipAddress) {
+    private List<SubnetRoute> getSubnetRoutes(Uint32 vpnId, long elanTag) {
         ElanTagName elanInfo = vpnUtil.getElanInfoByElanTag(elanTag);
         if (elanInfo == null) {
             LOG.error("{} getTargetDpnForPacketOut: Unable to retrieve ElanInfo for elanTag {}", LOGGING_PREFIX,
@@ -457,40 +494,34 @@ public class SubnetRoutePacketInHandler implements PacketProcessingListener {
             if (!optionalNetworkMap.isPresent()) {
                 LOG.debug("{} getTargetDpnForPacketOut: No network map found for elan info {}", LOGGING_PREFIX,
                         elanInfo.getName());
-                return null;
+                return Collections.emptyList();
             }
             List<Uuid> subnetList = optionalNetworkMap.get().getSubnetIdList();
             LOG.debug("{} getTargetDpnForPacketOut: Obtained subnetList as {} for network {}", LOGGING_PREFIX,
                     subnetList, elanInfo.getName());
-            if (subnetList != null) {
-                for (Uuid subnetId : subnetList) {
-                    String vpnName = null;
-                    Subnetmap sn = vpnUtil.getSubnetmapFromItsUuid(subnetId);
-                    if (sn != null && sn.getVpnId() != null) {
-                        vpnName = sn.getVpnId().getValue();
-                    }
-                    if (vpnName == null) {
-                        continue;
-                    }
-                    Optional<SubnetOpDataEntry> optionalSubs = SingleTransactionDataBroker.syncReadOptional(dataBroker,
-                        LogicalDatastoreType.OPERATIONAL, VpnUtil.buildSubnetOpDataEntryInstanceIdentifier(subnetId));
-                    if (!optionalSubs.isPresent()) {
-                        continue;
-                    }
-                    SubnetOpDataEntry subOpEntry = optionalSubs.get();
-                    if (subOpEntry.getNhDpnId() != null) {
-                        LOG.trace("{} getTargetDpnForPacketOut: Viewing Subnet {}", LOGGING_PREFIX,
-                            subnetId.getValue());
-                        IpPrefix cidr = IpPrefixBuilder.getDefaultInstance(subOpEntry.getSubnetCidr());
-                        boolean match = NWUtil.isIpAddressInRange(IpAddressBuilder.getDefaultInstance(ipAddress), cidr);
-                        LOG.trace("{} getTargetDpnForPacketOut: Viewing Subnet {} matching {}", LOGGING_PREFIX,
-                            subnetId.getValue(), match);
-                        if (match) {
-                            return subOpEntry;
-                        }
-                    }
+            if (subnetList == null) {
+                return Collections.emptyList();
+            }
+            List<SubnetRoute> subnetRoutes = new ArrayList<>(subnetList.size());
+            boolean resolved = true;
+            for (Uuid subnetId : subnetList) {
+                Subnetmap sn = vpnUtil.getSubnetmapFromItsUuid(subnetId);
+                if (sn == null || sn.getVpnId() == null) {
+                    continue;
+                }
+                Optional<SubnetOpDataEntry> optionalSubs = SingleTransactionDataBroker.syncReadOptional(dataBroker,
+                    LogicalDatastoreType.OPERATIONAL, VpnUtil.buildSubnetOpDataEntryInstanceIdentifier(subnetId));
+                if (optionalSubs.isPresent() && optionalSubs.get().getNhDpnId() != null) {
+                    LOG.trace("{} getTargetDpnForPacketOut: Viewing Subnet {}", LOGGING_PREFIX, subnetId.getValue());
+                    subnetRoutes.add(new SubnetRoute(optionalSubs.get(), sn));
+                } else {
+                    resolved = false;
                 }
             }
+            if (resolved) {
+                subnetRouteCache.putSubnetRoutes(vpnId, elanTag, subnetRoutes);
+            }
+            return subnetRoutes;
         } catch (InterruptedException | ExecutionException e) {
             LOG.error("{} getTargetDpnForPacketOut: Failed to read data store for elan {}", LOGGING_PREFIX,
                     elanInfo.getName());
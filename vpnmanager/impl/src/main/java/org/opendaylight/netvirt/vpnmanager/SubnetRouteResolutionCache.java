@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.vpnmanager;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.eclipse.jdt.annotation.Nullable;
+import org.opendaylight.genius.mdsalutil.NWUtil;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.IpAddress;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.IpPrefix;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.IpPrefixBuilder;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.yang.types.rev130715.Uuid;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3vpn.rev130911.subnet.op.data.SubnetOpDataEntry;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3vpn.rev130911.vpn.id.to.vpn.instance.VpnIds;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.neutronvpn.rev150602.subnetmaps.Subnetmap;
+import org.opendaylight.yangtools.yang.common.Uint32;
+
+/**
+ * Caches the resolution of the subnet route packets punted to the controller.
+ *
+ * <p>The VPN of a vpn id, and the subnet routes of an ELAN on a VPN, are dropped on any subnetmap or VPN instance
+ * change, and the subnet routes of a subnet on any change of its next hop dpn or cidr. Only what is found is cached,
+ * and is kept for at most {@link VpnConstants#SUBNET_ROUTE_CACHE_TTL_MILLIS}. The destinations of the punted packets
+ * are remembered for {@link VpnConstants#SUBNET_ROUTE_PUNT_DEDUP_MILLIS}, so that the packets to the same unresolved
+ * destination trigger a single ARP or NS per window.
+ */
+@Singleton
+public class SubnetRouteResolutionCache {
+
+    private final Cache<Uint32, VpnIds> vpnIdsCache;
+    private final Cache<Pair<Uint32, Long>, List<SubnetRoute>> subnetRoutesCache;
+    private final Cache<Pair<Uint32, String>, Boolean> puntedDestinations;
+
+    @Inject
+    public SubnetRouteResolutionCache() {
+        this(VpnConstants.SUBNET_ROUTE_CACHE_TTL_MILLIS, VpnConstants.SUBNET_ROUTE_PUNT_DEDUP_MILLIS);
+    }
+
+    SubnetRouteResolutionCache(long ttlMillis, long dedupMillis) {
+        this.vpnIdsCache = CacheBuilder.newBuilder().maximumSize(VpnConstants.SUBNET_ROUTE_CACHE_MAX_SIZE)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS).build();
+        this.subnetRoutesCache = CacheBuilder.newBuilder().maximumSize(VpnConstants.SUBNET_ROUTE_CACHE_MAX_SIZE)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS).build();
+        this.puntedDestinations = CacheBuilder.newBuilder().maximumSize(VpnConstants.SUBNET_ROUTE_CACHE_MAX_SIZE)
+                .expireAfterWrite(dedupMillis, TimeUnit.MILLISECONDS).build();
+    }
+
+    @Nullable
+    public VpnIds getVpnIds(Uint32 vpnId) {
+        return vpnIdsCache.getIfPresent(vpnId);
+    }
+
+    public void putVpnIds(Uint32 vpnId, VpnIds vpnIds) {
+        vpnIdsCache.put(vpnId, vpnIds);
+    }
+
+    /**
+     * Gets the subnet routes of an ELAN on a VPN.
+     *
+     * @param vpnId the vpn id
+     * @param elanTag the elan tag
+     * @return the subnet routes, in the order of the subnets of the network, or null if not cached
+     */
+    @Nullable
+    public List<SubnetRoute> getSubnetRoutes(Uint32 vpnId, long elanTag) {
+        return subnetRoutesCache.getIfPresent(ImmutablePair.of(vpnId, elanTag));
+    }
+
+    /**
+     * Caches the subnet routes of an ELAN on a VPN, unless there are none.
+     *
+     * @param vpnId the vpn id
+     * @param elanTag the elan tag
+     * @param subnetRoutes the subnet routes, every VPN subnet of the network of the elan having its next hop dpn
+     */
+    public void putSubnetRoutes(Uint32 vpnId, long elanTag, List<SubnetRoute> subnetRoutes) {
+        if (!subnetRoutes.isEmpty()) {
+            subnetRoutesCache.put(ImmutablePair.of(vpnId, elanTag), subnetRoutes);
+        }
+    }
+
+    /**
+     * Records a packet to a destination being punted.
+     *
+     * @param vpnId the vpn id
+     * @param destinationIp the destination ip
+     * @return true if it is the first packet to the destination within the dedup window, else false
+     */
+    public boolean tryPunt(Uint32 vpnId, String destinationIp) {
+        return puntedDestinations.asMap().putIfAbsent(ImmutablePair.of(vpnId, destinationIp), Boolean.TRUE) == null;
+    }
+
+    public void invalidateSubnetRoutes() {
+        subnetRoutesCache.invalidateAll();
+    }
+
+    /**
+     * Drops the subnet routes which include a subnet.
+     *
+     * @param subnetId the subnet id
+     */
+    public void invalidateSubnetRoutes(Uuid subnetId) {
+        subnetRoutesCache.asMap().values().removeIf(subnetRoutes -> subnetRoutes.stream()
+                .anyMatch(subnetRoute -> subnetId.equals(subnetRoute.getSubnetOpDataEntry().getSubnetId())));
+    }
+
+    public void invalidateVpns() {
+        vpnIdsCache.invalidateAll();
+        subnetRoutesCache.invalidateAll();
+    }
+
+    /**
+     * A subnet of an ELAN, with its subnet route op data and subnetmap.
+     */
+    public static final class SubnetRoute {
+        private final IpPrefix cidr;
+        private final SubnetOpDataEntry subnetOpDataEntry;
+        private final Subnetmap subnetmap;
+
+        public SubnetRoute(SubnetOpDataEntry subnetOpDataEntry, Subnetmap subnetmap) {
+            this.cidr = IpPrefixBuilder.getDefaultInstance(subnetOpDataEntry.getSubnetCidr());
+            this.subnetOpDataEntry = subnetOpDataEntry;
+            this.subnetmap = subnetmap;
+        }
+
+        public boolean matches(IpAddress ipAddress) {
+            return NWUtil.isIpAddressInRange(ipAddress, cidr);
+        }
+
+        public SubnetOpDataEntry getSubnetOpDataEntry() {
+            return subnetOpDataEntry;
+        }
+
+        public Subnetmap getSubnetmap() {
+            return subnetmap;
+        }
+    }
+}
@@ -51,10 +51,12 @@ public class SubnetmapChangeListener extends AbstractAsyncDataTreeChangeListener
     private final IVpnManager vpnManager;
     private final ManagedNewTransactionRunner txRunner;
     private final JobCoordinator jobCoordinator;
+    private final SubnetRouteResolutionCache subnetRouteCache;
 
     @Inject
     public SubnetmapChangeListener(final DataBroker dataBroker, final VpnSubnetRouteHandler vpnSubnetRouteHandler,
-                                   VpnUtil vpnUtil, IVpnManager vpnManager,JobCoordinator jobCoordinator) {
+                                   VpnUtil vpnUtil, IVpnManager vpnManager,JobCoordinator jobCoordinator,
+                                   SubnetRouteResolutionCache subnetRouteCache) {
         super(dataBroker, LogicalDatastoreType.CONFIGURATION,
                 InstanceIdentifier.create(Subnetmaps.class).child(Subnetmap.class),
                 Executors.newListeningSingleThreadExecutor("SubnetmapChangeListener", LOG));
@@ -64,6 +66,7 @@ public class SubnetmapChangeListener extends AbstractAsyncDataTreeChangeListener
         this.vpnManager = vpnManager;
         this.txRunner = new ManagedNewTransactionRunnerImpl(dataBroker);
         this.jobCoordinator = jobCoordinator;
+        this.subnetRouteCache = subnetRouteCache;
         start();
     }
 
@@ -82,6 +85,7 @@ public class SubnetmapChangeListener extends AbstractAsyncDataTreeChangeListener
     @Override
     public void add(InstanceIdentifier<Subnetmap> identifier, Subnetmap subnetmap) {
         LOG.debug("add: subnetmap method - key: {}, value: {}", identifier, subnetmap);
+        subnetRouteCache.invalidateSubnetRoutes();
         Uuid subnetId = subnetmap.getId();
         Network network = vpnUtil.getNeutronNetwork(subnetmap.getNetworkId());
         if (network == null) {
@@ -134,6 +138,7 @@ public class SubnetmapChangeListener extends AbstractAsyncDataTreeChangeListener
     @Override
     public void remove(InstanceIdentifier<Subnetmap> identifier, Subnetmap subnetmap) {
         LOG.trace("remove: subnetmap method - key: {}, value: {}", identifier, subnetmap);
+        subnetRouteCache.invalidateSubnetRoutes();
         jobCoordinator.enqueueJob("SUBNETROUTE-" + subnetmap.getId(), () -> {
             java.util.Optional.ofNullable(subnetmap.getPortList()).ifPresent(portList ->
                     portList.forEach(port -> vpnSubnetRouteHandler.onPortRemovedFromSubnet(subnetmap, port)));
@@ -148,6 +153,7 @@ public class SubnetmapChangeListener extends AbstractAsyncDataTreeChangeListener
             subnetmapUpdate) {
         LOG.debug("update: method - key {}, original {}, update {}", identifier,
                   subnetmapOriginal, subnetmapUpdate);
+        subnetRouteCache.invalidateSubnetRoutes();
         Uuid subnetId = subnetmapUpdate.getId();
         Network network = vpnUtil.getNeutronNetwork(subnetmapUpdate.getNetworkId());
         if (network == null) {
@@ -43,6 +43,12 @@ public interface VpnConstants {
     long LOWER_PSEUDO_LPORT_TAG = Long.getLong("lower.lport.gid", 170001);
     long UPPER_PSEUDO_LPORT_TAG = Long.getLong("upper.lport.gid", 270000);
 
+    // Resolution of the subnet route packets punted to the controller, and at most one ARP/NS per destination
+    // per dedup window
+    long SUBNET_ROUTE_CACHE_TTL_MILLIS = Long.getLong("subnet.route.cache.ttl.millis", 10000);
+    long SUBNET_ROUTE_PUNT_DEDUP_MILLIS = Long.getLong("subnet.route.punt.dedup.millis", 1000);
+    long SUBNET_ROUTE_CACHE_MAX_SIZE = 100000;
+
     int IP_V6_ETHTYPE = 0x86DD;
     int ETHTYPE_START = 96;
     int TWO_BYTES = 16;
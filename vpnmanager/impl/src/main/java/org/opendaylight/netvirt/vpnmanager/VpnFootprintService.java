@@ -17,9 +17,13 @@ import com.google.common.util.concurrent.MoreExecutors;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
@@ -79,6 +83,9 @@ public class VpnFootprintService implements IVpnFootprintService {
     private final NotificationPublishService notificationPublishService;
     private final IInterfaceManager interfaceManager;
     private final VpnUtil vpnUtil;
+    // The interfaces of the dpns active on a vpn, by (primary rd, dpn id), guarded by the dpn footprint lock.
+    // Only the adds are served from it, it is rebuilt from the datastore whenever the footprint is read.
+    private final ConcurrentMap<ImmutablePair<String, Uint64>, Set<String>> dpnFootprints = new ConcurrentHashMap<>();
 
     @Inject
     public VpnFootprintService(final DataBroker dataBroker, final IFibManager fibManager,
@@ -130,53 +137,70 @@ public class VpnFootprintService implements IVpnFootprintService {
     private void createOrUpdateVpnToDpnListForInterfaceName(Uint32 vpnId, String primaryRd, Uint64 dpnId,
             String intfName, String vpnName) {
         AtomicBoolean newDpnOnVpn = new AtomicBoolean(false);
-        /* Starts synchronized block. This ensures only one reader/writer get access to vpn-dpn-list
+        /* Starts synchronized block on the dpn. This ensures only one reader/writer get access to the footprint of
+         * the dpn, while the interfaces of the other dpns of the vpn are added in parallel. The vpn lock is taken
+         * as well when the dpn may enter the vpn, which serializes it with the flush of the vpn footprint.
          * The future.get ensures that the write to the datastore is complete before leaving the synchronized block.
          */
-        // FIXME: separate this out somehow?
-        final ReentrantLock lock = JvmGlobalLocks.getLockForString(vpnName);
-        lock.lock();
+        final ImmutablePair<String, Uint64> dpnKey = ImmutablePair.of(primaryRd, dpnId);
+        final ReentrantLock dpnLock = getDpnFootprintLock(vpnName, dpnId);
+        dpnLock.lock();
         try {
-            ListenableFuture<?> future = txRunner.callWithNewReadWriteTransactionAndSubmit(OPERATIONAL, tx -> {
-                InstanceIdentifier<VpnToDpnList> id = VpnHelper.getVpnToDpnListIdentifier(primaryRd, dpnId);
-                VpnInterfaces vpnInterface = new VpnInterfacesBuilder().setInterfaceName(intfName).build();
-                Optional<VpnToDpnList> dpnInVpn = tx.read(id).get();
-                if (dpnInVpn.isPresent()) {
-                    VpnToDpnList vpnToDpnList = dpnInVpn.get();
-                    List<VpnInterfaces> vpnInterfaces = new ArrayList<>(vpnToDpnList.nonnullVpnInterfaces().values());
-                    vpnInterfaces.add(vpnInterface);
-                    VpnToDpnListBuilder vpnToDpnListBuilder = new VpnToDpnListBuilder(vpnToDpnList);
-                    vpnToDpnListBuilder.setDpnState(VpnToDpnList.DpnState.Active).setVpnInterfaces(vpnInterfaces);
-
-                    tx.mergeParentStructurePut(id, vpnToDpnListBuilder.build());
-                    /*
-                     * If earlier state was inactive, it is considered new DPN coming back to the
-                     * same VPN
-                     */
-                    if (vpnToDpnList.getDpnState() == VpnToDpnList.DpnState.Inactive) {
-                        newDpnOnVpn.set(true);
-                    }
-                    LOG.debug("createOrUpdateVpnToDpnList: Updating vpn footprint for vpn {} vpnId {} interface {}"
-                            + " on dpn {}", vpnName, vpnId, intfName, dpnId);
-                } else {
-                    List<VpnInterfaces> vpnInterfaces = new ArrayList<>();
-                    vpnInterfaces.add(vpnInterface);
-                    VpnToDpnListBuilder vpnToDpnListBuilder = new VpnToDpnListBuilder().setDpnId(dpnId);
-                    vpnToDpnListBuilder.setDpnState(VpnToDpnList.DpnState.Active).setVpnInterfaces(vpnInterfaces);
-
-                    tx.mergeParentStructurePut(id, vpnToDpnListBuilder.build());
-                    newDpnOnVpn.set(true);
-                    LOG.debug("createOrUpdateVpnToDpnList: Creating vpn footprint for vpn {} vpnId {} interface {}"
-                            + " on dpn {}", vpnName, vpnId, intfName, dpnId);
+            InstanceIdentifier<VpnToDpnList> id = VpnHelper.getVpnToDpnListIdentifier(primaryRd, dpnId);
+            VpnInterfaces vpnInterface = new VpnInterfacesBuilder().setInterfaceName(intfName).build();
+            Set<String> dpnInterfaces = dpnFootprints.get(dpnKey);
+            if (dpnInterfaces != null) {
+                // The dpn is already active on the vpn, only the interface is added to its footprint
+                if (!dpnInterfaces.contains(intfName)) {
+                    txRunner.callWithNewWriteOnlyTransactionAndSubmit(OPERATIONAL, tx -> tx.mergeParentStructurePut(
+                            id.child(VpnInterfaces.class, vpnInterface.key()), vpnInterface)).get();
+                    dpnInterfaces.add(intfName);
                 }
-            });
-            future.get();
+                LOG.debug("createOrUpdateVpnToDpnList: Updating vpn footprint for vpn {} vpnId {} interface {}"
+                        + " on dpn {}", vpnName, vpnId, intfName, dpnId);
+            } else {
+                final ReentrantLock lock = JvmGlobalLocks.getLockForString(vpnName);
+                lock.lock();
+                try {
+                    Set<String> footprint = new HashSet<>();
+                    ListenableFuture<?> future = txRunner.callWithNewReadWriteTransactionAndSubmit(OPERATIONAL, tx -> {
+                        Optional<VpnToDpnList> dpnInVpn = tx.read(id).get();
+                        if (dpnInVpn.isPresent()) {
+                            VpnToDpnList vpnToDpnList = dpnInVpn.get();
+                            vpnToDpnList.nonnullVpnInterfaces().keySet()
+                                    .forEach(key -> footprint.add(key.getInterfaceName()));
+                            /*
+                             * If earlier state was inactive, it is considered new DPN coming back to the
+                             * same VPN
+                             */
+                            if (vpnToDpnList.getDpnState() == VpnToDpnList.DpnState.Inactive) {
+                                newDpnOnVpn.set(true);
+                            }
+                            LOG.debug("createOrUpdateVpnToDpnList: Updating vpn footprint for vpn {} vpnId {}"
+                                    + " interface {} on dpn {}", vpnName, vpnId, intfName, dpnId);
+                        } else {
+                            newDpnOnVpn.set(true);
+                            LOG.debug("createOrUpdateVpnToDpnList: Creating vpn footprint for vpn {} vpnId {}"
+                                    + " interface {} on dpn {}", vpnName, vpnId, intfName, dpnId);
+                        }
+                        tx.mergeParentStructureMerge(id, new VpnToDpnListBuilder().setDpnId(dpnId)
+                                .setDpnState(VpnToDpnList.DpnState.Active)
+                                .setVpnInterfaces(Collections.singletonMap(vpnInterface.key(), vpnInterface)).build());
+                    });
+                    future.get();
+                    footprint.add(intfName);
+                    dpnFootprints.put(dpnKey, footprint);
+                } finally {
+                    lock.unlock();
+                }
+            }
         } catch (InterruptedException | ExecutionException e) {
+            dpnFootprints.remove(dpnKey);
             LOG.error("createOrUpdateVpnToDpnList: Error adding to dpnToVpnList for vpn {} vpnId {} interface {}"
                     + " dpn {}", vpnName, vpnId, intfName, dpnId, e);
             throw new RuntimeException(e.getMessage(), e);
         } finally {
-            lock.unlock();
+            dpnLock.unlock();
         }
         LOG.info("createOrUpdateVpnToDpnList: Created/Updated vpn footprint for vpn {} vpnId {} interfacName{}"
                 + " on dpn {}", vpnName, vpnId, intfName, dpnId);
@@ -202,8 +226,9 @@ public class VpnFootprintService implements IVpnFootprintService {
         /* Starts synchronized block. This ensures only one reader/writer get access to vpn-dpn-list
          * The future.get ensures that the write to the datastore is complete before leaving the synchronized block.
          */
-        // FIXME: separate this out somehow?
+        final ReentrantLock dpnLock = getDpnFootprintLock(vpnName, dpnId);
         final ReentrantLock lock = JvmGlobalLocks.getLockForString(vpnName);
+        dpnLock.lock();
         lock.lock();
         try {
             ListenableFuture<?> future = txRunner.callWithNewReadWriteTransactionAndSubmit(OPERATIONAL, tx -> {
@@ -245,6 +270,7 @@ public class VpnFootprintService implements IVpnFootprintService {
             throw new RuntimeException(e.getMessage(), e); //TODO: Avoid this
         } finally {
             lock.unlock();
+            dpnLock.unlock();
         }
         /*
          * Informing the Fib only after writeTxn is submitted successfuly.
@@ -259,16 +285,22 @@ public class VpnFootprintService implements IVpnFootprintService {
     private void removeOrUpdateVpnToDpnListForInterfaceName(Uint32 vpnId, String rd, Uint64 dpnId, String intfName,
             String vpnName) {
         AtomicBoolean lastDpnOnVpn = new AtomicBoolean(false);
-        /* Starts synchronized block. This ensures only one reader/writer get access to vpn-dpn-list
+        AtomicBoolean dpnActive = new AtomicBoolean(false);
+        /* Starts synchronized block on the dpn and the vpn. This ensures only one reader/writer get access to the
+         * footprint of the dpn, which may exit the vpn. The footprint is always read from the datastore here, and the
+         * cached one rebuilt from it, so the cache also follows the interfaces removed by other writers.
          * The future.get ensures that the write to the datastore is complete before leaving the synchronized block.
          */
-        // FIXME: separate this out somehow?
+        final ImmutablePair<String, Uint64> dpnKey = ImmutablePair.of(rd, dpnId);
+        final ReentrantLock dpnLock = getDpnFootprintLock(vpnName, dpnId);
         final ReentrantLock lock = JvmGlobalLocks.getLockForString(vpnName);
+        dpnLock.lock();
         lock.lock();
         try {
+            InstanceIdentifier<VpnToDpnList> id = VpnHelper.getVpnToDpnListIdentifier(rd, dpnId);
+            Set<String> footprint = new HashSet<>();
             try {
                 ListenableFuture<?> future = txRunner.callWithNewReadWriteTransactionAndSubmit(OPERATIONAL, tx -> {
-                    InstanceIdentifier<VpnToDpnList> id = VpnHelper.getVpnToDpnListIdentifier(rd, dpnId);
                     Optional<VpnToDpnList> dpnInVpnOpt = tx.read(id).get();
                     if (!dpnInVpnOpt.isPresent()) {
                         LOG.error("removeOrUpdateVpnToDpnList: Could not find DpnToVpn map for VPN=[name={}"
@@ -276,19 +308,14 @@ public class VpnFootprintService implements IVpnFootprintService {
                         return;
                     }
                     VpnToDpnList dpnInVpn = dpnInVpnOpt.get();
-                    List<VpnInterfaces> vpnInterfaces = new ArrayList<>(dpnInVpn.nonnullVpnInterfaces().values());
-                    if (vpnInterfaces == null) {
-                        LOG.error("Could not find vpnInterfaces for DpnInVpn map for VPN=[name={} rd={} id={}] and "
-                                + "dpnId={}", vpnName, rd, id, dpnId);
-                        return;
-                    }
-                    VpnInterfaces currVpnInterface = new VpnInterfacesBuilder().setInterfaceName(intfName).build();
-                    if (vpnInterfaces.remove(currVpnInterface)) {
-                        if (vpnInterfaces.isEmpty()) {
+                    dpnActive.set(dpnInVpn.getDpnState() == VpnToDpnList.DpnState.Active);
+                    dpnInVpn.nonnullVpnInterfaces().keySet().forEach(key -> footprint.add(key.getInterfaceName()));
+                    if (footprint.remove(intfName)) {
+                        if (footprint.isEmpty()) {
                             Map<IpAddressesKey, IpAddresses> ipAddressesMap = dpnInVpn.nonnullIpAddresses();
                             VpnToDpnListBuilder dpnInVpnBuilder =
                                     new VpnToDpnListBuilder(dpnInVpn).setVpnInterfaces(Collections.emptyMap());
-                            if (ipAddressesMap == null || ipAddressesMap.isEmpty()) {
+                            if (ipAddressesMap.isEmpty()) {
                                 dpnInVpnBuilder.setDpnState(VpnToDpnList.DpnState.Inactive);
                                 lastDpnOnVpn.set(true);
                             } else {
@@ -309,10 +336,16 @@ public class VpnFootprintService implements IVpnFootprintService {
                 });
                 future.get();
             } catch (InterruptedException | ExecutionException e) {
+                dpnFootprints.remove(dpnKey);
                 LOG.error("removeOrUpdateVpnToDpnList: Error removing from dpnToVpnList for vpn {} vpnId {}"
                         + " interface {} dpn {}", vpnName, vpnId, intfName, dpnId, e);
                 throw new RuntimeException(e.getMessage(), e);
             }
+            if (dpnActive.get() && !footprint.isEmpty()) {
+                dpnFootprints.put(dpnKey, footprint);
+            } else {
+                dpnFootprints.remove(dpnKey);
+            }
             // Ends synchronized block
             LOG.info("removeOrUpdateVpnToDpnList: Updated/Removed vpn footprint for vpn {} vpnId {} interface {},"
                     + " on dpn {}", vpnName, vpnName, intfName, dpnId);
@@ -320,11 +353,12 @@ public class VpnFootprintService implements IVpnFootprintService {
             if (lastDpnOnVpn.get()) {
                 fibManager.cleanUpDpnForVpn(dpnId, vpnId, rd,
                         new DpnEnterExitVpnWorker(dpnId, vpnName, rd, false /* exited */));
-                LOG.info("removeOrUpdateVpnToDpnList: Sent cleanup event for dpn {} in VPN {} vpnId {} interface {}",
-                        dpnId, vpnName, vpnId, intfName);
+                LOG.info("removeOrUpdateVpnToDpnList: Sent cleanup event for dpn {} in VPN {} vpnId {}"
+                        + " interface {}", dpnId, vpnName, vpnId, intfName);
             }
         } finally {
             lock.unlock();
+            dpnLock.unlock();
         }
     }
 
@@ -334,8 +368,9 @@ public class VpnFootprintService implements IVpnFootprintService {
         /* Starts synchronized block. This ensures only one reader/writer get access to vpn-dpn-list
          * The future.get ensures that the write to the datastore is complete before leaving the synchronized block.
          */
-        // FIXME: separate this out somehow?
+        final ReentrantLock dpnLock = getDpnFootprintLock(vpnName, dpnId);
         final ReentrantLock lock = JvmGlobalLocks.getLockForString(vpnName);
+        dpnLock.lock();
         lock.lock();
         try {
             ListenableFuture<?> future = txRunner.callWithNewReadWriteTransactionAndSubmit(OPERATIONAL, tx -> {
@@ -379,12 +414,16 @@ public class VpnFootprintService implements IVpnFootprintService {
 
             });
             future.get();
+            if (lastDpnOnVpn.get()) {
+                dpnFootprints.remove(ImmutablePair.of(rd, dpnId));
+            }
         } catch (InterruptedException | ExecutionException e) {
             LOG.error("Error removing from dpnToVpnList for vpn {} Ipaddress {} dpn {}", vpnName,
                 ipAddressSourceValuePair.getValue(), dpnId, e);
             throw new RuntimeException(e.getMessage(), e); //TODO: Avoid this
         } finally {
             lock.unlock();
+            dpnLock.unlock();
         }
 
         if (lastDpnOnVpn.get()) {
@@ -394,6 +433,19 @@ public class VpnFootprintService implements IVpnFootprintService {
         }
     }
 
+    private static ReentrantLock getDpnFootprintLock(String vpnName, Uint64 dpnId) {
+        return JvmGlobalLocks.getLockForString(vpnName + ":" + dpnId);
+    }
+
+    /**
+     * Forgets the dpn footprints of a vpn, once its footprint is cleared and it is deleted.
+     *
+     * @param primaryRd the primary rd of the vpn
+     */
+    void clearDpnFootprints(String primaryRd) {
+        dpnFootprints.keySet().removeIf(dpnKey -> primaryRd.equals(dpnKey.getLeft()));
+    }
+
     @SuppressFBWarnings(value = "UPM_UNCALLED_PRIVATE_METHOD",
             justification = "https://github.com/spotbugs/spotbugs/issues/811")
     private void publishAddNotification(final Uint64 dpnId, final String vpnName, final String rd) {
@@ -99,12 +99,13 @@ public class VpnInstanceListener extends AbstractAsyncDataTreeChangeListener<Vpn
     private final IMdsalApiManager mdsalManager;
     private final JobCoordinator jobCoordinator;
     private final VpnUtil vpnUtil;
+    private final SubnetRouteResolutionCache subnetRouteCache;
 
     @Inject
     public VpnInstanceListener(final DataBroker dataBroker, final IdManagerService idManager,
             final VpnInterfaceManager vpnInterfaceManager, final IFibManager fibManager,
             final IBgpManager bgpManager, final VpnOpDataSyncer vpnOpDataSyncer, final IMdsalApiManager mdsalManager,
-            final JobCoordinator jobCoordinator, VpnUtil vpnUtil) {
+            final JobCoordinator jobCoordinator, VpnUtil vpnUtil, SubnetRouteResolutionCache subnetRouteCache) {
         super(dataBroker, LogicalDatastoreType.CONFIGURATION,
                 InstanceIdentifier.create(VpnInstances.class).child(VpnInstance.class),
                 Executors.newListeningSingleThreadExecutor("VpnInstanceListener", LOG));
@@ -118,6 +119,7 @@ public class VpnInstanceListener extends AbstractAsyncDataTreeChangeListener<Vpn
         this.mdsalManager = mdsalManager;
         this.jobCoordinator = jobCoordinator;
         this.vpnUtil = vpnUtil;
+        this.subnetRouteCache = subnetRouteCache;
         start();
     }
 
@@ -136,6 +138,7 @@ public class VpnInstanceListener extends AbstractAsyncDataTreeChangeListener<Vpn
     @Override
     public void remove(InstanceIdentifier<VpnInstance> identifier, VpnInstance del) {
         LOG.trace("{} : VPN event key: {}, value: {}", LOGGING_PREFIX_DELETE, identifier, del);
+        subnetRouteCache.invalidateVpns();
         final String vpnName = del.getVpnInstanceName();
         Optional<VpnInstanceOpDataEntry> vpnOpValue;
         String primaryRd = vpnUtil.getVpnRd(vpnName);
@@ -184,6 +187,7 @@ public class VpnInstanceListener extends AbstractAsyncDataTreeChangeListener<Vpn
     public void update(InstanceIdentifier<VpnInstance> identifier,
         VpnInstance original, VpnInstance update) {
         LOG.trace("VPN-UPDATE: update: VPN event key: {}, value: {}.", identifier, update);
+        subnetRouteCache.invalidateVpns();
         if (Objects.equals(original, update)) {
             return;
         }
@@ -362,6 +366,7 @@ public class VpnInstanceListener extends AbstractAsyncDataTreeChangeListener<Vpn
     @Override
     public void add(final InstanceIdentifier<VpnInstance> identifier, final VpnInstance value) {
         LOG.trace("{} add: Add VPN event key: {}, value: {}", LOGGING_PREFIX_ADD, identifier, value);
+        subnetRouteCache.invalidateVpns();
         final String vpnName = value.getVpnInstanceName();
         jobCoordinator.enqueueJob("VPN-" + vpnName, new AddVpnInstanceWorker(dataBroker, value),
                 SystemPropertyReader.getDataStoreJobCoordinatorMaxRetries());
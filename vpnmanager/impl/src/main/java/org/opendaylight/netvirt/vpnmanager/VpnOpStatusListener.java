@@ -116,6 +116,7 @@ public class VpnOpStatusListener extends AbstractAsyncDataTreeChangeListener<Vpn
             final List<String> rds = update.getRd();
             String primaryRd = update.getVrfId();
             final Uint32 vpnId = vpnUtil.getVpnId(vpnName);
+            vpnFootprintService.clearDpnFootprints(primaryRd);
             jobCoordinator.enqueueJob("VPN-" + update.getVpnInstanceName(), () -> {
                 // Two transactions are used, one for operational, one for config; we only submit the config
                 // transaction if the operational transaction succeeds
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.vpnmanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.mdsal.binding.dom.adapter.test.AbstractConcurrentDataBrokerTest;
+import org.opendaylight.netvirt.vpnmanager.SubnetRouteResolutionCache.SubnetRoute;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.IpAddressBuilder;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.yang.types.rev130715.Uuid;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3vpn.rev130911.TaskState;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3vpn.rev130911.subnet.op.data.SubnetOpDataEntry;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3vpn.rev130911.subnet.op.data.SubnetOpDataEntryBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3vpn.rev130911.subnet.op.data.SubnetOpDataEntryKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.neutronvpn.rev150602.subnetmaps.SubnetmapBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.neutronvpn.rev150602.subnetmaps.SubnetmapKey;
+import org.opendaylight.yangtools.yang.common.Uint32;
+import org.opendaylight.yangtools.yang.common.Uint64;
+
+public class SubnetRouteResolutionCacheTest extends AbstractConcurrentDataBrokerTest {
+
+    private static final Uint32 VPN_ID = Uint32.valueOf(100);
+    private static final long ELAN_TAG = 5000;
+    private static final long OTHER_ELAN_TAG = 5001;
+    private static final Uuid SUBNET_1 = new Uuid("067e6162-3b6f-4ae2-a171-2470b63dff01");
+    private static final Uuid SUBNET_2 = new Uuid("067e6162-3b6f-4ae2-a171-2470b63dff02");
+
+    private SubnetRouteResolutionCache cache;
+    private SubnetOpDataCacheFeeder feeder;
+
+    @Before
+    public void setUp() {
+        cache = new SubnetRouteResolutionCache(60000, 60000);
+        feeder = new SubnetOpDataCacheFeeder(getDataBroker(), cache);
+    }
+
+    @After
+    public void tearDown() {
+        feeder.close();
+    }
+
+    @Test
+    public void testSubnetRouteMatchesCidr() {
+        SubnetRoute subnetRoute = buildSubnetRoute(SUBNET_1, "10.0.1.0/24", 1);
+
+        assertTrue(subnetRoute.matches(IpAddressBuilder.getDefaultInstance("10.0.1.25")));
+        assertFalse(subnetRoute.matches(IpAddressBuilder.getDefaultInstance("10.0.2.25")));
+    }
+
+    @Test
+    public void testNoSubnetRoutesNotCached() {
+        cache.putSubnetRoutes(VPN_ID, ELAN_TAG, Collections.emptyList());
+
+        assertNull(cache.getSubnetRoutes(VPN_ID, ELAN_TAG));
+    }
+
+    @Test
+    public void testInvalidateSubnetRoutesOfSubnet() {
+        List<SubnetRoute> subnetRoutes = List.of(buildSubnetRoute(SUBNET_1, "10.0.1.0/24", 1));
+        List<SubnetRoute> otherSubnetRoutes = List.of(buildSubnetRoute(SUBNET_2, "10.0.2.0/24", 1));
+        cache.putSubnetRoutes(VPN_ID, ELAN_TAG, subnetRoutes);
+        cache.putSubnetRoutes(VPN_ID, OTHER_ELAN_TAG, otherSubnetRoutes);
+        assertEquals(subnetRoutes, cache.getSubnetRoutes(VPN_ID, ELAN_TAG));
+
+        cache.invalidateSubnetRoutes(SUBNET_1);
+
+        assertNull(cache.getSubnetRoutes(VPN_ID, ELAN_TAG));
+        assertEquals(otherSubnetRoutes, cache.getSubnetRoutes(VPN_ID, OTHER_ELAN_TAG));
+    }
+
+    @Test
+    public void testNextHopDpnChangeInvalidatesSubnetRoutes() {
+        SubnetRoute subnetRoute = buildSubnetRoute(SUBNET_1, "10.0.1.0/24", 1);
+        cache.putSubnetRoutes(VPN_ID, ELAN_TAG, List.of(subnetRoute));
+        SubnetOpDataEntry original = subnetRoute.getSubnetOpDataEntry();
+
+        // the other changes of the subnet op data, such as its dpns, keep the subnet routes
+        feeder.update(VpnUtil.buildSubnetOpDataEntryInstanceIdentifier(SUBNET_1), original,
+                new SubnetOpDataEntryBuilder(original).setRouteAdvState(TaskState.Done).build());
+        assertNotNull(cache.getSubnetRoutes(VPN_ID, ELAN_TAG));
+
+        feeder.update(VpnUtil.buildSubnetOpDataEntryInstanceIdentifier(SUBNET_1), original,
+                new SubnetOpDataEntryBuilder(original).setNhDpnId(Uint64.valueOf(2)).build());
+        assertNull(cache.getSubnetRoutes(VPN_ID, ELAN_TAG));
+    }
+
+    @Test
+    public void testSubnetOpDataRemovalInvalidatesSubnetRoutes() {
+        SubnetRoute subnetRoute = buildSubnetRoute(SUBNET_1, "10.0.1.0/24", 1);
+        cache.putSubnetRoutes(VPN_ID, ELAN_TAG, List.of(subnetRoute));
+
+        feeder.remove(VpnUtil.buildSubnetOpDataEntryInstanceIdentifier(SUBNET_1), subnetRoute.getSubnetOpDataEntry());
+
+        assertNull(cache.getSubnetRoutes(VPN_ID, ELAN_TAG));
+    }
+
+    @Test
+    public void testPuntDedup() {
+        assertTrue(cache.tryPunt(VPN_ID, "10.0.1.25"));
+        assertFalse(cache.tryPunt(VPN_ID, "10.0.1.25"));
+        assertTrue(cache.tryPunt(VPN_ID, "10.0.1.26"));
+        assertTrue(cache.tryPunt(Uint32.valueOf(101), "10.0.1.25"));
+    }
+
+    private static SubnetRoute buildSubnetRoute(Uuid subnetId, String cidr, long nhDpnId) {
+        SubnetOpDataEntry subnetOpDataEntry = new SubnetOpDataEntryBuilder().withKey(new SubnetOpDataEntryKey(subnetId))
+                .setSubnetId(subnetId).setSubnetCidr(cidr).setNhDpnId(Uint64.valueOf(nhDpnId)).build();
+        return new SubnetRoute(subnetOpDataEntry,
+                new SubnetmapBuilder().withKey(new SubnetmapKey(subnetId)).setId(subnetId).build());
+    }
+}
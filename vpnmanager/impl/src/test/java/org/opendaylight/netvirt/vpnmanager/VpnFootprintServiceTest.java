@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2020 Ericsson India Global Services Pvt Ltd. and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.opendaylight.netvirt.vpnmanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.genius.interfacemanager.interfaces.IInterfaceManager;
+import org.opendaylight.genius.mdsalutil.interfaces.IMdsalApiManager;
+import org.opendaylight.infrautils.jobcoordinator.JobCoordinator;
+import org.opendaylight.mdsal.binding.api.DataBroker;
+import org.opendaylight.mdsal.binding.api.NotificationPublishService;
+import org.opendaylight.mdsal.binding.api.ReadTransaction;
+import org.opendaylight.mdsal.binding.api.WriteTransaction;
+import org.opendaylight.mdsal.binding.dom.adapter.test.AbstractConcurrentDataBrokerTest;
+import org.opendaylight.mdsal.common.api.LogicalDatastoreType;
+import org.opendaylight.netvirt.bgpmanager.api.IBgpManager;
+import org.opendaylight.netvirt.fibmanager.api.IFibManager;
+import org.opendaylight.netvirt.neutronvpn.interfaces.INeutronVpnManager;
+import org.opendaylight.netvirt.vpnmanager.api.VpnHelper;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.idmanager.rev160406.IdManagerService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.interfacemanager.rpcs.rev160406.OdlInterfaceRpcService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.genius.lockmanager.rev160413.LockManagerService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3vpn.rev130911.vpn.instance.op.data.vpn.instance.op.data.entry.VpnToDpnList;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3vpn.rev130911.vpn.instance.op.data.vpn.instance.op.data.entry.vpn.to.dpn.list.VpnInterfaces;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3vpn.rev130911.vpn.instance.op.data.vpn.instance.op.data.entry.vpn.to.dpn.list.VpnInterfacesKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3vpn.rev130911.vpn.instance.to.vpn.id.VpnInstance;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.netvirt.l3vpn.rev130911.vpn.instance.to.vpn.id.VpnInstanceBuilder;
+import org.opendaylight.yangtools.util.concurrent.FluentFutures;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.common.Uint32;
+import org.opendaylight.yangtools.yang.common.Uint64;
+
+public class VpnFootprintServiceTest extends AbstractConcurrentDataBrokerTest {
+
+    private static final String VPN_NAME = "vpn1";
+    private static final String RD = "100:1";
+    private static final Uint32 VPN_ID = Uint32.valueOf(100);
+    private static final Uint64 DPN_ID = Uint64.valueOf(1);
+
+    private final InstanceIdentifier<VpnToDpnList> dpnInVpnId = VpnHelper.getVpnToDpnListIdentifier(RD, DPN_ID);
+
+    private DataBroker dataBroker;
+    private IFibManager fibManager;
+    private VpnFootprintService vpnFootprintService;
+
+    @Before
+    public void setUp() throws Exception {
+        dataBroker = getDataBroker();
+        fibManager = mock(IFibManager.class);
+        NotificationPublishService notificationPublishService = mock(NotificationPublishService.class);
+        doReturn(FluentFutures.immediateNullFluentFuture()).when(notificationPublishService).offerNotification(any());
+        IInterfaceManager interfaceManager = mock(IInterfaceManager.class);
+        VpnUtil vpnUtil = new VpnUtil(dataBroker, mock(IdManagerService.class), fibManager, mock(IBgpManager.class),
+                mock(LockManagerService.class), mock(INeutronVpnManager.class), mock(IMdsalApiManager.class),
+                mock(JobCoordinator.class), interfaceManager, mock(OdlInterfaceRpcService.class));
+        vpnFootprintService = new VpnFootprintService(dataBroker, fibManager, notificationPublishService,
+                mock(VpnOpDataSyncer.class), interfaceManager, vpnUtil);
+
+        VpnInstance vpnInstance = new VpnInstanceBuilder().setVpnInstanceName(VPN_NAME).setVpnId(VPN_ID)
+                .setVrfId(RD).build();
+        WriteTransaction writeTx = dataBroker.newWriteOnlyTransaction();
+        writeTx.mergeParentStructurePut(LogicalDatastoreType.CONFIGURATION,
+                VpnOperDsUtils.getVpnInstanceToVpnIdIdentifier(VPN_NAME), vpnInstance);
+        writeTx.commit().get();
+    }
+
+    @Test
+    public void testInterfacesAddedToActiveDpn() throws Exception {
+        addInterface("port1");
+        addInterface("port2");
+
+        VpnToDpnList dpnInVpn = readDpnInVpn();
+        assertEquals(VpnToDpnList.DpnState.Active, dpnInVpn.getDpnState());
+        assertEquals(Set.of(new VpnInterfacesKey("port1"), new VpnInterfacesKey("port2")),
+                dpnInVpn.nonnullVpnInterfaces().keySet());
+        verify(fibManager, times(1)).populateFibOnNewDpn(eq(DPN_ID), eq(VPN_ID), eq(RD), any());
+    }
+
+    @Test
+    public void testRemoveFollowsInterfacesRemovedByOthers() throws Exception {
+        addInterface("port1");
+        addInterface("port2");
+        deleteInterfaceFromDatastore("port2");
+
+        // port1 is the last interface of the dpn in the datastore, whatever the cached footprint
+        removeInterface("port1");
+
+        VpnToDpnList dpnInVpn = readDpnInVpn();
+        assertEquals(VpnToDpnList.DpnState.Inactive, dpnInVpn.getDpnState());
+        assertTrue(dpnInVpn.nonnullVpnInterfaces().isEmpty());
+        verify(fibManager, times(1)).cleanUpDpnForVpn(eq(DPN_ID), eq(VPN_ID), eq(RD), any());
+    }
+
+    @Test
+    public void testFootprintRebuiltOnRemove() throws Exception {
+        addInterface("port1");
+        addInterface("port2");
+        addInterface("port3");
+        removeInterface("port1");
+        verify(fibManager, never()).cleanUpDpnForVpn(eq(DPN_ID), eq(VPN_ID), eq(RD), any());
+
+        deleteInterfaceFromDatastore("port2");
+        removeInterface("port3");
+
+        assertEquals(VpnToDpnList.DpnState.Inactive, readDpnInVpn().getDpnState());
+        verify(fibManager, times(1)).cleanUpDpnForVpn(eq(DPN_ID), eq(VPN_ID), eq(RD), any());
+
+        // the dpn entering the vpn again is populated again
+        addInterface("port1");
+        assertEquals(VpnToDpnList.DpnState.Active, readDpnInVpn().getDpnState());
+        verify(fibManager, times(2)).populateFibOnNewDpn(eq(DPN_ID), eq(VPN_ID), eq(RD), any());
+    }
+
+    private void addInterface(String interfaceName) {
+        vpnFootprintService.updateVpnToDpnMapping(DPN_ID, VPN_NAME, RD, interfaceName, null, true /* add */);
+    }
+
+    private void removeInterface(String interfaceName) {
+        vpnFootprintService.updateVpnToDpnMapping(DPN_ID, VPN_NAME, RD, interfaceName, null, false /* add */);
+    }
+
+    private void deleteInterfaceFromDatastore(String interfaceName) throws InterruptedException, ExecutionException {
+        WriteTransaction writeTx = dataBroker.newWriteOnlyTransaction();
+        writeTx.delete(LogicalDatastoreType.OPERATIONAL,
+                dpnInVpnId.child(VpnInterfaces.class, new VpnInterfacesKey(interfaceName)));
+        writeTx.commit().get();
+    }
+
+    private VpnToDpnList readDpnInVpn() throws InterruptedException, ExecutionException {
+        try (ReadTransaction readTx = dataBroker.newReadOnlyTransaction()) {
+            return readTx.read(LogicalDatastoreType.OPERATIONAL, dpnInVpnId).get().get();
+        }
+    }
+}